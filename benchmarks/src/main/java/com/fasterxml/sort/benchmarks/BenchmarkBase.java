@@ -0,0 +1,117 @@
+package com.fasterxml.sort.benchmarks;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.fasterxml.sort.util.CollectionReader;
+
+/**
+ * Base class for benchmarks, to share data generation and common settings:
+ * each benchmark method processes all of the generated data once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms1g", "-Xmx1g" })
+public abstract class BenchmarkBase
+{
+    @Param({ "RANDOM", "SORTED", "REVERSED", "DUPLICATES", "SHARED_PREFIX", "LONG_LINES" })
+    public DataShape shape;
+
+    /**
+     * Approximate size of generated data, in megabytes
+     */
+    @Param({ "8" })
+    public int dataMegabytes;
+
+    protected List<byte[]> _lines;
+
+    @Setup(Level.Trial)
+    public void setupData() throws IOException
+    {
+        _lines = shape.generate(dataMegabytes * 1024L * 1024L, 1L);
+        _setup();
+    }
+
+    /**
+     * Method called after data has been generated, to set up benchmark-specific state
+     */
+    protected void _setup() throws IOException { }
+
+    /*
+    /**********************************************************************
+    /* Helper methods
+    /**********************************************************************
+     */
+
+    protected static byte[] _toText(List<byte[]> lines) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (byte[] line : lines) {
+            bytes.write(line);
+            bytes.write('\n');
+        }
+        return bytes.toByteArray();
+    }
+
+    protected static File _writeFile(List<byte[]> lines) throws IOException
+    {
+        File f = File.createTempFile("sort-benchmark", ".txt");
+        f.deleteOnExit();
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(f));
+        try {
+            for (byte[] line : lines) {
+                out.write(line);
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+        return f;
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Reader for in-memory lines, with realistic size estimates (unlike
+     * plain {@link CollectionReader})
+     */
+    protected static class LineReader extends CollectionReader<byte[]>
+    {
+        public LineReader(Collection<byte[]> lines) {
+            super(lines);
+        }
+
+        @Override
+        public int estimateSizeInBytes(byte[] item) {
+            return 16 + item.length;
+        }
+    }
+
+    /**
+     * Output stream that just counts bytes written
+     */
+    protected static class CountingOutputStream extends OutputStream
+    {
+        public long count;
+
+        @Override
+        public void write(int b) {
+            ++count;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
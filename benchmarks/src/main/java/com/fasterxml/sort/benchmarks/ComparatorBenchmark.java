@@ -0,0 +1,32 @@
+package com.fasterxml.sort.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.fasterxml.sort.std.ByteArrayComparator;
+
+/**
+ * Benchmark for {@link ByteArrayComparator}: compares all adjacent pairs of lines
+ * (so, for sorted shapes, lines that are close to each other in sort order).
+ */
+public class ComparatorBenchmark extends BenchmarkBase
+{
+    protected final ByteArrayComparator _comparator = new ByteArrayComparator();
+
+    protected byte[][] _array;
+
+    @Override
+    protected void _setup() {
+        _array = _lines.toArray(new byte[_lines.size()][]);
+    }
+
+    @Benchmark
+    public int compareAdjacent()
+    {
+        final byte[][] array = _array;
+        int result = 0;
+        for (int i = 1; i < array.length; ++i) {
+            result += _comparator.compare(array[i-1], array[i]);
+        }
+        return result;
+    }
+}
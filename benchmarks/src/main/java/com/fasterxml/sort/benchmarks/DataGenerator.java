@@ -0,0 +1,244 @@
+package com.fasterxml.sort.benchmarks;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Generator of test input files for {@link DiskBenchmark}: either text files
+ * (one line per entry) or files of fixed-width binary records, of given
+ * approximate size. Unlike {@link DataShape}, data is streamed to disk as
+ * generated, so files may be much bigger than heap.
+ *<p>
+ * Binary records are {@link #RECORD_LENGTH} bytes long, with first
+ * {@link #KEY_LENGTH} bytes as key (as with "gensort" of sort benchmarks);
+ * record contents are those of the corresponding text line, truncated or
+ * padded with spaces.
+ *<p>
+ * Can also be run from command line:
+ *<pre>
+ *  java -cp target/benchmarks.jar com.fasterxml.sort.benchmarks.DataGenerator ZIPF 100 zipf.txt
+ *</pre>
+ * which would generate 100 megabytes of text lines with Zipf-distributed keys.
+ */
+public class DataGenerator
+{
+    public final static int RECORD_LENGTH = 100;
+
+    public final static int KEY_LENGTH = 10;
+
+    public enum Shape
+    {
+        /**
+         * Random lines of 8 to 40 characters
+         */
+        RANDOM {
+            @Override
+            protected String line(Random rnd, long index) {
+                return _random(rnd, 8 + rnd.nextInt(33));
+            }
+        },
+
+        /**
+         * Lines chosen from 100,000 distinct values, with Zipf distribution
+         * (exponent 1.0), so that a few values are very common and most rare
+         */
+        ZIPF {
+            private final static int VALUE_COUNT = 100000;
+
+            private String[] _values;
+            private double[] _cdf;
+
+            @Override
+            protected String line(Random rnd, long index)
+            {
+                if (_values == null) {
+                    _init();
+                }
+                int ix = Arrays.binarySearch(_cdf, rnd.nextDouble());
+                if (ix < 0) {
+                    ix = Math.min(-(ix + 1), VALUE_COUNT - 1);
+                }
+                return _values[ix];
+            }
+
+            private void _init()
+            {
+                Random rnd = new Random(VALUE_COUNT);
+                String[] values = new String[VALUE_COUNT];
+                double[] cdf = new double[VALUE_COUNT];
+                double total = 0.0;
+                for (int i = 0; i < VALUE_COUNT; ++i) {
+                    values[i] = _random(rnd, 8 + rnd.nextInt(33));
+                    total += 1.0 / (i + 1);
+                    cdf[i] = total;
+                }
+                for (int i = 0; i < VALUE_COUNT; ++i) {
+                    cdf[i] /= total;
+                }
+                _cdf = cdf;
+                _values = values;
+            }
+        },
+
+        /**
+         * Lines in sorted order: increasing 12-digit sequence number, followed
+         * by random suffix
+         */
+        SORTED {
+            @Override
+            protected String line(Random rnd, long index) {
+                return _sequence(index) + _random(rnd, 4 + rnd.nextInt(25));
+            }
+        },
+
+        /**
+         * Same as {@link #SORTED}, except that one line in 20 has a random
+         * sequence number and is thereby out of order
+         */
+        MOSTLY_SORTED {
+            @Override
+            protected String line(Random rnd, long index) {
+                if (rnd.nextInt(20) == 0) {
+                    index = (rnd.nextLong() >>> 1) % 1000000000000L;
+                }
+                return SORTED.line(rnd, index);
+            }
+        },
+
+        /**
+         * Random choices from a set of 100 distinct lines
+         */
+        DUPLICATES {
+            private final String[] _values = new String[100];
+            {
+                Random rnd = new Random(100);
+                for (int i = 0; i < _values.length; ++i) {
+                    _values[i] = _random(rnd, 8 + rnd.nextInt(33));
+                }
+            }
+
+            @Override
+            protected String line(Random rnd, long index) {
+                return _values[rnd.nextInt(_values.length)];
+            }
+        },
+
+        /**
+         * Random lines of 1 to 4096 characters, with lengths evenly
+         * distributed on logarithmic scale (as many short lines as long ones)
+         */
+        VARIABLE_LENGTH {
+            @Override
+            protected String line(Random rnd, long index) {
+                return _random(rnd, (int) Math.exp(rnd.nextDouble() * Math.log(4097.0)));
+            }
+        }
+        ;
+
+        /**
+         * @param index Index of line within file
+         */
+        protected abstract String line(Random rnd, long index);
+    }
+
+    protected final Shape _shape;
+
+    protected final long _seed;
+
+    public DataGenerator(Shape shape, long seed) {
+        _shape = shape;
+        _seed = seed;
+    }
+
+    /**
+     * Method for writing text lines of about given total size (including
+     * linefeeds) into given file.
+     *
+     * @return Number of lines written
+     */
+    public long writeText(File file, long totalBytes) throws IOException
+    {
+        Random rnd = new Random(_seed);
+        long count = 0L;
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 64000);
+        try {
+            for (long size = 0L; size < totalBytes; ++count) {
+                byte[] line = _shape.line(rnd, count).getBytes(StandardCharsets.UTF_8);
+                out.write(line);
+                out.write('\n');
+                size += line.length + 1;
+            }
+        } finally {
+            out.close();
+        }
+        return count;
+    }
+
+    /**
+     * Method for writing fixed-width records (see {@link #RECORD_LENGTH})
+     * of about given total size into given file.
+     *
+     * @return Number of records written
+     */
+    public long writeRecords(File file, long totalBytes) throws IOException
+    {
+        Random rnd = new Random(_seed);
+        final long count = Math.max(1L, totalBytes / RECORD_LENGTH);
+        final byte[] record = new byte[RECORD_LENGTH];
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 64000);
+        try {
+            for (long i = 0L; i < count; ++i) {
+                byte[] line = _shape.line(rnd, i).getBytes(StandardCharsets.UTF_8);
+                int len = Math.min(line.length, RECORD_LENGTH);
+                System.arraycopy(line, 0, record, 0, len);
+                Arrays.fill(record, len, RECORD_LENGTH, (byte) ' ');
+                out.write(record);
+            }
+        } finally {
+            out.close();
+        }
+        return count;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 3 || args.length > 4) {
+            System.err.println("Usage: java "+DataGenerator.class.getName()
+                    +" [shape] [size in MB] [output file] (--binary)");
+            System.err.println("  shapes: "+Arrays.toString(Shape.values()));
+            System.exit(1);
+        }
+        DataGenerator gen = new DataGenerator(Shape.valueOf(args[0].toUpperCase()), 1L);
+        long size = Long.parseLong(args[1]) * 1024L * 1024L;
+        File file = new File(args[2]);
+        long count;
+        if (args.length > 3 && args[3].equals("--binary")) {
+            count = gen.writeRecords(file, size);
+        } else {
+            count = gen.writeText(file, size);
+        }
+        System.out.printf("Wrote %d entries (%d bytes) into '%s'%n", count, file.length(), file);
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper methods
+    /**********************************************************************
+     */
+
+    protected static String _random(Random rnd, int length)
+    {
+        char[] ch = new char[length];
+        for (int i = 0; i < length; ++i) {
+            ch[i] = (char) ('a' + rnd.nextInt(26));
+        }
+        return new String(ch);
+    }
+
+    protected static String _sequence(long index)
+    {
+        String str = Long.toString(index);
+        return "000000000000".substring(Math.min(12, str.length())) + str;
+    }
+}
@@ -0,0 +1,128 @@
+package com.fasterxml.sort.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Shapes of test data (text lines) benchmarks are run with.
+ */
+public enum DataShape
+{
+    /**
+     * Random lines of 8 to 40 characters
+     */
+    RANDOM {
+        @Override
+        protected String line(Random rnd) {
+            return _random(rnd, 8 + rnd.nextInt(33));
+        }
+    },
+
+    /**
+     * Same as {@link #RANDOM}, but already in sorted order
+     */
+    SORTED {
+        @Override
+        protected String line(Random rnd) {
+            return RANDOM.line(rnd);
+        }
+
+        @Override
+        protected void arrange(List<String> lines) {
+            Collections.sort(lines);
+        }
+    },
+
+    /**
+     * Same as {@link #RANDOM}, but in reverse sorted order
+     */
+    REVERSED {
+        @Override
+        protected String line(Random rnd) {
+            return RANDOM.line(rnd);
+        }
+
+        @Override
+        protected void arrange(List<String> lines) {
+            Collections.sort(lines, Collections.reverseOrder());
+        }
+    },
+
+    /**
+     * Random choices from a set of 100 distinct lines
+     */
+    DUPLICATES {
+        private final String[] _values = new String[100];
+        {
+            Random rnd = new Random(100);
+            for (int i = 0; i < _values.length; ++i) {
+                _values[i] = _random(rnd, 8 + rnd.nextInt(33));
+            }
+        }
+
+        @Override
+        protected String line(Random rnd) {
+            return _values[rnd.nextInt(_values.length)];
+        }
+    },
+
+    /**
+     * Random lines that share a 200-character prefix, as in keys with common
+     * path or URL prefix
+     */
+    SHARED_PREFIX {
+        private final String _prefix = _random(new Random(200), 200);
+
+        @Override
+        protected String line(Random rnd) {
+            return _prefix + _random(rnd, 4 + rnd.nextInt(13));
+        }
+    },
+
+    /**
+     * Random lines of 1 to 4 kilobytes
+     */
+    LONG_LINES {
+        @Override
+        protected String line(Random rnd) {
+            return _random(rnd, 1024 + rnd.nextInt(3073));
+        }
+    }
+    ;
+
+    protected abstract String line(Random rnd);
+
+    /**
+     * Method for rearranging generated lines, if shape requires specific order
+     */
+    protected void arrange(List<String> lines) { }
+
+    /**
+     * Method for generating lines of about given total size (not counting linefeeds)
+     */
+    public List<byte[]> generate(long totalBytes, long seed)
+    {
+        Random rnd = new Random(seed);
+        List<String> lines = new ArrayList<String>();
+        for (long size = 0L; size < totalBytes; ) {
+            String line = line(rnd);
+            lines.add(line);
+            size += line.length();
+        }
+        arrange(lines);
+        List<byte[]> result = new ArrayList<byte[]>(lines.size());
+        for (String line : lines) {
+            result.add(line.getBytes(StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+
+    protected static String _random(Random rnd, int length)
+    {
+        char[] ch = new char[length];
+        for (int i = 0; i < length; ++i) {
+            ch[i] = (char) ('a' + rnd.nextInt(26));
+        }
+        return new String(ch);
+    }
+}
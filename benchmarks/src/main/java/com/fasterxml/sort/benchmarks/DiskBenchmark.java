@@ -0,0 +1,367 @@
+package com.fasterxml.sort.benchmarks;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.*;
+
+import com.fasterxml.sort.SortConfig;
+import com.fasterxml.sort.SortMetrics;
+import com.fasterxml.sort.Sorter;
+import com.fasterxml.sort.std.*;
+
+/**
+ * End-to-end benchmark that runs full external sorts of files on disk, with
+ * real temporary file I/O, over combinations of sorter, data shape, input size,
+ * memory setting and merge factor; and reports results as CSV, one line per
+ * sort. Unlike JMH benchmarks, this is meant for sizes well above heap size,
+ * for capacity planning and tracking regressions over versions.
+ *<p>
+ * Input files are generated using {@link DataGenerator} into the work directory
+ * on first use and reused by later runs (unless <code>--keep-data=false</code>
+ * is given, in which case they are deleted at the end). Sorters available are
+ * "text" ({@link TextFileSorter}, text lines) and "binary"
+ * ({@link FixedWidthRecordSorter}, records of {@link DataGenerator#RECORD_LENGTH}
+ * bytes). For example:
+ *<pre>
+ *  java -Xmx1g -cp target/benchmarks.jar com.fasterxml.sort.benchmarks.DiskBenchmark \
+ *     --sizes=256,1024 --memory=16,64 --merge-factors=8,64 --out=results.csv
+ *</pre>
+ * Columns of output are:
+ *<ul>
+ * <li>sorter, shape, input_mb, memory_mb, merge_factor, repetition: settings used</li>
+ * <li>entries, input_bytes: size of input</li>
+ * <li>elapsed_ms, mb_per_sec, entries_per_sec: time taken, and throughput</li>
+ * <li>peak_heap_mb: peak heap usage during sort (sum of peaks of heap memory pools)</li>
+ * <li>runs: number of sorted runs written during pre-sorting</li>
+ * <li>temp_bytes_written: total size of runs written, during pre-sorting and
+ *    intermediate merge rounds</li>
+ * <li>passes: number of passes over data: one for pre-sorting, plus one
+ *    for each merge round (including final one)</li>
+ *</ul>
+ */
+public class DiskBenchmark
+{
+    protected final static String CSV_HEADER = "sorter,shape,input_mb,memory_mb,merge_factor,repetition,"
+            +"entries,input_bytes,elapsed_ms,mb_per_sec,entries_per_sec,peak_heap_mb,"
+            +"runs,temp_bytes_written,passes";
+
+    protected final static double MB = 1024.0 * 1024.0;
+
+    protected File _workDir;
+    protected List<String> _sorters = Arrays.asList("text", "binary");
+    protected List<DataGenerator.Shape> _shapes = Arrays.asList(DataGenerator.Shape.values());
+    protected List<Integer> _sizes = Arrays.asList(64);
+    protected List<Integer> _memory = Arrays.asList(4, 32);
+    protected List<Integer> _mergeFactors = Arrays.asList(8, 64);
+    protected int _threads = 1;
+    protected int _repeat = 1;
+    protected int _warmup = 1;
+    protected boolean _keepData = true;
+    protected PrintStream _out = System.out;
+
+    public static void main(String[] args) throws IOException
+    {
+        if (Arrays.asList(args).contains("--help")) {
+            _usage();
+            return;
+        }
+        DiskBenchmark bm = new DiskBenchmark();
+        try {
+            bm._configure(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: "+e.getMessage());
+            _usage();
+            System.exit(1);
+        }
+        bm.run();
+    }
+
+    protected static void _usage()
+    {
+        System.err.println("Usage: java "+DiskBenchmark.class.getName()+" [options]");
+        System.err.println("Options (lists are comma-separated):");
+        System.err.println("  --dir=DIR              Work directory for input, output and temporary files (default: temp dir)");
+        System.err.println("  --sorters=LIST         Sorters: text, binary (default: both)");
+        System.err.println("  --shapes=LIST          Data shapes: "+Arrays.toString(DataGenerator.Shape.values())+" (default: all)");
+        System.err.println("  --sizes=LIST           Input sizes in MB (default: 64)");
+        System.err.println("  --memory=LIST          Memory settings in MB (default: 4,32)");
+        System.err.println("  --merge-factors=LIST   Merge factors (default: 8,64)");
+        System.err.println("  --threads=N            Threads for pre-sorting text files (default: 1)");
+        System.err.println("  --repeat=N             Measured repetitions of each combination (default: 1)");
+        System.err.println("  --warmup=N             Unreported warm-up sorts per sorter (default: 1)");
+        System.err.println("  --keep-data=BOOLEAN    Whether to keep generated input files (default: true)");
+        System.err.println("  --out=FILE             File to write CSV into (default: standard output)");
+        System.err.println("  --help                 Print this help");
+    }
+
+    protected void _configure(String[] args) throws IOException
+    {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "java-merge-sort-benchmark");
+        for (String arg : args) {
+            int ix = arg.indexOf('=');
+            if (!arg.startsWith("--") || ix < 0) {
+                throw new IllegalArgumentException("Unrecognized argument '"+arg+"'");
+            }
+            final String name = arg.substring(2, ix);
+            final String value = arg.substring(ix+1);
+            switch (name) {
+            case "dir":
+                dir = new File(value);
+                break;
+            case "sorters":
+                _sorters = new ArrayList<String>();
+                for (String sorter : value.split(",")) {
+                    if (!sorter.equals("text") && !sorter.equals("binary")) {
+                        throw new IllegalArgumentException("Unknown sorter '"+sorter+"'");
+                    }
+                    _sorters.add(sorter);
+                }
+                break;
+            case "shapes":
+                _shapes = new ArrayList<DataGenerator.Shape>();
+                for (String shape : value.split(",")) {
+                    _shapes.add(DataGenerator.Shape.valueOf(shape.trim().toUpperCase()));
+                }
+                break;
+            case "sizes":
+                _sizes = _ints(name, value);
+                break;
+            case "memory":
+                _memory = _ints(name, value);
+                break;
+            case "merge-factors":
+                _mergeFactors = _ints(name, value);
+                break;
+            case "threads":
+                _threads = _ints(name, value).get(0);
+                break;
+            case "repeat":
+                _repeat = _ints(name, value).get(0);
+                break;
+            case "warmup":
+                _warmup = _ints(name, value).get(0);
+                break;
+            case "keep-data":
+                _keepData = Boolean.parseBoolean(value);
+                break;
+            case "out":
+                _out = new PrintStream(new FileOutputStream(value), true, "UTF-8");
+                break;
+            default:
+                throw new IllegalArgumentException("Unrecognized option '--"+name+"'");
+            }
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IllegalArgumentException("Can not create work directory '"+dir+"'");
+        }
+        _workDir = dir;
+    }
+
+    public void run() throws IOException
+    {
+        List<File> generated = new ArrayList<File>();
+        _out.println(CSV_HEADER);
+        try {
+            for (String sorter : _sorters) {
+                boolean warmedUp = (_warmup == 0);
+                for (DataGenerator.Shape shape : _shapes) {
+                    for (int size : _sizes) {
+                        Input input = _input(sorter, shape, size, generated);
+                        if (!warmedUp) {
+                            for (int i = 0; i < _warmup; ++i) {
+                                _sort(input, _memory.get(0), _mergeFactors.get(0));
+                            }
+                            warmedUp = true;
+                        }
+                        for (int memory : _memory) {
+                            for (int mergeFactor : _mergeFactors) {
+                                for (int rep = 1; rep <= _repeat; ++rep) {
+                                    Result result = _sort(input, memory, mergeFactor);
+                                    _report(input, memory, mergeFactor, rep, result);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            if (!_keepData) {
+                for (File f : generated) {
+                    f.delete();
+                }
+            }
+            _out.flush();
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    protected Input _input(String sorter, DataGenerator.Shape shape, int sizeMB,
+            List<File> generated)
+        throws IOException
+    {
+        final boolean binary = sorter.equals("binary");
+        File file = new File(_workDir, shape.name().toLowerCase()+"-"+sizeMB+"mb"
+                +(binary ? ".bin" : ".txt"));
+        long entries;
+        if (file.exists()) {
+            entries = binary ? (file.length() / DataGenerator.RECORD_LENGTH) : _countLines(file);
+        } else {
+            System.err.printf("Generating %s...%n", file);
+            DataGenerator gen = new DataGenerator(shape, 1L);
+            long size = sizeMB * 1024L * 1024L;
+            entries = binary ? gen.writeRecords(file, size) : gen.writeText(file, size);
+            generated.add(file);
+        }
+        return new Input(sorter, shape, sizeMB, file, entries);
+    }
+
+    protected Result _sort(Input input, int memoryMB, int mergeFactor) throws IOException
+    {
+        // note: unlike defaults, temporary files go into work directory, deleted as soon as possible
+        ManagedTempFileProvider tempFiles = new ManagedTempFileProvider(_workDir, 0L, 0L);
+        SortConfig config = new SortConfig()
+                .withMaxMemoryUsage(memoryMB * 1024L * 1024L)
+                .withTempFileProvider(tempFiles)
+                .withMergeFactor(mergeFactor);
+        File output = new File(_workDir, "output.tmp");
+
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+        final long start = System.nanoTime();
+        Sorter<byte[]> sorter;
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(output), 64000);
+        try {
+            if (input.binary()) {
+                FixedWidthRecordSorter s = new FixedWidthRecordSorter(config,
+                        DataGenerator.RECORD_LENGTH, 0, DataGenerator.KEY_LENGTH);
+                s.sort(new FileInputStream(input.file), out);
+                sorter = s;
+            } else {
+                TextFileSorter s = new TextFileSorter(config);
+                s.sort(input.file.toPath(), RawTextLineWriter.factory().constructWriter(out), _threads);
+                sorter = s;
+            }
+        } finally {
+            out.close();
+        }
+        final long nanos = System.nanoTime() - start;
+        long peakHeap = 0L;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+        SortMetrics metrics = sorter.getMetrics();
+        sorter.close();
+        tempFiles.close();
+        // sanity check: all data must be there
+        final long outputLength = output.length();
+        output.delete();
+        if (outputLength != input.file.length()) {
+            throw new IOException("Output size ("+outputLength+") differs from input size ("
+                    +input.file.length()+") for "+input.file);
+        }
+        return new Result(nanos, peakHeap, metrics);
+    }
+
+    protected void _report(Input input, int memoryMB, int mergeFactor, int repetition, Result result)
+    {
+        final double secs = result.nanos / 1000000000.0;
+        final SortMetrics m = result.metrics;
+        // one pass for pre-sorting; plus merge rounds, if there were any runs
+        final int passes = 1 + Math.max(0, m.getRoundCount());
+        _out.printf(Locale.ROOT, "%s,%s,%d,%d,%d,%d,%d,%d,%d,%.2f,%.0f,%.1f,%d,%d,%d%n",
+                input.sorter, input.shape, input.sizeMB, memoryMB, mergeFactor, repetition,
+                input.entries, input.file.length(), result.nanos / 1000000L,
+                input.file.length() / MB / secs, input.entries / secs, result.peakHeap / MB,
+                m.getRunCount(), m.getSpillBytes(), passes);
+    }
+
+    protected static List<Integer> _ints(String name, String value)
+    {
+        List<Integer> result = new ArrayList<Integer>();
+        try {
+            for (String str : value.split(",")) {
+                int i = Integer.parseInt(str.trim());
+                if (i < 0) {
+                    throw new NumberFormatException();
+                }
+                result.add(i);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for '--"+name+"': '"+value+"'");
+        }
+        return result;
+    }
+
+    protected static long _countLines(File file) throws IOException
+    {
+        long count = 0L;
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[64000];
+            int len;
+            while ((len = in.read(buffer)) > 0) {
+                for (int i = 0; i < len; ++i) {
+                    if (buffer[i] == '\n') {
+                        ++count;
+                    }
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return count;
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    protected static class Input
+    {
+        public final String sorter;
+        public final DataGenerator.Shape shape;
+        public final int sizeMB;
+        public final File file;
+        public final long entries;
+
+        public Input(String sorter, DataGenerator.Shape shape, int sizeMB, File file, long entries) {
+            this.sorter = sorter;
+            this.shape = shape;
+            this.sizeMB = sizeMB;
+            this.file = file;
+            this.entries = entries;
+        }
+
+        public boolean binary() {
+            return sorter.equals("binary");
+        }
+    }
+
+    protected static class Result
+    {
+        public final long nanos;
+        public final long peakHeap;
+        public final SortMetrics metrics;
+
+        public Result(long nanos, long peakHeap, SortMetrics metrics) {
+            this.nanos = nanos;
+            this.peakHeap = peakHeap;
+            this.metrics = metrics;
+        }
+    }
+}
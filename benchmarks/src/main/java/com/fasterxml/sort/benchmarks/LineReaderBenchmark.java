@@ -0,0 +1,35 @@
+package com.fasterxml.sort.benchmarks;
+
+import java.io.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.sort.std.RawTextLineReader;
+
+/**
+ * Benchmark for parsing lines from text with {@link RawTextLineReader}.
+ */
+public class LineReaderBenchmark extends BenchmarkBase
+{
+    protected byte[] _text;
+
+    @Override
+    protected void _setup() throws IOException {
+        _text = _toText(_lines);
+    }
+
+    @Benchmark
+    public int readLines(Blackhole bh) throws IOException
+    {
+        RawTextLineReader reader = new RawTextLineReader(new ByteArrayInputStream(_text));
+        int count = 0;
+        byte[] line;
+        while ((line = reader.readNext()) != null) {
+            bh.consume(line);
+            ++count;
+        }
+        reader.close();
+        return count;
+    }
+}
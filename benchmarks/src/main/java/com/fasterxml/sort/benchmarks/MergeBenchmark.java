@@ -0,0 +1,56 @@
+package com.fasterxml.sort.benchmarks;
+
+import java.io.IOException;
+import java.util.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.fasterxml.sort.DataReader;
+import com.fasterxml.sort.Merger;
+import com.fasterxml.sort.std.ByteArrayComparator;
+
+/**
+ * Benchmark for merge throughput of {@link Merger} with different numbers of
+ * inputs (fan-in). Inputs are in memory, to exclude cost of reading runs.
+ */
+public class MergeBenchmark extends BenchmarkBase
+{
+    @Param({ "2", "8", "16", "64" })
+    public int fanIn;
+
+    protected final ByteArrayComparator _comparator = new ByteArrayComparator();
+
+    protected List<List<byte[]>> _runs;
+
+    @Override
+    protected void _setup()
+    {
+        // distribute lines round-robin, then sort each run
+        _runs = new ArrayList<List<byte[]>>(fanIn);
+        for (int i = 0; i < fanIn; ++i) {
+            _runs.add(new ArrayList<byte[]>(_lines.size() / fanIn + 1));
+        }
+        for (int i = 0, len = _lines.size(); i < len; ++i) {
+            _runs.get(i % fanIn).add(_lines.get(i));
+        }
+        for (List<byte[]> run : _runs) {
+            Collections.sort(run, _comparator);
+        }
+    }
+
+    @Benchmark
+    public int merge() throws IOException
+    {
+        List<DataReader<byte[]>> readers = new ArrayList<DataReader<byte[]>>(fanIn);
+        for (List<byte[]> run : _runs) {
+            readers.add(new LineReader(run));
+        }
+        DataReader<byte[]> merged = Merger.mergedReader(_comparator, readers);
+        int count = 0;
+        while (merged.readNext() != null) {
+            ++count;
+        }
+        merged.close();
+        return count;
+    }
+}
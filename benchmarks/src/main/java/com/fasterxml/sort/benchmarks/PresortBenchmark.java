@@ -0,0 +1,64 @@
+package com.fasterxml.sort.benchmarks;
+
+import java.io.*;
+import java.util.Arrays;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.fasterxml.sort.SortConfig;
+
+/**
+ * Benchmarks for stages of pre-sorting: reading a buffer full of entries
+ * ({@code _readMax()}), sorting it, and writing it as a sorted run
+ * ({@code _writePresorted()}). All data fits in a single buffer.
+ *<p>
+ * Note that sorting and writing also include the cost of copying the buffer
+ * (since both modify it), which is small in comparison.
+ */
+public class PresortBenchmark extends BenchmarkBase
+{
+    protected StageSorter _sorter;
+
+    /**
+     * Entries as read by {@code _readMax()}
+     */
+    protected Object[] _items;
+
+    protected Object[] _sortedItems;
+
+    @Override
+    protected void _setup() throws IOException
+    {
+        _sorter = new StageSorter(new SortConfig());
+        _items = readMax();
+        _sortedItems = _items.clone();
+        Arrays.sort(_sortedItems, _sorter.rawComparator());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        _sorter.close();
+    }
+
+    @Benchmark
+    public Object[] readMax() throws IOException {
+        return _sorter.readMax(new LineReader(_lines), Long.MAX_VALUE / 2);
+    }
+
+    @Benchmark
+    public Object[] sortBuffer()
+    {
+        Object[] items = _items.clone();
+        Arrays.sort(items, _sorter.rawComparator());
+        return items;
+    }
+
+    @Benchmark
+    public long writePresorted() throws IOException
+    {
+        File run = _sorter.writePresorted(_sortedItems.clone());
+        long length = run.length();
+        _sorter.deleteRun(run);
+        return length;
+    }
+}
@@ -0,0 +1,36 @@
+package com.fasterxml.sort.benchmarks;
+
+import java.io.*;
+import java.util.Comparator;
+
+import com.fasterxml.sort.*;
+import com.fasterxml.sort.std.*;
+import com.fasterxml.sort.util.SegmentedBuffer;
+
+/**
+ * {@link Sorter} sub-class that exposes individual stages of sorting,
+ * for benchmarks.
+ */
+public class StageSorter extends Sorter<byte[]>
+{
+    public StageSorter(SortConfig config) {
+        super(config, RawTextLineReader.factory(), RawTextLineWriter.factory(),
+                new ByteArrayComparator());
+    }
+
+    public Object[] readMax(DataReader<byte[]> reader, long memoryToUse) throws IOException {
+        return _readMax(reader, new SegmentedBuffer(), memoryToUse, null);
+    }
+
+    public File writePresorted(Object[] items) throws IOException {
+        return _writePresorted(items);
+    }
+
+    public void deleteRun(File run) {
+        _deleteRun(run);
+    }
+
+    public Comparator<Object> rawComparator() {
+        return _rawComparator();
+    }
+}
@@ -0,0 +1,42 @@
+package com.fasterxml.sort.benchmarks;
+
+import java.io.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.fasterxml.sort.SortConfig;
+import com.fasterxml.sort.std.TextFileSorter;
+
+/**
+ * End-to-end benchmark for sorting a text file with {@link TextFileSorter};
+ * with small memory setting, includes pre-sorting into runs and merging
+ * them, with default merge factor.
+ */
+public class TextFileSorterBenchmark extends BenchmarkBase
+{
+    @Param({ "1", "64" })
+    public int memoryMegabytes;
+
+    protected File _input;
+
+    @Override
+    protected void _setup() throws IOException {
+        _input = _writeFile(_lines);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        _input.delete();
+    }
+
+    @Benchmark
+    public long sortFile() throws IOException
+    {
+        TextFileSorter sorter = new TextFileSorter(new SortConfig()
+                .withMaxMemoryUsage(memoryMegabytes * 1024L * 1024L));
+        CountingOutputStream out = new CountingOutputStream();
+        sorter.sort(new FileInputStream(_input), out);
+        sorter.close();
+        return out.count;
+    }
+}
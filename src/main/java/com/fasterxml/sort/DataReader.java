@@ -11,6 +11,60 @@ public abstract class DataReader<T>
      */
     public abstract T readNext() throws IOException;
 
+    /**
+     * Method for reading the next data item, possibly reusing given
+     * instance (previously returned by this reader) to hold the data,
+     * to avoid allocating a new instance for every item. Returned item
+     * is only guaranteed to remain valid until the next call to a read method
+     * of this reader; caller must not retain references to it.
+     * Readers need not reuse instances (and never do unless {@link #canReuse}
+     * returns true); default implementation simply calls {@link #readNext()}.
+     *
+     * @param reuse Instance that may be reused, if any; null if none
+     *
+     * @return Item read (either given instance or a new one), or null to indicate end of input
+     *
+     * @since 1.1.1
+     */
+    public T readNext(T reuse) throws IOException {
+        return readNext();
+    }
+
+    /**
+     * Method for reading up to given number of items into given array,
+     * to reduce per-item call overhead; fewer items than requested are only
+     * returned when the end of input is reached. Default implementation
+     * simply calls {@link #readNext()} in a loop.
+     *
+     * @return Number of items read; 0 if at end of input
+     *
+     * @since 1.1.1
+     */
+    public int readBatch(Object[] dst, int off, int len) throws IOException
+    {
+        int count = 0;
+        while (count < len) {
+            T item = readNext();
+            if (item == null) {
+                break;
+            }
+            dst[off + count] = item;
+            ++count;
+        }
+        return count;
+    }
+
+    /**
+     * Method for checking whether this reader may reuse instances passed
+     * to {@link #readNext(Object)}, so that it is worth using that method
+     * when caller does not need to retain items.
+     *
+     * @since 1.1.1
+     */
+    public boolean canReuse() {
+        return false;
+    }
+
     /**
      * Method that should estimate memory usage of given item, for purpose
      * of limiting amount of data kept in memory during pre-sorting phase.
@@ -1,8 +1,29 @@
 package com.fasterxml.sort;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 
 public abstract class DataReaderFactory<T>
 {
     public abstract DataReader<T> constructReader(InputStream in) throws IOException;
-}
\ No newline at end of file
+
+    /**
+     * Method that may be implemented by factories of formats that allow splitting
+     * input files at record boundaries, to find offset of the first record that
+     * starts at or after given position. This allows sorting different parts of
+     * a file concurrently (see {@link Sorter#sort(java.nio.file.Path, DataWriter, int)}).
+     *<p>
+     * Default implementation returns -1 to indicate that splitting is not supported.
+     *
+     * @param channel Channel for the input file
+     * @param position Position to find the next record start from
+     *
+     * @return Offset of the first record that starts at or after given position
+     *   (size of file, if there is none); or -1 if splitting is not supported
+     *
+     * @since 1.1.1
+     */
+    public long nextRecordStart(FileChannel channel, long position) throws IOException {
+        return -1L;
+    }
+}
@@ -6,5 +6,33 @@ public abstract class DataWriter<T>
 {
     public abstract void writeEntry(T item) throws IOException;
 
+    /**
+     * Method for writing given number of items from given array, to reduce
+     * per-item call overhead. Default implementation simply calls
+     * {@link #writeEntry} in a loop.
+     *
+     * @since 1.1.1
+     */
+    @SuppressWarnings("unchecked")
+    public void writeBatch(Object[] src, int off, int len) throws IOException
+    {
+        for (int i = off, end = off + len; i < end; ++i) {
+            writeEntry((T) src[i]);
+        }
+    }
+
+    /**
+     * Method for checking whether this writer is done with items passed to
+     * {@link #writeEntry} once the call returns (that is, does not retain
+     * references to them), so that callers may reuse item instances
+     * (see {@link DataReader#readNext(Object)}). Default implementation
+     * returns false, to be safe.
+     *
+     * @since 1.1.1
+     */
+    public boolean canReuse() {
+        return false;
+    }
+
     public abstract void close() throws IOException;
 }
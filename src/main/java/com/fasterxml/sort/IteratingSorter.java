@@ -1,17 +1,38 @@
 package com.fasterxml.sort;
 
 import com.fasterxml.sort.util.CastingIterator;
+import com.fasterxml.sort.util.FileRangeInputStream;
+import com.fasterxml.sort.util.GroupingIterator;
 import com.fasterxml.sort.util.SegmentedBuffer;
+import com.fasterxml.sort.util.SortEvents;
 
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class IteratingSorter<T> extends SorterBase<T> implements Closeable
 {
@@ -19,6 +40,10 @@ public class IteratingSorter<T> extends SorterBase<T> implements Closeable
     private List<File> _mergerInputs;
     private DataReader<T> _merger;
 
+    // Final merge event (see SortEvents) in progress, if any; ends when iterator is closed
+    private Object _finalMergeEvent;
+    private long _finalMergeBytes;
+
 
     public IteratingSorter(SortConfig config,
                            DataReaderFactory<T> readerFactory,
@@ -54,9 +79,13 @@ public class IteratingSorter<T> extends SorterBase<T> implements Closeable
     {
         // Clean up any previous sort
         close();
+        _initCheckpoint();
+        _initRunPool();
+        _initDeadline();
+        _initMetrics();
 
         // First, pre-sort:
-        _phase = Phase.PRE_SORTING;
+        _setPhase(Phase.PRE_SORTING);
         boolean inputClosed = false;
 
         SegmentedBuffer buffer = new SegmentedBuffer();
@@ -65,13 +94,13 @@ public class IteratingSorter<T> extends SorterBase<T> implements Closeable
         _currentSortRound = -1;
 
         Iterator<T> iterator = null;
+        boolean success = false;
         try {
-            Object[] items = _readMax(inputReader, buffer, _config.getMaxMemoryUsage(), null);
+            Object[] items = _readSorted(inputReader, buffer, _acquireMemory(_config.getMaxMemoryUsage()), null);
             if (_checkForCancel()) {
                 close();
                 return null;
             }
-            Arrays.sort(items, _rawComparator());
             T next = inputReader.readNext();
             /* Minor optimization: in case all entries might fit in
              * in-memory sort buffer, avoid writing intermediate file
@@ -80,24 +109,25 @@ public class IteratingSorter<T> extends SorterBase<T> implements Closeable
             if (next == null) {
                 inputClosed = true;
                 inputReader.close();
-                _phase = Phase.SORTING;
+                _setPhase(Phase.SORTING);
                 iterator = new CastingIterator<T>(Arrays.asList(items).iterator());
             } else { // but if more data than memory-buffer-full, do it right:
                 List<File> presorted = new ArrayList<File>();
                 presorted.add(_writePresorted(items));
                 items = null; // it's a big array, clear refs as early as possible
+                _releaseMemory();
                 _presort(inputReader, buffer, next, presorted);
                 inputClosed = true;
                 inputReader.close();
-                _phase = Phase.SORTING;
+                _presortCompleted(presorted);
+                _setPhase(Phase.SORTING);
                 if (_checkForCancel(presorted)) {
                     close();
                     return null;
                 }
-                _mergerInputs = merge(presorted);
-                _merger = _createMergeReader(_mergerInputs);
-                iterator = new MergerIterator<T>(_merger);
+                iterator = _mergeToIterator(presorted);
             }
+            success = true;
         } finally {
             if (!inputClosed) {
                 try {
@@ -106,15 +136,608 @@ public class IteratingSorter<T> extends SorterBase<T> implements Closeable
                     // Ignore
                 }
             }
+            if (!success) {
+                _closeAfterFailure();
+            }
+        }
+        if (_checkForCancel()) {
+            close();
+            return null;
+        }
+        _setPhase(Phase.COMPLETE);
+        return iterator;
+    }
+
+    /**
+     * Method that will perform full sort on input data read using given
+     * {@link DataReader}, and return results as groups of entries that are equal
+     * according to the comparator of this sorter.
+     *
+     * @return Iterator over groups if sorting complete; null if it was cancelled
+     *
+     * @since 1.1.1
+     */
+    public GroupingIterator<T> sortGrouped(DataReader<T> inputReader)
+        throws IOException
+    {
+        return sortGrouped(inputReader, _comparator);
+    }
+
+    /**
+     * Method that will perform full sort on input data read using given
+     * {@link DataReader}, and return results as groups of consecutive entries
+     * that are equal according to given grouping comparator, which may be coarser
+     * than the sort comparator (but must be consistent with it). Groups are
+     * iterated lazily, and need not fit in memory; see {@link GroupingIterator}.
+     *
+     * @return Iterator over groups if sorting complete; null if it was cancelled
+     *
+     * @since 1.1.1
+     */
+    public GroupingIterator<T> sortGrouped(DataReader<T> inputReader,
+            Comparator<? super T> groupComparator)
+        throws IOException
+    {
+        Iterator<T> it = sort(inputReader);
+        return (it == null) ? null : new GroupingIterator<T>(it, groupComparator);
+    }
+
+    /**
+     * Method that will perform full sort on contents of given file: file is split
+     * into ranges at record boundaries, and ranges are read and pre-sorted concurrently
+     * by given number of threads, each producing its own sorted runs, all of which
+     * are then merged. Memory configured for pre-sorting is divided between
+     * threads.
+     *<p>
+     * Splitting requires support from input {@link DataReaderFactory} (see
+     * {@link DataReaderFactory#nextRecordStart}); if it is not supported, or if
+     * fewer than 2 threads are requested, the whole file is read by the calling thread.
+     * Note that comparator needs to be thread-safe for concurrent pre-sorting.
+     *
+     * @return Iterator if sorting complete and output is ready to be written; null if it was cancelled
+     *
+     * @since 1.1.1
+     */
+    public Iterator<T> sort(Path input, int threadCount)
+        throws IOException
+    {
+        final DataReaderFactory<T> readerFactory = _inputReaderFactory();
+        FileChannel channel = FileChannel.open(input, StandardOpenOption.READ);
+        try {
+            long[] bounds = (threadCount < 2) ? null : _splitInput(readerFactory, channel, threadCount);
+            if (bounds == null) {
+                return sort(readerFactory.constructReader(Channels.newInputStream(channel)));
+            }
+            return _sortParallel(readerFactory, channel, bounds);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Method that will perform full sort on input data read using given
+     * {@link DataReader}, and return results as a {@link Stream} that can
+     * be consumed in parallel; see {@link #sortedStream(DataReader, int)} for details.
+     * Uses four key ranges per available processor.
+     *
+     * @return Stream of sorted entries; null if sorting was cancelled
+     *
+     * @since 1.1.1
+     */
+    public Stream<T> sortedStream(DataReader<T> inputReader)
+        throws IOException
+    {
+        return sortedStream(inputReader, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Method that will perform full sort on input data read using given
+     * {@link DataReader}, and return results as a {@link Stream} that can
+     * be consumed in parallel (see {@link Stream#parallel()}).
+     *<p>
+     * If all input fits in memory, stream splits by index. Otherwise pre-sorted runs
+     * are divided into given number of key ranges (using split keys sampled from
+     * the first pre-sort buffer, as with {@link Sorter#sortPartitioned}), and
+     * stream splits by key ranges: each range is merged lazily by the thread that
+     * consumes it, in order, so ranges can be merged concurrently while the stream
+     * as a whole stays ordered.
+     *<p>
+     * Since merging is done by the stream, sorter stays in {@link Phase#SORTING}
+     * phase until all ranges have been consumed, or the stream is closed.
+     * Closing the stream releases its remaining runs (as does {@link #close}).
+     * Stream throws {@link IterableSorterException} if an {@link IOException} is
+     * encountered when merging; and ends early if sort is cancelled during
+     * merging. Checkpointing is not supported.
+     *
+     * @param rangeCount Number of key ranges to divide runs into, if input
+     *   does not fit in memory
+     *
+     * @return Stream of sorted entries; null if sorting was cancelled
+     *
+     * @since 1.1.1
+     */
+    public Stream<T> sortedStream(DataReader<T> inputReader, int rangeCount)
+        throws IOException
+    {
+        Spliterator<T> spliterator;
+        // number of ranges not yet fully merged; null if all fit in memory
+        AtomicInteger rangesLeft = null;
+        boolean success = false;
+        try {
+            Partitions parts = _presortPartitioned(inputReader, Math.max(1, rangeCount), null);
+            if (parts == null) {
+                close();
+                success = true;
+                return null;
+            }
+            _setPhase(Phase.SORTING);
+            if (parts.items != null) { // all fit in memory
+                @SuppressWarnings("unchecked")
+                Spliterator<T> sp = (Spliterator<T>) Spliterators.spliterator(parts.items,
+                        Spliterator.ORDERED | Spliterator.NONNULL);
+                spliterator = sp;
+            } else {
+                int rounds = 1;
+                for (List<File> runs : parts.runs) {
+                    rounds = Math.max(rounds, _calculateRoundCount(runs.size(), _config.getMergeFactor()));
+                }
+                _sortRoundCount = rounds;
+                _currentSortRound = 0;
+                rangesLeft = new AtomicInteger(parts.runs.size());
+                spliterator = new RangeSpliterator(parts.runs, 0, parts.runs.size(), rangesLeft);
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                _closeAfterFailure();
+            }
+        }
+        if (_checkForCancel()) {
+            close();
+            return null;
+        }
+        if (rangesLeft == null) { // nothing to merge
+            _setPhase(Phase.COMPLETE);
+        }
+        final AtomicInteger ranges = rangesLeft;
+        return StreamSupport.stream(spliterator, false).onClose(new Runnable() {
+            @Override
+            public void run() {
+                close();
+                if (ranges != null && ranges.getAndSet(0) > 0) {
+                    _setPhase(Phase.COMPLETE);
+                }
+            }
+        });
+    }
+
+    /**
+     * Method for checking whether there is a checkpoint that {@link #resume}
+     * could continue from: this requires that configuration specifies
+     * checkpoint directory (see {@link SortConfig#withCheckpointDirectory}), and
+     * that a sort using that directory failed during its merge phase.
+     *
+     * @since 1.1.1
+     */
+    public boolean canResume() throws IOException
+    {
+        return (_config.getCheckpointDirectory() != null)
+                && (_loadCheckpoint() != null);
+    }
+
+    /**
+     * Method that will continue a sort that failed during its merge phase,
+     * starting from the last completed round recorded in the checkpoint
+     * directory, without having to re-read input.
+     *
+     * @return Iterator if sorting complete and output is ready to be written; null if it was cancelled
+     *
+     * @throws IOException If there is no checkpoint to resume from (see {@link #canResume}),
+     *   or if merging fails
+     *
+     * @since 1.1.1
+     */
+    public Iterator<T> resume() throws IOException
+    {
+        // Release resources of possible earlier sort, but leave the checkpoint as is
+        _close(false);
+        SortCheckpoint cp = _loadCheckpoint();
+        if (cp == null) {
+            throw new IOException("No checkpoint to resume from in directory '"
+                    +_config.getCheckpointDirectory().getAbsolutePath()+"'");
+        }
+        // partial output from the round that did not complete is useless
+        cp.deleteUnlisted();
+        _checkpoint = cp;
+        _initDeadline();
+        _initMetrics();
+        _presortFileCount = cp.getPresortFileCount();
+        _sortRoundCount = -1;
+        _currentSortRound = -1;
+        _setPhase(Phase.SORTING);
+
+        List<File> runs = new ArrayList<File>(cp.getRuns());
+        if (_checkForCancel()) {
+            close();
+            return null;
+        }
+        Iterator<T> iterator;
+        boolean success = false;
+        try {
+            iterator = _mergeToIterator(runs);
+            success = true;
+        } finally {
+            if (!success) {
+                _closeAfterFailure();
+            }
+        }
+        if (_checkForCancel()) {
+            close();
+            return null;
+        }
+        _setPhase(Phase.COMPLETE);
+        return iterator;
+    }
+
+    /**
+     * Helper method for splitting input file into ranges to pre-sort in parallel
+     *
+     * @return Start offsets of ranges, followed by the end offset of the last range;
+     *    or null if input can not be split
+     *
+     * @since 1.1.1
+     */
+    protected long[] _splitInput(DataReaderFactory<T> readerFactory, FileChannel channel, int rangeCount)
+        throws IOException
+    {
+        final long size = channel.size();
+        long[] bounds = new long[rangeCount+1];
+        bounds[rangeCount] = size;
+        for (int i = 1; i < rangeCount; ++i) {
+            long start = readerFactory.nextRecordStart(channel, (size / rangeCount) * i);
+            if (start < 0L) {
+                return null;
+            }
+            // very long records may span multiple ranges, leaving some empty
+            bounds[i] = Math.max(bounds[i-1], Math.min(start, size));
+        }
+        return bounds;
+    }
+
+    protected Iterator<T> _sortParallel(final DataReaderFactory<T> readerFactory,
+            final FileChannel channel, long[] bounds)
+        throws IOException
+    {
+        // Clean up any previous sort
+        close();
+        _initCheckpoint();
+        _initRunPool();
+        _initDeadline();
+        _initMetrics();
+
+        _setPhase(Phase.PRE_SORTING);
+        _presortFileCount = 0;
+        _sortRoundCount = -1;
+        _currentSortRound = -1;
+
+        final int rangeCount = bounds.length - 1;
+        _metrics.setExpectedInputBytes(bounds[rangeCount] - bounds[0]);
+        final int threadCount = _acquireThreads(rangeCount);
+        if (threadCount == 0) { // cancelled while waiting
+            close();
+            return null;
+        }
+        final AtomicBoolean abort = new AtomicBoolean(false);
+        ExecutorService executor = null;
+        Iterator<T> iterator = null;
+        boolean success = false;
+        try {
+            // only as many ranges as there are threads are pre-sorted at a time
+            final long memoryPerRange = _acquireMemory(_config.getMaxMemoryUsage()) / threadCount;
+            executor = Executors.newFixedThreadPool(threadCount);
+            List<Future<List<File>>> futures = new ArrayList<Future<List<File>>>(rangeCount);
+            for (int i = 0; i < rangeCount; ++i) {
+                final long start = bounds[i];
+                final long end = bounds[i+1];
+                if (start >= end) {
+                    continue;
+                }
+                futures.add(executor.submit(new Callable<List<File>>() {
+                    @Override
+                    public List<File> call() throws IOException {
+                        DataReader<T> reader = readerFactory.constructReader(
+                                new FileRangeInputStream(channel, start, end));
+                        return _presortRange(reader, memoryPerRange, abort);
+                    }
+                }));
+            }
+            // Keep runs in input order; and wait for all tasks even if one fails
+            List<File> presorted = new ArrayList<File>();
+            Throwable fail = null;
+            for (Future<List<File>> future : futures) {
+                try {
+                    presorted.addAll(future.get());
+                } catch (ExecutionException e) {
+                    abort.set(true);
+                    if (fail == null) {
+                        fail = e.getCause();
+                    }
+                } catch (InterruptedException e) {
+                    // leave interrupt status for caller, and stop waiting for other tasks
+                    Thread.currentThread().interrupt();
+                    abort.set(true);
+                    for (Future<?> f : futures) {
+                        f.cancel(true);
+                    }
+                    if (fail == null) {
+                        fail = new InterruptedIOException("Interrupted while pre-sorting");
+                        fail.initCause(e);
+                    }
+                    break;
+                }
+            }
+            if (fail != null) {
+                if (fail instanceof IOException) {
+                    throw (IOException) fail;
+                }
+                if (fail instanceof RuntimeException) {
+                    throw (RuntimeException) fail;
+                }
+                if (fail instanceof Error) {
+                    throw (Error) fail;
+                }
+                throw new IOException(fail);
+            }
+            _releaseMemory();
+            _presortCompleted(presorted);
+            _setPhase(Phase.SORTING);
+            if (_checkForCancel(presorted)) {
+                close();
+                success = true;
+                return null;
+            }
+            if (presorted.isEmpty()) { // empty input
+                iterator = new CastingIterator<T>(Collections.emptyList().iterator());
+            } else {
+                iterator = _mergeToIterator(presorted);
+            }
+            success = true;
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            _releaseThreads(threadCount);
+            if (!success) {
+                _closeAfterFailure();
+            }
         }
         if (_checkForCancel()) {
             close();
             return null;
         }
-        _phase = Phase.COMPLETE;
+        _setPhase(Phase.COMPLETE);
         return iterator;
     }
 
+    /**
+     * Method called (concurrently) to read and pre-sort a range of input
+     *
+     * @since 1.1.1
+     */
+    protected List<File> _presortRange(DataReader<T> reader, long memoryToUse, AtomicBoolean abort)
+        throws IOException
+    {
+        List<File> runs = new ArrayList<File>();
+        try {
+            SegmentedBuffer buffer = new SegmentedBuffer();
+            T next = reader.readNext();
+            while (next != null && !abort.get() && !_shouldStop()) {
+                Object[] items = _readSorted(reader, buffer, memoryToUse, next);
+                runs.add(_writePresorted(items));
+                next = reader.readNext();
+            }
+        } finally {
+            reader.close();
+        }
+        return runs;
+    }
+
+    /**
+     * @return Iterator over results of the final merge round; null if sort was cancelled
+     */
+    protected Iterator<T> _mergeToIterator(List<File> presorted) throws IOException
+    {
+        List<File> inputs = merge(presorted);
+        if (_cancelRequest.get()) { // caller will clean up
+            return null;
+        }
+        _mergerInputs = inputs;
+        _finalMergeEvent = SortEvents.beginFinalMerge();
+        if (_finalMergeEvent != null) {
+            _finalMergeBytes = _runBytes(inputs);
+        }
+        _merger = _createMergeReader(_mergerInputs);
+        return new MergerIterator<T>(_merger);
+    }
+
+
+    /*
+    /**********************************************************************
+    /* Internal methods, partitioned sorting
+    /**********************************************************************
+    */
+
+    /**
+     * Method that pre-sorts input, dividing sorted runs into given number of
+     * key ranges. Checkpointing is not used.
+     *
+     * @param splitKeys Keys that separate ranges; null to sample them
+     *   from the first pre-sort buffer
+     *
+     * @return Pre-sorted ranges; or null if sort was cancelled
+     *
+     * @since 1.1.1
+     */
+    protected Partitions _presortPartitioned(DataReader<T> inputReader, int partCount,
+            List<T> splitKeys)
+        throws IOException
+    {
+        // Clean up any previous sort; no checkpointing
+        close();
+        _checkpoint = null;
+        _initRunPool();
+        _initDeadline();
+        _initMetrics();
+
+        _setPhase(Phase.PRE_SORTING);
+        _presortFileCount = 0;
+        _sortRoundCount = -1;
+        _currentSortRound = -1;
+
+        final long maxMemory = _config.getMaxMemoryUsage();
+        boolean inputClosed = false;
+        try {
+            SegmentedBuffer buffer = new SegmentedBuffer();
+            Object[] items = _readSorted(inputReader, buffer, _acquireMemory(maxMemory), null);
+            if (splitKeys == null) {
+                splitKeys = _sampleSplitKeys(items, partCount);
+            }
+            T next = inputReader.readNext();
+            if (next == null) { // all fits in memory
+                inputClosed = true;
+                inputReader.close();
+                return new Partitions(items, _partitionBounds(items, splitKeys, partCount), null);
+            }
+            List<List<File>> partRuns = new ArrayList<List<File>>(partCount);
+            for (int i = 0; i < partCount; ++i) {
+                partRuns.add(new ArrayList<File>());
+            }
+            while (true) {
+                int[] bounds = _partitionBounds(items, splitKeys, partCount);
+                for (int i = 0; i < partCount; ++i) {
+                    if (bounds[i] < bounds[i+1]) {
+                        partRuns.get(i).add(_writePresorted(items, bounds[i], bounds[i+1]));
+                    }
+                }
+                items = null;
+                _releaseMemory();
+                if (_checkForCancel() || next == null) {
+                    break;
+                }
+                items = _readSorted(inputReader, buffer, _acquireMemory(maxMemory), next);
+                next = inputReader.readNext();
+            }
+            inputClosed = true;
+            inputReader.close();
+            return _cancelRequest.get() ? null : new Partitions(null, null, partRuns);
+        } finally {
+            if (!inputClosed) {
+                try {
+                    inputReader.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Method for choosing split keys to divide given sorted items into
+     * ranges of (about) equal size.
+     *
+     * @return Split keys; or null if there are no items
+     *
+     * @since 1.1.1
+     */
+    @SuppressWarnings("unchecked")
+    protected List<T> _sampleSplitKeys(Object[] sortedItems, int partCount)
+    {
+        if (sortedItems.length == 0) {
+            return null;
+        }
+        List<T> keys = new ArrayList<T>(partCount - 1);
+        for (int i = 1; i < partCount; ++i) {
+            keys.add((T) sortedItems[(int) ((long) i * sortedItems.length / partCount)]);
+        }
+        return keys;
+    }
+
+    /**
+     * @return Start indexes of ranges within given sorted items, followed by
+     *   the end index of the last range
+     *
+     * @since 1.1.1
+     */
+    protected int[] _partitionBounds(Object[] sortedItems, List<T> splitKeys, int partCount)
+    {
+        int[] bounds = new int[partCount + 1];
+        Arrays.fill(bounds, 1, partCount + 1, sortedItems.length);
+        if (splitKeys != null) {
+            final Comparator<Object> cmp = _rawComparator();
+            for (int i = 1; i < partCount; ++i) {
+                // first item at or above split key
+                int low = bounds[i-1], high = sortedItems.length;
+                final Object key = splitKeys.get(i-1);
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (cmp.compare(sortedItems[mid], key) < 0) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                bounds[i] = low;
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Method that merges runs of a single key range (possibly concurrently with
+     * other ranges) until there are few enough of them for the final merge.
+     *
+     * @param abort Flag for aborting merging, if any (null if none)
+     *
+     * @return Runs for the final merge; or null if merging was aborted or cancelled
+     *
+     * @since 1.1.1
+     */
+    protected List<File> _mergeRange(List<File> runs, AtomicBoolean abort)
+        throws IOException
+    {
+        final int mergeFactor = _config.getMergeFactor();
+        List<File> inputs = runs;
+        while (inputs.size() > mergeFactor) {
+            List<File> outputs = new ArrayList<File>();
+            for (int offset = 0, end = inputs.size(); offset < end; offset += mergeFactor) {
+                if ((abort != null && abort.get()) || _shouldStop()) {
+                    return null;
+                }
+                outputs.add(_merge(inputs.subList(offset, Math.min(offset + mergeFactor, end))));
+            }
+            inputs = outputs;
+        }
+        return inputs;
+    }
+
+    /**
+     * Result of partitioned pre-sort: either all entries in memory, along with
+     * range boundaries; or sorted runs of each range.
+     *
+     * @since 1.1.1
+     */
+    protected static class Partitions
+    {
+        public final Object[] items;
+        public final int[] bounds;
+        public final List<List<File>> runs;
+
+        public Partitions(Object[] items, int[] bounds, List<List<File>> runs) {
+            this.items = items;
+            this.bounds = bounds;
+            this.runs = runs;
+        }
+    }
 
     /*
     /**********************************************************************
@@ -122,8 +745,22 @@ public class IteratingSorter<T> extends SorterBase<T> implements Closeable
     /**********************************************************************
     */
 
+    /**
+     * Method that releases resources of the last sort, deleting all its
+     * remaining runs; including checkpoint, if one was used.
+     */
     @Override
     public void close() {
+        _close(true);
+    }
+
+    /**
+     * @param discardRuns Whether to delete remaining runs (and checkpoint,
+     *    if any), or just close readers
+     *
+     * @since 1.1.1
+     */
+    protected void _close(boolean discardRuns) {
         if (_merger != null) {
             try {
                 _merger.close();
@@ -132,13 +769,42 @@ public class IteratingSorter<T> extends SorterBase<T> implements Closeable
                 // Ignore
             }
         }
-        if (_mergerInputs != null) {
-            for (File input : _mergerInputs) {
-                input.delete();
+        if (_finalMergeEvent != null) {
+            SortEvents.endFinalMerge(_finalMergeEvent, _mergerInputs.size(), _finalMergeBytes);
+            _finalMergeEvent = null;
+        }
+        if (discardRuns) {
+            if (_mergerInputs != null) {
+                for (File input : _mergerInputs) {
+                    _deleteRun(input);
+                }
+            }
+            _deleteAllRuns();
+            if (_checkpoint != null) {
+                _checkpoint.clear();
+            }
+        }
+        if (_runPool != null) {
+            if (discardRuns) {
+                _runPool.clear();
             }
+            _runPool = null;
         }
+        _releaseMemory();
         _mergerInputs = null;
         _merger = null;
+        _checkpoint = null;
+    }
+
+    /**
+     * Method called when sorting fails: all temporary files are deleted,
+     * unless sort is checkpointed, in which case they are left to allow
+     * resuming.
+     *
+     * @since 1.1.1
+     */
+    protected void _closeAfterFailure() {
+        _close(_checkpoint == null);
     }
 
     /*
@@ -180,4 +846,105 @@ public class IteratingSorter<T> extends SorterBase<T> implements Closeable
             throw new UnsupportedOperationException();
         }
     }
+
+    /**
+     * Spliterator over key ranges of pre-sorted runs: splits by dividing ranges,
+     * and merges each range when it is first advanced into.
+     *
+     * @since 1.1.1
+     */
+    protected class RangeSpliterator implements Spliterator<T>
+    {
+        protected final List<List<File>> _ranges;
+        protected int _index;
+        protected final int _end;
+
+        /**
+         * Number of ranges (of all spliterators of the stream) not yet fully
+         * merged: sort is complete once it reaches zero
+         */
+        protected final AtomicInteger _rangesLeft;
+
+        /**
+         * Merger for the current range, if any
+         */
+        protected DataReader<T> _reader;
+        protected List<File> _readerInputs;
+
+        public RangeSpliterator(List<List<File>> ranges, int index, int end,
+                AtomicInteger rangesLeft) {
+            _ranges = ranges;
+            _index = index;
+            _end = end;
+            _rangesLeft = rangesLeft;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action)
+        {
+            try {
+                while (true) {
+                    if (_reader == null) {
+                        if (_index >= _end) {
+                            return false;
+                        }
+                        List<File> runs = _ranges.get(_index++);
+                        if (runs.isEmpty()) {
+                            _rangeCompleted();
+                            continue;
+                        }
+                        _readerInputs = _mergeRange(runs, null);
+                        if (_readerInputs == null) { // cancelled
+                            _index = _end;
+                            return false;
+                        }
+                        _reader = _createMergeReader(_readerInputs);
+                    }
+                    T value = _reader.readNext();
+                    if (value != null) {
+                        action.accept(value);
+                        return true;
+                    }
+                    _reader.close();
+                    _reader = null;
+                    for (File input : _readerInputs) {
+                        _deleteRun(input);
+                    }
+                    _readerInputs = null;
+                    _rangeCompleted();
+                }
+            } catch (IOException e) {
+                throw new IterableSorterException(e);
+            }
+        }
+
+        protected void _rangeCompleted() {
+            if (_rangesLeft.decrementAndGet() == 0) {
+                _setPhase(Phase.COMPLETE);
+            }
+        }
+
+        @Override
+        public Spliterator<T> trySplit()
+        {
+            // can only split ranges that have not been started yet
+            if (_reader != null || (_end - _index) < 2) {
+                return null;
+            }
+            final int mid = (_index + _end) >>> 1;
+            Spliterator<T> prefix = new RangeSpliterator(_ranges, _index, mid, _rangesLeft);
+            _index = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return (_index >= _end && _reader == null) ? 0L : Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.NONNULL;
+        }
+    }
 }
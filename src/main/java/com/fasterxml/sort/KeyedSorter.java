@@ -0,0 +1,566 @@
+package com.fasterxml.sort;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Sorter for items ordered by a sort key that is expensive to compute
+ * (field parsed out of a text line, collation key, property of a JSON document
+ * and so on): key is extracted once per item, when item is read, and kept
+ * alongside the item during pre-sorting, so that comparisons only compare keys.
+ *<p>
+ * By default sorted runs only contain items, and keys are extracted again when
+ * runs are read back for merging: once per item per merge round, instead of
+ * once per comparison. If a run format that also stores keys is given
+ * (see {@link #KeyedSorter(SortConfig, DataReaderFactory, DataWriterFactory, Function, Comparator,
+ * DataReaderFactory, DataWriterFactory)}), keys are never re-computed: the simplest way is
+ * to give a {@link KeyCodec} for keys (see {@link #KeyedSorter(SortConfig, DataReaderFactory,
+ * DataWriterFactory, Function, Comparator, KeyCodec)}), in which case runs store keys
+ * along with items written in the usual format (see {@link RunReaderFactory}).
+ *<p>
+ * Sorting itself is done by a {@link Sorter} of {@link KeyedItem}s, and
+ * configuration, progress tracking and cancellation work the same way.
+ *
+ * @since 1.1.1
+ */
+public class KeyedSorter<T,K>
+    implements SortingState, Closeable
+{
+    /**
+     * Estimated memory overhead of {@link KeyedItem} wrapper, beyond item and key
+     */
+    protected final static int KEYED_ITEM_OVERHEAD = 24;
+
+    protected final DataReaderFactory<T> _readerFactory;
+    protected final DataWriterFactory<T> _writerFactory;
+
+    protected final Function<T,K> _keyExtractor;
+
+    protected final Sorter<KeyedItem<T,K>> _sorter;
+
+    /**
+     * Constructor for sorter that only stores items in sorted runs, and
+     * re-extracts keys when reading runs back.
+     *
+     * @param readerFactory Factory used for creating readers for input (if stream is passed
+     *   as source) and pre-sorted data
+     * @param writerFactory Factory used for creating writers for results (if stream is passed
+     *   as destination) and pre-sorted data
+     * @param keyExtractor Function for extracting sort key of an item
+     * @param keyComparator Comparator used for ordering keys
+     */
+    public KeyedSorter(SortConfig config,
+            DataReaderFactory<T> readerFactory, DataWriterFactory<T> writerFactory,
+            Function<T,K> keyExtractor, Comparator<? super K> keyComparator)
+    {
+        this(config, readerFactory, writerFactory, keyExtractor, keyComparator, null, null);
+    }
+
+    /**
+     * Constructor for sorter that stores items along with their keys in
+     * sorted runs, using the standard keyed run format (see {@link RunWriterFactory})
+     * with given codec for keys.
+     *
+     * @param keyCodec Codec used for writing keys in sorted runs, and reading them back
+     */
+    public KeyedSorter(SortConfig config,
+            DataReaderFactory<T> readerFactory, DataWriterFactory<T> writerFactory,
+            Function<T,K> keyExtractor, Comparator<? super K> keyComparator,
+            KeyCodec<K> keyCodec)
+    {
+        this(config, readerFactory, writerFactory, keyExtractor, keyComparator,
+                new RunReaderFactory<T,K>(readerFactory, keyCodec),
+                new RunWriterFactory<T,K>(writerFactory, keyCodec));
+    }
+
+    /**
+     * Constructor for sorter that stores items along with their keys in
+     * sorted runs, using given run format.
+     *
+     * @param runReaderFactory Factory used for creating readers for pre-sorted data,
+     *   if keys are to be stored in runs; null if not
+     * @param runWriterFactory Factory used for creating writers for pre-sorted data,
+     *   if keys are to be stored in runs; null if not
+     */
+    public KeyedSorter(SortConfig config,
+            DataReaderFactory<T> readerFactory, DataWriterFactory<T> writerFactory,
+            Function<T,K> keyExtractor, Comparator<? super K> keyComparator,
+            DataReaderFactory<KeyedItem<T,K>> runReaderFactory,
+            DataWriterFactory<KeyedItem<T,K>> runWriterFactory)
+    {
+        _readerFactory = readerFactory;
+        _writerFactory = writerFactory;
+        _keyExtractor = keyExtractor;
+        if (runReaderFactory == null) {
+            runReaderFactory = new DataReaderFactory<KeyedItem<T,K>>() {
+                @Override
+                public DataReader<KeyedItem<T,K>> constructReader(InputStream in) throws IOException {
+                    return _keyedReader(_readerFactory.constructReader(in));
+                }
+            };
+        }
+        if (runWriterFactory == null) {
+            runWriterFactory = new DataWriterFactory<KeyedItem<T,K>>() {
+                @Override
+                public DataWriter<KeyedItem<T,K>> constructWriter(OutputStream out) throws IOException {
+                    return new ItemWriter<T,K>(_writerFactory.constructWriter(out));
+                }
+            };
+        }
+        _sorter = new Sorter<KeyedItem<T,K>>(config, runReaderFactory, runWriterFactory,
+                new KeyComparator<T,K>(keyComparator));
+    }
+
+    /*
+    /**********************************************************************
+    /* Main sorting API
+    /**********************************************************************
+     */
+
+    /**
+     * Method that will perform full sort on specified input, writing results
+     * into specified destination, using {@link DataReaderFactory} and
+     * {@link DataWriterFactory} configured for this sorter.
+     */
+    public void sort(InputStream source, OutputStream destination)
+        throws IOException
+    {
+        sort(_readerFactory.constructReader(source), _writerFactory.constructWriter(destination));
+    }
+
+    /**
+     * Method that will perform full sort on input data read using given
+     * {@link DataReader}, and written out using specified {@link DataWriter}.
+     *
+     * @return true if sorting completed successfully; false if it was cancelled
+     */
+    public boolean sort(DataReader<T> inputReader, DataWriter<T> resultWriter)
+        throws IOException
+    {
+        return _sorter.sort(_keyedReader(inputReader), new ItemWriter<T,K>(resultWriter));
+    }
+
+    /**
+     * Accessor for the underlying sorter, which sorts {@link KeyedItem}s.
+     */
+    public Sorter<KeyedItem<T,K>> getSorter() {
+        return _sorter;
+    }
+
+    @Override
+    public void close() {
+        _sorter.close();
+    }
+
+    /*
+    /**********************************************************************
+    /* SortingState implementation
+    /**********************************************************************
+     */
+
+    @Override
+    public Phase getPhase() { return _sorter.getPhase(); }
+
+    @Override
+    public boolean isPreSorting() { return _sorter.isPreSorting(); }
+
+    @Override
+    public boolean isSorting() { return _sorter.isSorting(); }
+
+    @Override
+    public boolean isCompleted() { return _sorter.isCompleted(); }
+
+    @Override
+    public int getNumberOfPreSortFiles() { return _sorter.getNumberOfPreSortFiles(); }
+
+    @Override
+    public int getSortRound() { return _sorter.getSortRound(); }
+
+    @Override
+    public int getNumberOfSortRounds() { return _sorter.getNumberOfSortRounds(); }
+
+    @Override
+    public void cancel() { _sorter.cancel(); }
+
+    @Override
+    public void cancel(RuntimeException e) { _sorter.cancel(e); }
+
+    @Override
+    public void cancel(IOException e) { _sorter.cancel(e); }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    protected DataReader<KeyedItem<T,K>> _keyedReader(DataReader<T> reader) {
+        return new ExtractingReader(reader);
+    }
+
+    /**
+     * Method called to estimate memory usage of given key; default implementation
+     * handles <code>byte[]</code> and {@link String} keys, and uses a rough
+     * guess for other types. Sub-classes may override.
+     */
+    protected int _estimateKeySize(K key) {
+        return _defaultKeySize(key);
+    }
+
+    protected static int _defaultKeySize(Object key)
+    {
+        if (key instanceof byte[]) {
+            return 16 + ((byte[]) key).length;
+        }
+        if (key instanceof CharSequence) {
+            return 40 + (((CharSequence) key).length() << 1);
+        }
+        return 16;
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Container for an item and its sort key
+     */
+    public static class KeyedItem<T,K>
+    {
+        protected final T _item;
+        protected final K _key;
+
+        public KeyedItem(T item, K key) {
+            _item = item;
+            _key = key;
+        }
+
+        public T getItem() { return _item; }
+        public K getKey() { return _key; }
+    }
+
+    /**
+     * Codec used for writing sort keys in sorted runs, and reading them back
+     * (see {@link RunWriterFactory}); codecs for common key types are included.
+     */
+    public interface KeyCodec<K>
+    {
+        public void writeKey(DataOutput out, K key) throws IOException;
+
+        public K readKey(DataInput in) throws IOException;
+
+        public final static KeyCodec<Long> LONG = new KeyCodec<Long>() {
+            @Override
+            public void writeKey(DataOutput out, Long key) throws IOException {
+                out.writeLong(key.longValue());
+            }
+
+            @Override
+            public Long readKey(DataInput in) throws IOException {
+                return Long.valueOf(in.readLong());
+            }
+        };
+
+        /**
+         * Codec for {@link String} keys; uses modified UTF-8, so keys are limited
+         * to 65535 bytes
+         */
+        public final static KeyCodec<String> STRING = new KeyCodec<String>() {
+            @Override
+            public void writeKey(DataOutput out, String key) throws IOException {
+                out.writeUTF(key);
+            }
+
+            @Override
+            public String readKey(DataInput in) throws IOException {
+                return in.readUTF();
+            }
+        };
+
+        public final static KeyCodec<byte[]> BYTES = new KeyCodec<byte[]>() {
+            @Override
+            public void writeKey(DataOutput out, byte[] key) throws IOException {
+                out.writeInt(key.length);
+                out.write(key);
+            }
+
+            @Override
+            public byte[] readKey(DataInput in) throws IOException {
+                byte[] key = new byte[in.readInt()];
+                in.readFully(key);
+                return key;
+            }
+        };
+    }
+
+    /**
+     * Factory for writers of the standard keyed run format, which stores keys
+     * next to items, so that keys need not be re-extracted when runs are merged.
+     * Entries are written in blocks of up to {@link #BLOCK_SIZE}: number of
+     * entries (4-byte int), their keys written using {@link KeyCodec}, then
+     * length of item data (4-byte int) and the items written using the item
+     * {@link DataWriter}. Blocks are needed since item readers may read ahead,
+     * so items and keys can not be interleaved.
+     */
+    public static class RunWriterFactory<T,K> extends DataWriterFactory<KeyedItem<T,K>>
+    {
+        public final static int BLOCK_SIZE = 1000;
+
+        protected final DataWriterFactory<T> _itemWriterFactory;
+        protected final KeyCodec<K> _keyCodec;
+
+        public RunWriterFactory(DataWriterFactory<T> itemWriterFactory, KeyCodec<K> keyCodec) {
+            _itemWriterFactory = itemWriterFactory;
+            _keyCodec = keyCodec;
+        }
+
+        @Override
+        public DataWriter<KeyedItem<T,K>> constructWriter(OutputStream out) {
+            return new RunWriter<T,K>(this, out);
+        }
+    }
+
+    /**
+     * Factory for readers of the standard keyed run format
+     * (see {@link RunWriterFactory})
+     */
+    public static class RunReaderFactory<T,K> extends DataReaderFactory<KeyedItem<T,K>>
+    {
+        protected final DataReaderFactory<T> _itemReaderFactory;
+        protected final KeyCodec<K> _keyCodec;
+
+        public RunReaderFactory(DataReaderFactory<T> itemReaderFactory, KeyCodec<K> keyCodec) {
+            _itemReaderFactory = itemReaderFactory;
+            _keyCodec = keyCodec;
+        }
+
+        @Override
+        public DataReader<KeyedItem<T,K>> constructReader(InputStream in) {
+            return new RunReader<T,K>(this, in);
+        }
+    }
+
+    protected static class RunWriter<T,K> extends DataWriter<KeyedItem<T,K>>
+    {
+        protected final RunWriterFactory<T,K> _factory;
+        protected final DataOutputStream _out;
+
+        protected final List<KeyedItem<T,K>> _block = new ArrayList<KeyedItem<T,K>>();
+        protected final ByteArrayOutputStream _itemBytes = new ByteArrayOutputStream();
+
+        protected boolean _closed;
+
+        public RunWriter(RunWriterFactory<T,K> factory, OutputStream out) {
+            _factory = factory;
+            _out = new DataOutputStream(new BufferedOutputStream(out));
+        }
+
+        @Override
+        public void writeEntry(KeyedItem<T,K> item) throws IOException
+        {
+            if (_closed) {
+                throw new IOException("Can not write using closed DataWriter");
+            }
+            _block.add(item);
+            if (_block.size() >= RunWriterFactory.BLOCK_SIZE) {
+                _writeBlock();
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (!_closed) {
+                _closed = true;
+                try {
+                    if (!_block.isEmpty()) {
+                        _writeBlock();
+                    }
+                } finally {
+                    _out.close();
+                }
+            }
+        }
+
+        protected void _writeBlock() throws IOException
+        {
+            final DataOutputStream out = _out;
+            out.writeInt(_block.size());
+            for (KeyedItem<T,K> item : _block) {
+                _factory._keyCodec.writeKey(out, item._key);
+            }
+            _itemBytes.reset();
+            DataWriter<T> w = _factory._itemWriterFactory.constructWriter(_itemBytes);
+            for (KeyedItem<T,K> item : _block) {
+                w.writeEntry(item._item);
+            }
+            w.close();
+            out.writeInt(_itemBytes.size());
+            _itemBytes.writeTo(out);
+            _block.clear();
+        }
+    }
+
+    protected static class RunReader<T,K> extends DataReader<KeyedItem<T,K>>
+    {
+        protected final RunReaderFactory<T,K> _factory;
+        protected final DataInputStream _in;
+
+        protected DataReader<T> _itemReader;
+        protected Object[] _keys;
+        protected int _keyIndex, _keyCount;
+
+        protected boolean _closed;
+
+        public RunReader(RunReaderFactory<T,K> factory, InputStream in) {
+            _factory = factory;
+            _in = new DataInputStream(new BufferedInputStream(in));
+        }
+
+        @Override
+        public KeyedItem<T,K> readNext() throws IOException
+        {
+            if (_keyIndex >= _keyCount) {
+                if (!_loadBlock()) {
+                    return null;
+                }
+            }
+            T item = _itemReader.readNext();
+            if (item == null) {
+                throw new IOException("Corrupt keyed run: "+_keyCount+" keys in block, but only "
+                        +_keyIndex+" items");
+            }
+            @SuppressWarnings("unchecked")
+            K key = (K) _keys[_keyIndex++];
+            return new KeyedItem<T,K>(item, key);
+        }
+
+        @Override
+        public int estimateSizeInBytes(KeyedItem<T,K> item) {
+            int size = KEYED_ITEM_OVERHEAD + _defaultKeySize(item._key);
+            if (_itemReader != null) {
+                size += _itemReader.estimateSizeInBytes(item._item);
+            }
+            return size;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (!_closed) {
+                _closed = true;
+                _keyCount = _keyIndex = 0;
+                _in.close();
+            }
+        }
+
+        protected boolean _loadBlock() throws IOException
+        {
+            if (_closed) {
+                return false;
+            }
+            final DataInputStream in = _in;
+            int first = in.read();
+            if (first < 0) {
+                close();
+                return false;
+            }
+            // first byte of count already read
+            final int count = (first << 24) | (in.readUnsignedByte() << 16)
+                    | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+            if (_keys == null || _keys.length < count) {
+                _keys = new Object[count];
+            }
+            for (int i = 0; i < count; ++i) {
+                _keys[i] = _factory._keyCodec.readKey(in);
+            }
+            if (_itemReader != null) {
+                _itemReader.close();
+            }
+            byte[] items = new byte[in.readInt()];
+            in.readFully(items);
+            _itemReader = _factory._itemReaderFactory.constructReader(new ByteArrayInputStream(items));
+            _keyCount = count;
+            _keyIndex = 0;
+            return true;
+        }
+    }
+
+    /**
+     * Reader that extracts keys of items read using the underlying reader
+     */
+    protected class ExtractingReader extends DataReader<KeyedItem<T,K>>
+    {
+        protected final DataReader<T> _reader;
+
+        public ExtractingReader(DataReader<T> reader) {
+            _reader = reader;
+        }
+
+        @Override
+        public KeyedItem<T,K> readNext() throws IOException {
+            T item = _reader.readNext();
+            if (item == null) {
+                return null;
+            }
+            return new KeyedItem<T,K>(item, _keyExtractor.apply(item));
+        }
+
+        @Override
+        public int estimateSizeInBytes(KeyedItem<T,K> item) {
+            return KEYED_ITEM_OVERHEAD + _reader.estimateSizeInBytes(item._item)
+                    + _estimateKeySize(item._key);
+        }
+
+        @Override
+        public void close() throws IOException {
+            _reader.close();
+        }
+    }
+
+    /**
+     * Writer that only writes items (not keys) using the underlying writer
+     */
+    protected static class ItemWriter<T,K> extends DataWriter<KeyedItem<T,K>>
+    {
+        protected final DataWriter<T> _writer;
+
+        public ItemWriter(DataWriter<T> writer) {
+            _writer = writer;
+        }
+
+        @Override
+        public void writeEntry(KeyedItem<T,K> item) throws IOException {
+            _writer.writeEntry(item._item);
+        }
+
+        @Override
+        public boolean canReuse() {
+            return _writer.canReuse();
+        }
+
+        @Override
+        public void close() throws IOException {
+            _writer.close();
+        }
+    }
+
+    protected static class KeyComparator<T,K> implements Comparator<KeyedItem<T,K>>
+    {
+        protected final Comparator<? super K> _comparator;
+
+        public KeyComparator(Comparator<? super K> cmp) {
+            _comparator = cmp;
+        }
+
+        @Override
+        public int compare(KeyedItem<T,K> o1, KeyedItem<T,K> o2) {
+            return _comparator.compare(o1._key, o2._key);
+        }
+    }
+}
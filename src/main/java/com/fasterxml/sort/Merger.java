@@ -62,6 +62,16 @@ public abstract class Merger<T>
         protected T _data1;
         protected T _data2;
 
+        /**
+         * When reading with {@link #readNext(Object)}, input from which the
+         * last item was returned: it is only advanced on the next call, once
+         * caller is done with the item, so that the item can be reused.
+         * 0 if none.
+         *
+         * @since 1.1.1
+         */
+        protected int _pendingInput;
+
         protected boolean _closed;
         
         public PairwiseMerger(Comparator<T> comparator,
@@ -76,7 +86,44 @@ public abstract class Merger<T>
         }
 
         @Override
-        public T readNext() throws IOException
+        public T readNext() throws IOException {
+            _advancePending();
+            return _readNext(false);
+        }
+
+        /**
+         * Merger does not itself hold items to reuse, so the instance passed
+         * is ignored: instead, returned item is handed back to the input it came
+         * from on the next call.
+         */
+        @Override
+        public T readNext(T reuse) throws IOException {
+            _advancePending();
+            return _readNext(true);
+        }
+
+        @Override
+        public boolean canReuse() {
+            return _reader1.canReuse() || _reader2.canReuse();
+        }
+
+        @Override
+        public int readBatch(Object[] dst, int off, int len) throws IOException
+        {
+            _advancePending();
+            int count = 0;
+            while (count < len) {
+                T item = _readNext(false);
+                if (item == null) {
+                    break;
+                }
+                dst[off + count] = item;
+                ++count;
+            }
+            return count;
+        }
+
+        protected T _readNext(boolean reuse) throws IOException
         {
             if (_data1 == null) {
                 if (_data2 == null) {
@@ -84,27 +131,59 @@ public abstract class Merger<T>
                     close();
                     return null;
                 }
-                T result = _data2;
-                _data2 = _reader2.readNext();
-                return result;
+                return _take2(reuse);
             }
             if (_data2 == null) {
-                T result = _data1;
-                _data1 = _reader1.readNext();
-                return result;
+                return _take1(reuse);
             }
             // neither is null, compare
-            T result;
             if (_comparator.compare(_data1, _data2) <= 0) {
-                result = _data1;
-                _data1 = _reader1.readNext();
-            } else {
-                result = _data2;
-                _data2 = _reader2.readNext();
+                return _take1(reuse);
+            }
+            return _take2(reuse);
+        }
+
+        private T _take1(boolean reuse) throws IOException
+        {
+            if (reuse) {
+                _pendingInput = 1;
+                return _data1;
+            }
+            T result = _data1;
+            _data1 = _reader1.readNext();
+            return result;
+        }
+
+        private T _take2(boolean reuse) throws IOException
+        {
+            if (reuse) {
+                _pendingInput = 2;
+                return _data2;
             }
+            T result = _data2;
+            _data2 = _reader2.readNext();
             return result;
         }
 
+        /**
+         * Method for advancing the input from which previous item was returned
+         * by {@link #readNext(Object)}, refilling that item if possible.
+         */
+        private void _advancePending() throws IOException
+        {
+            switch (_pendingInput) {
+            case 1:
+                _data1 = _reader1.readNext(_data1);
+                break;
+            case 2:
+                _data2 = _reader2.readNext(_data2);
+                break;
+            default:
+                return;
+            }
+            _pendingInput = 0;
+        }
+
         @Override
         public int estimateSizeInBytes(T item) {
             // should not matter so
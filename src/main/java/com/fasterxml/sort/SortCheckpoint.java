@@ -0,0 +1,311 @@
+package com.fasterxml.sort;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Helper class that manages durable state of a resumable sort: sorted
+ * runs are written in a caller-specified directory, and a small text manifest
+ * lists runs that the last completed sort round (pre-sort being round 0)
+ * produced. Manifest is always replaced atomically, so that it either
+ * refers to the complete output of the previous round, or to that of
+ * the new one.
+ *<p>
+ * Instances are created by sorters when {@link SortConfig#getCheckpointDirectory()}
+ * is defined.
+ *
+ * @since 1.1.1
+ */
+public class SortCheckpoint
+{
+    /**
+     * Name of the manifest file within checkpoint directory
+     */
+    public final static String MANIFEST_NAME = "merge-sort.manifest";
+
+    protected final static String RUN_PREFIX = "run-";
+    protected final static String RUN_SUFFIX = ".tmp";
+
+    protected final static String HEADER = "# java-merge-sort checkpoint";
+
+    protected final static String KEY_ROUND = "round";
+    protected final static String KEY_PRESORT_FILES = "presortFiles";
+    protected final static String KEY_RUN = "run";
+
+    protected final static Charset UTF8 = Charset.forName("UTF-8");
+
+    protected final File _directory;
+
+    /**
+     * Merge round that produced runs listed; 0 for pre-sort;
+     * -1 if no round has been completed yet.
+     */
+    protected int _round = -1;
+
+    protected int _presortFileCount;
+
+    protected List<File> _runs = Collections.emptyList();
+
+    public SortCheckpoint(File dir) throws IOException
+    {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can not create checkpoint directory '"+dir.getAbsolutePath()+"'");
+        }
+        _directory = dir;
+    }
+
+    /*
+    /**********************************************************************
+    /* Accessors
+    /**********************************************************************
+     */
+
+    public File getDirectory() { return _directory; }
+
+    public File getManifestFile() { return new File(_directory, MANIFEST_NAME); }
+
+    /**
+     * @return Round that produced the runs listed in manifest (0 for pre-sort);
+     *   or -1 if no round has been completed
+     */
+    public int getRound() { return _round; }
+
+    public int getPresortFileCount() { return _presortFileCount; }
+
+    public List<File> getRuns() { return _runs; }
+
+    public boolean hasCompletedRound() { return _round >= 0; }
+
+    /*
+    /**********************************************************************
+    /* Reading, writing manifest
+    /**********************************************************************
+     */
+
+    /**
+     * Method for reading the manifest from checkpoint directory, if one exists.
+     * If a manifest is found, it is verified to only refer to existing run files.
+     *
+     * @return True if a valid manifest was found and loaded; false if not
+     *
+     * @throws IOException If reading fails, or if manifest is found but
+     *    is corrupt or refers to missing run files
+     */
+    public boolean load() throws IOException
+    {
+        File f = getManifestFile();
+        if (!f.exists()) {
+            return false;
+        }
+        int round = -1;
+        int presortFiles = 0;
+        List<File> runs = new ArrayList<File>();
+        for (String line : Files.readAllLines(f.toPath(), UTF8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int ix = line.indexOf('=');
+            if (ix < 0) {
+                throw new IOException("Corrupt checkpoint manifest '"+f.getAbsolutePath()+"': invalid line '"+line+"'");
+            }
+            String key = line.substring(0, ix);
+            String value = line.substring(ix+1);
+            if (KEY_ROUND.equals(key)) {
+                round = _parseInt(f, value);
+            } else if (KEY_PRESORT_FILES.equals(key)) {
+                presortFiles = _parseInt(f, value);
+            } else if (KEY_RUN.equals(key)) {
+                File run = new File(_directory, value);
+                if (!run.isFile()) {
+                    throw new IOException("Checkpoint manifest '"+f.getAbsolutePath()+"' refers to missing run file '"+value+"'");
+                }
+                runs.add(run);
+            }
+            // ignore unknown keys, to allow for later additions
+        }
+        if (round < 0 || runs.isEmpty()) {
+            throw new IOException("Corrupt checkpoint manifest '"+f.getAbsolutePath()+"': no round or runs listed");
+        }
+        _round = round;
+        _presortFileCount = presortFiles;
+        _runs = runs;
+        return true;
+    }
+
+    /**
+     * Method called after a round has been completed, to durably record
+     * the runs it produced. Runs of the previously recorded round are
+     * NOT deleted by this method; caller is to delete them after this
+     * method returns.
+     */
+    public void write(int round, int presortFileCount, List<File> runs) throws IOException
+    {
+        StringBuilder sb = new StringBuilder(100 + runs.size() * 32);
+        sb.append(HEADER).append('\n');
+        sb.append(KEY_ROUND).append('=').append(round).append('\n');
+        sb.append(KEY_PRESORT_FILES).append('=').append(presortFileCount).append('\n');
+        for (File run : runs) {
+            if (!_directory.equals(run.getParentFile())) {
+                throw new IllegalArgumentException("Run file '"+run.getAbsolutePath()
+                        +"' not within checkpoint directory '"+_directory.getAbsolutePath()+"'");
+            }
+            sb.append(KEY_RUN).append('=').append(run.getName()).append('\n');
+        }
+        File tmp = new File(_directory, MANIFEST_NAME+".new");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(sb.toString().getBytes(UTF8));
+            // make sure contents are on disk before making new manifest visible
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        Files.move(tmp.toPath(), getManifestFile().toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        _round = round;
+        _presortFileCount = presortFileCount;
+        _runs = new ArrayList<File>(runs);
+    }
+
+    /*
+    /**********************************************************************
+    /* Run file handling
+    /**********************************************************************
+     */
+
+    /**
+     * Method for creating a new run file within checkpoint directory.
+     * Unlike with {@link com.fasterxml.sort.std.StdTempFileProvider}, files
+     * are NOT marked to be deleted on JVM exit.
+     */
+    public File provideRunFile() throws IOException {
+        return Files.createTempFile(_directory.toPath(), RUN_PREFIX, RUN_SUFFIX).toFile();
+    }
+
+    /**
+     * Method for opening stream for writing contents of given run file.
+     * Contents are synced to disk when stream is closed, so that a manifest
+     * written after closing refers to durable runs only.
+     */
+    public OutputStream openRunOutput(File run) throws IOException {
+        return new SyncingOutputStream(run);
+    }
+
+    /**
+     * Method for removing manifest and run files it lists. If nothing has
+     * been loaded or written by this instance, existing manifest is read
+     * to find the runs to remove. Other files within directory (including
+     * orphans left by an incomplete round; see {@link #deleteUnlisted}) are
+     * left as is, since the directory may be shared.
+     */
+    public void clear()
+    {
+        File manifest = getManifestFile();
+        List<File> runs = _runs.isEmpty() ? _listedRuns(manifest) : _runs;
+        for (File run : runs) {
+            run.delete();
+        }
+        manifest.delete();
+        new File(_directory, MANIFEST_NAME+".new").delete();
+        _round = -1;
+        _presortFileCount = 0;
+        _runs = Collections.emptyList();
+    }
+
+    /**
+     * Method for removing run files that are not listed in the manifest;
+     * called before resuming, to get rid of partial output of the round
+     * that did not complete.
+     */
+    public void deleteUnlisted()
+    {
+        Set<String> listed = new HashSet<String>();
+        for (File run : _runs) {
+            listed.add(run.getName());
+        }
+        File[] files = _directory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                String name = f.getName();
+                if (name.startsWith(RUN_PREFIX) && name.endsWith(RUN_SUFFIX)
+                        && !listed.contains(name)) {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Run output stream that forces contents to disk when closed.
+     */
+    protected static class SyncingOutputStream extends FileOutputStream
+    {
+        protected boolean _closed;
+
+        public SyncingOutputStream(File f) throws IOException {
+            super(f);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (_closed) {
+                return;
+            }
+            _closed = true;
+            try {
+                getFD().sync();
+            } finally {
+                super.close();
+            }
+        }
+    }
+
+    /**
+     * Helper method for finding run files listed in given manifest, without
+     * verifying them: used for cleaning up, so manifest may well be incomplete.
+     */
+    protected List<File> _listedRuns(File manifest)
+    {
+        if (!manifest.exists()) {
+            return Collections.emptyList();
+        }
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(manifest.toPath(), UTF8);
+        } catch (IOException e) {
+            return Collections.emptyList();
+        }
+        List<File> runs = new ArrayList<File>();
+        final String prefix = KEY_RUN + "=";
+        for (String line : lines) {
+            line = line.trim();
+            if (line.startsWith(prefix)) {
+                File run = new File(_directory, line.substring(prefix.length()));
+                // only ever delete files directly within checkpoint directory
+                if (_directory.equals(run.getParentFile())) {
+                    runs.add(run);
+                }
+            }
+        }
+        return runs;
+    }
+
+    private static int _parseInt(File manifest, String value) throws IOException
+    {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupt checkpoint manifest '"+manifest.getAbsolutePath()+"': invalid number '"+value+"'");
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.fasterxml.sort;
 
+import java.io.File;
+
 import com.fasterxml.sort.std.StdTempFileProvider;
+import com.fasterxml.sort.util.MemoryRunPool;
 
 /**
  * Configuration object used for changing details of sorting
@@ -22,9 +25,54 @@ public class SortConfig
     protected int _mergeFactor;
 
     protected long _maxMemoryUsage;
-    
+
     protected TempFileProvider _tempFileProvider;
 
+    /**
+     * Directory in which sort runs and the checkpoint manifest are kept,
+     * if sorting is to be resumable; null (default) if not.
+     *
+     * @since 1.1.1
+     */
+    protected File _checkpointDirectory;
+
+    /**
+     * Maximum amount of memory to use for keeping (compressed) sorted runs
+     * in memory, before moving them to temporary files; 0 (default)
+     * means that all runs are written to temporary files.
+     *
+     * @since 1.1.1
+     */
+    protected long _memoryRunPoolSize;
+
+    /**
+     * @since 1.1.1
+     */
+    protected MemoryRunPool.Eviction _memoryRunPoolEviction = MemoryRunPool.Eviction.OLDEST_FIRST;
+
+    /**
+     * Manager that grants memory and threads shared with other sorts, if any;
+     * null (default) if sort uses memory as configured and threads as requested.
+     *
+     * @since 1.1.1
+     */
+    protected SortResourceManager _resourceManager;
+
+    /**
+     * Maximum time a sort may take, in milliseconds, before it is aborted;
+     * 0 (default) for no limit.
+     *
+     * @since 1.1.1
+     */
+    protected long _timeLimitMsecs;
+
+    /**
+     * Listener to notify of progress of sorts, if any
+     *
+     * @since 1.1.1
+     */
+    protected SortListener _sortListener;
+
     /*
     /************************************************************************
     /* Construction
@@ -38,24 +86,40 @@ public class SortConfig
         _tempFileProvider = new StdTempFileProvider();
     }
 
-    protected SortConfig(SortConfig base, int mergeFactor) {
+    /**
+     * Copy-constructor used by fluent factory methods: copies all settings
+     * of the base instance, after which caller modifies the one setting
+     * to change.
+     *
+     * @since 1.1.1
+     */
+    protected SortConfig(SortConfig base) {
+        _mergeFactor = base._mergeFactor;
         _maxMemoryUsage = base._maxMemoryUsage;
-        _mergeFactor = mergeFactor;
         _tempFileProvider = base._tempFileProvider;
+        _checkpointDirectory = base._checkpointDirectory;
+        _memoryRunPoolSize = base._memoryRunPoolSize;
+        _memoryRunPoolEviction = base._memoryRunPoolEviction;
+        _resourceManager = base._resourceManager;
+        _timeLimitMsecs = base._timeLimitMsecs;
+        _sortListener = base._sortListener;
     }
-    
+
+    protected SortConfig(SortConfig base, int mergeFactor) {
+        this(base);
+        _mergeFactor = mergeFactor;
+    }
+
     protected SortConfig(SortConfig base, long maxMem) {
+        this(base);
         _maxMemoryUsage = maxMem;
-        _mergeFactor = base._mergeFactor;
-        _tempFileProvider = base._tempFileProvider;
     }
 
     protected SortConfig(SortConfig base, TempFileProvider prov) {
-        _mergeFactor = base._mergeFactor;
-        _maxMemoryUsage = base._maxMemoryUsage;
+        this(base);
         _tempFileProvider = prov;
     }
-    
+
     /*
     /************************************************************************
     /* Accessors
@@ -63,24 +127,54 @@ public class SortConfig
      */
 
     public int getMergeFactor() { return _mergeFactor; }
-    
+
     public long getMaxMemoryUsage() { return _maxMemoryUsage; }
 
     public TempFileProvider getTempFileProvider() { return _tempFileProvider; }
-    
+
+    /**
+     * @since 1.1.1
+     */
+    public File getCheckpointDirectory() { return _checkpointDirectory; }
+
+    /**
+     * @since 1.1.1
+     */
+    public long getMemoryRunPoolSize() { return _memoryRunPoolSize; }
+
+    /**
+     * @since 1.1.1
+     */
+    public MemoryRunPool.Eviction getMemoryRunPoolEviction() { return _memoryRunPoolEviction; }
+
+    /**
+     * @since 1.1.1
+     */
+    public SortResourceManager getResourceManager() { return _resourceManager; }
+
+    /**
+     * @since 1.1.1
+     */
+    public long getTimeLimit() { return _timeLimitMsecs; }
+
+    /**
+     * @since 1.1.1
+     */
+    public SortListener getSortListener() { return _sortListener; }
+
     /*
     /************************************************************************
     /* Fluent construction methods
     /************************************************************************
      */
-    
+
     /**
      * Method for constructing configuration instance that defines that maximum amount
      * of memory to use for pre-sorting. This is generally a crude approximation and
      * implementations make best effort to honor it.
-     * 
+     *
      * @param maxMem Maximum memory that pre-sorted should use for in-memory sorting
-     * @return New 
+     * @return New
      */
     public SortConfig withMaxMemoryUsage(long maxMem)
     {
@@ -90,6 +184,27 @@ public class SortConfig
         return new SortConfig(this, maxMem);
     }
 
+    /**
+     * Method for constructing configuration instance that defines maximum number
+     * of sorted runs to merge at a time. Higher merge factor means fewer merge
+     * rounds (each of which reads and writes all data), but more files open, and
+     * less memory for buffering each input.
+     *
+     * @param mergeFactor Maximum number of runs to merge at a time; at least 2
+     *
+     * @since 1.1.1
+     */
+    public SortConfig withMergeFactor(int mergeFactor)
+    {
+        if (mergeFactor < 2) {
+            throw new IllegalArgumentException("Merge factor must be at least 2 (got "+mergeFactor+")");
+        }
+        if (mergeFactor == _mergeFactor) {
+            return this;
+        }
+        return new SortConfig(this, mergeFactor);
+    }
+
     public SortConfig withTempFileProvider(TempFileProvider provider)
     {
         if (provider == _tempFileProvider) {
@@ -98,4 +213,131 @@ public class SortConfig
         return new SortConfig(this, provider);
     }
 
+    /**
+     * Method for constructing configuration instance that makes sorting resumable:
+     * sorted runs are written in given directory (instead of using
+     * {@link TempFileProvider}), along with a manifest that lists runs
+     * that each completed merge round produced. If sorting fails during merge
+     * phase, {@link Sorter#resume} may be used to continue from the last
+     * completed round, instead of having to re-read and re-sort all input.
+     *<p>
+     * Note that the directory should be dedicated to a single sort operation
+     * at a time.
+     *
+     * @param dir Directory to use for checkpointed runs; null to disable checkpointing
+     *
+     * @since 1.1.1
+     */
+    public SortConfig withCheckpointDirectory(File dir)
+    {
+        if (dir == _checkpointDirectory) {
+            return this;
+        }
+        SortConfig config = new SortConfig(this);
+        config._checkpointDirectory = dir;
+        return config;
+    }
+
+    /**
+     * Method for constructing configuration instance that keeps sorted runs in
+     * memory, compressed, as long as their total size stays below given limit:
+     * this can avoid disk access altogether for inputs only a few times bigger
+     * than {@link #getMaxMemoryUsage()}. When pool gets full, runs are moved
+     * to temporary files (see {@link #withMemoryRunPoolEviction}).
+     *<p>
+     * Note that pool memory is used in addition to memory used for pre-sorting;
+     * and that pool is not used if checkpointing is enabled.
+     *
+     * @param maxBytes Maximum size of compressed runs to keep in memory; 0 to disable pool
+     *
+     * @since 1.1.1
+     */
+    public SortConfig withMemoryRunPool(long maxBytes)
+    {
+        if (maxBytes == _memoryRunPoolSize) {
+            return this;
+        }
+        SortConfig config = new SortConfig(this);
+        config._memoryRunPoolSize = maxBytes;
+        return config;
+    }
+
+    /**
+     * @since 1.1.1
+     */
+    public SortConfig withMemoryRunPoolEviction(MemoryRunPool.Eviction eviction)
+    {
+        if (eviction == _memoryRunPoolEviction) {
+            return this;
+        }
+        SortConfig config = new SortConfig(this);
+        config._memoryRunPoolEviction = eviction;
+        return config;
+    }
+
+    /**
+     * Method for constructing configuration instance that makes sorting share
+     * memory and threads with other sorts configured with the same manager:
+     * {@link #getMaxMemoryUsage()} is then the most memory a sort asks for at a time,
+     * and it may be granted less. If manager has a temporary file provider,
+     * it is also used as the provider of this configuration.
+     *
+     * @param manager Manager to use; null to stop using one
+     *
+     * @since 1.1.1
+     */
+    public SortConfig withResourceManager(SortResourceManager manager)
+    {
+        if (manager == _resourceManager) {
+            return this;
+        }
+        SortConfig config = new SortConfig(this);
+        config._resourceManager = manager;
+        if (manager != null && manager.getTempFileProvider() != null) {
+            config._tempFileProvider = manager.getTempFileProvider();
+        }
+        return config;
+    }
+
+    /**
+     * Method for constructing configuration instance that limits time a sort may
+     * take: if sort has not completed by the deadline (time limit after sort
+     * was started), it fails with an {@link java.io.InterruptedIOException}
+     * and its temporary files are deleted. Deadline is checked periodically
+     * while reading, sorting and merging entries; but not while writing results
+     * into an {@link java.util.Iterator} returned to the caller.
+     *
+     * @param msecs Maximum time in milliseconds for a sort; 0 for no limit
+     *
+     * @since 1.1.1
+     */
+    public SortConfig withTimeLimit(long msecs)
+    {
+        if (msecs == _timeLimitMsecs) {
+            return this;
+        }
+        SortConfig config = new SortConfig(this);
+        config._timeLimitMsecs = msecs;
+        return config;
+    }
+
+    /**
+     * Method for constructing configuration instance that notifies given listener
+     * of progress of sorts, with detailed counters (see {@link SortMetrics}).
+     * Note that with a listener, comparisons are also counted, which adds some
+     * overhead to comparing entries.
+     *
+     * @param listener Listener to notify; null for none
+     *
+     * @since 1.1.1
+     */
+    public SortConfig withSortListener(SortListener listener)
+    {
+        if (listener == _sortListener) {
+            return this;
+        }
+        SortConfig config = new SortConfig(this);
+        config._sortListener = listener;
+        return config;
+    }
 }
@@ -0,0 +1,33 @@
+package com.fasterxml.sort;
+
+/**
+ * Callback interface for following progress of sorts (see
+ * {@link SortConfig#withSortListener}): called with a snapshot of
+ * counters at phase, run and merge round boundaries. All methods
+ * have empty default implementations, so implementations only need to
+ * override callbacks they are interested in.
+ *<p>
+ * Note that methods may be called from threads other than the one that
+ * called the sort method (when pre-sorting or merging concurrently),
+ * and concurrently for the same sort; and that they are called from within
+ * sorting, so they should return quickly.
+ *
+ * @since 1.1.1
+ */
+public interface SortListener
+{
+    /**
+     * Method called when sort moves to a new phase ({@link SortMetrics#getPhase()})
+     */
+    default void phaseChanged(SortingState sort, SortMetrics metrics) { }
+
+    /**
+     * Method called after a sorted run has been written during pre-sorting
+     */
+    default void runWritten(SortingState sort, SortMetrics metrics) { }
+
+    /**
+     * Method called after an intermediate merge round has completed
+     */
+    default void roundCompleted(SortingState sort, SortMetrics metrics) { }
+}
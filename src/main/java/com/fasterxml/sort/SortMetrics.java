@@ -0,0 +1,375 @@
+package com.fasterxml.sort;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Immutable snapshot of counters of a sort (see {@link SorterBase#getMetrics()}
+ * and {@link SortListener}): amount of input read, sorted runs and merge
+ * rounds written, comparisons made, and time spent in each phase.
+ *<p>
+ * Input byte counts are based on {@link DataReader#estimateSizeInBytes}, so they
+ * are estimates of memory used by entries, rather than actual input size;
+ * run and round byte counts are actual sizes of runs written.
+ *
+ * @since 1.1.1
+ */
+public class SortMetrics
+{
+    protected final SortingState.Phase _phase;
+
+    protected final long _elapsedMsecs;
+    protected final long _preSortMsecs;
+    protected final long _mergeMsecs;
+
+    protected final long _recordsRead;
+    protected final long _bytesRead;
+    protected final long _expectedInputBytes;
+
+    protected final int _runCount;
+    protected final long _runRecords;
+    protected final long _runBytes;
+    protected final long _minRunBytes;
+    protected final long _maxRunBytes;
+
+    protected final long[] _roundBytes;
+    protected final int _roundCount;
+
+    protected final long _spillBytes;
+
+    protected final long _comparisons;
+
+    protected final long _estimatedRemainingMsecs;
+
+    protected SortMetrics(Collector c, SortingState.Phase phase, int roundCount, int mergeFactor)
+    {
+        final long now = System.currentTimeMillis();
+        _phase = phase;
+        final long start = c._startTime;
+        final long mergeStart = c._mergeStartTime;
+        final long end = (c._endTime > 0L) ? c._endTime : now;
+        _elapsedMsecs = (start > 0L) ? (end - start) : 0L;
+        if (mergeStart > 0L) {
+            _preSortMsecs = mergeStart - start;
+            _mergeMsecs = end - mergeStart;
+        } else {
+            _preSortMsecs = _elapsedMsecs;
+            _mergeMsecs = 0L;
+        }
+        _recordsRead = c._recordsRead.get();
+        _bytesRead = c._bytesRead.get();
+        _expectedInputBytes = c._expectedInputBytes;
+        synchronized (c) {
+            _runCount = c._runCount;
+            _runRecords = c._runRecords;
+            _runBytes = c._runBytes;
+            _minRunBytes = (c._runCount == 0) ? 0L : c._minRunBytes;
+            _maxRunBytes = c._maxRunBytes;
+            _roundBytes = new long[c._roundBytes.size()];
+            for (int i = 0; i < _roundBytes.length; ++i) {
+                _roundBytes[i] = c._roundBytes.get(i);
+            }
+            _spillBytes = c._spillBytes;
+        }
+        _roundCount = roundCount;
+        _comparisons = (c._comparisons == null) ? -1L : c._comparisons.sum();
+        _estimatedRemainingMsecs = _estimateRemaining(mergeFactor);
+    }
+
+    /*
+    /**********************************************************************
+    /* Accessors
+    /**********************************************************************
+     */
+
+    /**
+     * @return Phase sort was in when snapshot was taken; null if sort had not been started
+     */
+    public SortingState.Phase getPhase() { return _phase; }
+
+    /**
+     * @return Time since start of sort, in milliseconds; or, total time
+     *    it took if sort has completed
+     */
+    public long getElapsedMillis() { return _elapsedMsecs; }
+
+    /**
+     * @return Time spent reading and pre-sorting input, in milliseconds
+     */
+    public long getPreSortMillis() { return _preSortMsecs; }
+
+    /**
+     * @return Time spent merging sorted runs (including writing of results,
+     *    if sorter writes them), in milliseconds
+     */
+    public long getMergeMillis() { return _mergeMsecs; }
+
+    public long getRecordsRead() { return _recordsRead; }
+
+    /**
+     * @return Estimated size of entries read (see {@link DataReader#estimateSizeInBytes})
+     */
+    public long getBytesRead() { return _bytesRead; }
+
+    /**
+     * @return Expected size of input, if known (when sorting a file); -1 if not
+     */
+    public long getExpectedInputBytes() { return _expectedInputBytes; }
+
+    /**
+     * @return Number of sorted runs written during pre-sorting
+     */
+    public int getRunCount() { return _runCount; }
+
+    /**
+     * @return Total number of entries in sorted runs written during pre-sorting
+     */
+    public long getRunRecords() { return _runRecords; }
+
+    /**
+     * @return Total size of sorted runs written during pre-sorting
+     */
+    public long getRunBytes() { return _runBytes; }
+
+    public long getMinRunBytes() { return _minRunBytes; }
+
+    public long getMaxRunBytes() { return _maxRunBytes; }
+
+    /**
+     * @return Number of merge rounds sort needs (including final one),
+     *    if known (that is, once pre-sorting is complete); -1 if not known
+     */
+    public int getRoundCount() { return _roundCount; }
+
+    /**
+     * @return Sizes of runs written by each completed intermediate merge round
+     *    (final round writes results, which are not included)
+     */
+    public long[] getRoundBytes() { return _roundBytes.clone(); }
+
+    /**
+     * @return Total size of all runs written, both by pre-sorting and by merge rounds
+     */
+    public long getSpillBytes() { return _spillBytes; }
+
+    /**
+     * @return Number of comparisons made, if counted (only done if a
+     *    {@link SortListener} is configured); -1 if not
+     */
+    public long getComparisons() { return _comparisons; }
+
+    /**
+     * Accessor for rough estimate of time remaining until sort completes, based
+     * on rate of progress so far: each byte of input is assumed to take about as
+     * long to pre-sort as to merge in each merge round.
+     *
+     * @return Estimated time remaining in milliseconds; -1 if it can not
+     *    be estimated (size of input is not yet known, or no progress made yet)
+     */
+    public long getEstimatedRemainingMillis() { return _estimatedRemainingMsecs; }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(200);
+        sb.append("[phase=").append(_phase)
+            .append(", elapsed=").append(_elapsedMsecs).append("ms (pre-sort ")
+            .append(_preSortMsecs).append("ms, merge ").append(_mergeMsecs).append("ms)")
+            .append(", read=").append(_recordsRead).append(" records/").append(_bytesRead).append(" bytes")
+            .append(", runs=").append(_runCount).append('/').append(_runBytes).append(" bytes")
+            .append(", rounds=").append(_roundBytes.length).append('/').append(_roundCount)
+            .append(", spilled=").append(_spillBytes).append(" bytes");
+        if (_comparisons >= 0L) {
+            sb.append(", comparisons=").append(_comparisons);
+        }
+        if (_estimatedRemainingMsecs >= 0L) {
+            sb.append(", remaining~").append(_estimatedRemainingMsecs).append("ms");
+        }
+        return sb.append(']').toString();
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    protected long _estimateRemaining(int mergeFactor)
+    {
+        if (_phase == SortingState.Phase.COMPLETE) {
+            return 0L;
+        }
+        long total = _expectedInputBytes;
+        if (_phase != SortingState.Phase.PRE_SORTING) { // all input read by now
+            total = _bytesRead;
+        }
+        if (total <= 0L || _bytesRead <= 0L) {
+            return -1L;
+        }
+        int rounds;
+        if (_roundCount >= 0) {
+            rounds = _roundCount;
+        } else if (_runCount == 0) { // may well fit in memory
+            rounds = 0;
+        } else { // project number of runs from input read so far
+            long runs = Math.max(1L, total * _runCount / _bytesRead);
+            rounds = SorterBase._calculateRoundCount((int) Math.min(runs, Integer.MAX_VALUE), mergeFactor);
+        }
+        // each round processes (about) all of input again
+        double work = (double) total * (1 + rounds);
+        double done = Math.min(_bytesRead, total) + ((double) total * _roundBytes.length);
+        if (done >= work) {
+            return 0L;
+        }
+        return (long) (_elapsedMsecs * (work - done) / done);
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Thread-safe collector of counters of a sort in progress.
+     */
+    public static class Collector
+    {
+        protected volatile long _startTime;
+        protected volatile long _mergeStartTime;
+        protected volatile long _endTime;
+
+        protected final AtomicLong _recordsRead = new AtomicLong();
+        protected final AtomicLong _bytesRead = new AtomicLong();
+        protected volatile long _expectedInputBytes = -1L;
+
+        protected int _runCount;
+        protected long _runRecords;
+        protected long _runBytes;
+        protected long _minRunBytes;
+        protected long _maxRunBytes;
+
+        protected final List<Long> _roundBytes = new ArrayList<Long>();
+        protected long _currentRoundBytes;
+        protected long _spillBytes;
+
+        /**
+         * Counter for comparisons, if they are counted; null if not
+         */
+        protected LongAdder _comparisons;
+
+        /**
+         * Method called at the start of a sort to reset all counters
+         */
+        public synchronized void reset()
+        {
+            _startTime = System.currentTimeMillis();
+            _mergeStartTime = 0L;
+            _endTime = 0L;
+            _recordsRead.set(0L);
+            _bytesRead.set(0L);
+            _expectedInputBytes = -1L;
+            _runCount = 0;
+            _runRecords = 0L;
+            _runBytes = 0L;
+            _minRunBytes = Long.MAX_VALUE;
+            _maxRunBytes = 0L;
+            _roundBytes.clear();
+            _currentRoundBytes = 0L;
+            _spillBytes = 0L;
+            if (_comparisons != null) {
+                _comparisons.reset();
+            }
+        }
+
+        public void phaseChanged(SortingState.Phase phase)
+        {
+            final long now = System.currentTimeMillis();
+            if (phase == SortingState.Phase.SORTING) {
+                if (_mergeStartTime == 0L) {
+                    _mergeStartTime = now;
+                }
+            } else if (phase == SortingState.Phase.COMPLETE) {
+                if (_mergeStartTime == 0L) {
+                    _mergeStartTime = now;
+                }
+                _endTime = now;
+            }
+        }
+
+        public void setExpectedInputBytes(long bytes) {
+            _expectedInputBytes = bytes;
+        }
+
+        public void addRead(long records, long bytes)
+        {
+            _recordsRead.addAndGet(records);
+            _bytesRead.addAndGet(bytes);
+        }
+
+        public synchronized void addRun(long records, long bytes)
+        {
+            ++_runCount;
+            _runRecords += records;
+            _runBytes += bytes;
+            _spillBytes += bytes;
+            _minRunBytes = Math.min(_minRunBytes, bytes);
+            _maxRunBytes = Math.max(_maxRunBytes, bytes);
+        }
+
+        /**
+         * Method called when a merge has written a run of given size
+         */
+        public synchronized void addMerged(long bytes)
+        {
+            _currentRoundBytes += bytes;
+            _spillBytes += bytes;
+        }
+
+        public synchronized void roundCompleted()
+        {
+            _roundBytes.add(_currentRoundBytes);
+            _currentRoundBytes = 0L;
+        }
+
+        /**
+         * Method for wrapping given comparator so that comparisons made
+         * using it are counted.
+         */
+        @SuppressWarnings("unchecked")
+        public <T> Comparator<T> countingComparator(Comparator<T> cmp)
+        {
+            if (cmp instanceof CountingComparator<?>) { // don't count twice
+                cmp = ((CountingComparator<T>) cmp)._delegate;
+            }
+            if (_comparisons == null) {
+                _comparisons = new LongAdder();
+            }
+            return new CountingComparator<T>(cmp, _comparisons);
+        }
+
+        public SortMetrics snapshot(SortingState.Phase phase, int roundCount, int mergeFactor) {
+            return new SortMetrics(this, phase, roundCount, mergeFactor);
+        }
+    }
+
+    protected static class CountingComparator<T> implements Comparator<T>
+    {
+        protected final Comparator<T> _delegate;
+        protected final LongAdder _count;
+
+        public CountingComparator(Comparator<T> delegate, LongAdder count) {
+            _delegate = delegate;
+            _count = count;
+        }
+
+        @Override
+        public int compare(T o1, T o2) {
+            _count.increment();
+            return _delegate.compare(o1, o2);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.fasterxml.sort;
+
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.fasterxml.sort.std.ManagedTempFileProvider;
+
+/**
+ * Object that limits resources used by all sorts that share it (see
+ * {@link SortConfig#withResourceManager}), instead of each sort using the
+ * fixed amounts its configuration specifies:
+ *<ul>
+ * <li>Memory used for pre-sorting is granted from a shared budget, one
+ *   pre-sorted run at a time: so memory that a sort has finished using
+ *   (for example, once it has pre-sorted all its input) is available to sorts
+ *   still reading their input.
+ *  </li>
+ * <li>Threads used for parallel pre-sorting and merging are limited to
+ *   a shared maximum.
+ *  </li>
+ * <li>Temporary files may be created by a shared {@link ManagedTempFileProvider},
+ *   which enforces a quota on total disk usage.
+ *  </li>
+ *</ul>
+ * Sorts that have to wait for memory or threads are served in order of
+ * arrival. A sort is never granted less than the smaller of what it asks for
+ * and {@link #getMinMemoryGrant}, so it may have to wait for other sorts to
+ * release memory; but it may get less than it asks for if waiting
+ * would be needed otherwise.
+ *<p>
+ * Instances are thread-safe.
+ *
+ * @since 1.1.1
+ */
+public class SortResourceManager
+{
+    /**
+     * Default minimum amount of memory to grant to a sort, if it asks for
+     * at least that much.
+     */
+    public final static long DEFAULT_MIN_MEMORY_GRANT = 1024 * 1024;
+
+    /**
+     * Maximum time to wait at a time before checking whether waiting sort has
+     * been cancelled
+     */
+    protected final static long CANCEL_CHECK_MSECS = 100L;
+
+    protected final Pool _memory;
+
+    protected final Pool _threads;
+
+    protected final long _minMemoryGrant;
+
+    /**
+     * Provider for temporary files, if disk usage is managed; null if not
+     */
+    protected final ManagedTempFileProvider _tempFileProvider;
+
+    /*
+    /**********************************************************************
+    /* Construction
+    /**********************************************************************
+     */
+
+    /**
+     * Constructor for manager that limits memory and threads used, but not
+     * temporary disk space.
+     *
+     * @param maxMemory Total amount of memory all sorts may use for pre-sorting
+     * @param maxThreads Total number of threads all sorts may use for concurrent
+     *    pre-sorting and merging (not counting threads that call sort methods)
+     */
+    public SortResourceManager(long maxMemory, int maxThreads) {
+        this(maxMemory, maxThreads, null);
+    }
+
+    /**
+     * @param maxMemory Total amount of memory all sorts may use for pre-sorting
+     * @param maxThreads Total number of threads all sorts may use for concurrent
+     *    pre-sorting and merging (not counting threads that call sort methods)
+     * @param tempFileProvider Provider all sorts are to use for temporary files;
+     *    usually one configured with a quota
+     */
+    public SortResourceManager(long maxMemory, int maxThreads,
+            ManagedTempFileProvider tempFileProvider)
+    {
+        this(maxMemory, maxThreads, tempFileProvider, DEFAULT_MIN_MEMORY_GRANT);
+    }
+
+    public SortResourceManager(long maxMemory, int maxThreads,
+            ManagedTempFileProvider tempFileProvider, long minMemoryGrant)
+    {
+        if (maxMemory <= 0L) {
+            throw new IllegalArgumentException("Maximum memory must be positive, got "+maxMemory);
+        }
+        if (maxThreads <= 0) {
+            throw new IllegalArgumentException("Maximum thread count must be positive, got "+maxThreads);
+        }
+        _memory = new Pool(maxMemory);
+        _threads = new Pool(maxThreads);
+        _tempFileProvider = tempFileProvider;
+        _minMemoryGrant = Math.max(1L, Math.min(minMemoryGrant, maxMemory));
+    }
+
+    /**
+     * Convenience factory method for constructing manager that also limits
+     * total size of temporary files in given directory.
+     *
+     * @param tempDir Directory for temporary files; null for JDK default
+     * @param diskQuota Maximum total size of temporary files
+     * @param maxDiskWaitMsecs Maximum time a sort may wait for other sorts to release
+     *    disk space before failing
+     */
+    public static SortResourceManager withDiskQuota(long maxMemory, int maxThreads,
+            File tempDir, long diskQuota, long maxDiskWaitMsecs)
+    {
+        return new SortResourceManager(maxMemory, maxThreads,
+                new ManagedTempFileProvider(tempDir, diskQuota, maxDiskWaitMsecs));
+    }
+
+    /*
+    /**********************************************************************
+    /* Accessors
+    /**********************************************************************
+     */
+
+    public long getMaxMemory() { return _memory.getCapacity(); }
+
+    public int getMaxThreads() { return (int) _threads.getCapacity(); }
+
+    public long getMinMemoryGrant() { return _minMemoryGrant; }
+
+    /**
+     * @return Temporary file provider all sorts use, if disk usage is managed;
+     *   null if not
+     */
+    public ManagedTempFileProvider getTempFileProvider() { return _tempFileProvider; }
+
+    /**
+     * @return Amount of memory currently granted to sorts
+     */
+    public long getMemoryInUse() { return _memory.getInUse(); }
+
+    /**
+     * @return Number of threads currently granted to sorts
+     */
+    public int getThreadsInUse() { return (int) _threads.getInUse(); }
+
+    /*
+    /**********************************************************************
+    /* Public API
+    /**********************************************************************
+     */
+
+    /**
+     * Method for getting memory to use, waiting if necessary.
+     *
+     * @param preferred Amount of memory sort would like to use
+     * @param cancelled Flag that indicates that the requesting sort has been cancelled,
+     *    in which case it should stop waiting; may be null
+     *
+     * @return Amount of memory granted, between the smaller of {@link #getMinMemoryGrant}
+     *    and <code>preferred</code>, and <code>preferred</code>; or 0 if sort was
+     *    cancelled while waiting
+     */
+    public long acquireMemory(long preferred, AtomicBoolean cancelled)
+        throws InterruptedIOException
+    {
+        preferred = Math.max(1L, Math.min(preferred, _memory.getCapacity()));
+        return _memory.acquire(Math.min(preferred, _minMemoryGrant), preferred, cancelled);
+    }
+
+    public void releaseMemory(long amount) {
+        _memory.release(amount);
+    }
+
+    /**
+     * Method for getting threads to use, waiting if none are available.
+     *
+     * @param preferred Number of threads sort would like to use
+     * @param cancelled Flag that indicates that the requesting sort has been cancelled,
+     *    in which case it should stop waiting; may be null
+     *
+     * @return Number of threads granted, between 1 and <code>preferred</code>; or 0
+     *    if sort was cancelled while waiting
+     */
+    public int acquireThreads(int preferred, AtomicBoolean cancelled)
+        throws InterruptedIOException
+    {
+        preferred = (int) Math.max(1L, Math.min(preferred, _threads.getCapacity()));
+        return (int) _threads.acquire(1L, preferred, cancelled);
+    }
+
+    public void releaseThreads(int count) {
+        _threads.release(count);
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Simple pool of interchangeable units of a resource, served
+     * to waiting requests in order of arrival
+     */
+    protected static class Pool
+    {
+        protected final long _capacity;
+
+        protected long _inUse;
+
+        /**
+         * Requests waiting to be served, in order of arrival
+         */
+        protected final ArrayDeque<Object> _waiting = new ArrayDeque<Object>();
+
+        public Pool(long capacity) {
+            _capacity = capacity;
+        }
+
+        public long getCapacity() { return _capacity; }
+
+        public synchronized long getInUse() { return _inUse; }
+
+        public synchronized long acquire(long min, long max, AtomicBoolean cancelled)
+            throws InterruptedIOException
+        {
+            // fast path: nobody ahead, and enough available
+            if (_waiting.isEmpty() && (_capacity - _inUse) >= min) {
+                return _grant(max);
+            }
+            final Object ticket = new Object();
+            _waiting.addLast(ticket);
+            try {
+                while (_waiting.peekFirst() != ticket || (_capacity - _inUse) < min) {
+                    if (cancelled != null && cancelled.get()) {
+                        return 0L;
+                    }
+                    wait(CANCEL_CHECK_MSECS);
+                }
+                return _grant(max);
+            } catch (InterruptedException e) {
+                InterruptedIOException ie = new InterruptedIOException("Interrupted while waiting for sort resources");
+                ie.initCause(e);
+                throw ie;
+            } finally {
+                _waiting.remove(ticket);
+                // next in line may be able to proceed
+                notifyAll();
+            }
+        }
+
+        public synchronized void release(long amount)
+        {
+            if (amount > 0L) {
+                _inUse = Math.max(0L, _inUse - amount);
+                notifyAll();
+            }
+        }
+
+        private long _grant(long max)
+        {
+            long amount = Math.min(max, _capacity - _inUse);
+            _inUse += amount;
+            return amount;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.fasterxml.sort;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+
+import com.fasterxml.sort.util.CastingIterator;
+import com.fasterxml.sort.util.SortEvents;
+
+/**
+ * Push-style input for sorting, to which any number of producer threads
+ * may {@link #add} items concurrently. Each producer thread collects items
+ * in a buffer of its own, without synchronizing with other producers; memory
+ * usage is accounted across all buffers, and when configured maximum
+ * is exceeded, the producer that exceeded it collects items of all buffers,
+ * sorts them and writes them out as a single sorted run (so runs are about
+ * as big as memory allows, regardless of number of producers). Other producers
+ * keep adding items meanwhile, into emptied buffers; items being written are
+ * no longer counted, so memory usage may exceed maximum while runs are written
+ * (by up to maximum for each run being written). Once all producers are done, {@link #finish} merges
+ * remaining buffers and runs, and returns sorted results.
+ *<p>
+ * Instances are single-use: a new sink is needed for each sort.
+ * Checkpointing is not supported. Note that comparator needs to be thread-safe,
+ * since producers sort their buffers concurrently.
+ *
+ * @since 1.1.1
+ */
+public class SortSink<T> extends IteratingSorter<T>
+{
+    protected final ToIntFunction<? super T> _sizeEstimator;
+
+    /**
+     * Buffers of all producer threads
+     */
+    protected final List<LocalBuffer> _buffers = new CopyOnWriteArrayList<LocalBuffer>();
+
+    protected final ThreadLocal<LocalBuffer> _localBuffer = new ThreadLocal<LocalBuffer>() {
+        @Override
+        protected LocalBuffer initialValue() {
+            LocalBuffer buffer = new LocalBuffer();
+            _buffers.add(buffer);
+            return buffer;
+        }
+    };
+
+    /**
+     * Sorted runs written so far
+     */
+    protected final List<File> _runs = Collections.synchronizedList(new ArrayList<File>());
+
+    /**
+     * Estimated memory used by all buffers
+     */
+    protected final AtomicLong _memoryUsed = new AtomicLong();
+
+    /**
+     * Lock held when collecting contents of buffers for a run, so that only
+     * one producer does that at a time (but not when writing the run)
+     */
+    protected final Object _flushLock = new Object();
+
+    protected volatile boolean _finished;
+
+    /**
+     * @param readerFactory Factory used for creating readers for pre-sorted data
+     * @param writerFactory Factory used for creating writers for storing pre-sorted data
+     * @param sizeEstimator Function for estimating memory usage of an item, in bytes
+     *   (similar to {@link DataReader#estimateSizeInBytes})
+     */
+    public SortSink(SortConfig config,
+            DataReaderFactory<T> readerFactory, DataWriterFactory<T> writerFactory,
+            Comparator<T> comparator, ToIntFunction<? super T> sizeEstimator)
+    {
+        super(config, readerFactory, writerFactory, comparator);
+        _sizeEstimator = sizeEstimator;
+        _initRunPool();
+        _initDeadline();
+        _initMetrics();
+        _setPhase(Phase.PRE_SORTING);
+        _presortFileCount = 0;
+        _sortRoundCount = -1;
+        _currentSortRound = -1;
+    }
+
+    /*
+    /**********************************************************************
+    /* Producer API
+    /**********************************************************************
+     */
+
+    /**
+     * Method for adding an item to sort; may be called concurrently by
+     * any number of threads. Items added after sort has been cancelled
+     * are ignored.
+     *
+     * @throws IOException If writing a sorted run fails
+     * @throws IllegalStateException If called after {@link #finish}
+     */
+    public void add(T item) throws IOException
+    {
+        if (_finished) {
+            throw new IllegalStateException("Can not add items after finish()");
+        }
+        if (_cancelRequest.get()) {
+            return;
+        }
+        final long size = ENTRY_SLOT_SIZE + _sizeEstimator.applyAsInt(item);
+        final LocalBuffer buffer = _localBuffer.get();
+        synchronized (buffer) {
+            buffer.add(item, size);
+        }
+        if (_memoryUsed.addAndGet(size) > _config.getMaxMemoryUsage()) {
+            _flush();
+        }
+    }
+
+    /**
+     * Method for adding all items of given collection; equivalent to calling
+     * {@link #add} for each.
+     */
+    public void addAll(Collection<? extends T> items) throws IOException
+    {
+        for (T item : items) {
+            add(item);
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Result API
+    /**********************************************************************
+     */
+
+    /**
+     * Method to call once all producers are done (that is, all calls to
+     * {@link #add} have returned), to merge all items added.
+     * The returned Iterator will throw {@link IterableSorterException} if any
+     * IOException is encountered during calls of {@link Iterator#next()}.
+     *
+     * @return Iterator over sorted items; null if sorting was cancelled
+     */
+    public Iterator<T> finish() throws IOException
+    {
+        if (_finished) {
+            throw new IllegalStateException("finish() already called");
+        }
+        _finished = true;
+        Iterator<T> iterator = null;
+        boolean success = false;
+        try {
+            // collect what remains in buffers
+            List<Object[]> chunks = new ArrayList<Object[]>();
+            int total = 0;
+            for (LocalBuffer buffer : _buffers) {
+                Object[] items;
+                synchronized (buffer) {
+                    items = buffer.drain();
+                }
+                chunks.add(items);
+                total += items.length;
+            }
+            _buffers.clear();
+            final long size = _memoryUsed.getAndSet(0L);
+            if (_checkForCancel(_runs)) {
+                close();
+                success = true;
+                return null;
+            }
+            Object[] items = _concat(chunks, total);
+            chunks = null;
+            _sort(items, size);
+
+            List<File> presorted = new ArrayList<File>(_runs);
+            if (presorted.isEmpty()) { // all in memory
+                _setPhase(Phase.SORTING);
+                iterator = new CastingIterator<T>(Arrays.asList(items).iterator());
+            } else {
+                if (items.length > 0) {
+                    presorted.add(_writePresorted(items));
+                }
+                items = null;
+                _presortCompleted(presorted);
+                _setPhase(Phase.SORTING);
+                if (_checkForCancel(presorted)) {
+                    close();
+                    success = true;
+                    return null;
+                }
+                iterator = _mergeToIterator(presorted);
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                _closeAfterFailure();
+            }
+        }
+        if (_checkForCancel()) {
+            close();
+            return null;
+        }
+        _setPhase(Phase.COMPLETE);
+        return iterator;
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    /**
+     * Method called by a producer thread that exceeded maximum memory usage,
+     * to collect contents of all buffers, then sort and write them out as a sorted
+     * run; unless another producer collected them while this one waited for the lock.
+     * Only collecting is done while holding the lock, so other producers can
+     * collect and write further runs concurrently.
+     */
+    protected void _flush() throws IOException
+    {
+        List<Object[]> chunks = new ArrayList<Object[]>();
+        int total = 0;
+        long size = 0L;
+        synchronized (_flushLock) {
+            if (_memoryUsed.get() <= _config.getMaxMemoryUsage()) {
+                return;
+            }
+            for (LocalBuffer buffer : _buffers) {
+                synchronized (buffer) {
+                    size += buffer._size;
+                    Object[] items = buffer.drain();
+                    chunks.add(items);
+                    total += items.length;
+                }
+            }
+            _memoryUsed.addAndGet(-size);
+        }
+        if (total == 0) {
+            return;
+        }
+        Object[] items = _concat(chunks, total);
+        chunks = null;
+        _sort(items, size);
+        _runs.add(_writePresorted(items));
+    }
+
+    protected static Object[] _concat(List<Object[]> chunks, int total)
+    {
+        Object[] items = new Object[total];
+        int ptr = 0;
+        for (Object[] chunk : chunks) {
+            System.arraycopy(chunk, 0, items, ptr, chunk.length);
+            ptr += chunk.length;
+        }
+        return items;
+    }
+
+    /**
+     * Method for sorting a chunk of items, reported as a pre-sort event
+     * (see {@link SortEvents}).
+     */
+    protected void _sort(Object[] items, long size)
+    {
+        final Object event = SortEvents.beginPresort();
+        Arrays.sort(items, _rawComparator());
+        if (event != null) {
+            SortEvents.endPresort(event, items.length, size);
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Buffer of items added by a single producer thread
+     */
+    protected static class LocalBuffer
+    {
+        protected Object[] _items = new Object[64];
+        protected int _count;
+
+        /**
+         * Estimated memory usage of items in buffer
+         */
+        protected long _size;
+
+        public void add(Object item, long size)
+        {
+            if (_count == _items.length) {
+                _items = Arrays.copyOf(_items, _count + (_count >> 1));
+            }
+            _items[_count++] = item;
+            _size += size;
+        }
+
+        /**
+         * @return Items in buffer, which is then reset to be empty
+         */
+        public Object[] drain()
+        {
+            Object[] result = Arrays.copyOf(_items, _count);
+            _items = new Object[64];
+            _count = 0;
+            _size = 0L;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,555 @@
+package com.fasterxml.sort;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent set of sorted runs in a directory, to which new batches of data
+ * can be added without re-sorting data added earlier ("log-structured merge"
+ * store): each batch is sorted into a run of its own, and reading merges all
+ * runs that exist at that point.
+ *<p>
+ * To keep number of runs to merge bounded, runs are compacted by size tier
+ * (size-tiered compaction): runs whose sizes are within the same power of
+ * {@link SortConfig#getMergeFactor} are in the same tier, and once a tier has
+ * merge factor number of runs, they are merged into one (larger) run. Compaction
+ * is done either by a background thread, or by the thread that adds a batch.
+ *<p>
+ * A small text manifest lists current runs, and is replaced atomically whenever
+ * runs are added or compacted, so that store can be re-opened from the directory.
+ * Readers see runs that existed when they were opened; runs replaced by
+ * compaction are only deleted once no open reader uses them.
+ *
+ * @since 1.1.1
+ */
+public class SortedRunStore<T> implements Closeable
+{
+    /**
+     * Name of the manifest file within store directory
+     */
+    public final static String MANIFEST_NAME = "sorted-runs.manifest";
+
+    protected final static String RUN_PREFIX = "run-";
+    protected final static String RUN_SUFFIX = ".sorted";
+
+    protected final static String HEADER = "# java-merge-sort sorted run store";
+    protected final static String KEY_RUN = "run";
+
+    /**
+     * Runs smaller than this are all in the lowest size tier
+     */
+    protected final static long BASE_TIER_SIZE = 1024L * 1024L;
+
+    protected final static Charset UTF8 = Charset.forName("UTF-8");
+
+    protected final File _directory;
+
+    protected final SortConfig _config;
+    protected final DataReaderFactory<T> _readerFactory;
+    protected final DataWriterFactory<T> _writerFactory;
+    protected final Comparator<T> _comparator;
+
+    /**
+     * Executor for background compaction, if enabled; null if compaction is
+     * done by threads adding batches
+     */
+    protected final ExecutorService _compactor;
+
+    /**
+     * Current runs, oldest first
+     */
+    protected final List<File> _runs = new ArrayList<File>();
+
+    /**
+     * Runs currently being merged by compaction
+     */
+    protected final Set<File> _compacting = new HashSet<File>();
+
+    /**
+     * Number of open readers using each run
+     */
+    protected final Map<File,Integer> _readerCounts = new HashMap<File,Integer>();
+
+    /**
+     * Runs replaced by compaction, to delete once no reader uses them
+     */
+    protected final Set<File> _obsolete = new HashSet<File>();
+
+    /**
+     * Failure of background compaction, if any, to report on next call
+     */
+    protected IOException _compactionFailure;
+
+    protected boolean _closed;
+
+    /**
+     * @param directory Directory for runs and the manifest: if it contains a manifest,
+     *   store is opened with runs listed in it
+     * @param backgroundCompaction Whether compaction is done by a background thread
+     *   (true), or by threads calling {@link #add} (false)
+     */
+    public SortedRunStore(File directory, SortConfig config,
+            DataReaderFactory<T> readerFactory, DataWriterFactory<T> writerFactory,
+            Comparator<T> comparator, boolean backgroundCompaction)
+        throws IOException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create store directory '"+directory.getAbsolutePath()+"'");
+        }
+        _directory = directory;
+        _config = config;
+        _readerFactory = readerFactory;
+        _writerFactory = writerFactory;
+        _comparator = comparator;
+        _load();
+        _compactor = backgroundCompaction ? Executors.newSingleThreadExecutor() : null;
+    }
+
+    /*
+    /**********************************************************************
+    /* Accessors
+    /**********************************************************************
+     */
+
+    public File getDirectory() { return _directory; }
+
+    public File getManifestFile() { return new File(_directory, MANIFEST_NAME); }
+
+    /**
+     * @return Current runs, oldest first
+     */
+    public synchronized List<File> getRuns() {
+        return new ArrayList<File>(_runs);
+    }
+
+    /*
+    /**********************************************************************
+    /* Adding, reading data
+    /**********************************************************************
+     */
+
+    /**
+     * Method for sorting given batch of data into a new run, and adding it
+     * to the store. Batch is sorted using a {@link Sorter} with configuration
+     * of this store.
+     *
+     * @return True if batch was added; false if sorting was cancelled
+     *   (see {@link #add(DataReader, Sorter)})
+     */
+    public boolean add(DataReader<T> batch) throws IOException
+    {
+        return add(batch, new Sorter<T>(_config, _readerFactory, _writerFactory, _comparator));
+    }
+
+    /**
+     * Method for sorting given batch of data into a new run using given sorter
+     * (which allows cancelling sorting, tracking progress), and adding it to the store.
+     *
+     * @return True if batch was added; false if sorting was cancelled
+     */
+    public boolean add(DataReader<T> batch, Sorter<T> sorter) throws IOException
+    {
+        _verifyOpen();
+        File run = _provideRunFile();
+        boolean success = false;
+        try {
+            DataWriter<T> writer = _writerFactory.constructWriter(_openOutput(run));
+            if (!sorter.sort(batch, writer)) {
+                writer.close();
+                return false;
+            }
+            synchronized (this) {
+                _runs.add(run);
+                _writeManifest();
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                run.delete();
+            }
+        }
+        if (_compactor != null) {
+            _compactor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        compact();
+                    } catch (IOException e) {
+                        synchronized (SortedRunStore.this) {
+                            if (_compactionFailure == null) {
+                                _compactionFailure = e;
+                            }
+                        }
+                    }
+                }
+            });
+        } else {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * Method for opening a reader that reads all data in the store, in sorted
+     * order, by merging runs that exist at this point. Reader needs to be
+     * closed after use, to allow runs replaced by compaction to be deleted.
+     */
+    public DataReader<T> openReader() throws IOException
+    {
+        List<File> runs;
+        synchronized (this) {
+            _verifyOpen();
+            runs = new ArrayList<File>(_runs);
+            for (File run : runs) {
+                Integer count = _readerCounts.get(run);
+                _readerCounts.put(run, (count == null) ? 1 : count + 1);
+            }
+        }
+        List<DataReader<T>> readers = new ArrayList<DataReader<T>>(runs.size());
+        boolean success = false;
+        try {
+            for (File run : runs) {
+                readers.add(_readerFactory.constructReader(new FileInputStream(run)));
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                for (DataReader<T> r : readers) {
+                    try { r.close(); } catch (IOException e) { }
+                }
+                _release(runs);
+            }
+        }
+        DataReader<T> merged = readers.isEmpty() ? null : Merger.mergedReader(_comparator, readers);
+        return new StoreReader(merged, runs);
+    }
+
+    /*
+    /**********************************************************************
+    /* Compaction
+    /**********************************************************************
+     */
+
+    /**
+     * Method that compacts runs as long as some size tier has
+     * {@link SortConfig#getMergeFactor} (or more) runs. Usually called
+     * automatically after adding a batch, but may also be called explicitly.
+     */
+    public void compact() throws IOException
+    {
+        List<File> group;
+        while ((group = _selectForCompaction()) != null) {
+            File result = _provideRunFile();
+            boolean success = false;
+            try {
+                _merge(group, result);
+                synchronized (this) {
+                    int index = _runs.indexOf(group.get(0));
+                    _runs.removeAll(group);
+                    _runs.add(Math.min(index, _runs.size()), result);
+                    _writeManifest();
+                    _obsolete.addAll(group);
+                    _deleteObsolete();
+                }
+                success = true;
+            } finally {
+                synchronized (this) {
+                    _compacting.removeAll(group);
+                }
+                if (!success) {
+                    result.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Method for choosing runs of a tier that has enough runs to compact
+     *
+     * @return Runs to compact; or null if none
+     */
+    protected synchronized List<File> _selectForCompaction()
+    {
+        final int mergeFactor = Math.max(2, _config.getMergeFactor());
+        Map<Integer,List<File>> tiers = new TreeMap<Integer,List<File>>();
+        for (File run : _runs) {
+            if (_compacting.contains(run)) {
+                continue;
+            }
+            int tier = _tier(run.length(), mergeFactor);
+            List<File> runs = tiers.get(tier);
+            if (runs == null) {
+                runs = new ArrayList<File>();
+                tiers.put(tier, runs);
+            }
+            runs.add(run);
+            if (runs.size() >= mergeFactor) {
+                _compacting.addAll(runs);
+                return runs;
+            }
+        }
+        return null;
+    }
+
+    protected static int _tier(long size, int mergeFactor)
+    {
+        int tier = 0;
+        for (long limit = BASE_TIER_SIZE; size >= limit && tier < 62; limit *= mergeFactor) {
+            ++tier;
+        }
+        return tier;
+    }
+
+    @SuppressWarnings("resource")
+    protected void _merge(List<File> inputs, File result) throws IOException
+    {
+        List<DataReader<T>> readers = new ArrayList<DataReader<T>>(inputs.size());
+        DataReader<T> merger = null;
+        DataWriter<T> writer = null;
+        try {
+            for (File input : inputs) {
+                readers.add(_readerFactory.constructReader(new FileInputStream(input)));
+            }
+            merger = Merger.mergedReader(_comparator, readers);
+            writer = _writerFactory.constructWriter(_openOutput(result));
+            T value;
+            if (merger.canReuse() && writer.canReuse()) {
+                value = null;
+                while ((value = merger.readNext(value)) != null) {
+                    writer.writeEntry(value);
+                }
+            } else {
+                while ((value = merger.readNext()) != null) {
+                    writer.writeEntry(value);
+                }
+            }
+            DataWriter<T> w = writer;
+            writer = null;
+            w.close();
+        } finally {
+            for (DataReader<T> r : readers) {
+                try { r.close(); } catch (IOException e) { }
+            }
+            if (writer != null) {
+                try { writer.close(); } catch (IOException e) { }
+            }
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Closeable API
+    /**********************************************************************
+     */
+
+    /**
+     * Method that closes the store, after waiting for pending background
+     * compaction to complete; runs and manifest are retained, so
+     * store can be re-opened later.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        synchronized (this) {
+            _closed = true;
+        }
+        if (_compactor != null) {
+            _compactor.shutdown();
+            try {
+                _compactor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                InterruptedIOException ie = new InterruptedIOException();
+                ie.initCause(e);
+                throw ie;
+            }
+        }
+        synchronized (this) {
+            if (_compactionFailure != null) {
+                IOException e = _compactionFailure;
+                _compactionFailure = null;
+                throw e;
+            }
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    protected synchronized void _verifyOpen() throws IOException
+    {
+        if (_closed) {
+            throw new IllegalStateException("Store has been closed");
+        }
+        if (_compactionFailure != null) {
+            IOException e = _compactionFailure;
+            _compactionFailure = null;
+            throw new IOException("Background compaction failed: "+e.getMessage(), e);
+        }
+    }
+
+    protected File _provideRunFile() throws IOException {
+        return Files.createTempFile(_directory.toPath(), RUN_PREFIX, RUN_SUFFIX).toFile();
+    }
+
+    protected OutputStream _openOutput(File run) throws IOException
+    {
+        // make sure contents are on disk before run is listed in manifest
+        final FileOutputStream fileOut = new FileOutputStream(run);
+        return new BufferedOutputStream(fileOut) {
+            @Override
+            public void close() throws IOException {
+                flush();
+                fileOut.getFD().sync();
+                super.close();
+            }
+        };
+    }
+
+    /**
+     * Method for reading runs listed in manifest, if one exists, and deleting
+     * run files not listed (left over by interrupted additions or compactions).
+     */
+    protected void _load() throws IOException
+    {
+        File f = getManifestFile();
+        if (f.exists()) {
+            for (String line : Files.readAllLines(f.toPath(), UTF8)) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int ix = line.indexOf('=');
+                if (ix < 0) {
+                    throw new IOException("Corrupt store manifest '"+f.getAbsolutePath()+"': invalid line '"+line+"'");
+                }
+                if (KEY_RUN.equals(line.substring(0, ix))) {
+                    String name = line.substring(ix+1);
+                    File run = new File(_directory, name);
+                    if (!run.isFile()) {
+                        throw new IOException("Store manifest '"+f.getAbsolutePath()+"' refers to missing run file '"+name+"'");
+                    }
+                    _runs.add(run);
+                }
+            }
+        }
+        Set<File> listed = new HashSet<File>(_runs);
+        File[] files = _directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith(RUN_PREFIX) && name.endsWith(RUN_SUFFIX)
+                        && !listed.contains(file)) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    protected void _writeManifest() throws IOException
+    {
+        StringBuilder sb = new StringBuilder(100 + _runs.size() * 32);
+        sb.append(HEADER).append('\n');
+        for (File run : _runs) {
+            sb.append(KEY_RUN).append('=').append(run.getName()).append('\n');
+        }
+        File tmp = new File(_directory, MANIFEST_NAME+".new");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(sb.toString().getBytes(UTF8));
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        Files.move(tmp.toPath(), getManifestFile().toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    protected synchronized void _release(List<File> runs)
+    {
+        for (File run : runs) {
+            Integer count = _readerCounts.get(run);
+            if (count == null || count <= 1) {
+                _readerCounts.remove(run);
+            } else {
+                _readerCounts.put(run, count - 1);
+            }
+        }
+        _deleteObsolete();
+    }
+
+    protected synchronized void _deleteObsolete()
+    {
+        Iterator<File> it = _obsolete.iterator();
+        while (it.hasNext()) {
+            File run = it.next();
+            if (!_readerCounts.containsKey(run)) {
+                run.delete();
+                it.remove();
+            }
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Reader over merged runs, that releases runs when closed
+     */
+    protected class StoreReader extends DataReader<T>
+    {
+        protected final DataReader<T> _merged;
+        protected final List<File> _runs;
+        protected boolean _closed;
+
+        public StoreReader(DataReader<T> merged, List<File> runs) {
+            _merged = merged;
+            _runs = runs;
+        }
+
+        @Override
+        public T readNext() throws IOException {
+            return (_closed || _merged == null) ? null : _merged.readNext();
+        }
+
+        @Override
+        public T readNext(T reuse) throws IOException {
+            return (_closed || _merged == null) ? null : _merged.readNext(reuse);
+        }
+
+        @Override
+        public boolean canReuse() {
+            return (_merged != null) && _merged.canReuse();
+        }
+
+        @Override
+        public int estimateSizeInBytes(T item) {
+            return _merged.estimateSizeInBytes(item);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (!_closed) {
+                _closed = true;
+                try {
+                    if (_merged != null) {
+                        _merged.close();
+                    }
+                } finally {
+                    _release(_runs);
+                }
+            }
+        }
+    }
+}
@@ -1,10 +1,21 @@
 package com.fasterxml.sort;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Main entry point for sorting functionality; object that drives
@@ -66,8 +77,46 @@ public class Sorter<T> extends IteratingSorter<T>
     public void sort(InputStream source, OutputStream destination)
         throws IOException
     {
-        sort(_readerFactory.constructReader(source),
-                _writerFactory.constructWriter(destination));
+        sort(_inputReaderFactory().constructReader(source),
+                _resultWriterFactory().constructWriter(destination));
+    }
+
+    /**
+     * Method that will perform full sort on contents of specified file, writing
+     * results into specified destination. Input is split into ranges that are
+     * pre-sorted concurrently using as many threads as there are available
+     * processors, if input format allows splitting; see
+     * {@link #sort(Path, DataWriter, int)} for details.
+     *
+     * @since 1.1.1
+     */
+    public void sort(Path input, OutputStream destination)
+        throws IOException
+    {
+        sort(input, _resultWriterFactory().constructWriter(destination),
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Method that will perform full sort on contents of specified file, writing
+     * results using specified {@link DataWriter}. File is split
+     * into ranges at record boundaries, and ranges are read and pre-sorted concurrently
+     * by given number of threads, if input format allows splitting (see
+     * {@link DataReaderFactory#nextRecordStart}): otherwise it is read by the calling
+     * thread.
+     *
+     * @return true if sorting completed successfully; false if it was cancelled
+     *
+     * @since 1.1.1
+     */
+    public boolean sort(Path input, DataWriter<T> resultWriter, int threadCount)
+        throws IOException
+    {
+        Iterator<T> it = super.sort(input, threadCount);
+        if (it == null) {
+            return false;
+        }
+        return _writeAll(resultWriter, it);
     }
 
     /**
@@ -86,15 +135,236 @@ public class Sorter<T> extends IteratingSorter<T>
         if(it == null) {
             return false;
         }
+        return _writeAll(resultWriter, it);
+    }
+
+    /**
+     * Method that will continue a sort that failed during its merge phase,
+     * starting from the last completed round recorded in the checkpoint
+     * directory (see {@link SortConfig#withCheckpointDirectory}), and
+     * write results using specified {@link DataWriter}.
+     *
+     * @return true if sorting completed successfully; false if it was cancelled
+     *
+     * @throws IOException If there is no checkpoint to resume from (see {@link #canResume}),
+     *   or if merging fails
+     *
+     * @since 1.1.1
+     */
+    public boolean resume(DataWriter<T> resultWriter)
+        throws IOException
+    {
+        Iterator<T> it = super.resume();
+        if (it == null) {
+            return false;
+        }
+        return _writeAll(resultWriter, it);
+    }
+
+    /**
+     * Method that will perform full sort on input data read using given
+     * {@link DataReader}, splitting results into ranges of keys, each of which
+     * is written using its own {@link DataWriter}: each output is sorted, and
+     * all entries of an output sort before those of the following outputs.
+     * Entries are routed to ranges when pre-sorted runs are written, and ranges
+     * are then merged concurrently, using up to as many threads as there are
+     * available processors.
+     *<p>
+     * Range boundaries are given as split keys: output <code>i</code> gets entries
+     * that sort at or above split key <code>i-1</code>, and below split key
+     * <code>i</code>. If no split keys are given, they are sampled from the first
+     * pre-sort buffer (the whole input, if it fits in memory); this only gives
+     * evenly sized ranges if the beginning of input is representative of all of it.
+     *<p>
+     * Checkpointing is not supported for partitioned sorting. Note that
+     * comparator and run reader and writer factories need to be thread-safe for
+     * concurrent merging.
+     *
+     * @param resultWriters Writers for outputs, in order of key ranges
+     * @param splitKeys Sorted list of keys that separate ranges (one fewer than there
+     *   are result writers); or null to sample keys from input
+     *
+     * @return true if sorting completed successfully; false if it was cancelled
+     *
+     * @since 1.1.1
+     */
+    public boolean sortPartitioned(DataReader<T> inputReader,
+            List<? extends DataWriter<T>> resultWriters, List<T> splitKeys)
+        throws IOException
+    {
+        final int partCount = resultWriters.size();
+        if (partCount < 1) {
+            throw new IllegalArgumentException("No result writers given");
+        }
+        if (splitKeys != null && splitKeys.size() != partCount - 1) {
+            throw new IllegalArgumentException("Need "+(partCount - 1)+" split keys for "
+                    +partCount+" result writers, got "+splitKeys.size());
+        }
+        boolean success = false;
         try {
-            while(it.hasNext()) {
-                T value = it.next();
-                resultWriter.writeEntry(value);
+            Partitions parts = _presortPartitioned(inputReader, partCount, splitKeys);
+            if (parts != null) {
+                _setPhase(Phase.SORTING);
+                if (parts.items != null) { // all fit in memory
+                    for (int i = 0; i < partCount; ++i) {
+                        @SuppressWarnings("unchecked")
+                        DataWriter<Object> writer = (DataWriter<Object>) resultWriters.get(i);
+                        writer.writeBatch(parts.items, parts.bounds[i], parts.bounds[i+1] - parts.bounds[i]);
+                        writer.close();
+                    }
+                } else {
+                    _mergePartitions(parts.runs, resultWriters);
+                }
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                _closeAfterFailure();
+            }
+        }
+        if (_checkForCancel()) {
+            close();
+            return false;
+        }
+        close();
+        _setPhase(Phase.COMPLETE);
+        return true;
+    }
+
+    /**
+     * @return True if all results were written; false if sort was cancelled
+     */
+    protected boolean _writeAll(DataWriter<T> resultWriter, Iterator<T> it)
+        throws IOException
+    {
+        boolean success = false;
+        try {
+            final Object[] batch = new Object[WRITE_BATCH_SIZE];
+            for (int batches = 1; it.hasNext(); ++batches) {
+                if ((batches % (CANCEL_CHECK_INTERVAL / WRITE_BATCH_SIZE)) == 0 && _shouldStop()) {
+                    success = true;
+                    return false;
+                }
+                int count = 0;
+                do {
+                    batch[count++] = it.next();
+                } while (count < WRITE_BATCH_SIZE && it.hasNext());
+                resultWriter.writeBatch(batch, 0, count);
             }
             resultWriter.close();
+            success = true;
         } finally {
-            super.close();
+            if (success) {
+                super.close();
+            } else {
+                _closeAfterFailure();
+            }
         }
         return true;
     }
+
+    /*
+    /**********************************************************************
+    /* Internal methods, partitioned sorting
+    /**********************************************************************
+     */
+
+    /**
+     * Method for merging runs of all ranges concurrently, each into its own
+     * result writer.
+     *
+     * @since 1.1.1
+     */
+    protected void _mergePartitions(List<List<File>> partRuns,
+            final List<? extends DataWriter<T>> resultWriters)
+        throws IOException
+    {
+        final int partCount = partRuns.size();
+        int rounds = 1;
+        for (List<File> runs : partRuns) {
+            rounds = Math.max(rounds, _calculateRoundCount(runs.size(), _config.getMergeFactor()));
+        }
+        _sortRoundCount = rounds;
+        _currentSortRound = 0;
+
+        final int threadCount = _acquireThreads(Math.min(partCount, Runtime.getRuntime().availableProcessors()));
+        if (threadCount == 0) { // cancelled while waiting
+            return;
+        }
+        final AtomicBoolean abort = new AtomicBoolean(false);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>(partCount);
+            for (int i = 0; i < partCount; ++i) {
+                final List<File> runs = partRuns.get(i);
+                final DataWriter<T> writer = resultWriters.get(i);
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        _mergePartition(runs, writer, abort);
+                        return null;
+                    }
+                }));
+            }
+            // wait for all tasks even if one fails
+            Throwable fail = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    abort.set(true);
+                    if (fail == null) {
+                        fail = e.getCause();
+                    }
+                } catch (InterruptedException e) {
+                    // leave interrupt status for caller, and stop waiting for other tasks
+                    Thread.currentThread().interrupt();
+                    abort.set(true);
+                    for (Future<?> f : futures) {
+                        f.cancel(true);
+                    }
+                    if (fail == null) {
+                        fail = new InterruptedIOException("Interrupted while merging");
+                        fail.initCause(e);
+                    }
+                    break;
+                }
+            }
+            if (fail != null) {
+                if (fail instanceof IOException) {
+                    throw (IOException) fail;
+                }
+                if (fail instanceof RuntimeException) {
+                    throw (RuntimeException) fail;
+                }
+                if (fail instanceof Error) {
+                    throw (Error) fail;
+                }
+                throw new IOException(fail);
+            }
+            _currentSortRound = rounds - 1;
+        } finally {
+            executor.shutdownNow();
+            _releaseThreads(threadCount);
+        }
+    }
+
+    /**
+     * Method called (concurrently) to merge runs of a single range, as many
+     * rounds as needed, into given writer.
+     *
+     * @since 1.1.1
+     */
+    protected void _mergePartition(List<File> runs, DataWriter<T> writer, AtomicBoolean abort)
+        throws IOException
+    {
+        if (runs.isEmpty()) { // empty range
+            writer.close();
+            return;
+        }
+        List<File> inputs = _mergeRange(runs, abort);
+        if (inputs != null) {
+            _mergeFinal(inputs, writer);
+        }
+    }
 }
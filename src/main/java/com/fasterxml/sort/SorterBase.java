@@ -2,8 +2,12 @@ package com.fasterxml.sort;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import com.fasterxml.sort.util.CountingOutputStream;
+import com.fasterxml.sort.util.SortEvents;
+import com.fasterxml.sort.util.MemoryRunPool;
 import com.fasterxml.sort.util.SegmentedBuffer;
 
 public abstract class SorterBase<T>
@@ -12,7 +16,22 @@ public abstract class SorterBase<T>
     /* each entry (in buffer) takes about 4 bytes on 32-bit machine; but let's be
      * conservative and use 8 as base, plus size of object itself.
      */
-    private final static long ENTRY_SLOT_SIZE = 8L;
+    protected final static long ENTRY_SLOT_SIZE = 8L;
+
+    /**
+     * Number of items to pass to {@link DataWriter#writeBatch} at a time
+     *
+     * @since 1.1.1
+     */
+    protected final static int WRITE_BATCH_SIZE = 256;
+
+    /**
+     * Number of entries to read, write or merge between checks for cancellation,
+     * interruption and time limit (see {@link #_shouldStop}); power of two
+     *
+     * @since 1.1.1
+     */
+    protected final static int CANCEL_CHECK_INTERVAL = 4096;
     
     /*
     /********************************************************************** 
@@ -54,6 +73,55 @@ public abstract class SorterBase<T>
     protected final AtomicBoolean _cancelRequest = new AtomicBoolean(false);
     
     protected Exception _cancelForException;
+
+    /**
+     * Checkpoint used for recording completed rounds, if sorting is
+     * resumable (see {@link SortConfig#withCheckpointDirectory}); null if not.
+     *
+     * @since 1.1.1
+     */
+    protected SortCheckpoint _checkpoint;
+
+    /**
+     * In-memory pool used for keeping sorted runs, if enabled (see
+     * {@link SortConfig#withMemoryRunPool}); null if not.
+     *
+     * @since 1.1.1
+     */
+    protected MemoryRunPool _runPool;
+
+    /**
+     * Sorted runs (temporary files) of the current sort that have not yet
+     * been deleted; tracked so that they can be deleted if sort fails or
+     * is cancelled.
+     *
+     * @since 1.1.1
+     */
+    protected final Set<File> _runFiles = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+
+    /**
+     * Amount of memory currently granted by {@link SortResourceManager}, if one
+     * is used (see {@link SortConfig#withResourceManager}).
+     *
+     * @since 1.1.1
+     */
+    protected long _memoryGranted;
+
+    /**
+     * Time (in milliseconds since epoch) by which the current sort must
+     * complete, if time limit is configured (see {@link SortConfig#withTimeLimit});
+     * 0 if not.
+     *
+     * @since 1.1.1
+     */
+    protected long _deadline;
+
+    /**
+     * Counters of the current (or last) sort
+     *
+     * @since 1.1.1
+     */
+    protected final SortMetrics.Collector _metrics = new SortMetrics.Collector();
     
     /*
     /********************************************************************** 
@@ -70,6 +138,10 @@ public abstract class SorterBase<T>
 
         _readerFactory = readerFactory;
         _writerFactory = writerFactory;
+        // comparisons only counted if someone is listening
+        if (comparator != null && config.getSortListener() != null) {
+            comparator = _metrics.countingComparator(comparator);
+        }
         _comparator = comparator;
         
         _phase = null;
@@ -142,6 +214,16 @@ public abstract class SorterBase<T>
         return (_phase == SortingState.Phase.SORTING);
     }
 
+    /**
+     * Accessor for snapshot of counters of the current sort, or the last
+     * one if no sort is in progress.
+     *
+     * @since 1.1.1
+     */
+    public SortMetrics getMetrics() {
+        return _metrics.snapshot(_phase, _sortRoundCount, _config.getMergeFactor());
+    }
+
     /*
     /********************************************************************** 
     /* Internal methods, pre-sorting
@@ -155,73 +237,173 @@ public abstract class SorterBase<T>
     protected Object[] _readMax(DataReader<T> inputReader, SegmentedBuffer buffer,
             long memoryToUse, T firstItem)
         throws IOException
+    {
+        return _readMax(inputReader, buffer, memoryToUse, firstItem, null);
+    }
+
+    /**
+     * @param bytesRead If not null, estimated size of items read is stored as its
+     *   first element (passed by caller, since pre-sorting may run in multiple threads)
+     *
+     * @since 1.1.1
+     */
+    protected Object[] _readMax(DataReader<T> inputReader, SegmentedBuffer buffer,
+            long memoryToUse, T firstItem, long[] bytesRead)
+        throws IOException
     {
         // how much memory do we expect largest remaining entry to take?
         int ptr = 0;
         Object[] segment = buffer.resetAndStart();
         int segmentLength = segment.length;
         long minMemoryNeeded;
+        long records = 0L;
+        long bytes = 0L;
 
         if (firstItem != null) {
             segment[ptr++] = firstItem;
-            long firstSize = ENTRY_SLOT_SIZE + inputReader.estimateSizeInBytes(firstItem);
-            minMemoryNeeded = Math.max(firstSize, 256L);
+            int size = inputReader.estimateSizeInBytes(firstItem);
+            ++records;
+            bytes += size;
+            minMemoryNeeded = Math.max(ENTRY_SLOT_SIZE + size, 256L);
         } else  {
             minMemoryNeeded = 256L;
         }
 
         // reduce mem amount by buffer cost too:
         memoryToUse -= (ENTRY_SLOT_SIZE * segmentLength);
-        
-        while (true) {
-            T value = inputReader.readNext();
-            if (value == null) {
-                break;
-            }
-            long size = inputReader.estimateSizeInBytes(value);
-            if (size > minMemoryNeeded) {
-                minMemoryNeeded = size;
-            }
+
+        while (memoryToUse >= minMemoryNeeded) {
             if (ptr >= segmentLength) {
                 segment = buffer.appendCompletedChunk(segment);
                 segmentLength = segment.length;
                 memoryToUse -= (ENTRY_SLOT_SIZE * segmentLength);
                 ptr = 0;
             }
-            segment[ptr++] = value;
-            memoryToUse -= size;
-            if (memoryToUse < minMemoryNeeded) {
+            // read as many items as should fit, assuming none is bigger than largest so far
+            final int max = (int) Math.max(1L, Math.min(Math.min(segmentLength - ptr, CANCEL_CHECK_INTERVAL),
+                    memoryToUse / minMemoryNeeded));
+            final int count = inputReader.readBatch(segment, ptr, max);
+            for (final int end = ptr + count; ptr < end; ++ptr) {
+                @SuppressWarnings("unchecked")
+                long size = inputReader.estimateSizeInBytes((T) segment[ptr]);
+                if (size > minMemoryNeeded) {
+                    minMemoryNeeded = size;
+                }
+                memoryToUse -= size;
+                bytes += size;
+            }
+            records += count;
+            if (count < max) { // end of input
+                break;
+            }
+            if (_shouldStop()) {
                 break;
             }
         }
+        _metrics.addRead(records, bytes);
+        if (bytesRead != null) {
+            bytesRead[0] = bytes;
+        }
         return buffer.completeAndClearBuffer(segment, ptr);
     }
+
+    /**
+     * Helper method that reads a chunk of input (see {@link #_readMax}) and sorts it,
+     * reporting it as a pre-sort event (see {@link SortEvents}).
+     *
+     * @since 1.1.1
+     */
+    protected Object[] _readSorted(DataReader<T> inputReader, SegmentedBuffer buffer,
+            long memoryToUse, T firstItem)
+        throws IOException
+    {
+        final Object event = SortEvents.beginPresort();
+        final long[] bytesRead = (event == null) ? null : new long[1];
+        Object[] items = _readMax(inputReader, buffer, memoryToUse, firstItem, bytesRead);
+        Arrays.sort(items, _rawComparator());
+        if (event != null) {
+            SortEvents.endPresort(event, items.length, bytesRead[0]);
+        }
+        return items;
+    }
     
     protected void _presort(DataReader<T> inputReader, SegmentedBuffer buffer, T nextValue,
             List<File> presorted)
         throws IOException
+    {
+        _presort(inputReader, buffer, nextValue, presorted, _config.getMaxMemoryUsage());
+    }
+
+    /**
+     * @param memoryToUse Amount of memory to use for each pre-sorted run
+     *
+     * @since 1.1.1
+     */
+    protected void _presort(DataReader<T> inputReader, SegmentedBuffer buffer, T nextValue,
+            List<File> presorted, long memoryToUse)
+        throws IOException
     {
         do {
-            Object[] items = _readMax(inputReader, buffer, _config.getMaxMemoryUsage(), nextValue);
-            Arrays.sort(items, _rawComparator());
+            if (_shouldStop()) {
+                return;
+            }
+            final long memory = _acquireMemory(memoryToUse);
+            if (memory == 0L) { // cancelled while waiting
+                return;
+            }
+            Object[] items = _readSorted(inputReader, buffer, memory, nextValue);
             presorted.add(_writePresorted(items));
+            _releaseMemory();
             nextValue = inputReader.readNext();
         } while (nextValue != null);
     }
 
-    @SuppressWarnings("resource")
+    /**
+     * Method called once all input has been pre-sorted, to record the
+     * result in checkpoint (if checkpointing is enabled)
+     *
+     * @since 1.1.1
+     */
+    protected void _presortCompleted(List<File> presorted) throws IOException
+    {
+        if (_checkpoint != null) {
+            _checkpoint.write(0, _presortFileCount, presorted);
+        }
+    }
+
     protected File _writePresorted(Object[] items) throws IOException
     {
-        File tmp = _config.getTempFileProvider().provide();
+        return _writePresorted(items, 0, items.length);
+    }
+
+    /**
+     * Method for writing given range of sorted items as a run
+     *
+     * @since 1.1.1
+     */
+    @SuppressWarnings("resource")
+    protected File _writePresorted(Object[] items, int start, int end) throws IOException
+    {
+        final Object event = SortEvents.beginSpill();
+        File tmp = _provideTempFile();
+        CountingOutputStream out = new CountingOutputStream(_openRunOutput(tmp));
         @SuppressWarnings("unchecked")
-        DataWriter<Object> writer = (DataWriter<Object>) _writerFactory.constructWriter(new FileOutputStream(tmp));
+        DataWriter<Object> writer = (DataWriter<Object>) _writerFactory.constructWriter(out);
         boolean closed = false;
         try {
-            ++_presortFileCount;
-            for (int i = 0, end = items.length; i < end; ++i) {
-                writer.writeEntry(items[i]);
-                // to further reduce transient mem usage, clear out the ref
-                items[i] = null;
+            // may be called concurrently when pre-sorting in parallel
+            synchronized (this) {
+                ++_presortFileCount;
+            }
+            for (int i = start; i < end; i += WRITE_BATCH_SIZE) {
+                // partial run is fine if cancelled: caller discards runs
+                if (((i - start) % CANCEL_CHECK_INTERVAL) == 0 && _shouldStop()) {
+                    break;
+                }
+                final int count = Math.min(WRITE_BATCH_SIZE, end - i);
+                writer.writeBatch(items, i, count);
+                // to further reduce transient mem usage, clear out the refs
+                Arrays.fill(items, i, i + count, null);
             }
             closed = true;
             writer.close();
@@ -231,6 +413,10 @@ public abstract class SorterBase<T>
                 try { writer.close(); } catch (IOException e) { }
             }
         }
+        _runWritten(end - start, out.getCount());
+        if (event != null) {
+            SortEvents.endSpill(event, tmp, end - start, out.getCount());
+        }
         return tmp;
     }
     
@@ -247,13 +433,24 @@ public abstract class SorterBase<T>
         throws IOException
     {
         List<File> inputs = merge(presorted);
+        if (_cancelRequest.get()) {
+            return;
+        }
         // and then last around to produce the result file
-        _merge(inputs, resultWriter);
+        _mergeFinal(inputs, resultWriter);
+        // if cancelled during final merge, runs are still needed for resuming
+        if (_cancelRequest.get()) {
+            return;
+        }
+        if (_checkpoint != null) {
+            _checkpoint.clear();
+        }
     }
 
     /**
      * Main-level merge method that sorts the given input.
-     * @return List of files that are individually sorted and ready for final merge.
+     * @return List of files that are individually sorted and ready for final merge;
+     *    unless sort was cancelled, in which case caller must not use them
      */
     protected List<File> merge(List<File> presorted)
         throws IOException
@@ -267,11 +464,27 @@ public abstract class SorterBase<T>
         List<File> inputs = presorted;
         while (inputs.size() > mergeFactor) {
             ArrayList<File> outputs = new ArrayList<File>(1 + ((inputs.size() + mergeFactor - 1) / mergeFactor));
+            final Object event = SortEvents.beginMergeRound();
+            final long inputBytes = (event == null) ? 0L : _runBytes(inputs);
             for (int offset = 0, end = inputs.size(); offset < end; offset += mergeFactor) {
+                if (_shouldStop()) {
+                    return inputs;
+                }
                 int localEnd = Math.min(offset + mergeFactor, end);
                 outputs.add(_merge(inputs.subList(offset, localEnd)));
             }
+            if (event != null) {
+                SortEvents.endMergeRound(event, _currentSortRound, inputs.size(), mergeFactor, inputBytes);
+            }
             ++_currentSortRound;
+            _roundCompleted();
+            // with checkpointing, inputs only go away once new round is recorded
+            if (_checkpoint != null) {
+                _checkpoint.write(_checkpoint.getRound() + 1, _presortFileCount, outputs);
+                for (File input : inputs) {
+                    _deleteRun(input);
+                }
+            }
             // and then switch result files to be input files
             inputs = outputs;
         }
@@ -284,20 +497,37 @@ public abstract class SorterBase<T>
         // need to go through acrobatics, due to type erasure... works, if ugly:
         @SuppressWarnings("unchecked")
         DataWriter<Object> writer = (DataWriter<Object>) resultWriter;
-        for (Object item : items) {
-            writer.writeEntry(item);
-        }
+        writer.writeBatch(items, 0, items.length);
     }
 
     @SuppressWarnings("resource")
     protected File _merge(List<File> inputs)
         throws IOException
     {
-        File resultFile = _config.getTempFileProvider().provide();
-        _merge(inputs, _writerFactory.constructWriter(new FileOutputStream(resultFile)));
+        File resultFile = _provideTempFile();
+        CountingOutputStream out = new CountingOutputStream(_openRunOutput(resultFile));
+        _merge(inputs, _writerFactory.constructWriter(out));
+        _metrics.addMerged(out.getCount());
         return resultFile;
     }
 
+    /**
+     * Method for doing the final merge of given runs into results, reported
+     * as a final merge event (see {@link SortEvents}).
+     *
+     * @since 1.1.1
+     */
+    protected void _mergeFinal(List<File> inputs, DataWriter<T> writer)
+        throws IOException
+    {
+        final Object event = SortEvents.beginFinalMerge();
+        final long inputBytes = (event == null) ? 0L : _runBytes(inputs);
+        _merge(inputs, writer);
+        if (event != null) {
+            SortEvents.endFinalMerge(event, inputs.size(), inputBytes);
+        }
+    }
+
     protected void _merge(List<File> inputs, DataWriter<T> writer)
         throws IOException
     {
@@ -305,8 +535,23 @@ public abstract class SorterBase<T>
         try {
             merger = _createMergeReader(inputs);
             T value;
-            while ((value = merger.readNext()) != null) {
-                writer.writeEntry(value);
+            int count = 0;
+            // avoid allocating new item for every entry merged, if possible:
+            if (merger.canReuse() && writer.canReuse()) {
+                value = null;
+                while ((value = merger.readNext(value)) != null) {
+                    writer.writeEntry(value);
+                    if ((++count & (CANCEL_CHECK_INTERVAL - 1)) == 0 && _shouldStop()) {
+                        break;
+                    }
+                }
+            } else {
+                while ((value = merger.readNext()) != null) {
+                    writer.writeEntry(value);
+                    if ((++count & (CANCEL_CHECK_INTERVAL - 1)) == 0 && _shouldStop()) {
+                        break;
+                    }
+                }
             }
             merger.close(); // usually not necessary (reader should close on eof) but...
             merger = null;
@@ -315,8 +560,11 @@ public abstract class SorterBase<T>
             if (merger != null) {
                 try { merger.close(); } catch (IOException e) { }
             }
-            for (File input : inputs) {
-                input.delete();
+            // when checkpointing, caller deletes inputs after recording the round
+            if (_checkpoint == null) {
+                for (File input : inputs) {
+                    _deleteRun(input);
+                }
             }
         }
     }
@@ -324,7 +572,7 @@ public abstract class SorterBase<T>
     protected DataReader<T> _createMergeReader(List<File> inputs) throws IOException {
         ArrayList<DataReader<T>> readers = new ArrayList<DataReader<T>>(inputs.size());
         for (File mergedInput : inputs) {
-            readers.add(_readerFactory.constructReader(new FileInputStream(mergedInput)));
+            readers.add(_readerFactory.constructReader(_openRunInput(mergedInput)));
         }
         return Merger.mergedReader(_comparator, readers);
     }
@@ -335,6 +583,270 @@ public abstract class SorterBase<T>
     /********************************************************************** 
      */
 
+    /**
+     * Accessor for factory used for reading input, when input is given as
+     * a stream or file instead of {@link DataReader}. Usually same as the factory
+     * used for reading sorted runs, but may be different if runs use
+     * different format.
+     *
+     * @since 1.1.1
+     */
+    protected DataReaderFactory<T> _inputReaderFactory() {
+        return _readerFactory;
+    }
+
+    /**
+     * Accessor for factory used for writing results, when destination is
+     * given as a stream instead of {@link DataWriter}. Usually same as the factory
+     * used for writing sorted runs, but may be different if runs use
+     * different format.
+     *
+     * @since 1.1.1
+     */
+    protected DataWriterFactory<T> _resultWriterFactory() {
+        return _writerFactory;
+    }
+
+    /**
+     * Method called to create a new file for storing a sorted run: from
+     * checkpoint directory if sort is resumable, otherwise using configured
+     * {@link TempFileProvider}. If in-memory run pool is used, returned
+     * file is just a key for the pooled run, and no file is created
+     * unless run is moved to disk (see {@link MemoryRunPool#createRunKey}).
+     *
+     * @since 1.1.1
+     */
+    protected File _provideTempFile() throws IOException
+    {
+        File f;
+        if (_checkpoint != null) {
+            f = _checkpoint.provideRunFile();
+        } else if (_runPool != null) {
+            f = _runPool.createRunKey();
+        } else {
+            f = _config.getTempFileProvider().provide();
+        }
+        _runFiles.add(f);
+        return f;
+    }
+
+    /**
+     * Method called to open stream for writing contents of a sorted run
+     * into given file (or, in-memory run pool, if one is used).
+     *
+     * @since 1.1.1
+     */
+    protected OutputStream _openRunOutput(File run) throws IOException
+    {
+        if (_runPool != null) {
+            return _runPool.openOutput(run);
+        }
+        if (_checkpoint != null) {
+            return _checkpoint.openRunOutput(run);
+        }
+        return _config.getTempFileProvider().openOutput(run);
+    }
+
+    /**
+     * Method called to open stream for reading contents of a sorted run,
+     * written using {@link #_openRunOutput}.
+     *
+     * @since 1.1.1
+     */
+    protected InputStream _openRunInput(File run) throws IOException
+    {
+        if (_runPool != null) {
+            InputStream in = _runPool.openInput(run);
+            if (in != null) {
+                return in;
+            }
+        }
+        return new FileInputStream(_runFile(run));
+    }
+
+    /**
+     * @return File that contains given run: differs from the run itself
+     *    if run was kept in memory run pool, and then moved to disk
+     *
+     * @since 1.1.1
+     */
+    protected File _runFile(File run)
+    {
+        if (_runPool != null) {
+            File f = _runPool.getFile(run);
+            if (f != null) {
+                return f;
+            }
+        }
+        return run;
+    }
+
+    /**
+     * Helper method for calculating total size of given runs on disk; runs
+     * (or parts of them) kept in memory run pool are not included.
+     *
+     * @since 1.1.1
+     */
+    protected long _runBytes(List<File> runs)
+    {
+        long total = 0L;
+        for (File run : runs) {
+            total += _runFile(run).length();
+        }
+        return total;
+    }
+
+    /**
+     * Method called to delete a sorted run that is no longer needed.
+     *
+     * @since 1.1.1
+     */
+    protected void _deleteRun(File run)
+    {
+        _runFiles.remove(run);
+        if (_runPool != null) {
+            // pool releases file, if run was moved to disk
+            _runPool.release(run);
+        } else if (_checkpoint != null) {
+            run.delete();
+        } else {
+            _config.getTempFileProvider().release(run);
+        }
+    }
+
+    /**
+     * Method called to delete all remaining sorted runs of the current sort;
+     * either when sort fails or is cancelled, or when results have been
+     * fully read.
+     *
+     * @since 1.1.1
+     */
+    protected void _deleteAllRuns()
+    {
+        for (File f : new ArrayList<File>(_runFiles)) {
+            _deleteRun(f);
+        }
+    }
+
+    /**
+     * Method called at the start of a new sort to set up in-memory run pool,
+     * if enabled by configuration. Pool is not used with checkpointing,
+     * since pooled runs would not survive a failure.
+     *
+     * @since 1.1.1
+     */
+    protected void _initRunPool()
+    {
+        long size = _config.getMemoryRunPoolSize();
+        if (size <= 0L || _checkpoint != null) {
+            _runPool = null;
+        } else {
+            _runPool = new MemoryRunPool(size, _config.getMemoryRunPoolEviction(),
+                    _config.getTempFileProvider());
+        }
+    }
+
+    /**
+     * Method called at the start of a new sort to set up checkpointing, if
+     * enabled by configuration. Any previous checkpoint within directory is
+     * discarded.
+     *
+     * @since 1.1.1
+     */
+    protected void _initCheckpoint() throws IOException
+    {
+        File dir = _config.getCheckpointDirectory();
+        if (dir == null) {
+            _checkpoint = null;
+        } else {
+            _checkpoint = new SortCheckpoint(dir);
+            _checkpoint.clear();
+        }
+    }
+
+    /**
+     * Method for loading checkpoint from configured checkpoint directory,
+     * if one exists.
+     *
+     * @return Loaded checkpoint, if one exists; null if not
+     *
+     * @since 1.1.1
+     */
+    protected SortCheckpoint _loadCheckpoint() throws IOException
+    {
+        File dir = _config.getCheckpointDirectory();
+        if (dir == null) {
+            throw new IllegalStateException("Can not resume sort: no checkpoint directory configured");
+        }
+        SortCheckpoint cp = new SortCheckpoint(dir);
+        return cp.load() ? cp : null;
+    }
+
+    /**
+     * Method called before reading input to pre-sort, to find out how much memory
+     * to use: if a {@link SortResourceManager} is used, it is asked for
+     * given amount, waiting if necessary (any amount granted earlier is released
+     * first); otherwise given amount is used as is.
+     *
+     * @return Amount of memory to use; 0 if sort was cancelled while waiting
+     *
+     * @since 1.1.1
+     */
+    protected long _acquireMemory(long preferred) throws IOException
+    {
+        SortResourceManager mgr = _config.getResourceManager();
+        if (mgr == null) {
+            return preferred;
+        }
+        _releaseMemory();
+        _memoryGranted = mgr.acquireMemory(preferred, _cancelRequest);
+        return _memoryGranted;
+    }
+
+    /**
+     * Method called once pre-sorted items no longer take memory, to return
+     * memory granted by {@link #_acquireMemory}, if any.
+     *
+     * @since 1.1.1
+     */
+    protected void _releaseMemory()
+    {
+        if (_memoryGranted > 0L) {
+            _config.getResourceManager().releaseMemory(_memoryGranted);
+            _memoryGranted = 0L;
+        }
+    }
+
+    /**
+     * Method called to find out how many threads to use for concurrent
+     * processing: if a {@link SortResourceManager} is used, it is asked for
+     * given number, waiting until at least one is available; otherwise given
+     * number is used as is. Threads must be returned with {@link #_releaseThreads}.
+     *
+     * @return Number of threads to use; 0 if sort was cancelled while waiting
+     *
+     * @since 1.1.1
+     */
+    protected int _acquireThreads(int preferred) throws IOException
+    {
+        SortResourceManager mgr = _config.getResourceManager();
+        if (mgr == null) {
+            return preferred;
+        }
+        return mgr.acquireThreads(preferred, _cancelRequest);
+    }
+
+    /**
+     * @since 1.1.1
+     */
+    protected void _releaseThreads(int count)
+    {
+        SortResourceManager mgr = _config.getResourceManager();
+        if (mgr != null) {
+            mgr.releaseThreads(count);
+        }
+    }
+
     protected static int _calculateRoundCount(int files, int mergeFactor)
     {
         int count = 1;
@@ -345,6 +857,107 @@ public abstract class SorterBase<T>
         return count;
     }
     
+    /**
+     * Method called to move sort to given phase, notifying listener (if any).
+     *
+     * @since 1.1.1
+     */
+    protected void _setPhase(Phase phase)
+    {
+        _phase = phase;
+        _metrics.phaseChanged(phase);
+        SortListener l = _config.getSortListener();
+        if (l != null) {
+            l.phaseChanged(this, getMetrics());
+        }
+    }
+
+    /**
+     * Method called at the start of a new sort to reset counters.
+     *
+     * @since 1.1.1
+     */
+    protected void _initMetrics()
+    {
+        _metrics.reset();
+        _presortFileCount = 0;
+        _sortRoundCount = -1;
+        _currentSortRound = -1;
+    }
+
+    /**
+     * Method called after a sorted run has been written during pre-sorting,
+     * to update counters and notify listener (if any).
+     *
+     * @since 1.1.1
+     */
+    protected void _runWritten(long records, long bytes)
+    {
+        _metrics.addRun(records, bytes);
+        SortListener l = _config.getSortListener();
+        if (l != null) {
+            l.runWritten(this, getMetrics());
+        }
+    }
+
+    /**
+     * Method called after an intermediate merge round has completed,
+     * to update counters and notify listener (if any).
+     *
+     * @since 1.1.1
+     */
+    protected void _roundCompleted()
+    {
+        _metrics.roundCompleted();
+        SortListener l = _config.getSortListener();
+        if (l != null) {
+            l.roundCompleted(this, getMetrics());
+        }
+    }
+
+    /**
+     * Method called at the start of a new sort to calculate its deadline,
+     * if time limit is configured.
+     *
+     * @since 1.1.1
+     */
+    protected void _initDeadline()
+    {
+        long limit = _config.getTimeLimit();
+        _deadline = (limit > 0L) ? System.currentTimeMillis() + limit : 0L;
+    }
+
+    /**
+     * Method called periodically (every {@link #CANCEL_CHECK_INTERVAL} entries or so)
+     * from loops that read, write or merge entries, to check whether sort should
+     * stop early. If sort has been cancelled, caller is to stop processing, and
+     * leave handling of cancellation to the sort method (see {@link #_checkForCancel});
+     * if thread has been interrupted or time limit exceeded, an exception is thrown,
+     * so that sort fails and its temporary files are deleted (interrupt status
+     * of thread is not cleared).
+     *
+     * @return True if sort has been cancelled
+     *
+     * @throws InterruptedIOException If thread has been interrupted, or the deadline
+     *    of sort has passed
+     *
+     * @since 1.1.1
+     */
+    protected boolean _shouldStop() throws IOException
+    {
+        if (_cancelRequest.get()) {
+            return true;
+        }
+        // note: leaves interrupt status set, for caller to see
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Sort interrupted");
+        }
+        if (_deadline > 0L && System.currentTimeMillis() > _deadline) {
+            throw new InterruptedIOException("Sort time limit ("+_config.getTimeLimit()+" msecs) exceeded");
+        }
+        return false;
+    }
+
     protected boolean _checkForCancel() throws IOException
     {
         return _checkForCancel(null);
@@ -357,7 +970,7 @@ public abstract class SorterBase<T>
         }
         if (tmpFilesToDelete != null) {
             for (File f : tmpFilesToDelete) {
-                f.delete();
+                _deleteRun(f);
             }
         }
         if (_cancelForException != null) {
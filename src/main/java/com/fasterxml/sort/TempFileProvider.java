@@ -1,7 +1,9 @@
 package com.fasterxml.sort;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * Interface used for object that can handle constructing of temporary files that are
@@ -13,4 +15,26 @@ import java.io.IOException;
 public interface TempFileProvider
 {
     public File provide() throws IOException;
+
+    /**
+     * Method called by sorter to open a stream for writing contents of a temporary
+     * file constructed using {@link #provide}. Providers may override this to,
+     * for example, keep track of disk space used.
+     *
+     * @since 1.1.1
+     */
+    default OutputStream openOutput(File tempFile) throws IOException {
+        return new FileOutputStream(tempFile);
+    }
+
+    /**
+     * Method called by sorter when a temporary file constructed using
+     * {@link #provide} is no longer needed: default implementation simply
+     * deletes the file.
+     *
+     * @since 1.1.1
+     */
+    default void release(File tempFile) {
+        tempFile.delete();
+    }
 }
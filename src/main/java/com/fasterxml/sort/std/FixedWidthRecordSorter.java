@@ -0,0 +1,388 @@
+package com.fasterxml.sort.std;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import com.fasterxml.sort.*;
+import com.fasterxml.sort.util.SortEvents;
+
+/**
+ * {@link Sorter} for binary records of fixed length (such as 16-byte key
+ * followed by 8-byte value), ordered by unsigned byte comparison of a key
+ * that is a range of bytes within record.
+ *<p>
+ * When sorting streams ({@link #sort(InputStream, OutputStream)}), pre-sorting
+ * keeps records packed in a single byte array ("slab") instead of as
+ * separate <code>byte[]</code> instances, which avoids per-record object and
+ * reference overhead; records are sorted in place using MSD radix sort
+ * ("American flag sort") on key bytes, and written in sorted runs as is,
+ * without delimiters. Merging reads records with fixed stride, reusing
+ * record instances. Note that the radix sort is not stable: records with
+ * equal keys may end up in any order.
+ *<p>
+ * Methods that take {@link DataReader}s work on <code>byte[]</code> records
+ * as usual.
+ *
+ * @since 1.1.1
+ */
+public class FixedWidthRecordSorter extends Sorter<byte[]>
+{
+    /**
+     * Maximum slab size: arrays can not be much bigger than 2 gigs
+     */
+    protected final static int MAX_SLAB_SIZE = Integer.MAX_VALUE - 16;
+
+    /**
+     * Ranges with fewer records than this are sorted with insertion sort
+     */
+    protected final static int INSERTION_SORT_THRESHOLD = 32;
+
+    protected final int _recordLength;
+    protected final int _keyOffset;
+    protected final int _keyLength;
+
+    /**
+     * Constructor for sorter of records where whole record is the key
+     */
+    public FixedWidthRecordSorter(SortConfig config, int recordLength) {
+        this(config, recordLength, 0, recordLength);
+    }
+
+    /**
+     * @param recordLength Length of records in bytes
+     * @param keyOffset Offset of the sort key within record
+     * @param keyLength Length of the sort key
+     */
+    public FixedWidthRecordSorter(SortConfig config, int recordLength,
+            int keyOffset, int keyLength)
+    {
+        super(config, FixedWidthRecordReader.factory(recordLength),
+                FixedWidthRecordWriter.factory(recordLength),
+                new KeyComparator(keyOffset, keyLength));
+        if (keyOffset < 0 || keyLength < 0 || (keyOffset + keyLength) > recordLength) {
+            throw new IllegalArgumentException("Invalid key (offset "+keyOffset+", length "+keyLength
+                    +") for record length "+recordLength);
+        }
+        _recordLength = recordLength;
+        _keyOffset = keyOffset;
+        _keyLength = keyLength;
+    }
+
+    /*
+    /**********************************************************************
+    /* Sorting
+    /**********************************************************************
+     */
+
+    /**
+     * Method that will sort records read from given stream, writing results
+     * into specified destination, pre-sorting in a packed byte array.
+     */
+    @Override
+    public void sort(InputStream source, OutputStream destination)
+        throws IOException
+    {
+        // Clean up any previous sort
+        close();
+        _initCheckpoint();
+        _initRunPool();
+        _initDeadline();
+        _initMetrics();
+
+        _setPhase(Phase.PRE_SORTING);
+        _presortFileCount = 0;
+        _sortRoundCount = -1;
+        _currentSortRound = -1;
+
+        boolean success = false;
+        try {
+            final long memory = _acquireMemory(_config.getMaxMemoryUsage());
+            if (_checkForCancel()) {
+                source.close();
+                success = true;
+                return;
+            }
+            byte[] slab = new byte[_slabSize(memory)];
+            int len = _fill(source, slab);
+            if (len < slab.length) { // all fits in memory (unless cancelled)
+                source.close();
+                if (!_sortRecords(slab, len / _recordLength) || _checkForCancel()) {
+                    success = true;
+                    return;
+                }
+                _setPhase(Phase.SORTING);
+                destination.write(slab, 0, len);
+                destination.close();
+            } else {
+                List<File> presorted = new ArrayList<File>();
+                while (len > 0) {
+                    if (!_sortRecords(slab, len / _recordLength) || _checkForCancel(presorted)) {
+                        source.close();
+                        success = true;
+                        return;
+                    }
+                    presorted.add(_writeSlab(slab, len));
+                    if (_checkForCancel(presorted)) {
+                        source.close();
+                        success = true;
+                        return;
+                    }
+                    len = _fill(source, slab);
+                }
+                source.close();
+                slab = null;
+                _releaseMemory();
+                _presortCompleted(presorted);
+                _setPhase(Phase.SORTING);
+                merge(presorted, _resultWriterFactory().constructWriter(destination));
+            }
+            success = true;
+        } finally {
+            _releaseMemory();
+            if (success) {
+                close();
+            } else {
+                try { source.close(); } catch (IOException e) { }
+                _closeAfterFailure();
+            }
+        }
+        if (!_checkForCancel()) {
+            _setPhase(Phase.COMPLETE);
+        }
+    }
+
+    /**
+     * Method that will sort records of given file, writing results into
+     * specified destination, pre-sorting in a packed byte array.
+     */
+    @Override
+    public void sort(Path input, OutputStream destination)
+        throws IOException
+    {
+        sort(Files.newInputStream(input), destination);
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods, pre-sorting
+    /**********************************************************************
+     */
+
+    /**
+     * @param memory Amount of memory to use (see {@link #_acquireMemory})
+     */
+    protected int _slabSize(long memory)
+    {
+        long max = Math.min(memory, MAX_SLAB_SIZE);
+        return (int) Math.max(_recordLength, max - (max % _recordLength));
+    }
+
+    /**
+     * Method for reading as much of input as fits in the slab; checks for
+     * cancellation (see {@link #_shouldStop}) every {@link #CANCEL_CHECK_INTERVAL} records.
+     *
+     * @return Number of bytes read; less than slab length only if at end of input,
+     *   or if sort was cancelled
+     */
+    protected int _fill(InputStream in, byte[] slab) throws IOException
+    {
+        final int checkBytes = CANCEL_CHECK_INTERVAL * _recordLength;
+        int count = 0;
+        int nextCheck = checkBytes;
+        while (count < slab.length) {
+            int n = in.read(slab, count, slab.length - count);
+            if (n < 0) {
+                break;
+            }
+            count += n;
+            if (count >= nextCheck) {
+                nextCheck = count + checkBytes;
+                if (_shouldStop()) {
+                    // cancelled: whole records only, rest does not matter
+                    count -= count % _recordLength;
+                    break;
+                }
+            }
+        }
+        if ((count % _recordLength) != 0) {
+            throw new EOFException("Unexpected end of input: partial record of "
+                    +(count % _recordLength)+" bytes (record length "+_recordLength+")");
+        }
+        _metrics.addRead(count / _recordLength, count);
+        return count;
+    }
+
+    protected File _writeSlab(byte[] slab, int len) throws IOException
+    {
+        final Object event = SortEvents.beginSpill();
+        File tmp = _provideTempFile();
+        OutputStream out = _openRunOutput(tmp);
+        try {
+            synchronized (this) {
+                ++_presortFileCount;
+            }
+            out.write(slab, 0, len);
+        } finally {
+            out.close();
+        }
+        _runWritten(len / _recordLength, len);
+        if (event != null) {
+            SortEvents.endSpill(event, tmp, len / _recordLength, len);
+        }
+        return tmp;
+    }
+
+    /**
+     * Method for sorting given number of records of the slab in place.
+     * Sort is not stable.
+     *
+     * @return False if sort was cancelled (leaving records partially sorted)
+     */
+    protected boolean _sortRecords(byte[] slab, int count) throws IOException
+    {
+        final Object event = SortEvents.beginPresort();
+        if (_keyLength > 0) {
+            if (!_radixSort(slab, 0, count, 0, new byte[_recordLength])) {
+                return false;
+            }
+        }
+        if (event != null) {
+            SortEvents.endPresort(event, count, (long) count * _recordLength);
+        }
+        return true;
+    }
+
+    /**
+     * American flag sort: in-place MSD radix sort, that distributes records of
+     * given range into 256 buckets based on key byte at given depth by
+     * following permutation cycles, then sorts buckets recursively.
+     * Checks for cancellation (see {@link #_shouldStop}) before each pass over
+     * {@link #CANCEL_CHECK_INTERVAL} or more records, and after every
+     * {@link #CANCEL_CHECK_INTERVAL} records of smaller buckets.
+     *
+     * @return False if sort was cancelled
+     */
+    protected boolean _radixSort(byte[] slab, int from, int to, int depth, byte[] tmp)
+        throws IOException
+    {
+        if ((to - from) < INSERTION_SORT_THRESHOLD) {
+            _insertionSort(slab, from, to, depth, tmp);
+            return true;
+        }
+        if ((to - from) >= CANCEL_CHECK_INTERVAL && _shouldStop()) {
+            return false;
+        }
+        final int W = _recordLength;
+        final int keyPos = _keyOffset + depth;
+        int[] counts = new int[256];
+        for (int i = from, ptr = from * W + keyPos; i < to; ++i, ptr += W) {
+            ++counts[slab[ptr] & 0xFF];
+        }
+        int[] next = new int[256];
+        int[] ends = new int[256];
+        for (int b = 0, start = from; b < 256; ++b) {
+            next[b] = start;
+            start += counts[b];
+            ends[b] = start;
+        }
+        for (int b = 0; b < 256; ++b) {
+            while (next[b] < ends[b]) {
+                final int i = next[b];
+                final int v = slab[i * W + keyPos] & 0xFF;
+                if (v == b) {
+                    ++next[b];
+                } else {
+                    _swap(slab, i, next[v]++, tmp);
+                }
+            }
+        }
+        if (depth + 1 < _keyLength) {
+            int sinceCheck = 0;
+            for (int b = 0, start = from; b < 256; ++b) {
+                final int end = ends[b];
+                if (end - start > 1) {
+                    if (!_radixSort(slab, start, end, depth + 1, tmp)) {
+                        return false;
+                    }
+                    // large buckets check for themselves
+                    if ((end - start) < CANCEL_CHECK_INTERVAL) {
+                        sinceCheck += end - start;
+                        if (sinceCheck >= CANCEL_CHECK_INTERVAL) {
+                            sinceCheck = 0;
+                            if (_shouldStop()) {
+                                return false;
+                            }
+                        }
+                    }
+                }
+                start = end;
+            }
+        }
+        return true;
+    }
+
+    protected void _insertionSort(byte[] slab, int from, int to, int depth, byte[] tmp)
+    {
+        for (int i = from + 1; i < to; ++i) {
+            for (int j = i; j > from && _compareKeys(slab, j - 1, j, depth) > 0; --j) {
+                _swap(slab, j - 1, j, tmp);
+            }
+        }
+    }
+
+    protected int _compareKeys(byte[] slab, int rec1, int rec2, int depth)
+    {
+        int p1 = rec1 * _recordLength + _keyOffset;
+        int p2 = rec2 * _recordLength + _keyOffset;
+        for (int i = depth; i < _keyLength; ++i) {
+            int diff = (slab[p1 + i] & 0xFF) - (slab[p2 + i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+
+    protected void _swap(byte[] slab, int rec1, int rec2, byte[] tmp)
+    {
+        final int W = _recordLength;
+        System.arraycopy(slab, rec1 * W, tmp, 0, W);
+        System.arraycopy(slab, rec2 * W, slab, rec1 * W, W);
+        System.arraycopy(tmp, 0, slab, rec2 * W, W);
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Comparator for records, used when merging (and when sorting
+     * <code>byte[]</code> records read using {@link DataReader}s)
+     */
+    public static class KeyComparator implements Comparator<byte[]>
+    {
+        protected final int _keyOffset;
+        protected final int _keyLength;
+
+        public KeyComparator(int keyOffset, int keyLength) {
+            _keyOffset = keyOffset;
+            _keyLength = keyLength;
+        }
+
+        @Override
+        public int compare(byte[] o1, byte[] o2)
+        {
+            for (int i = _keyOffset, end = _keyOffset + _keyLength; i < end; ++i) {
+                int diff = (o1[i] & 0xFF) - (o2[i] & 0xFF);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return 0;
+        }
+    }
+}
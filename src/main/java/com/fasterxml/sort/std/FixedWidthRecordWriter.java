@@ -0,0 +1,85 @@
+package com.fasterxml.sort.std;
+
+import java.io.*;
+
+import com.fasterxml.sort.*;
+
+/**
+ * Writer for binary records of fixed length: records are written back to
+ * back, without delimiters.
+ *
+ * @since 1.1.1
+ */
+public class FixedWidthRecordWriter
+    extends DataWriter<byte[]>
+{
+    protected final OutputStream _out;
+
+    protected final int _recordLength;
+
+    protected boolean _closed = false;
+
+    public FixedWidthRecordWriter(OutputStream out, int recordLength)
+    {
+        _out = out;
+        _recordLength = recordLength;
+    }
+
+    /**
+     * Convenience method for instantiating factory to create instances of
+     * this {@link DataWriter}.
+     */
+    public static Factory factory(int recordLength) {
+        return new Factory(recordLength);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!_closed) {
+            _closed = true;
+            _out.close();
+        }
+    }
+
+    // nothing retained
+    @Override
+    public boolean canReuse() {
+        return true;
+    }
+
+    @Override
+    public void writeEntry(byte[] item) throws IOException
+    {
+        if (_closed) {
+            throw new IOException("Can not write using closed DataWriter");
+        }
+        if (item.length != _recordLength) {
+            throw new IOException("Invalid record: length "+item.length+", expected "+_recordLength);
+        }
+        _out.write(item);
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    public static class Factory
+        extends DataWriterFactory<byte[]>
+    {
+        protected final int _recordLength;
+
+        public Factory(int recordLength) {
+            _recordLength = recordLength;
+        }
+
+        @Override
+        public DataWriter<byte[]> constructWriter(OutputStream out) {
+            if (!(out instanceof BufferedOutputStream)) {
+                out = new BufferedOutputStream(out);
+            }
+            return new FixedWidthRecordWriter(out, _recordLength);
+        }
+    }
+}
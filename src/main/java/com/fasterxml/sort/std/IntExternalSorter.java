@@ -0,0 +1,215 @@
+package com.fasterxml.sort.std;
+
+import java.io.*;
+import java.util.*;
+
+import com.fasterxml.sort.*;
+
+/**
+ * Sorter for <code>long</code> values (such as ids), in ascending (signed)
+ * order, without boxing: values are pre-sorted in a <code>int[]</code>
+ * buffer, written into sorted runs as raw 8-byte big-endian values, and merged
+ * using a loser tree over primitive values. Compared to <code>Sorter&lt;Long&gt;</code>,
+ * memory usage per value is 8 bytes instead of about 20.
+ *
+ * @since 1.1.1
+ */
+public class IntExternalSorter
+    extends PrimitiveSorterBase<Integer>
+{
+    public IntExternalSorter() {
+        this(new SortConfig());
+    }
+
+    public IntExternalSorter(SortConfig config) {
+        super(config, 4);
+    }
+
+    /*
+    /**********************************************************************
+    /* Main sorting API
+    /**********************************************************************
+     */
+
+    /**
+     * Method that will perform full sort on given values.
+     * Iterator returned throws {@link IterableSorterException} if an
+     * {@link IOException} is encountered when reading sorted runs; and
+     * deletes remaining runs once all values have been read (as does
+     * {@link #close}).
+     *
+     * @return Iterator over sorted values; null if sorting was cancelled
+     */
+    public PrimitiveIterator.OfInt sort(PrimitiveIterator.OfInt input)
+        throws IOException
+    {
+        _startSort();
+        PrimitiveIterator.OfInt result = null;
+        boolean success = false;
+        try {
+            final int[] buffer = new int[_bufferLength()];
+            int count = _fill(input, buffer);
+            Arrays.sort(buffer, 0, count);
+            if (!input.hasNext()) { // all in memory
+                _setPhase(Phase.SORTING);
+                result = Arrays.stream(buffer, 0, count).iterator();
+            } else {
+                List<File> presorted = new ArrayList<File>();
+                while (true) {
+                    presorted.add(_writeRun(buffer, count));
+                    if (_checkForCancel(presorted)) {
+                        success = true;
+                        close();
+                        return null;
+                    }
+                    if (!input.hasNext()) {
+                        break;
+                    }
+                    count = _fill(input, buffer);
+                    Arrays.sort(buffer, 0, count);
+                }
+                LoserTreeMerger merger = _mergeRuns(presorted);
+                if (merger == null) { // cancelled
+                    success = true;
+                    close();
+                    return null;
+                }
+                result = new MergerIterator(merger);
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                _closeAfterFailure();
+            }
+        }
+        if (_checkForCancel()) {
+            close();
+            return null;
+        }
+        _setPhase(Phase.COMPLETE);
+        return result;
+    }
+
+    /**
+     * Method that will perform full sort on values read from given stream
+     * as 4-byte big-endian values (as written by {@link DataOutput#writeInt}),
+     * writing sorted values into specified destination in the same format.
+     */
+    public void sort(InputStream source, OutputStream destination)
+        throws IOException
+    {
+        final RunReader in = new RunReader(source, _valueLength);
+        PrimitiveIterator.OfInt it;
+        try {
+            it = sort(new PrimitiveIterator.OfInt() {
+                @Override
+                public boolean hasNext() {
+                    try {
+                        return in.hasNext();
+                    } catch (IOException e) {
+                        throw new IterableSorterException(e);
+                    }
+                }
+
+                @Override
+                public int nextInt() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return (int) in.next();
+                }
+            });
+        } catch (IterableSorterException e) {
+            throw (IOException) e.getCause();
+        } finally {
+            in.close();
+        }
+        if (it != null) {
+            RunWriter out = new RunWriter(null, destination, _valueLength);
+            try {
+                while (it.hasNext()) {
+                    out.write(it.nextInt());
+                }
+                out.close();
+            } catch (IterableSorterException e) {
+                throw (IOException) e.getCause();
+            } finally {
+                close();
+            }
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    protected int _fill(PrimitiveIterator.OfInt input, int[] buffer) throws IOException
+    {
+        int count = 0;
+        while (count < buffer.length && input.hasNext()) {
+            buffer[count++] = input.nextInt();
+            // partial buffer is fine if cancelled: caller checks before using it
+            if ((count & (CANCEL_CHECK_INTERVAL - 1)) == 0 && _shouldStop()) {
+                break;
+            }
+        }
+        _metrics.addRead(count, (long) count * _valueLength);
+        return count;
+    }
+
+    protected File _writeRun(int[] values, int count) throws IOException
+    {
+        RunWriter out = _createRunWriter();
+        try {
+            for (int i = 0; i < count; ++i) {
+                if ((i & (CANCEL_CHECK_INTERVAL - 1)) == 0 && _shouldStop()) {
+                    break;
+                }
+                out.write(values[i]);
+            }
+        } finally {
+            out.close();
+        }
+        _runWritten(count, (long) count * _valueLength);
+        return out.getFile();
+    }
+
+    /**
+     * Iterator over results of the final merge round
+     */
+    protected class MergerIterator implements PrimitiveIterator.OfInt
+    {
+        protected final LoserTreeMerger _source;
+
+        public MergerIterator(LoserTreeMerger source) {
+            _source = source;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            if (_source.hasNext()) {
+                return true;
+            }
+            if (_merger == _source) {
+                close();
+            }
+            return false;
+        }
+
+        @Override
+        public int nextInt()
+        {
+            if (!_source.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                return (int) _source.next();
+            } catch (IOException e) {
+                throw new IterableSorterException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,595 @@
+package com.fasterxml.sort.std;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.sort.*;
+
+/**
+ * Specification of sort keys for text lines, modelled after options of
+ * Unix <code>sort</code>: field separator (<code>-t</code>), key fields
+ * (<code>-k</code>), and numeric (<code>-n</code>), reverse (<code>-r</code>)
+ * and ignore-case (<code>-f</code>) ordering, either globally or per key.
+ * As with <code>sort</code>, lines with equal keys are ordered by comparing
+ * whole lines as the last resort (reversed if global reverse is enabled).
+ *<p>
+ * Keys are extracted once per line, and encoded so that lines can be ordered
+ * by simple unsigned byte comparison of the encoded form (using
+ * {@link ByteArrayComparator}), without splitting lines into fields or parsing
+ * numbers ever again. Encoded keys are prepended to the line: this means that
+ * entries can be written in sorted runs as is (and prefix-compressed, if
+ * enabled), and line is only decoded back when writing results.
+ *<p>
+ * Fields are numbered starting from 1. With a separator, fields are separated
+ * by each occurrence of the separator byte; without one, each field starts
+ * with the blanks (spaces and tabs) that precede its non-blank characters,
+ * same as with <code>sort</code>. Character positions within fields are
+ * not supported.
+ *<p>
+ * Instances are immutable; "with" methods create new instances.
+ *
+ * @since 1.1.1
+ */
+public class LineKeySpec
+{
+    /**
+     * Marker for "no separator": fields separated by blanks
+     */
+    protected final static int NO_SEPARATOR = -1;
+
+    protected final static int FLAG_NUMERIC = 0x01;
+    protected final static int FLAG_REVERSE = 0x02;
+    protected final static int FLAG_IGNORE_CASE = 0x04;
+
+    // Class markers for numeric keys; ordered
+    protected final static byte NUMBER_NEGATIVE = 0x01;
+    protected final static byte NUMBER_ZERO = 0x02;
+    protected final static byte NUMBER_POSITIVE = 0x03;
+
+    /**
+     * Specification of a single key: range of fields, with optional
+     * ordering flags.
+     */
+    public static class KeyField
+    {
+        /**
+         * First field of the key, 1-based
+         */
+        protected final int _startField;
+
+        /**
+         * Last field of the key (inclusive), 1-based; 0 means end of line
+         */
+        protected final int _endField;
+
+        /**
+         * Ordering flags of the key; -1 if none given, in which case global
+         * flags are used
+         */
+        protected final int _flags;
+
+        public KeyField(int startField, int endField, int flags)
+        {
+            if (startField < 1) {
+                throw new IllegalArgumentException("Invalid start field "+startField+": fields start from 1");
+            }
+            if (endField != 0 && endField < startField) {
+                throw new IllegalArgumentException("Invalid key: end field "+endField
+                        +" before start field "+startField);
+            }
+            _startField = startField;
+            _endField = endField;
+            _flags = flags;
+        }
+
+        /**
+         * Factory method for parsing key definition in format used by <code>sort -k</code>:
+         * <code>F1[,F2]</code>, with optional ordering flags (<code>n</code>, <code>r</code>,
+         * <code>f</code>) after either field number.
+         */
+        public static KeyField parse(String def)
+        {
+            int[] fields = new int[] { -1, 0 };
+            int flags = -1;
+            int ix = 0;
+            for (int i = 0, len = def.length(); i < len; ++i) {
+                char c = def.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    fields[ix] = Math.max(fields[ix], 0) * 10 + (c - '0');
+                    continue;
+                }
+                switch (c) {
+                case ',':
+                    if (ix == 0) {
+                        ix = 1;
+                        continue;
+                    }
+                    break;
+                case 'n':
+                    flags = Math.max(flags, 0) | FLAG_NUMERIC;
+                    continue;
+                case 'r':
+                    flags = Math.max(flags, 0) | FLAG_REVERSE;
+                    continue;
+                case 'f':
+                    flags = Math.max(flags, 0) | FLAG_IGNORE_CASE;
+                    continue;
+                case '.':
+                    throw new IllegalArgumentException("Invalid key definition '"+def
+                            +"': character positions not supported");
+                }
+                throw new IllegalArgumentException("Invalid key definition '"+def
+                        +"': unrecognized character '"+c+"'");
+            }
+            if (fields[0] < 0) {
+                throw new IllegalArgumentException("Invalid key definition '"+def+"': missing field number");
+            }
+            return new KeyField(fields[0], fields[1], flags);
+        }
+
+        public int getStartField() { return _startField; }
+        public int getEndField() { return _endField; }
+    }
+
+    /**
+     * Separator byte; or {@link #NO_SEPARATOR} for blank-separated fields
+     */
+    protected final int _separator;
+
+    /**
+     * Flags that apply to keys without flags of their own, as well as to
+     * the last-resort comparison (only reverse)
+     */
+    protected final int _globalFlags;
+
+    protected final List<KeyField> _keys;
+
+    public LineKeySpec() {
+        this(NO_SEPARATOR, 0, Collections.<KeyField>emptyList());
+    }
+
+    protected LineKeySpec(int separator, int globalFlags, List<KeyField> keys)
+    {
+        _separator = separator;
+        _globalFlags = globalFlags;
+        _keys = keys;
+    }
+
+    /*
+    /**********************************************************************
+    /* Fluent factory methods
+    /**********************************************************************
+     */
+
+    /**
+     * Method for specifying field separator (<code>sort -t</code>); must be a
+     * single-byte character.
+     */
+    public LineKeySpec withSeparator(char sep) {
+        if (sep > 0x7F) {
+            throw new IllegalArgumentException("Separator has to be an ASCII character");
+        }
+        return new LineKeySpec(sep, _globalFlags, _keys);
+    }
+
+    /**
+     * Method for adding a key (<code>sort -k</code>); keys are compared in the
+     * order they are added.
+     */
+    public LineKeySpec withKey(KeyField key) {
+        List<KeyField> keys = new ArrayList<KeyField>(_keys);
+        keys.add(key);
+        return new LineKeySpec(_separator, _globalFlags, Collections.unmodifiableList(keys));
+    }
+
+    public LineKeySpec withKey(String def) {
+        return withKey(KeyField.parse(def));
+    }
+
+    public LineKeySpec withNumeric(boolean state) {
+        return _withFlag(FLAG_NUMERIC, state);
+    }
+
+    public LineKeySpec withReverse(boolean state) {
+        return _withFlag(FLAG_REVERSE, state);
+    }
+
+    public LineKeySpec withIgnoreCase(boolean state) {
+        return _withFlag(FLAG_IGNORE_CASE, state);
+    }
+
+    protected LineKeySpec _withFlag(int flag, boolean state) {
+        int flags = state ? (_globalFlags | flag) : (_globalFlags & ~flag);
+        return new LineKeySpec(_separator, flags, _keys);
+    }
+
+    /*
+    /**********************************************************************
+    /* Accessors
+    /**********************************************************************
+     */
+
+    /**
+     * @return True if this specification orders lines other than by plain
+     *   byte comparison of whole lines (that is, if lines need to be encoded)
+     */
+    public boolean hasKeys() {
+        return !_keys.isEmpty() || (_globalFlags != 0);
+    }
+
+    public List<KeyField> getKeys() { return _keys; }
+
+    /*
+    /**********************************************************************
+    /* Encoding, decoding
+    /**********************************************************************
+     */
+
+    /**
+     * Method for encoding given line: result consists of encoded keys, followed
+     * by the line itself (encoded if needed for last-resort ordering).
+     */
+    public byte[] encode(byte[] line)
+    {
+        ByteBuilder out = new ByteBuilder(line.length + 16);
+        if (_keys.isEmpty()) { // whole line is the key
+            _encodeKey(out, line, 0, line.length, _globalFlags);
+        } else {
+            for (KeyField key : _keys) {
+                int start = _fieldStart(line, key._startField);
+                int end = (key._endField == 0) ? line.length : _fieldEnd(line, start, key._startField, key._endField);
+                _encodeKey(out, line, start, end, (key._flags < 0) ? _globalFlags : key._flags);
+            }
+        }
+        if ((_globalFlags & FLAG_REVERSE) != 0) {
+            _encodeText(out, line, 0, line.length, false, 0xFF);
+        } else {
+            out.append(line, 0, line.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Method for decoding line from given encoded entry (produced by {@link #encode}).
+     */
+    public byte[] decode(byte[] encoded) throws IOException
+    {
+        int ptr = 0;
+        if (_keys.isEmpty()) {
+            ptr = _skipKey(encoded, ptr, _globalFlags);
+        } else {
+            for (KeyField key : _keys) {
+                ptr = _skipKey(encoded, ptr, (key._flags < 0) ? _globalFlags : key._flags);
+            }
+        }
+        if ((_globalFlags & FLAG_REVERSE) == 0) {
+            return Arrays.copyOfRange(encoded, ptr, encoded.length);
+        }
+        // need to unescape (and un-invert)
+        ByteBuilder out = new ByteBuilder(encoded.length - ptr);
+        while (true) {
+            int b = _byte(encoded, ptr++) ^ 0xFF;
+            if (b == 0) {
+                if ((_byte(encoded, ptr++) ^ 0xFF) == 0) {
+                    break;
+                }
+            }
+            out.append(b);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Convenience method for constructing a reader that encodes lines read using
+     * given reader.
+     */
+    public DataReader<byte[]> encodingReader(final DataReader<byte[]> lines)
+    {
+        return new DataReader<byte[]>() {
+            @Override
+            public byte[] readNext() throws IOException {
+                byte[] line = lines.readNext();
+                return (line == null) ? null : encode(line);
+            }
+
+            @Override
+            public int estimateSizeInBytes(byte[] item) {
+                return lines.estimateSizeInBytes(item);
+            }
+
+            @Override
+            public void close() throws IOException {
+                lines.close();
+            }
+        };
+    }
+
+    /**
+     * Convenience method for constructing a writer that decodes entries
+     * before writing lines using given writer.
+     */
+    public DataWriter<byte[]> decodingWriter(final DataWriter<byte[]> lines)
+    {
+        return new DataWriter<byte[]>() {
+            @Override
+            public void writeEntry(byte[] item) throws IOException {
+                lines.writeEntry(decode(item));
+            }
+
+            @Override
+            public boolean canReuse() {
+                return true;
+            }
+
+            @Override
+            public void close() throws IOException {
+                lines.close();
+            }
+        };
+    }
+
+    public DataReaderFactory<byte[]> encodingReaderFactory(final DataReaderFactory<byte[]> lines)
+    {
+        return new DataReaderFactory<byte[]>() {
+            @Override
+            public DataReader<byte[]> constructReader(InputStream in) throws IOException {
+                return encodingReader(lines.constructReader(in));
+            }
+
+            // encoding does not change where lines start
+            @Override
+            public long nextRecordStart(FileChannel channel, long position) throws IOException {
+                return lines.nextRecordStart(channel, position);
+            }
+        };
+    }
+
+    public DataWriterFactory<byte[]> decodingWriterFactory(final DataWriterFactory<byte[]> lines)
+    {
+        return new DataWriterFactory<byte[]>() {
+            @Override
+            public DataWriter<byte[]> constructWriter(OutputStream out) throws IOException {
+                return decodingWriter(lines.constructWriter(out));
+            }
+        };
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods, field location
+    /**********************************************************************
+     */
+
+    protected int _fieldStart(byte[] line, int field)
+    {
+        int ptr = 0;
+        for (int i = 1; i < field; ++i) {
+            ptr = _nextFieldStart(line, ptr);
+            if (ptr < 0) {
+                return line.length;
+            }
+        }
+        return ptr;
+    }
+
+    protected int _fieldEnd(byte[] line, int start, int startField, int endField)
+    {
+        int ptr = start;
+        for (int i = startField; i <= endField; ++i) {
+            int next = _nextFieldStart(line, ptr);
+            if (next < 0) {
+                return line.length;
+            }
+            if (i == endField) {
+                // separator itself is not part of the key
+                return (_separator == NO_SEPARATOR) ? next : (next - 1);
+            }
+            ptr = next;
+        }
+        return line.length;
+    }
+
+    /**
+     * @return Start offset of the field that follows field starting at given
+     *   offset; or -1 if there is no next field
+     */
+    protected int _nextFieldStart(byte[] line, int ptr)
+    {
+        final int end = line.length;
+        if (_separator != NO_SEPARATOR) {
+            while (ptr < end) {
+                if (line[ptr++] == _separator) {
+                    return ptr;
+                }
+            }
+            return -1;
+        }
+        // skip leading blanks, then field contents; next field starts at following blank
+        while (ptr < end && _isBlank(line[ptr])) {
+            ++ptr;
+        }
+        while (ptr < end && !_isBlank(line[ptr])) {
+            ++ptr;
+        }
+        return (ptr < end) ? ptr : -1;
+    }
+
+    protected static boolean _isBlank(byte b) {
+        return (b == ' ') || (b == '\t');
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods, key encoding
+    /**********************************************************************
+     */
+
+    protected void _encodeKey(ByteBuilder out, byte[] line, int start, int end, int flags)
+    {
+        final int mask = ((flags & FLAG_REVERSE) != 0) ? 0xFF : 0;
+        if ((flags & FLAG_NUMERIC) != 0) {
+            _encodeNumber(out, line, start, end, mask);
+        } else {
+            _encodeText(out, line, start, end, (flags & FLAG_IGNORE_CASE) != 0, mask);
+        }
+    }
+
+    /**
+     * Text is encoded with zero bytes escaped as <code>0x00 0xFF</code>,
+     * and terminated with <code>0x00 0x00</code>, so that no encoded
+     * key is a prefix of another one. For reverse order, all bytes are
+     * inverted.
+     */
+    protected static void _encodeText(ByteBuilder out, byte[] line, int start, int end,
+            boolean ignoreCase, int mask)
+    {
+        for (int i = start; i < end; ++i) {
+            int b = line[i] & 0xFF;
+            if (b == 0) {
+                out.append(mask);
+                out.append(0xFF ^ mask);
+                continue;
+            }
+            if (ignoreCase && b >= 'a' && b <= 'z') {
+                b -= ('a' - 'A');
+            }
+            out.append(b ^ mask);
+        }
+        out.append(mask);
+        out.append(mask);
+    }
+
+    /**
+     * Numbers (optional leading blanks and minus sign, digits, optional decimal
+     * point and fraction; anything else is considered zero) are encoded as
+     * class marker (negative, zero, positive), then (for non-zero values) number
+     * of integer digits as 4-byte value, digits without leading and trailing zeroes,
+     * and zero byte as terminator; for negative numbers all but the class
+     * marker are inverted.
+     */
+    protected static void _encodeNumber(ByteBuilder out, byte[] line, int start, int end, int mask)
+    {
+        int ptr = start;
+        while (ptr < end && _isBlank(line[ptr])) {
+            ++ptr;
+        }
+        boolean negative = false;
+        if (ptr < end && line[ptr] == '-') {
+            negative = true;
+            ++ptr;
+        }
+        // skip leading zeroes
+        while (ptr < end && line[ptr] == '0') {
+            ++ptr;
+        }
+        int intStart = ptr;
+        while (ptr < end && _isDigit(line[ptr])) {
+            ++ptr;
+        }
+        final int intDigits = ptr - intStart;
+        int fracStart = ptr, fracEnd = ptr;
+        if (ptr < end && line[ptr] == '.') {
+            fracStart = ++ptr;
+            while (ptr < end && _isDigit(line[ptr])) {
+                ++ptr;
+            }
+            fracEnd = ptr;
+            // trailing zeroes do not matter
+            while (fracEnd > fracStart && line[fracEnd-1] == '0') {
+                --fracEnd;
+            }
+        }
+        if (intDigits == 0 && fracEnd == fracStart) {
+            out.append(NUMBER_ZERO ^ mask);
+            return;
+        }
+        final int numMask = negative ? (0xFF ^ mask) : mask;
+        out.append((negative ? NUMBER_NEGATIVE : NUMBER_POSITIVE) ^ mask);
+        out.append((intDigits >>> 24) ^ numMask);
+        out.append((intDigits >>> 16) ^ numMask);
+        out.append((intDigits >>> 8) ^ numMask);
+        out.append(intDigits ^ numMask);
+        for (int i = intStart; i < intStart + intDigits; ++i) {
+            out.append(line[i] ^ numMask);
+        }
+        for (int i = fracStart; i < fracEnd; ++i) {
+            out.append(line[i] ^ numMask);
+        }
+        out.append(numMask);
+    }
+
+    protected static boolean _isDigit(byte b) {
+        return (b >= '0') && (b <= '9');
+    }
+
+    /**
+     * @return Offset right after the encoded key that starts at given offset
+     */
+    protected static int _skipKey(byte[] encoded, int ptr, int flags) throws IOException
+    {
+        final int mask = ((flags & FLAG_REVERSE) != 0) ? 0xFF : 0;
+        if ((flags & FLAG_NUMERIC) != 0) {
+            int type = _byte(encoded, ptr++) ^ mask;
+            if (type == NUMBER_ZERO) {
+                return ptr;
+            }
+            int terminator = (type == NUMBER_NEGATIVE) ? (0xFF ^ mask) : mask;
+            ptr += 4;
+            while (_byte(encoded, ptr++) != terminator) { }
+            return ptr;
+        }
+        while (true) {
+            if ((_byte(encoded, ptr++) ^ mask) == 0) {
+                if ((_byte(encoded, ptr++) ^ mask) == 0) {
+                    return ptr;
+                }
+            }
+        }
+    }
+
+    protected static int _byte(byte[] encoded, int ptr) throws IOException
+    {
+        if (ptr >= encoded.length) {
+            throw new IOException("Invalid encoded line: unexpected end of key");
+        }
+        return encoded[ptr] & 0xFF;
+    }
+
+    /**
+     * Minimal growable byte buffer
+     */
+    protected static class ByteBuilder
+    {
+        protected byte[] _buffer;
+        protected int _length;
+
+        public ByteBuilder(int initialSize) {
+            _buffer = new byte[Math.max(initialSize, 16)];
+        }
+
+        public void append(int b) {
+            if (_length == _buffer.length) {
+                _buffer = Arrays.copyOf(_buffer, _length << 1);
+            }
+            _buffer[_length++] = (byte) b;
+        }
+
+        public void append(byte[] b, int offset, int len) {
+            if (_length + len > _buffer.length) {
+                _buffer = Arrays.copyOf(_buffer, Math.max(_length + len, _buffer.length << 1));
+            }
+            System.arraycopy(b, offset, _buffer, _length, len);
+            _length += len;
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(_buffer, _length);
+        }
+    }
+}
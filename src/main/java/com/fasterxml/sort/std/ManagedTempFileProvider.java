@@ -0,0 +1,289 @@
+package com.fasterxml.sort.std;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+import com.fasterxml.sort.TempFileProvider;
+
+/**
+ * {@link TempFileProvider} implementation that owns the temporary files it
+ * creates: files are deleted explicitly when sorters release them (or when
+ * this provider is closed), instead of registering them with
+ * {@link File#deleteOnExit()}, which would leak memory in long-running
+ * processes. Provider also keeps track of bytes written into its files,
+ * and can enforce a quota on total disk usage: when quota would be
+ * exceeded, writes either wait for other sorts to release space (up to
+ * configured maximum wait time), or fail with an {@link IOException}.
+ *<p>
+ * Instances are thread-safe, and are meant to be shared by all sorters
+ * (via {@link com.fasterxml.sort.SortConfig#withTempFileProvider}) that should be
+ * subject to the same quota.
+ *
+ * @since 1.1.1
+ */
+public class ManagedTempFileProvider
+    implements TempFileProvider, Closeable
+{
+    /**
+     * Amount of space output streams reserve at a time, to avoid having to
+     * synchronize on each write
+     */
+    protected final static int RESERVE_CHUNK = 64 * 1024;
+
+    protected final File _directory;
+
+    protected final String _prefix;
+    protected final String _suffix;
+
+    /**
+     * Maximum number of bytes all files together may take; 0 or negative
+     * for "no limit"
+     */
+    protected final long _quota;
+
+    /**
+     * Maximum time to wait for space to be released, if quota would be
+     * exceeded; 0 to fail immediately.
+     */
+    protected final long _maxWaitMsecs;
+
+    /**
+     * Files that exist currently, and number of bytes reserved for each
+     */
+    protected final Map<File, Long> _files = new HashMap<File, Long>();
+
+    protected long _bytesInUse;
+
+    protected boolean _closed;
+
+    /**
+     * Constructor for provider that creates files in default temporary
+     * directory, without quota.
+     */
+    public ManagedTempFileProvider() {
+        this(null, 0L, 0L);
+    }
+
+    /**
+     * @param dir Directory to create files in; null for JDK default temporary directory
+     * @param quota Maximum total size of files in bytes; 0 for no limit
+     * @param maxWaitMsecs Maximum time to wait for space when quota would be exceeded,
+     *   before failing; 0 to fail fast
+     */
+    public ManagedTempFileProvider(File dir, long quota, long maxWaitMsecs) {
+        this(dir, StdTempFileProvider.DEFAULT_PREFIX, StdTempFileProvider.DEFAULT_SUFFIX,
+                quota, maxWaitMsecs);
+    }
+
+    public ManagedTempFileProvider(File dir, String prefix, String suffix,
+            long quota, long maxWaitMsecs)
+    {
+        _directory = dir;
+        _prefix = prefix;
+        _suffix = suffix;
+        _quota = quota;
+        _maxWaitMsecs = maxWaitMsecs;
+    }
+
+    /*
+    /**********************************************************************
+    /* Accessors
+    /**********************************************************************
+     */
+
+    public long getQuota() { return _quota; }
+
+    /**
+     * @return Number of bytes currently reserved by (and mostly written in) files
+     *   owned by this provider
+     */
+    public synchronized long getBytesInUse() { return _bytesInUse; }
+
+    /**
+     * @return Number of files currently owned by this provider
+     */
+    public synchronized int getFileCount() { return _files.size(); }
+
+    /*
+    /**********************************************************************
+    /* TempFileProvider implementation
+    /**********************************************************************
+     */
+
+    @Override
+    public File provide() throws IOException
+    {
+        File f;
+        if (_directory == null) {
+            f = Files.createTempFile(_prefix, _suffix).toFile();
+        } else {
+            f = Files.createTempFile(_directory.toPath(), _prefix, _suffix).toFile();
+        }
+        synchronized (this) {
+            if (_closed) {
+                f.delete();
+                throw new IOException("Can not provide temporary files: provider has been closed");
+            }
+            _files.put(f, Long.valueOf(0L));
+        }
+        return f;
+    }
+
+    @Override
+    public OutputStream openOutput(File tempFile) throws IOException
+    {
+        synchronized (this) {
+            if (!_files.containsKey(tempFile)) {
+                throw new IOException("Temporary file '"+tempFile.getAbsolutePath()+"' not owned by this provider");
+            }
+        }
+        return new QuotaOutputStream(tempFile, new FileOutputStream(tempFile));
+    }
+
+    @Override
+    public void release(File tempFile)
+    {
+        tempFile.delete();
+        synchronized (this) {
+            Long size = _files.remove(tempFile);
+            if (size != null && size.longValue() > 0L) {
+                _bytesInUse -= size.longValue();
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Method for deleting all files still owned by this provider. After
+     * closing, no new files can be provided.
+     */
+    @Override
+    public void close()
+    {
+        List<File> files;
+        synchronized (this) {
+            _closed = true;
+            files = new ArrayList<File>(_files.keySet());
+        }
+        for (File f : files) {
+            release(f);
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    /**
+     * Method called to reserve given number of bytes for given file; will
+     * wait for space to be released if necessary (and allowed).
+     */
+    protected synchronized void _reserve(File f, long bytes) throws IOException
+    {
+        Long old = _files.get(f);
+        if (old == null) { // released already (likely due to cancellation)
+            throw new IOException("Temporary file '"+f.getAbsolutePath()+"' has been released");
+        }
+        if (_quota > 0L && (_bytesInUse + bytes) > _quota) {
+            final long end = System.currentTimeMillis() + _maxWaitMsecs;
+            while ((_bytesInUse + bytes) > _quota) {
+                long wait = end - System.currentTimeMillis();
+                if (wait <= 0L || _maxWaitMsecs <= 0L) {
+                    throw new IOException("Temporary file space quota ("+_quota+" bytes) exceeded: "
+                            +_bytesInUse+" bytes in use, "+bytes+" more needed");
+                }
+                try {
+                    wait(wait);
+                } catch (InterruptedException e) {
+                    InterruptedIOException ie = new InterruptedIOException();
+                    ie.initCause(e);
+                    throw ie;
+                }
+                old = _files.get(f);
+                if (old == null) {
+                    throw new IOException("Temporary file '"+f.getAbsolutePath()+"' has been released");
+                }
+            }
+        }
+        _bytesInUse += bytes;
+        _files.put(f, Long.valueOf(old.longValue() + bytes));
+    }
+
+    /**
+     * Method called to return reserved but unused bytes for given file
+     */
+    protected synchronized void _unreserve(File f, long bytes)
+    {
+        Long old = _files.get(f);
+        if (old != null && bytes > 0L) {
+            _bytesInUse -= bytes;
+            _files.put(f, Long.valueOf(old.longValue() - bytes));
+            notifyAll();
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Output stream that reserves space from quota before writing.
+     */
+    protected class QuotaOutputStream extends FilterOutputStream
+    {
+        protected final File _file;
+
+        /**
+         * Number of bytes reserved but not yet written
+         */
+        protected long _reserved;
+
+        protected boolean _closed;
+
+        public QuotaOutputStream(File f, OutputStream out) {
+            super(out);
+            _file = f;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            _ensureReserved(1);
+            out.write(b);
+            --_reserved;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            _ensureReserved(len);
+            out.write(b, off, len);
+            _reserved -= len;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (!_closed) {
+                _closed = true;
+                _unreserve(_file, _reserved);
+                _reserved = 0L;
+                out.close();
+            }
+        }
+
+        private void _ensureReserved(int len) throws IOException
+        {
+            if (_reserved < len) {
+                long needed = Math.max(RESERVE_CHUNK, len - _reserved);
+                _reserve(_file, needed);
+                _reserved += needed;
+            }
+        }
+    }
+}
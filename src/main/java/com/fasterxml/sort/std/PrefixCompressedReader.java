@@ -0,0 +1,152 @@
+package com.fasterxml.sort.std;
+
+import java.io.*;
+
+import com.fasterxml.sort.*;
+
+/**
+ * Reader for data written using {@link PrefixCompressedWriter}: rebuilds
+ * entries from shared prefix of the previous entry and the stored suffix.
+ * Also exposes length of the shared prefix, to allow for prefix-aware
+ * merging (see {@link SharedPrefixMerger}).
+ *
+ * @since 1.1.1
+ */
+public class PrefixCompressedReader
+    extends SharedPrefixReader
+{
+    protected final InputStream _in;
+
+    protected boolean _closed = false;
+
+    protected final byte[] _inputBuffer = new byte[16000];
+    protected int _inputPtr = 0;
+    protected int _inputEnd = 0;
+
+    protected byte[] _previous;
+
+    protected int _sharedPrefix;
+
+    public PrefixCompressedReader(InputStream in)
+    {
+        _in = in;
+    }
+
+    /**
+     * Convenience method for instantiating factory to create instances of
+     * this {@link DataReader}.
+     */
+    public static Factory factory() {
+        return new Factory();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (!_closed) {
+            _closed = true;
+            _previous = null;
+            _in.close();
+        }
+    }
+
+    @Override
+    public int sharedPrefixLength() {
+        return _sharedPrefix;
+    }
+
+    @Override
+    public byte[] readNext() throws IOException
+    {
+        if (_closed) {
+            return null;
+        }
+        if (_inputPtr >= _inputEnd) {
+            if (!_loadMore()) {
+                close();
+                return null;
+            }
+        }
+        final int shared = _readLength();
+        final int suffix = _readLength();
+        final byte[] prev = _previous;
+        if (prev == null) {
+            if (shared != 0) {
+                throw new IOException("Corrupt prefix-compressed data: first entry with shared prefix of "+shared);
+            }
+        } else if (shared > prev.length) {
+            throw new IOException("Corrupt prefix-compressed data: shared prefix of "+shared
+                    +" longer than previous entry ("+prev.length+")");
+        }
+        byte[] result = new byte[shared + suffix];
+        if (shared > 0) {
+            System.arraycopy(prev, 0, result, 0, shared);
+        }
+        int ptr = shared;
+        while (ptr < result.length) {
+            if (_inputPtr >= _inputEnd) {
+                if (!_loadMore()) {
+                    throw new EOFException("Unexpected end of prefix-compressed data: missing "
+                            +(result.length - ptr)+" bytes of an entry");
+                }
+            }
+            int count = Math.min(result.length - ptr, _inputEnd - _inputPtr);
+            System.arraycopy(_inputBuffer, _inputPtr, result, ptr, count);
+            _inputPtr += count;
+            ptr += count;
+        }
+        _previous = result;
+        _sharedPrefix = shared;
+        return result;
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    protected int _readLength() throws IOException
+    {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (_inputPtr >= _inputEnd) {
+                if (!_loadMore()) {
+                    throw new EOFException("Unexpected end of prefix-compressed data: incomplete length");
+                }
+            }
+            int b = _inputBuffer[_inputPtr++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt prefix-compressed data: invalid length");
+    }
+
+    protected boolean _loadMore() throws IOException
+    {
+        int count = _in.read(_inputBuffer);
+        if (count < 0) {
+            return false;
+        }
+        _inputPtr = 0;
+        _inputEnd = count;
+        return true;
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    public static class Factory
+        extends DataReaderFactory<byte[]>
+    {
+        @Override
+        public DataReader<byte[]> constructReader(InputStream in) {
+            return new PrefixCompressedReader(in);
+        }
+    }
+}
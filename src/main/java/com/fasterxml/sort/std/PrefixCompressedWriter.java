@@ -0,0 +1,124 @@
+package com.fasterxml.sort.std;
+
+import java.io.*;
+
+import com.fasterxml.sort.*;
+import com.fasterxml.sort.util.ByteArrays;
+
+/**
+ * {@link DataWriter} for <code>byte[]</code> entries that uses front coding
+ * (prefix compression): each entry is written as length of the prefix it
+ * shares with the preceding entry, followed by the remaining suffix.
+ * Since entries of sorted runs tend to share long prefixes (timestamps, URLs,
+ * keys with common namespaces) this can considerably reduce size of
+ * intermediate sort files, at very low CPU cost.
+ *<p>
+ * Encoding of each entry is: shared-prefix length and suffix length, both as
+ * variable-length unsigned integers (7 bits per byte, least-significant first),
+ * followed by suffix bytes. Format is only meant for intermediate files, and
+ * is to be read using {@link PrefixCompressedReader}.
+ *
+ * @since 1.1.1
+ */
+public class PrefixCompressedWriter
+    extends DataWriter<byte[]>
+{
+    protected final OutputStream _out;
+
+    protected final byte[] _lengthBuffer = new byte[10];
+
+    /**
+     * Previously written entry, to find shared prefix with
+     */
+    protected byte[] _previous;
+
+    protected boolean _closed = false;
+
+    public PrefixCompressedWriter(OutputStream out) {
+        _out = out;
+    }
+
+    /**
+     * Convenience method for instantiating factory to create instances of
+     * this {@link DataWriter}.
+     */
+    public static Factory factory() {
+        return new Factory();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!_closed) {
+            _closed = true;
+            _previous = null;
+            _out.close();
+        }
+    }
+
+    @Override
+    public void writeEntry(byte[] item) throws IOException
+    {
+        if (_closed) {
+            throw new IOException("Can not write using closed DataWriter");
+        }
+        int shared = (_previous == null) ? 0 : sharedPrefixLength(_previous, item);
+        int ptr = _appendLength(_lengthBuffer, 0, shared);
+        ptr = _appendLength(_lengthBuffer, ptr, item.length - shared);
+        _out.write(_lengthBuffer, 0, ptr);
+        _out.write(item, shared, item.length - shared);
+        _previous = item;
+    }
+
+    /**
+     * Helper method for calculating length of the common prefix of
+     * given two byte arrays.
+     */
+    public static int sharedPrefixLength(byte[] b1, byte[] b2)
+    {
+        return ByteArrays.mismatch(b1, b2, 0);
+    }
+
+    private static int _appendLength(byte[] buffer, int ptr, int value)
+    {
+        while ((value & ~0x7F) != 0) {
+            buffer[ptr++] = (byte) (0x80 | (value & 0x7F));
+            value >>>= 7;
+        }
+        buffer[ptr++] = (byte) value;
+        return ptr;
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Basic factory implementation; writer uses {@link BufferedOutputStream}
+     * by default (can be disabled)
+     */
+    public static class Factory
+        extends DataWriterFactory<byte[]>
+    {
+        protected final boolean _addBuffering;
+
+        public Factory() {
+            this(true);
+        }
+
+        public Factory(boolean addBuffering) {
+            _addBuffering = addBuffering;
+        }
+
+        @Override
+        public DataWriter<byte[]> constructWriter(OutputStream out) {
+            if (_addBuffering) {
+                if (!(out instanceof BufferedOutputStream)) {
+                    out = new BufferedOutputStream(out);
+                }
+            }
+            return new PrefixCompressedWriter(out);
+        }
+    }
+}
@@ -0,0 +1,425 @@
+package com.fasterxml.sort.std;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import com.fasterxml.sort.*;
+
+/**
+ * Shared base for sorters of primitive values ({@link LongExternalSorter},
+ * {@link IntExternalSorter}): values are pre-sorted in primitive arrays,
+ * written into sorted runs as raw big-endian binary values, and merged using
+ * a loser tree over primitive values; no values are boxed.
+ *<p>
+ * Temporary files, in-memory run pool, progress tracking and cancellation
+ * work the same way as with {@link Sorter}; checkpointing
+ * ({@link SortConfig#withCheckpointDirectory}) is not supported, and is ignored.
+ *
+ * @since 1.1.1
+ */
+public abstract class PrimitiveSorterBase<T>
+    extends SorterBase<T>
+    implements Closeable
+{
+    /**
+     * Maximum length of primitive arrays used for pre-sorting
+     */
+    protected final static int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 16;
+
+    /**
+     * Size of I/O buffers used for reading and writing runs
+     */
+    protected final static int IO_BUFFER_SIZE = 64000;
+
+    /**
+     * Length of values in bytes: 4 or 8
+     */
+    protected final int _valueLength;
+
+    /**
+     * Merger for final round, if sort spilled to disk
+     */
+    protected LoserTreeMerger _merger;
+
+    protected PrimitiveSorterBase(SortConfig config, int valueLength)
+    {
+        super(config);
+        _valueLength = valueLength;
+    }
+
+    /*
+    /**********************************************************************
+    /* Closeable API
+    /**********************************************************************
+     */
+
+    /**
+     * Method that releases resources of the last sort, deleting all its
+     * remaining runs.
+     */
+    @Override
+    public void close()
+    {
+        if (_merger != null) {
+            _merger.close();
+            _merger = null;
+        }
+        _deleteAllRuns();
+        if (_runPool != null) {
+            _runPool.clear();
+            _runPool = null;
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods, sorting
+    /**********************************************************************
+     */
+
+    /**
+     * Method called at the start of a sort to reset state of the sorter.
+     */
+    protected void _startSort()
+    {
+        // Clean up any previous sort
+        close();
+        _checkpoint = null;
+        _initRunPool();
+        _initDeadline();
+        _initMetrics();
+        _setPhase(Phase.PRE_SORTING);
+        _presortFileCount = 0;
+        _sortRoundCount = -1;
+        _currentSortRound = -1;
+    }
+
+    /**
+     * Method for calculating length of pre-sort buffer, based on configured
+     * maximum memory usage.
+     */
+    protected int _bufferLength()
+    {
+        long count = _config.getMaxMemoryUsage() / _valueLength;
+        return (int) Math.max(16L, Math.min(count, MAX_ARRAY_LENGTH));
+    }
+
+    protected RunWriter _createRunWriter() throws IOException
+    {
+        File f = _provideTempFile();
+        synchronized (this) {
+            ++_presortFileCount;
+        }
+        return new RunWriter(f, _openRunOutput(f), _valueLength);
+    }
+
+    /**
+     * Method that merges given pre-sorted runs, as many rounds as needed,
+     * and returns merger for the final round.
+     *
+     * @return Merger for the final round; null if sort was cancelled
+     */
+    protected LoserTreeMerger _mergeRuns(List<File> presorted) throws IOException
+    {
+        _presortCompleted(presorted);
+        _setPhase(Phase.SORTING);
+        final int mergeFactor = _config.getMergeFactor();
+        _sortRoundCount = _calculateRoundCount(presorted.size(), mergeFactor);
+        _currentSortRound = 0;
+
+        List<File> inputs = presorted;
+        while (inputs.size() > mergeFactor) {
+            List<File> outputs = new ArrayList<File>();
+            for (int i = 0; i < inputs.size(); i += mergeFactor) {
+                List<File> group = inputs.subList(i, Math.min(inputs.size(), i + mergeFactor));
+                File result = _provideTempFile();
+                outputs.add(result);
+                LoserTreeMerger merger = _createMerger(group);
+                try {
+                    RunWriter out = new RunWriter(result, _openRunOutput(result), _valueLength);
+                    long count = 0L;
+                    while (merger.hasNext()) {
+                        out.write(merger.next());
+                        if ((++count & (CANCEL_CHECK_INTERVAL - 1)) == 0 && _shouldStop()) {
+                            break;
+                        }
+                    }
+                    out.close();
+                    _metrics.addMerged(count * _valueLength);
+                } finally {
+                    merger.close();
+                }
+                for (File f : group) {
+                    _deleteRun(f);
+                }
+                if (_checkForCancel()) {
+                    return null;
+                }
+            }
+            inputs = outputs;
+            ++_currentSortRound;
+            _roundCompleted();
+        }
+        _merger = _createMerger(inputs);
+        return _merger;
+    }
+
+    protected LoserTreeMerger _createMerger(List<File> runs) throws IOException
+    {
+        RunReader[] readers = new RunReader[runs.size()];
+        try {
+            for (int i = 0; i < readers.length; ++i) {
+                readers[i] = new RunReader(_openRunInput(runs.get(i)), _valueLength);
+            }
+        } catch (IOException e) {
+            for (RunReader r : readers) {
+                if (r != null) {
+                    r.close();
+                }
+            }
+            throw e;
+        }
+        return new LoserTreeMerger(readers);
+    }
+
+    /**
+     * Method called when sorting fails: all temporary files are deleted.
+     */
+    protected void _closeAfterFailure() {
+        close();
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Writer for runs of raw big-endian values
+     */
+    protected static class RunWriter
+    {
+        protected final File _file;
+        protected final OutputStream _out;
+        protected final ByteBuffer _buffer;
+        protected final int _valueLength;
+
+        public RunWriter(File file, OutputStream out, int valueLength)
+        {
+            _file = file;
+            _out = out;
+            _valueLength = valueLength;
+            _buffer = ByteBuffer.allocate(IO_BUFFER_SIZE - (IO_BUFFER_SIZE % valueLength));
+        }
+
+        public File getFile() { return _file; }
+
+        public void write(long value) throws IOException
+        {
+            if (!_buffer.hasRemaining()) {
+                _flush();
+            }
+            if (_valueLength == 8) {
+                _buffer.putLong(value);
+            } else {
+                _buffer.putInt((int) value);
+            }
+        }
+
+        public void close() throws IOException
+        {
+            _flush();
+            _out.close();
+        }
+
+        protected void _flush() throws IOException
+        {
+            _out.write(_buffer.array(), 0, _buffer.position());
+            _buffer.clear();
+        }
+    }
+
+    /**
+     * Reader for runs (and input) of raw big-endian values
+     */
+    protected static class RunReader
+    {
+        protected final InputStream _in;
+        protected final ByteBuffer _buffer;
+        protected final int _valueLength;
+
+        protected boolean _closed;
+
+        public RunReader(InputStream in, int valueLength)
+        {
+            _in = in;
+            _valueLength = valueLength;
+            _buffer = ByteBuffer.allocate(IO_BUFFER_SIZE - (IO_BUFFER_SIZE % valueLength));
+            _buffer.flip();
+        }
+
+        /**
+         * @return True if there is another value to read; false if at end of input
+         */
+        public boolean hasNext() throws IOException
+        {
+            if (_buffer.remaining() >= _valueLength) {
+                return true;
+            }
+            if (_closed) {
+                return false;
+            }
+            _buffer.compact();
+            while (_buffer.position() < _valueLength) {
+                int count = _in.read(_buffer.array(), _buffer.position(), _buffer.remaining());
+                if (count < 0) {
+                    int partial = _buffer.position();
+                    _buffer.flip();
+                    close();
+                    if (partial > 0) {
+                        throw new EOFException("Unexpected end of input: partial value of "
+                                +partial+" bytes (value length "+_valueLength+")");
+                    }
+                    return false;
+                }
+                _buffer.position(_buffer.position() + count);
+            }
+            _buffer.flip();
+            return true;
+        }
+
+        /**
+         * Method for reading the next value; only to be called after
+         * {@link #hasNext} has returned true.
+         */
+        public long next() {
+            return (_valueLength == 8) ? _buffer.getLong() : _buffer.getInt();
+        }
+
+        public void close()
+        {
+            if (!_closed) {
+                _closed = true;
+                try {
+                    _in.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Merger of sorted runs, using a loser tree ("tournament tree") over
+     * primitive values: each value takes <code>log2(runs)</code> comparisons,
+     * which are all on primitives.
+     */
+    protected static class LoserTreeMerger
+    {
+        protected final RunReader[] _inputs;
+
+        /**
+         * Current head value of each input
+         */
+        protected final long[] _heads;
+
+        /**
+         * Whether input has been exhausted (in which case it loses all comparisons)
+         */
+        protected final boolean[] _done;
+
+        /**
+         * Internal nodes of the tree (index 1 and up) contain indexes of inputs that
+         * lost at that node; index 0 contains the overall winner.
+         */
+        protected final int[] _tree;
+
+        public LoserTreeMerger(RunReader[] inputs) throws IOException
+        {
+            final int count = inputs.length;
+            _inputs = inputs;
+            _heads = new long[count];
+            _done = new boolean[Math.max(1, count)];
+            _tree = new int[Math.max(1, count)];
+            if (count == 0) {
+                _done[0] = true;
+                return;
+            }
+            Arrays.fill(_tree, -1);
+            for (int i = 0; i < count; ++i) {
+                _advance(i);
+            }
+            for (int i = 0; i < count; ++i) {
+                _adjust(i);
+            }
+        }
+
+        public boolean hasNext() {
+            return !_done[_tree[0]];
+        }
+
+        /**
+         * Method for getting the next value in sorted order; only to be called after
+         * {@link #hasNext} has returned true.
+         */
+        public long next() throws IOException
+        {
+            final int winner = _tree[0];
+            final long value = _heads[winner];
+            _advance(winner);
+            _adjust(winner);
+            return value;
+        }
+
+        public void close()
+        {
+            for (RunReader r : _inputs) {
+                r.close();
+            }
+        }
+
+        protected void _advance(int index) throws IOException
+        {
+            RunReader r = _inputs[index];
+            if (r.hasNext()) {
+                _heads[index] = r.next();
+            } else {
+                _done[index] = true;
+            }
+        }
+
+        /**
+         * Method that moves given input from its leaf up towards the root, leaving
+         * loser of each match at the internal node.
+         */
+        protected void _adjust(int index)
+        {
+            final int[] tree = _tree;
+            for (int node = (index + _inputs.length) >> 1; node > 0; node >>= 1) {
+                int other = tree[node];
+                if (other < 0) { // only during construction
+                    tree[node] = index;
+                    return;
+                }
+                if (_beats(other, index)) {
+                    tree[node] = index;
+                    index = other;
+                }
+            }
+            tree[0] = index;
+        }
+
+        protected boolean _beats(int a, int b)
+        {
+            if (_done[a]) {
+                return false;
+            }
+            if (_done[b]) {
+                return true;
+            }
+            return _heads[a] < _heads[b];
+        }
+    }
+}
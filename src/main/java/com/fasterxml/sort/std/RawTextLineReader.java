@@ -1,9 +1,12 @@
 package com.fasterxml.sort.std;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 
 import com.fasterxml.sort.*;
+import com.fasterxml.sort.util.LinefeedScanner;
 
 /**
  * Efficient reader for data that consists of text lines, i.e. character
@@ -30,7 +33,13 @@ public class RawTextLineReader
      */
     protected boolean _hadCR = false;
 
-    protected ByteArrayOutputStream _tmpBytes;
+    /**
+     * Buffer used for collecting contents of lines that span input buffer
+     * boundaries; grown as needed
+     *
+     * @since 1.1.1
+     */
+    protected byte[] _tmpBuffer;
     
     public RawTextLineReader(InputStream in)
     {
@@ -65,8 +74,24 @@ public class RawTextLineReader
         return 16 + bytes;
     }
 
+    /**
+     * Arrays can not be resized, so instances are only reused for lines
+     * of the same length as the previous one: most useful for fixed-length
+     * (or nearly so) lines.
+     */
+    @Override
+    public boolean canReuse() {
+        return true;
+    }
+
     @Override
     public byte[] readNext() throws IOException
+    {
+        return readNext(null);
+    }
+
+    @Override
+    public byte[] readNext(byte[] reuse) throws IOException
     {
         if (_closed) {
             return null;
@@ -89,46 +114,53 @@ public class RawTextLineReader
         final int start = _inputPtr;
 
         // then common case: we find full row:
-        final int end = _inputEnd;
-        while (_inputPtr < end) {
-            byte b = _inputBuffer[_inputPtr++];
-            if (b == BYTE_CR || b == BYTE_LF) {
-                _hadCR = (b == BYTE_CR);
-                return Arrays.copyOfRange(_inputBuffer, start, _inputPtr-1);
+        final int lf = LinefeedScanner.indexOfLinefeed(_inputBuffer, start, _inputEnd);
+        if (lf >= 0) {
+            _hadCR = (_inputBuffer[lf] == BYTE_CR);
+            _inputPtr = lf+1;
+            final int len = lf - start;
+            if (reuse != null && reuse.length == len) {
+                System.arraycopy(_inputBuffer, start, reuse, 0, len);
+                return reuse;
             }
+            return Arrays.copyOfRange(_inputBuffer, start, lf);
         }
         // but if not, need to buffer
+        _inputPtr = _inputEnd;
         return _readNextSlow(start);
     }
 
     protected final byte[] _readNextSlow(int start) throws IOException
     {
-        ByteArrayOutputStream bytes = _tmpBytes;
-        if (bytes == null) {
-            _tmpBytes = bytes = new ByteArrayOutputStream();
-        } else {
-            bytes.reset();
-        }
+        byte[] buffer = _tmpBuffer;
         // add stuff we have seen so far, and...
-        bytes.write(_inputBuffer, start, _inputEnd - start);
+        int len = _inputEnd - start;
+        if (buffer == null || buffer.length < len) {
+            buffer = new byte[Math.max(len, _inputBuffer.length)];
+        }
+        System.arraycopy(_inputBuffer, start, buffer, 0, len);
 
-        main_loop:        
         while (true) {
             if (!_loadMore()) {
                 close();
                 break;
             }
-            for (int i = 0, end = _inputEnd; i < end; ++i) {
-                byte b = _inputBuffer[_inputPtr++];
-                if (b == BYTE_CR || b == BYTE_LF) {
-                    _hadCR = (b == BYTE_CR);
-                    bytes.write(_inputBuffer, 0, _inputPtr-1);
-                    break main_loop;
-                }
+            final int lf = LinefeedScanner.indexOfLinefeed(_inputBuffer, 0, _inputEnd);
+            final int count = (lf < 0) ? _inputEnd : lf;
+            if (len + count > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(len + count, buffer.length << 1));
+            }
+            System.arraycopy(_inputBuffer, 0, buffer, len, count);
+            len += count;
+            if (lf >= 0) {
+                _hadCR = (_inputBuffer[lf] == BYTE_CR);
+                _inputPtr = lf+1;
+                break;
             }
-            bytes.write(_inputBuffer, 0, _inputEnd);
+            _inputPtr = _inputEnd;
         }
-        return bytes.toByteArray();
+        _tmpBuffer = buffer;
+        return Arrays.copyOf(buffer, len);
     }
 
     /*
@@ -176,5 +208,35 @@ public class RawTextLineReader
         public DataReader<byte[]> constructReader(InputStream in) {
             return new RawTextLineReader(in);
         }
-    }        
+
+        /**
+         * Lines can be split after any LF; for simplicity, CR-only linefeeds are not
+         * considered (which is still correct, but prevents splitting).
+         */
+        @Override
+        public long nextRecordStart(FileChannel channel, long position) throws IOException
+        {
+            if (position <= 0L) {
+                return 0L;
+            }
+            // Need to check preceding byte: if it is LF, position starts a line
+            final long size = channel.size();
+            ByteBuffer bb = ByteBuffer.allocate(8000);
+            long offset = position - 1;
+            while (offset < size) {
+                bb.clear();
+                int count = channel.read(bb, offset);
+                if (count <= 0) {
+                    break;
+                }
+                for (int i = 0; i < count; ++i) {
+                    if (bb.get(i) == BYTE_LF) {
+                        return offset + i + 1;
+                    }
+                }
+                offset += count;
+            }
+            return size;
+        }
+    }
 }
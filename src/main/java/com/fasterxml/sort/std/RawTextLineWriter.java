@@ -56,6 +56,12 @@ public class RawTextLineWriter
         }
     }
 
+    // nothing retained, everything written as is
+    @Override
+    public boolean canReuse() {
+        return true;
+    }
+
     @Override
     public void writeEntry(byte[] item) throws IOException
     {
@@ -68,6 +74,31 @@ public class RawTextLineWriter
         }
     }
 
+    /**
+     * Overridden to write entries in a tight loop; sub-classes (which may
+     * override {@link #writeEntry}) use the default implementation that
+     * calls {@link #writeEntry} for each entry.
+     */
+    @Override
+    public void writeBatch(Object[] src, int off, int len) throws IOException
+    {
+        if (getClass() != RawTextLineWriter.class) {
+            super.writeBatch(src, off, len);
+            return;
+        }
+        if (_closed) {
+            throw new IOException("Can not write using closed DataWriter");
+        }
+        final OutputStream out = _out;
+        final byte[] lf = _lf;
+        for (int i = off, end = off + len; i < end; ++i) {
+            out.write((byte[]) src[i]);
+            if (lf != null) {
+                out.write(lf);
+            }
+        }
+    }
+
     /*
     /**********************************************************************
     /* Helper classes
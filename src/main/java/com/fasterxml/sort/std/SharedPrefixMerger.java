@@ -0,0 +1,160 @@
+package com.fasterxml.sort.std;
+
+import java.io.IOException;
+import java.util.*;
+
+import com.fasterxml.sort.util.ByteArrays;
+
+/**
+ * Merger for sorted <code>byte[]</code> streams that uses shared prefix
+ * lengths of entries (see {@link SharedPrefixReader}) to avoid re-comparing
+ * bytes known to be equal: for each input it keeps track of the length of
+ * the prefix the current entry shares with the last entry merged, and
+ * often can determine ordering from these lengths alone, without looking
+ * at the entries. When it can not, comparison starts after the shared
+ * prefix.
+ *<p>
+ * Note that the merge order is the same as that of {@link ByteArrayComparator}
+ * (unsigned byte-by-byte comparison, shorter entry first if it is a prefix of
+ * the other), and the merger can only be used for entries sorted in that order.
+ * Merged output again knows its shared prefix lengths, so mergers can
+ * be combined into a tree.
+ *
+ * @since 1.1.1
+ */
+public class SharedPrefixMerger
+    extends SharedPrefixReader
+{
+    protected final SharedPrefixReader _reader1;
+    protected final SharedPrefixReader _reader2;
+
+    protected byte[] _data1;
+    protected byte[] _data2;
+
+    /**
+     * Length of prefix that {@link #_data1} shares with the last entry
+     * returned by this merger
+     */
+    protected int _shared1;
+
+    /**
+     * Length of prefix that {@link #_data2} shares with the last entry
+     * returned by this merger
+     */
+    protected int _shared2;
+
+    protected int _sharedPrefix;
+
+    protected boolean _closed;
+
+    public SharedPrefixMerger(SharedPrefixReader reader1, SharedPrefixReader reader2)
+        throws IOException
+    {
+        _reader1 = reader1;
+        _data1 = reader1.readNext();
+        _reader2 = reader2;
+        _data2 = reader2.readNext();
+        // nothing returned yet, so nothing shared
+        _shared1 = _shared2 = 0;
+    }
+
+    public static SharedPrefixReader mergedReader(List<? extends SharedPrefixReader> inputs)
+        throws IOException
+    {
+        switch (inputs.size()) {
+        case 0:
+            throw new IllegalArgumentException("Can not pass empty DataReader array");
+        case 1:
+            return inputs.get(0);
+        case 2:
+            return new SharedPrefixMerger(inputs.get(0), inputs.get(1));
+        }
+        // otherwise, divide and conquer, similar to Merger.mergedReader()
+        ArrayList<SharedPrefixReader> readers = new ArrayList<SharedPrefixReader>(1 + (inputs.size() >> 1));
+        int i = 0;
+        final int end = inputs.size()-1;
+        for (; i < end; i += 2) {
+            readers.add(new SharedPrefixMerger(inputs.get(i), inputs.get(i+1)));
+        }
+        if (i < inputs.size()) {
+            readers.add(inputs.get(i));
+        }
+        return mergedReader(readers);
+    }
+
+    @Override
+    public int sharedPrefixLength() {
+        return _sharedPrefix;
+    }
+
+    @Override
+    public byte[] readNext() throws IOException
+    {
+        final byte[] d1 = _data1;
+        final byte[] d2 = _data2;
+        if (d1 == null) {
+            if (d2 == null) {
+                close();
+                return null;
+            }
+            return _take2();
+        }
+        if (d2 == null) {
+            return _take1();
+        }
+        final int s1 = _shared1;
+        final int s2 = _shared2;
+        // Entry that shares longer prefix with the last entry is smaller;
+        // and the other one shares exactly the shorter prefix with it
+        if (s1 > s2) {
+            return _take1();
+        }
+        if (s2 > s1) {
+            return _take2();
+        }
+        // otherwise need to compare, but only after shared prefix
+        final int end = Math.min(d1.length, d2.length);
+        final int i = ByteArrays.mismatch(d1, d2, s1);
+        boolean firstSmaller;
+        if (i < end) {
+            firstSmaller = (d1[i] & 0xFF) < (d2[i] & 0xFF);
+        } else {
+            // for equal entries, take from the first input, same as Merger
+            firstSmaller = (d1.length <= d2.length);
+        }
+        if (firstSmaller) {
+            _shared2 = i;
+            return _take1();
+        }
+        _shared1 = i;
+        return _take2();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (!_closed) {
+            _reader1.close();
+            _reader2.close();
+            _closed = true;
+        }
+    }
+
+    private byte[] _take1() throws IOException
+    {
+        byte[] result = _data1;
+        _sharedPrefix = _shared1;
+        _data1 = _reader1.readNext();
+        _shared1 = _reader1.sharedPrefixLength();
+        return result;
+    }
+
+    private byte[] _take2() throws IOException
+    {
+        byte[] result = _data2;
+        _sharedPrefix = _shared2;
+        _data2 = _reader2.readNext();
+        _shared2 = _reader2.sharedPrefixLength();
+        return result;
+    }
+}
@@ -0,0 +1,31 @@
+package com.fasterxml.sort.std;
+
+import com.fasterxml.sort.DataReader;
+
+/**
+ * Base class for readers of sorted <code>byte[]</code> entries that know
+ * how long a prefix each entry shares with the entry returned before it.
+ * This information allows merging such streams with
+ * {@link SharedPrefixMerger} without re-comparing the shared prefixes.
+ *
+ * @since 1.1.1
+ */
+public abstract class SharedPrefixReader
+    extends DataReader<byte[]>
+{
+    /**
+     * Method for accessing length of the prefix that the entry returned by the
+     * last call to {@link #readNext} shares with the entry returned by the
+     * call before it (0 for the first entry).
+     */
+    public abstract int sharedPrefixLength();
+
+    @Override
+    public int estimateSizeInBytes(byte[] item)
+    {
+        // same as with RawTextLineReader
+        int bytes = item.length;
+        bytes = ((bytes + 3) >> 2) << 2;
+        return 16 + bytes;
+    }
+}
@@ -26,18 +26,43 @@ public class StdTempFileProvider
     
     protected final String _prefix;
     protected final String _suffix;
+
+    /**
+     * Whether files are to be marked for deletion on JVM exit, as a safety
+     * net in case they are not deleted otherwise. Note that every marked
+     * file is retained in memory until JVM exits.
+     *
+     * @since 1.1.1
+     */
+    protected final boolean _deleteOnExit;
     
     public StdTempFileProvider() { this(DEFAULT_PREFIX, DEFAULT_SUFFIX); }
     public StdTempFileProvider(String prefix, String suffix) {
+        this(prefix, suffix, true);
+    }
+
+    /**
+     * @param deleteOnExit Whether to mark files with {@link File#deleteOnExit()}:
+     *   usually not necessary since sorters delete files they no longer need;
+     *   and in long-running processes should not be used since the JDK
+     *   keeps track of all marked files until exit
+     *   (see also {@link ManagedTempFileProvider}).
+     *
+     * @since 1.1.1
+     */
+    public StdTempFileProvider(String prefix, String suffix, boolean deleteOnExit) {
         _prefix = prefix;
         _suffix = suffix;
+        _deleteOnExit = deleteOnExit;
     }
     
     @Override
     public File provide() throws IOException
     {
         File f = Files.createTempFile(_prefix, _suffix).toFile();
-        f.deleteOnExit();
+        if (_deleteOnExit) {
+            f.deleteOnExit();
+        }
         return f;
     }
 }
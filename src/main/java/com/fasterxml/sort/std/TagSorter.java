@@ -0,0 +1,484 @@
+package com.fasterxml.sort.std;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Function;
+
+import com.fasterxml.sort.*;
+import com.fasterxml.sort.util.ByteArrays;
+import com.fasterxml.sort.util.LinefeedScanner;
+
+/**
+ * Sorter for files of large text line records (such as line-delimited JSON
+ * documents) with small sort keys, using "tag sort": instead of sorting
+ * records themselves, only tags consisting of key, offset and length of record
+ * within input file are sorted, so that merge rounds only need to rewrite
+ * tags. Output is produced by reading records from input file in sorted order
+ * using positional reads.
+ *<p>
+ * To improve locality of these reads, sorted tags are processed in batches:
+ * records of a batch are read in the order of file offsets, and reads of records
+ * that are close to each other are coalesced.
+ *<p>
+ * Records with equal keys are output in the order they have in input.
+ * Sorting of tags is done by a {@link Sorter}, and configuration, progress
+ * tracking and cancellation work the same way.
+ *
+ * @since 1.1.1
+ */
+public class TagSorter
+    implements SortingState, Closeable
+{
+    /**
+     * Maximum number of records read in a single batch
+     */
+    protected final static int MAX_BATCH_RECORDS = 4096;
+
+    /**
+     * Maximum total length of records read in a single batch
+     */
+    protected final static int MAX_BATCH_BYTES = 1024 * 1024;
+
+    /**
+     * Maximum gap between two records for reads to be coalesced
+     */
+    protected final static int MAX_READ_GAP = 4096;
+
+    protected final Function<byte[],byte[]> _keyExtractor;
+
+    protected final Sorter<Tag> _sorter;
+
+    /**
+     * @param config Configuration for the sorter
+     * @param keyExtractor Function for extracting sort key of a record (line,
+     *   without linefeed); keys are compared as unsigned bytes
+     */
+    public TagSorter(SortConfig config, Function<byte[],byte[]> keyExtractor)
+    {
+        _keyExtractor = keyExtractor;
+        _sorter = new Sorter<Tag>(config, TagReader.factory(), TagWriter.factory(),
+                new TagComparator());
+    }
+
+    /*
+    /**********************************************************************
+    /* Main sorting API
+    /**********************************************************************
+     */
+
+    /**
+     * Method that will sort records of given file, writing them as lines
+     * (with LF linefeeds) into specified destination.
+     */
+    public void sort(Path input, OutputStream destination)
+        throws IOException
+    {
+        sort(input, RawTextLineWriter.factory().constructWriter(destination));
+    }
+
+    /**
+     * Method that will sort records of given file, writing them using
+     * specified {@link DataWriter}.
+     *
+     * @return true if sorting completed successfully; false if it was cancelled
+     */
+    public boolean sort(Path input, DataWriter<byte[]> resultWriter)
+        throws IOException
+    {
+        Iterator<Tag> tags = _sorter.sort(new LineTagReader(
+                new FileInputStream(input.toFile()), _keyExtractor));
+        if (tags == null) {
+            return false;
+        }
+        boolean success = false;
+        try (FileChannel ch = FileChannel.open(input, StandardOpenOption.READ)) {
+            _writeRecords(ch, tags, resultWriter);
+            resultWriter.close();
+            success = true;
+        } catch (IterableSorterException e) {
+            throw (IOException) e.getCause();
+        } finally {
+            _sorter.close();
+            if (!success) {
+                try { resultWriter.close(); } catch (IOException e) { }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Accessor for the underlying sorter, which sorts {@link Tag}s.
+     */
+    public Sorter<Tag> getSorter() {
+        return _sorter;
+    }
+
+    @Override
+    public void close() {
+        _sorter.close();
+    }
+
+    /*
+    /**********************************************************************
+    /* SortingState implementation
+    /**********************************************************************
+     */
+
+    @Override
+    public Phase getPhase() { return _sorter.getPhase(); }
+
+    @Override
+    public boolean isPreSorting() { return _sorter.isPreSorting(); }
+
+    @Override
+    public boolean isSorting() { return _sorter.isSorting(); }
+
+    @Override
+    public boolean isCompleted() { return _sorter.isCompleted(); }
+
+    @Override
+    public int getNumberOfPreSortFiles() { return _sorter.getNumberOfPreSortFiles(); }
+
+    @Override
+    public int getSortRound() { return _sorter.getSortRound(); }
+
+    @Override
+    public int getNumberOfSortRounds() { return _sorter.getNumberOfSortRounds(); }
+
+    @Override
+    public void cancel() { _sorter.cancel(); }
+
+    @Override
+    public void cancel(RuntimeException e) { _sorter.cancel(e); }
+
+    @Override
+    public void cancel(IOException e) { _sorter.cancel(e); }
+
+    /*
+    /**********************************************************************
+    /* Internal methods, output
+    /**********************************************************************
+     */
+
+    protected void _writeRecords(FileChannel ch, Iterator<Tag> tags, DataWriter<byte[]> out)
+        throws IOException
+    {
+        final Tag[] batch = new Tag[MAX_BATCH_RECORDS];
+        final Tag[] byOffset = new Tag[MAX_BATCH_RECORDS];
+        while (tags.hasNext()) {
+            int count = 0;
+            long bytes = 0L;
+            do {
+                Tag tag = tags.next();
+                batch[count++] = tag;
+                bytes += tag._length;
+            } while (count < MAX_BATCH_RECORDS && bytes < MAX_BATCH_BYTES && tags.hasNext());
+
+            System.arraycopy(batch, 0, byOffset, 0, count);
+            Arrays.sort(byOffset, 0, count, OFFSET_COMPARATOR);
+            _readRecords(ch, byOffset, count);
+            for (int i = 0; i < count; ++i) {
+                out.writeEntry(batch[i]._record);
+                batch[i] = null;
+                byOffset[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Method for reading records for given tags, which are in ascending
+     * order of offsets; records that are close to each other are read
+     * using a single read.
+     */
+    protected void _readRecords(FileChannel ch, Tag[] tags, int count)
+        throws IOException
+    {
+        int i = 0;
+        while (i < count) {
+            final long start = tags[i]._offset;
+            long end = start + tags[i]._length;
+            int last = i;
+            while (last + 1 < count && (tags[last+1]._offset - end) <= MAX_READ_GAP
+                    && (tags[last+1]._offset + tags[last+1]._length - start) <= MAX_BATCH_BYTES) {
+                ++last;
+                end = Math.max(end, tags[last]._offset + tags[last]._length);
+            }
+            byte[] chunk = new byte[(int) (end - start)];
+            ByteBuffer bb = ByteBuffer.wrap(chunk);
+            while (bb.hasRemaining()) {
+                if (ch.read(bb, start + bb.position()) < 0) {
+                    throw new EOFException("Unexpected end of input file at offset "
+                            +(start + bb.position())+": was it modified during sorting?");
+                }
+            }
+            for (; i <= last; ++i) {
+                Tag tag = tags[i];
+                int from = (int) (tag._offset - start);
+                tag._record = Arrays.copyOfRange(chunk, from, from + tag._length);
+            }
+        }
+    }
+
+    protected final static Comparator<Tag> OFFSET_COMPARATOR = new Comparator<Tag>() {
+        @Override
+        public int compare(Tag t1, Tag t2) {
+            return Long.compare(t1._offset, t2._offset);
+        }
+    };
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Sort key of a record, along with its location in the input file
+     */
+    public static class Tag
+    {
+        protected final byte[] _key;
+        protected final long _offset;
+        protected final int _length;
+
+        /**
+         * Contents of the record, once read for output
+         */
+        protected byte[] _record;
+
+        public Tag(byte[] key, long offset, int length) {
+            _key = key;
+            _offset = offset;
+            _length = length;
+        }
+
+        public byte[] getKey() { return _key; }
+        public long getOffset() { return _offset; }
+        public int getLength() { return _length; }
+    }
+
+    /**
+     * Tags are ordered by keys, and tags with equal keys by offset, so that
+     * input order of records is retained.
+     */
+    public static class TagComparator implements Comparator<Tag>
+    {
+        @Override
+        public int compare(Tag t1, Tag t2) {
+            int diff = ByteArrays.compareUnsigned(t1._key, t2._key);
+            return (diff != 0) ? diff : Long.compare(t1._offset, t2._offset);
+        }
+    }
+
+    /**
+     * Reader that reads text lines (terminated by CR, LF or CRLF, as with
+     * {@link RawTextLineReader}) of input, and produces tags for them.
+     */
+    protected static class LineTagReader extends DataReader<Tag>
+    {
+        protected final InputStream _in;
+        protected final Function<byte[],byte[]> _keyExtractor;
+
+        protected byte[] _buffer = new byte[64000];
+        protected int _ptr, _end;
+
+        /**
+         * Offset of the first byte of buffer within input
+         */
+        protected long _bufferOffset;
+
+        /**
+         * Whether an LF that follows CR is to be skipped
+         */
+        protected boolean _skipLF;
+
+        protected boolean _eof;
+
+        public LineTagReader(InputStream in, Function<byte[],byte[]> keyExtractor) {
+            _in = in;
+            _keyExtractor = keyExtractor;
+        }
+
+        @Override
+        public Tag readNext() throws IOException
+        {
+            if (_skipLF) {
+                if (_ptr < _end || _loadMore()) {
+                    if (_buffer[_ptr] == '\n') {
+                        ++_ptr;
+                    }
+                }
+                _skipLF = false;
+            }
+            int searchFrom = _ptr;
+            while (true) {
+                int ix = LinefeedScanner.indexOfLinefeed(_buffer, searchFrom, _end);
+                if (ix >= 0) {
+                    Tag tag = _tag(ix);
+                    if (_buffer[ix] == '\r') {
+                        if (ix + 1 < _end) {
+                            if (_buffer[ix+1] == '\n') {
+                                ++ix;
+                            }
+                        } else {
+                            _skipLF = true;
+                        }
+                    }
+                    _ptr = ix + 1;
+                    return tag;
+                }
+                searchFrom = _end - _ptr;
+                if (!_loadMore()) {
+                    if (_ptr < _end) {
+                        Tag tag = _tag(_end);
+                        _ptr = _end;
+                        return tag;
+                    }
+                    return null;
+                }
+            }
+        }
+
+        @Override
+        public int estimateSizeInBytes(Tag item) {
+            return 48 + item._key.length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _in.close();
+        }
+
+        protected Tag _tag(int end) {
+            byte[] line = Arrays.copyOfRange(_buffer, _ptr, end);
+            return new Tag(_keyExtractor.apply(line), _bufferOffset + _ptr, end - _ptr);
+        }
+
+        /**
+         * Method that moves unprocessed content to the beginning of the buffer
+         * (growing it if necessary) and reads more content after it.
+         *
+         * @return True if more content was read; false if at end of input
+         */
+        protected boolean _loadMore() throws IOException
+        {
+            if (_eof) {
+                return false;
+            }
+            final int remaining = _end - _ptr;
+            if (_ptr > 0) {
+                System.arraycopy(_buffer, _ptr, _buffer, 0, remaining);
+                _bufferOffset += _ptr;
+            } else if (remaining == _buffer.length) {
+                _buffer = Arrays.copyOf(_buffer, _buffer.length << 1);
+            }
+            _ptr = 0;
+            _end = remaining;
+            int count = _in.read(_buffer, _end, _buffer.length - _end);
+            if (count < 0) {
+                _eof = true;
+                return false;
+            }
+            _end += count;
+            return true;
+        }
+    }
+
+    /**
+     * Reader for tags stored in sorted runs
+     */
+    public static class TagReader extends DataReader<Tag>
+    {
+        protected final DataInputStream _in;
+
+        public TagReader(InputStream in) {
+            _in = new DataInputStream(new BufferedInputStream(in));
+        }
+
+        public static DataReaderFactory<Tag> factory() {
+            return new DataReaderFactory<Tag>() {
+                @Override
+                public DataReader<Tag> constructReader(InputStream in) {
+                    return new TagReader(in);
+                }
+            };
+        }
+
+        @Override
+        public Tag readNext() throws IOException
+        {
+            int keyLength = _in.read();
+            if (keyLength < 0) {
+                return null;
+            }
+            // key length as 1 or 4 bytes
+            if (keyLength == 0xFF) {
+                keyLength = _in.readInt();
+            }
+            byte[] key = new byte[keyLength];
+            _in.readFully(key);
+            long offset = _in.readLong();
+            return new Tag(key, offset, _in.readInt());
+        }
+
+        @Override
+        public int estimateSizeInBytes(Tag item) {
+            return 48 + item._key.length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _in.close();
+        }
+    }
+
+    /**
+     * Writer for tags stored in sorted runs
+     */
+    public static class TagWriter extends DataWriter<Tag>
+    {
+        protected final DataOutputStream _out;
+
+        public TagWriter(OutputStream out) {
+            _out = new DataOutputStream(new BufferedOutputStream(out));
+        }
+
+        public static DataWriterFactory<Tag> factory() {
+            return new DataWriterFactory<Tag>() {
+                @Override
+                public DataWriter<Tag> constructWriter(OutputStream out) {
+                    return new TagWriter(out);
+                }
+            };
+        }
+
+        @Override
+        public void writeEntry(Tag item) throws IOException
+        {
+            final int keyLength = item._key.length;
+            if (keyLength < 0xFF) {
+                _out.write(keyLength);
+            } else {
+                _out.write(0xFF);
+                _out.writeInt(keyLength);
+            }
+            _out.write(item._key);
+            _out.writeLong(item._offset);
+            _out.writeInt(item._length);
+        }
+
+        @Override
+        public boolean canReuse() {
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _out.close();
+        }
+    }
+}
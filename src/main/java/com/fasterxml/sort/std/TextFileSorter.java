@@ -1,6 +1,7 @@
 package com.fasterxml.sort.std;
 
 import java.io.*;
+import java.util.*;
 
 import com.fasterxml.sort.*;
 
@@ -20,16 +21,107 @@ public class TextFileSorter extends Sorter<byte[]>
      * (if invoked from CLI)
      */
     public final static long MIN_HEAP_FOR_PRESORT = 10L * 1024 * 1024;
-    
+
+    /**
+     * Whether intermediate files use prefix-compressed format
+     *
+     * @since 1.1.1
+     */
+    protected final boolean _prefixCompressRuns;
+
+    /**
+     * Specification of sort keys, if lines are not to be sorted as is;
+     * null if they are
+     *
+     * @since 1.1.1
+     */
+    protected final LineKeySpec _keySpec;
+
     public TextFileSorter() {
         this(new SortConfig());
     }
     
     public TextFileSorter(SortConfig config)
+    {
+        this(config, false);
+    }
+
+    /**
+     * @param config Configuration for the sorter
+     * @param prefixCompressRuns Whether intermediate sort files should be written
+     *   using prefix compression (see {@link PrefixCompressedWriter}) instead of
+     *   as plain text lines. This typically reduces size of the files a lot,
+     *   and speeds up merging as well, since shared prefixes need not be compared.
+     *   Input and output are text lines either way.
+     *
+     * @since 1.1.1
+     */
+    public TextFileSorter(SortConfig config, boolean prefixCompressRuns)
+    {
+        this(config, prefixCompressRuns, null);
+    }
+
+    /**
+     * @param config Configuration for the sorter
+     * @param prefixCompressRuns Whether intermediate sort files should be written
+     *   using prefix compression; ignored if keys are specified, since encoded
+     *   lines may contain any bytes (including linefeeds), and are always written
+     *   using prefix compression
+     * @param keySpec Specification of keys to sort lines by, if any (null to
+     *   sort by whole lines). Keys are extracted as lines are read, and stored in
+     *   intermediate sort files: this means that entries that {@link DataReader}s and
+     *   {@link DataWriter}s passed to this sorter deal with are encoded lines
+     *   (see {@link LineKeySpec#encodingReader} and {@link LineKeySpec#decodingWriter});
+     *   methods that take streams or files handle encoding automatically.
+     *
+     * @since 1.1.1
+     */
+    public TextFileSorter(SortConfig config, boolean prefixCompressRuns, LineKeySpec keySpec)
     {
         super(config,
-                RawTextLineReader.factory(), RawTextLineWriter.factory(),
+                _compressRuns(prefixCompressRuns, keySpec) ? PrefixCompressedReader.factory() : RawTextLineReader.factory(),
+                _compressRuns(prefixCompressRuns, keySpec) ? PrefixCompressedWriter.factory() : RawTextLineWriter.factory(),
                 new ByteArrayComparator());
+        _prefixCompressRuns = _compressRuns(prefixCompressRuns, keySpec);
+        _keySpec = (keySpec == null || !keySpec.hasKeys()) ? null : keySpec;
+    }
+
+    // encoded lines need length-prefixed format, as they may contain linefeeds
+    private static boolean _compressRuns(boolean prefixCompressRuns, LineKeySpec keySpec) {
+        return prefixCompressRuns || (keySpec != null && keySpec.hasKeys());
+    }
+
+    /*
+    /********************************************************************** 
+    /* Sorting
+    /********************************************************************** 
+     */
+
+    // input is always text lines, regardless of intermediate format (but may need encoding)
+    @Override
+    protected DataReaderFactory<byte[]> _inputReaderFactory() {
+        DataReaderFactory<byte[]> f = _prefixCompressRuns ? RawTextLineReader.factory() : _readerFactory;
+        return (_keySpec == null) ? f : _keySpec.encodingReaderFactory(f);
+    }
+
+    // as is output
+    @Override
+    protected DataWriterFactory<byte[]> _resultWriterFactory() {
+        DataWriterFactory<byte[]> f = _prefixCompressRuns ? RawTextLineWriter.factory() : _writerFactory;
+        return (_keySpec == null) ? f : _keySpec.decodingWriterFactory(f);
+    }
+
+    @Override
+    protected DataReader<byte[]> _createMergeReader(List<File> inputs) throws IOException
+    {
+        if (!_prefixCompressRuns) {
+            return super._createMergeReader(inputs);
+        }
+        ArrayList<SharedPrefixReader> readers = new ArrayList<SharedPrefixReader>(inputs.size());
+        for (File mergedInput : inputs) {
+            readers.add(new PrefixCompressedReader(_openRunInput(mergedInput)));
+        }
+        return SharedPrefixMerger.mergedReader(readers);
     }
 
     /*
@@ -41,8 +133,38 @@ public class TextFileSorter extends Sorter<byte[]>
     
     public static void main(String[] args) throws Exception
     {
-        if (args.length > 1) {
-            System.err.println("Usage: java "+TextFileSorter.class.getName()+" [input-file]");
+        LineKeySpec keySpec = new LineKeySpec();
+        String inputName = null;
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                String arg = args[i];
+                if (arg.equals("-n")) {
+                    keySpec = keySpec.withNumeric(true);
+                } else if (arg.equals("-r")) {
+                    keySpec = keySpec.withReverse(true);
+                } else if (arg.equals("-f")) {
+                    keySpec = keySpec.withIgnoreCase(true);
+                } else if (arg.startsWith("-t") || arg.startsWith("-k")) {
+                    String value = (arg.length() > 2) ? arg.substring(2)
+                            : ((++i < args.length) ? args[i] : "");
+                    if (arg.startsWith("-t")) {
+                        if (value.length() != 1) {
+                            throw new IllegalArgumentException("Separator has to be a single character");
+                        }
+                        keySpec = keySpec.withSeparator(value.charAt(0));
+                    } else {
+                        keySpec = keySpec.withKey(value);
+                    }
+                } else if (arg.startsWith("-") || inputName != null) {
+                    throw new IllegalArgumentException("Unrecognized argument '"+arg+"'");
+                } else {
+                    inputName = arg;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid arguments: "+e.getMessage());
+            System.err.println("Usage: java "+TextFileSorter.class.getName()
+                    +" [-t SEP] [-k F1[,F2][nrf]]... [-n] [-r] [-f] [input-file]");
             System.err.println("(where input-file is optional; if missing, read from STDIN)");
             System.exit(1);
         }
@@ -56,18 +178,15 @@ public class TextFileSorter extends Sorter<byte[]>
         } else if (maxMem < MIN_HEAP_FOR_PRESORT) {
             maxMem = MIN_HEAP_FOR_PRESORT;
         }
-        final TextFileSorter sorter = new TextFileSorter(new SortConfig().withMaxMemoryUsage(maxMem));
-        final InputStream in;
+        final TextFileSorter sorter = new TextFileSorter(new SortConfig().withMaxMemoryUsage(maxMem), true, keySpec);
+        File input = null;
         
-        if (args.length == 0) {
-            in = System.in;
-        } else {
-            File input = new File(args[0]);
+        if (inputName != null) {
+            input = new File(inputName);
             if (!input.exists() || input.isDirectory()) {
                 System.err.println("File '"+input.getAbsolutePath()+"' does not exist (or is not file)");
                 System.exit(2);
             }
-            in = new FileInputStream(input);
         }
 
         // To be able to print out progress, need to spin one additional thread...
@@ -93,7 +212,12 @@ public class TextFileSorter extends Sorter<byte[]>
                 }
             } 
         }).start();
-        sorter.sort(in, System.out);
+        // files can be pre-sorted in parallel; standard input not
+        if (input == null) {
+            sorter.sort(System.in, System.out);
+        } else {
+            sorter.sort(input.toPath(), System.out);
+        }
         sorter.close();
     }
 }
@@ -0,0 +1,57 @@
+package com.fasterxml.sort.util;
+
+/**
+ * Helper methods for comparing byte arrays as sequences of unsigned bytes.
+ *<p>
+ * This is the baseline (Java 8) implementation, which compares one byte at
+ * a time. On Java 9 and above, a multi-release jar variant of this class is
+ * used instead, which delegates to <code>Arrays.compareUnsigned()</code> and
+ * <code>Arrays.mismatch()</code>: JVM intrinsics that compare multiple bytes
+ * at a time.
+ *
+ * @since 1.1.1
+ */
+public final class ByteArrays
+{
+    private ByteArrays() { }
+
+    /**
+     * Method for comparing given arrays lexicographically, as unsigned bytes:
+     * if one array is a prefix of the other, the shorter one is smaller.
+     *
+     * @return Difference of the first differing bytes (as unsigned values);
+     *   or, if there is none, difference of array lengths
+     */
+    public static int compareUnsigned(byte[] b1, byte[] b2)
+    {
+        final int len = Math.min(b1.length, b2.length);
+        for (int i = 0; i < len; ++i) {
+            // alas, sign extension means we must do masking...
+            int diff = (b1[i] & 0xFF) - (b2[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return b1.length - b2.length;
+    }
+
+    /**
+     * Method for finding the first index (at or after given offset) at which
+     * given arrays differ.
+     *
+     * @param from Offset to start comparison from; must not be greater than
+     *   length of either array
+     *
+     * @return Index of the first differing byte; or length of the shorter
+     *    array if there is none
+     */
+    public static int mismatch(byte[] b1, byte[] b2, int from)
+    {
+        final int end = Math.min(b1.length, b2.length);
+        int i = from;
+        while (i < end && b1[i] == b2[i]) {
+            ++i;
+        }
+        return i;
+    }
+}
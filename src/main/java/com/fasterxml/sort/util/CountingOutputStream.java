@@ -0,0 +1,36 @@
+package com.fasterxml.sort.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@link FilterOutputStream} that keeps track of number of bytes written
+ * through it.
+ *
+ * @since 1.1.1
+ */
+public class CountingOutputStream extends FilterOutputStream
+{
+    protected long _count;
+
+    public CountingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    public long getCount() { return _count; }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        out.write(b);
+        ++_count;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        out.write(b, off, len);
+        _count += len;
+    }
+}
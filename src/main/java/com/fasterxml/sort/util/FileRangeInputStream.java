@@ -0,0 +1,88 @@
+package com.fasterxml.sort.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link InputStream} implementation that reads a range of a file using
+ * positional reads of a shared {@link FileChannel}: this allows multiple
+ * threads to read different parts of the same file concurrently.
+ * Note that closing the stream does NOT close the channel.
+ *
+ * @since 1.1.1
+ */
+public class FileRangeInputStream extends InputStream
+{
+    protected final FileChannel _channel;
+
+    protected final long _end;
+
+    protected long _position;
+
+    protected ByteBuffer _single;
+
+    /**
+     * @param channel Channel to read from
+     * @param start Offset of the first byte to read
+     * @param end Offset after the last byte to read
+     */
+    public FileRangeInputStream(FileChannel channel, long start, long end)
+    {
+        _channel = channel;
+        _position = start;
+        _end = end;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if (_single == null) {
+            _single = ByteBuffer.allocate(1);
+        }
+        _single.clear();
+        int count = read(_single);
+        return (count <= 0) ? -1 : (_single.get(0) & 0xFF);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0) {
+            return 0;
+        }
+        return read(ByteBuffer.wrap(b, off, len));
+    }
+
+    protected int read(ByteBuffer bb) throws IOException
+    {
+        long left = _end - _position;
+        if (left <= 0L) {
+            return -1;
+        }
+        if (bb.remaining() > left) {
+            bb.limit(bb.position() + (int) left);
+        }
+        int count = _channel.read(bb, _position);
+        if (count < 0) { // file truncated?
+            _position = _end;
+            return -1;
+        }
+        _position += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n)
+    {
+        long count = Math.max(0L, Math.min(n, _end - _position));
+        _position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0L, _end - _position));
+    }
+}
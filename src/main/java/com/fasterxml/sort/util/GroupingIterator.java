@@ -0,0 +1,140 @@
+package com.fasterxml.sort.util;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator over groups of consecutive items that are equal according to given
+ * comparator, from sorted input: each group is returned as an {@link Iterator}
+ * that is consumed lazily, so groups need not fit in memory.
+ * Comparator may be coarser than the one input is sorted by (for example,
+ * comparing just a prefix of the sort key), as long as input order is consistent
+ * with it.
+ *<p>
+ * Each item is compared once, against the first item of its group.
+ * Moving to the next group skips whatever remains unconsumed of the current one;
+ * after that, iterator of the previous group has no more items.
+ *
+ * @since 1.1.1
+ */
+public class GroupingIterator<T> implements Iterator<Iterator<T>>
+{
+    protected final Iterator<T> _source;
+
+    protected final Comparator<? super T> _comparator;
+
+    /**
+     * Next item of input not yet returned, if {@link #_hasLookahead}
+     */
+    protected T _lookahead;
+
+    protected boolean _hasLookahead;
+
+    /**
+     * Group most recently returned, if any
+     */
+    protected Group _current;
+
+    public GroupingIterator(Iterator<T> sortedInput, Comparator<? super T> groupComparator)
+    {
+        _source = sortedInput;
+        _comparator = groupComparator;
+        _advance();
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if (_current != null) {
+            _current._skipRest();
+            _current = null;
+        }
+        return _hasLookahead;
+    }
+
+    @Override
+    public Iterator<T> next()
+    {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        _current = new Group(_lookahead);
+        return _current;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    protected void _advance()
+    {
+        _hasLookahead = _source.hasNext();
+        _lookahead = _hasLookahead ? _source.next() : null;
+    }
+
+    /**
+     * Iterator over items of a single group
+     */
+    protected class Group implements Iterator<T>
+    {
+        /**
+         * First item of the group, against which others are compared
+         */
+        protected final T _first;
+
+        /**
+         * Whether lookahead item is known to belong to this group
+         */
+        protected boolean _lookaheadInGroup = true;
+
+        protected boolean _ended;
+
+        public Group(T first) {
+            _first = first;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            if (_ended) {
+                return false;
+            }
+            if (!_lookaheadInGroup) {
+                if (!_hasLookahead || _current != this
+                        || _comparator.compare(_first, _lookahead) != 0) {
+                    _ended = true;
+                    return false;
+                }
+                _lookaheadInGroup = true;
+            }
+            return true;
+        }
+
+        @Override
+        public T next()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T value = _lookahead;
+            _advance();
+            _lookaheadInGroup = false;
+            return value;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        protected void _skipRest()
+        {
+            while (hasNext()) {
+                next();
+            }
+            _ended = true;
+        }
+    }
+}
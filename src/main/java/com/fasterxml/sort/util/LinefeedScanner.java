@@ -0,0 +1,68 @@
+package com.fasterxml.sort.util;
+
+/**
+ * Helper class for finding linefeeds (CR or LF) in byte buffers.
+ *<p>
+ * This is the baseline (Java 8) implementation, which checks 8 bytes at a time
+ * using "SIMD within a register" bit manipulation, on a <code>long</code>
+ * assembled from individual bytes (Java 8 has no way to read multiple bytes of
+ * a <code>byte[]</code> at once). On Java 9 and above, a multi-release jar
+ * variant of this class is used instead, which reads the <code>long</code>
+ * directly.
+ *
+ * @since 1.1.1
+ */
+public final class LinefeedScanner
+{
+    private final static long CRS = 0x0D0D0D0D0D0D0D0DL;
+    private final static long LFS = 0x0A0A0A0A0A0A0A0AL;
+    private final static long LOW_7_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    private LinefeedScanner() { }
+
+    /**
+     * @return Index of the first CR or LF byte within given range of the buffer;
+     *    or -1 if there is none
+     */
+    public static int indexOfLinefeed(byte[] buffer, int start, int end)
+    {
+        int i = start;
+        for (final int last = end - 8; i <= last; i += 8) {
+            final long word = _littleEndianLong(buffer, i);
+            final long found = _zeroBytes(word ^ CRS) | _zeroBytes(word ^ LFS);
+            if (found != 0L) {
+                // little-endian, so the lowest marker is the first match
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < end; ++i) {
+            final byte b = buffer[i];
+            if (b == '\n' || b == '\r') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long _littleEndianLong(byte[] b, int offset)
+    {
+        return (b[offset] & 0xFFL)
+                | ((b[offset+1] & 0xFFL) << 8)
+                | ((b[offset+2] & 0xFFL) << 16)
+                | ((b[offset+3] & 0xFFL) << 24)
+                | ((b[offset+4] & 0xFFL) << 32)
+                | ((b[offset+5] & 0xFFL) << 40)
+                | ((b[offset+6] & 0xFFL) << 48)
+                | ((long) b[offset+7] << 56);
+    }
+
+    /**
+     * @return Value with the high bit set for each zero byte of the given
+     *   value (and no other bits set); exact, unlike the shorter variants that
+     *   may report false positives above the first zero byte
+     */
+    private static long _zeroBytes(long v)
+    {
+        return ~(((v & LOW_7_BITS) + LOW_7_BITS) | v | LOW_7_BITS);
+    }
+}
@@ -0,0 +1,643 @@
+package com.fasterxml.sort.util;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.fasterxml.sort.TempFileProvider;
+
+/**
+ * Bounded in-memory store for sorted runs, used as the first tier for
+ * intermediate sort files: run contents are kept as blocks compressed using
+ * fast Deflate compression, keyed by a {@link File}. When the pool fills up,
+ * complete runs are moved to disk (oldest or largest first, see {@link Eviction});
+ * and if that does not free enough space, run being written overflows to disk
+ * directly. Reads are transparent: caller gets a stream either from the pool or,
+ * if run is no longer pooled, should read the file given by {@link #getFile}.
+ *<p>
+ * If pool has a {@link TempFileProvider}, keys are just names (see {@link #createRunKey}),
+ * and files are only created by the provider when runs are moved to disk;
+ * otherwise keys are the files that runs are moved to.
+ *<p>
+ * Instances are thread-safe.
+ *
+ * @since 1.1.1
+ */
+public class MemoryRunPool
+{
+    /**
+     * Strategies for choosing which run to move to disk when pool is full
+     */
+    public enum Eviction {
+        /**
+         * Move the run that was completed first
+         */
+        OLDEST_FIRST,
+
+        /**
+         * Move the run that takes most space in pool
+         */
+        LARGEST_FIRST
+    }
+
+    /**
+     * Amount of uncompressed content compressed as one block
+     */
+    protected final static int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * Approximate per-block overhead, included in pool usage calculations
+     */
+    protected final static int BLOCK_OVERHEAD = 32;
+
+    protected final long _maxBytes;
+
+    protected final Eviction _eviction;
+
+    /**
+     * Pooled runs, in the order of creation
+     */
+    protected final LinkedHashMap<File, Run> _runs = new LinkedHashMap<File, Run>();
+
+    /**
+     * Provider used for opening files that runs are moved to, if any
+     */
+    protected final TempFileProvider _fileProvider;
+
+    /**
+     * Files of runs that have been moved to disk, by run key
+     */
+    protected final Map<File, File> _diskFiles = new HashMap<File, File>();
+
+    protected long _usedBytes;
+
+    protected int _keyCount;
+
+    public MemoryRunPool(long maxBytes, Eviction eviction) {
+        this(maxBytes, eviction, null);
+    }
+
+    /**
+     * @param fileProvider Provider used for creating files for runs moved to disk,
+     *   and for writing and releasing them; if null, runs are written
+     *   directly into files given as their keys
+     */
+    public MemoryRunPool(long maxBytes, Eviction eviction, TempFileProvider fileProvider)
+    {
+        _maxBytes = maxBytes;
+        _eviction = (eviction == null) ? Eviction.OLDEST_FIRST : eviction;
+        _fileProvider = fileProvider;
+    }
+
+    /*
+    /**********************************************************************
+    /* Public API
+    /**********************************************************************
+     */
+
+    public long getMaxBytes() { return _maxBytes; }
+
+    /**
+     * @return Number of (compressed) bytes currently held in pool
+     */
+    public synchronized long getUsedBytes() { return _usedBytes; }
+
+    /**
+     * @return True if contents of the run for given key are held in this pool
+     */
+    public synchronized boolean contains(File f) { return _runs.containsKey(f); }
+
+    /**
+     * @return File that contents of the run with given key were moved to; or
+     *    null if run is held in pool (or not known)
+     */
+    public synchronized File getFile(File key) { return _diskFiles.get(key); }
+
+    /**
+     * Method for creating a key for a new run. Key is a synthetic name, and
+     * no file is created for it: run is stored in a file created by the
+     * {@link TempFileProvider} of this pool, only if it is moved to disk.
+     */
+    public synchronized File createRunKey() {
+        return new File("pooled-run-"+Integer.toHexString(System.identityHashCode(this))
+                +"-"+(++_keyCount));
+    }
+
+    /**
+     * Method for opening an output stream for writing a run with given key;
+     * contents are kept in pool as long as there is space, and moved to disk
+     * otherwise.
+     */
+    public OutputStream openOutput(File f) throws IOException
+    {
+        Run run = new Run(f, _fileProvider);
+        synchronized (this) {
+            Run old = _runs.put(f, run);
+            if (old != null) {
+                _release(old);
+            }
+            _releaseFile(_diskFiles.remove(f));
+        }
+        return new PoolOutputStream(run);
+    }
+
+    /**
+     * Method for opening an input stream for reading contents of a run
+     * from pool.
+     *
+     * @return Stream for reading run contents, if run is held in this pool;
+     *    null if not (in which case caller should read the file)
+     */
+    public InputStream openInput(File f)
+    {
+        Run run;
+        synchronized (this) {
+            run = _runs.get(f);
+            if (run == null) {
+                return null;
+            }
+            run._readers++;
+        }
+        return new PoolInputStream(run);
+    }
+
+    /**
+     * Method for removing contents of given run from pool, if held; or, if run
+     * was moved to disk, releasing its file.
+     *
+     * @return True if run was held in this pool or moved to disk by it; false if not
+     */
+    public synchronized boolean release(File f)
+    {
+        Run run = _runs.remove(f);
+        if (run != null) {
+            _release(run);
+        }
+        File file = _diskFiles.remove(f);
+        _releaseFile(file);
+        return (run != null) || (file != null);
+    }
+
+    /**
+     * Method for releasing all pooled runs, as well as files of runs
+     * moved to disk
+     */
+    public synchronized void clear()
+    {
+        for (Run run : _runs.values()) {
+            _release(run);
+        }
+        _runs.clear();
+        for (File file : _diskFiles.values()) {
+            _releaseFile(file);
+        }
+        _diskFiles.clear();
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods, space management
+    /**********************************************************************
+     */
+
+    /**
+     * Method called to reserve space for a block of given run, evicting other runs
+     * if necessary. Victims are chosen while holding the lock, but written to
+     * disk without it, so that other writers and readers are not blocked
+     * during eviction; a victim stays in pool (and readable) until its file
+     * is complete, and if writing fails, it is left in pool as is.
+     *
+     * @return True if space was reserved; false if not (and run must be
+     *    moved to disk)
+     */
+    protected boolean _reserve(Run forRun, int bytes) throws IOException
+    {
+        while (true) {
+            Run victim;
+            List<Block> blocks;
+            synchronized (this) {
+                if (_usedBytes + bytes <= _maxBytes) {
+                    _usedBytes += bytes;
+                    forRun._pooledBytes += bytes;
+                    return true;
+                }
+                victim = _findVictim(forRun);
+                if (victim == null) {
+                    return false;
+                }
+                victim._evicting = true;
+                blocks = new ArrayList<Block>(victim._blocks);
+            }
+            boolean ok = false;
+            try {
+                victim.moveToDisk(blocks);
+                ok = true;
+            } catch (IOException e) {
+                synchronized (this) {
+                    // failure does not matter if run was released meanwhile
+                    if (_runs.get(victim._file) == victim) {
+                        throw e;
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    victim._evicting = false;
+                    if (_runs.get(victim._file) == victim) {
+                        if (ok) {
+                            _runs.remove(victim._file);
+                            _release(victim);
+                            _diskFiles.put(victim._file, victim._diskFile);
+                        }
+                    } else if (ok) { // released while being written: file no longer needed
+                        _releaseFile(victim._diskFile);
+                    }
+                }
+            }
+        }
+    }
+
+    protected Run _findVictim(Run forRun)
+    {
+        Run best = null;
+        for (Run run : _runs.values()) {
+            // can only move complete runs that are not being read
+            if (run == forRun || !run._complete || run._readers > 0 || run._evicting) {
+                continue;
+            }
+            if (_eviction == Eviction.OLDEST_FIRST) {
+                return run;
+            }
+            if (best == null || run._pooledBytes > best._pooledBytes) {
+                best = run;
+            }
+        }
+        return best;
+    }
+
+    protected void _release(Run run) {
+        _usedBytes -= run._pooledBytes;
+        run._pooledBytes = 0;
+        run._blocks.clear();
+    }
+
+    /**
+     * Method for releasing file of a run moved to disk, if any
+     */
+    protected void _releaseFile(File file)
+    {
+        if (file != null) {
+            if (_fileProvider == null) {
+                file.delete();
+            } else {
+                _fileProvider.release(file);
+            }
+        }
+    }
+
+    protected synchronized void _readerClosed(Run run) {
+        --run._readers;
+    }
+
+    protected synchronized void _completed(Run run) {
+        run._complete = true;
+    }
+
+    /**
+     * Method called when run being written can not be kept in pool any more:
+     * existing content is moved to file and run removed from pool.
+     */
+    protected OutputStream _overflow(Run run) throws IOException
+    {
+        List<Block> blocks;
+        synchronized (this) {
+            if (_runs.get(run._file) == run) {
+                _runs.remove(run._file);
+            }
+            blocks = new ArrayList<Block>(run._blocks);
+        }
+        try {
+            OutputStream out = run.moveToDisk(blocks);
+            synchronized (this) {
+                _diskFiles.put(run._file, run._diskFile);
+            }
+            return out;
+        } finally {
+            synchronized (this) {
+                _release(run);
+            }
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Compressed block of run contents
+     */
+    protected final static class Block
+    {
+        public final byte[] data;
+        public final int rawLength;
+
+        public Block(byte[] data, int rawLength) {
+            this.data = data;
+            this.rawLength = rawLength;
+        }
+    }
+
+    protected final static class Run
+    {
+        final File _file;
+
+        final TempFileProvider _fileProvider;
+
+        final List<Block> _blocks = new ArrayList<Block>();
+
+        long _pooledBytes;
+
+        boolean _complete;
+
+        int _readers;
+
+        /**
+         * Flag set while run is being moved to disk
+         */
+        boolean _evicting;
+
+        /**
+         * File that run was moved to, if any
+         */
+        File _diskFile;
+
+        Run(File f, TempFileProvider fileProvider) {
+            _file = f;
+            _fileProvider = fileProvider;
+        }
+
+        /**
+         * Method for writing (uncompressed) contents of this run, given
+         * blocks, in its file (created at this point, if pool has a file
+         * provider); if run is not complete, stream is left open
+         * for appending more contents.
+         */
+        OutputStream moveToDisk(List<Block> blocks) throws IOException
+        {
+            if (_fileProvider == null) {
+                _diskFile = _file;
+                return _write(new FileOutputStream(_file), blocks);
+            }
+            File f = _fileProvider.provide();
+            boolean ok = false;
+            try {
+                OutputStream out = _write(_fileProvider.openOutput(f), blocks);
+                ok = true;
+                _diskFile = f;
+                return out;
+            } finally {
+                if (!ok) {
+                    _fileProvider.release(f);
+                }
+            }
+        }
+
+        private OutputStream _write(OutputStream raw, List<Block> blocks) throws IOException
+        {
+            OutputStream out = new BufferedOutputStream(raw);
+            boolean ok = false;
+            try {
+                Inflater inflater = new Inflater();
+                byte[] buffer = new byte[BLOCK_SIZE];
+                try {
+                    for (Block b : blocks) {
+                        int len = _inflate(inflater, b, buffer);
+                        out.write(buffer, 0, len);
+                    }
+                } finally {
+                    inflater.end();
+                }
+                ok = true;
+            } finally {
+                if (!ok) {
+                    try { out.close(); } catch (IOException e) { }
+                }
+            }
+            if (_complete) {
+                out.close();
+                return null;
+            }
+            return out;
+        }
+    }
+
+    protected static int _inflate(Inflater inflater, Block b, byte[] buffer) throws IOException
+    {
+        inflater.reset();
+        inflater.setInput(b.data);
+        int len = 0;
+        try {
+            while (len < b.rawLength) {
+                int count = inflater.inflate(buffer, len, b.rawLength - len);
+                if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                len += count;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt pooled run block: "+e.getMessage(), e);
+        }
+        if (len != b.rawLength) {
+            throw new IOException("Corrupt pooled run block: expected "+b.rawLength+" bytes, got "+len);
+        }
+        return len;
+    }
+
+    protected class PoolOutputStream extends OutputStream
+    {
+        protected final Run _run;
+
+        protected final byte[] _buffer = new byte[BLOCK_SIZE];
+        protected int _bufferLen;
+
+        protected Deflater _deflater = new Deflater(Deflater.BEST_SPEED);
+        protected byte[] _compressBuffer = new byte[BLOCK_SIZE + (BLOCK_SIZE >> 3) + 64];
+
+        /**
+         * Stream used once run has overflowed to disk
+         */
+        protected OutputStream _diskOut;
+
+        protected boolean _closed;
+
+        protected PoolOutputStream(Run run) {
+            _run = run;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            if (_diskOut != null) {
+                _diskOut.write(b);
+                return;
+            }
+            if (_bufferLen >= BLOCK_SIZE) {
+                _flushBlock();
+                if (_diskOut != null) {
+                    _diskOut.write(b);
+                    return;
+                }
+            }
+            _buffer[_bufferLen++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            while (len > 0) {
+                if (_diskOut != null) {
+                    _diskOut.write(b, off, len);
+                    return;
+                }
+                if (_bufferLen >= BLOCK_SIZE) {
+                    _flushBlock();
+                    continue;
+                }
+                int count = Math.min(len, BLOCK_SIZE - _bufferLen);
+                System.arraycopy(b, off, _buffer, _bufferLen, count);
+                _bufferLen += count;
+                off += count;
+                len -= count;
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (_closed) {
+                return;
+            }
+            _closed = true;
+            try {
+                if (_diskOut == null && _bufferLen > 0) {
+                    _flushBlock();
+                }
+                if (_diskOut != null) {
+                    _diskOut.close();
+                } else {
+                    _completed(_run);
+                }
+            } finally {
+                _deflater.end();
+            }
+        }
+
+        protected void _flushBlock() throws IOException
+        {
+            Deflater d = _deflater;
+            d.reset();
+            d.setInput(_buffer, 0, _bufferLen);
+            d.finish();
+            int clen = 0;
+            while (!d.finished()) {
+                if (clen == _compressBuffer.length) {
+                    _compressBuffer = Arrays.copyOf(_compressBuffer, clen + (clen >> 1));
+                }
+                clen += d.deflate(_compressBuffer, clen, _compressBuffer.length - clen);
+            }
+            byte[] data = Arrays.copyOf(_compressBuffer, clen);
+            if (_reserve(_run, clen + BLOCK_OVERHEAD)) {
+                synchronized (MemoryRunPool.this) {
+                    _run._blocks.add(new Block(data, _bufferLen));
+                }
+                _bufferLen = 0;
+                return;
+            }
+            // no room: move to disk, including contents not yet compressed
+            _diskOut = _overflow(_run);
+            _diskOut.write(_buffer, 0, _bufferLen);
+            _bufferLen = 0;
+        }
+    }
+
+    protected class PoolInputStream extends InputStream
+    {
+        protected final Run _run;
+
+        protected final List<Block> _blocks;
+
+        protected Inflater _inflater = new Inflater();
+
+        protected final byte[] _buffer = new byte[BLOCK_SIZE];
+        protected int _bufferPtr, _bufferEnd;
+
+        protected int _nextBlock;
+
+        protected boolean _closed;
+
+        protected PoolInputStream(Run run)
+        {
+            _run = run;
+            synchronized (MemoryRunPool.this) {
+                // copy, so eviction or release can not affect reading
+                _blocks = new ArrayList<Block>(run._blocks);
+            }
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            if (_bufferPtr >= _bufferEnd) {
+                if (!_loadMore()) {
+                    return -1;
+                }
+            }
+            return _buffer[_bufferPtr++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (len == 0) {
+                return 0;
+            }
+            if (_bufferPtr >= _bufferEnd) {
+                if (!_loadMore()) {
+                    return -1;
+                }
+            }
+            int count = Math.min(len, _bufferEnd - _bufferPtr);
+            System.arraycopy(_buffer, _bufferPtr, b, off, count);
+            _bufferPtr += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return _bufferEnd - _bufferPtr;
+        }
+
+        @Override
+        public void close()
+        {
+            if (!_closed) {
+                _closed = true;
+                _inflater.end();
+                _readerClosed(_run);
+            }
+        }
+
+        protected boolean _loadMore() throws IOException
+        {
+            if (_closed || _nextBlock >= _blocks.size()) {
+                return false;
+            }
+            _bufferEnd = _inflate(_inflater, _blocks.get(_nextBlock++), _buffer);
+            _bufferPtr = 0;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.fasterxml.sort.util;
+
+import java.io.File;
+
+/**
+ * Helper methods for reporting stages of sorting as JDK Flight Recorder events:
+ * pre-sorting of a chunk of input, writing of a sorted run ("spill"), intermediate
+ * merge rounds and final merge. Each stage is reported by calling a
+ * <code>beginXxx()</code> method before the stage, and the matching
+ * <code>endXxx()</code> method after it, with the handle <code>beginXxx()</code>
+ * returned; if the handle is null, event is not recorded, and
+ * <code>endXxx()</code> need not (and should not) be called.
+ *<p>
+ * This is the baseline (Java 8) implementation, which records nothing and always
+ * returns null handles. On Java 11 and above, a multi-release jar variant of
+ * this class is used instead, which records events when they are enabled in
+ * Flight Recorder settings (see events in category "Java Merge Sort"), and
+ * otherwise returns null handles as well.
+ *
+ * @since 1.1.1
+ */
+public final class SortEvents
+{
+    private SortEvents() { }
+
+    public static Object beginPresort() { return null; }
+
+    /**
+     * @param itemCount Number of items read and sorted
+     * @param estimatedBytes Estimated memory usage of items
+     */
+    public static void endPresort(Object event, int itemCount, long estimatedBytes) { }
+
+    public static Object beginSpill() { return null; }
+
+    /**
+     * @param file File sorted run was written to
+     * @param itemCount Number of items written
+     * @param bytes Number of bytes written
+     */
+    public static void endSpill(Object event, File file, int itemCount, long bytes) { }
+
+    public static Object beginMergeRound() { return null; }
+
+    /**
+     * @param round Index of merge round (0 for the first one)
+     * @param runCount Number of runs merged during the round
+     * @param fanIn Maximum number of runs merged at a time
+     * @param inputBytes Total size of runs merged
+     */
+    public static void endMergeRound(Object event, int round, int runCount, int fanIn,
+            long inputBytes) { }
+
+    public static Object beginFinalMerge() { return null; }
+
+    /**
+     * @param fanIn Number of runs merged
+     * @param inputBytes Total size of runs merged
+     */
+    public static void endFinalMerge(Object event, int fanIn, long inputBytes) { }
+}
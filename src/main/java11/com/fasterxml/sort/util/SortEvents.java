@@ -0,0 +1,199 @@
+package com.fasterxml.sort.util;
+
+import java.io.File;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Helper methods for reporting stages of sorting as JDK Flight Recorder events:
+ * pre-sorting of a chunk of input, writing of a sorted run ("spill"), intermediate
+ * merge rounds and final merge. Each stage is reported by calling a
+ * <code>beginXxx()</code> method before the stage, and the matching
+ * <code>endXxx()</code> method after it, with the handle <code>beginXxx()</code>
+ * returned; if the handle is null, event is not recorded, and
+ * <code>endXxx()</code> need not (and should not) be called.
+ *<p>
+ * This is the Java 11 variant (included in the multi-release jar), which records
+ * events when they are enabled in Flight Recorder settings; when they are not
+ * (or no recording is running), null handles are returned, so cost is
+ * negligible.
+ *
+ * @since 1.1.1
+ */
+public final class SortEvents
+{
+    private SortEvents() { }
+
+    public static Object beginPresort() {
+        return _begin(new PresortEvent());
+    }
+
+    /**
+     * @param itemCount Number of items read and sorted
+     * @param estimatedBytes Estimated memory usage of items
+     */
+    public static void endPresort(Object event, int itemCount, long estimatedBytes)
+    {
+        PresortEvent e = (PresortEvent) event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.itemCount = itemCount;
+            e.estimatedBytes = estimatedBytes;
+            e.commit();
+        }
+    }
+
+    public static Object beginSpill() {
+        return _begin(new SpillEvent());
+    }
+
+    /**
+     * @param file File sorted run was written to
+     * @param itemCount Number of items written
+     * @param bytes Number of bytes written
+     */
+    public static void endSpill(Object event, File file, int itemCount, long bytes)
+    {
+        SpillEvent e = (SpillEvent) event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.path = file.getPath();
+            e.itemCount = itemCount;
+            e.bytes = bytes;
+            e.commit();
+        }
+    }
+
+    public static Object beginMergeRound() {
+        return _begin(new MergeRoundEvent());
+    }
+
+    /**
+     * @param round Index of merge round (0 for the first one)
+     * @param runCount Number of runs merged during the round
+     * @param fanIn Maximum number of runs merged at a time
+     * @param inputBytes Total size of runs merged
+     */
+    public static void endMergeRound(Object event, int round, int runCount, int fanIn,
+            long inputBytes)
+    {
+        MergeRoundEvent e = (MergeRoundEvent) event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.round = round;
+            e.runCount = runCount;
+            e.fanIn = fanIn;
+            e.inputBytes = inputBytes;
+            e.commit();
+        }
+    }
+
+    public static Object beginFinalMerge() {
+        return _begin(new FinalMergeEvent());
+    }
+
+    /**
+     * @param fanIn Number of runs merged
+     * @param inputBytes Total size of runs merged
+     */
+    public static void endFinalMerge(Object event, int fanIn, long inputBytes)
+    {
+        FinalMergeEvent e = (FinalMergeEvent) event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.fanIn = fanIn;
+            e.inputBytes = inputBytes;
+            e.commit();
+        }
+    }
+
+    private static Object _begin(Event e)
+    {
+        if (!e.isEnabled()) {
+            return null;
+        }
+        e.begin();
+        return e;
+    }
+
+    /*
+    /**********************************************************************
+    /* Event types
+    /**********************************************************************
+     */
+
+    @Name("com.fasterxml.sort.Presort")
+    @Label("Pre-sort Chunk")
+    @Description("Chunk of input read into memory and sorted")
+    @Category("Java Merge Sort")
+    @StackTrace(false)
+    static class PresortEvent extends Event
+    {
+        @Label("Item Count")
+        int itemCount;
+
+        @Label("Estimated Size")
+        @DataAmount
+        long estimatedBytes;
+    }
+
+    @Name("com.fasterxml.sort.Spill")
+    @Label("Spill")
+    @Description("Sorted run written during pre-sorting")
+    @Category("Java Merge Sort")
+    @StackTrace(false)
+    static class SpillEvent extends Event
+    {
+        @Label("File")
+        String path;
+
+        @Label("Item Count")
+        int itemCount;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("com.fasterxml.sort.MergeRound")
+    @Label("Merge Round")
+    @Description("Intermediate merge round, merging sorted runs into fewer, longer runs")
+    @Category("Java Merge Sort")
+    @StackTrace(false)
+    static class MergeRoundEvent extends Event
+    {
+        @Label("Round")
+        int round;
+
+        @Label("Run Count")
+        int runCount;
+
+        @Label("Fan-in")
+        int fanIn;
+
+        @Label("Input Size")
+        @DataAmount
+        long inputBytes;
+    }
+
+    @Name("com.fasterxml.sort.FinalMerge")
+    @Label("Final Merge")
+    @Description("Final merge of sorted runs into results; for iterator results, lasts until iterator is closed")
+    @Category("Java Merge Sort")
+    @StackTrace(false)
+    static class FinalMergeEvent extends Event
+    {
+        @Label("Fan-in")
+        int fanIn;
+
+        @Label("Input Size")
+        @DataAmount
+        long inputBytes;
+    }
+}
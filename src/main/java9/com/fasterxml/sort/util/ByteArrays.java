@@ -0,0 +1,45 @@
+package com.fasterxml.sort.util;
+
+import java.util.Arrays;
+
+/**
+ * Helper methods for comparing byte arrays as sequences of unsigned bytes.
+ *<p>
+ * This is the Java 9 variant (included in the multi-release jar), which
+ * delegates to <code>Arrays.compareUnsigned()</code> and <code>Arrays.mismatch()</code>:
+ * JVM intrinsics that compare multiple bytes at a time.
+ *
+ * @since 1.1.1
+ */
+public final class ByteArrays
+{
+    private ByteArrays() { }
+
+    /**
+     * Method for comparing given arrays lexicographically, as unsigned bytes:
+     * if one array is a prefix of the other, the shorter one is smaller.
+     *
+     * @return Difference of the first differing bytes (as unsigned values);
+     *   or, if there is none, difference of array lengths
+     */
+    public static int compareUnsigned(byte[] b1, byte[] b2)
+    {
+        return Arrays.compareUnsigned(b1, b2);
+    }
+
+    /**
+     * Method for finding the first index (at or after given offset) at which
+     * given arrays differ.
+     *
+     * @param from Offset to start comparison from; must not be greater than
+     *   length of either array
+     *
+     * @return Index of the first differing byte; or length of the shorter
+     *    array if there is none
+     */
+    public static int mismatch(byte[] b1, byte[] b2, int from)
+    {
+        final int i = Arrays.mismatch(b1, from, b1.length, b2, from, b2.length);
+        return (i < 0) ? b1.length : (from + i);
+    }
+}
@@ -0,0 +1,60 @@
+package com.fasterxml.sort.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Helper class for finding linefeeds (CR or LF) in byte buffers.
+ *<p>
+ * This is the Java 9 variant (included in the multi-release jar), which
+ * reads 8 bytes at a time as a <code>long</code>, and checks them all at once
+ * using "SIMD within a register" bit manipulation.
+ *
+ * @since 1.1.1
+ */
+public final class LinefeedScanner
+{
+    private final static VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.LITTLE_ENDIAN);
+
+    private final static long CRS = 0x0D0D0D0D0D0D0D0DL;
+    private final static long LFS = 0x0A0A0A0A0A0A0A0AL;
+    private final static long LOW_7_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    private LinefeedScanner() { }
+
+    /**
+     * @return Index of the first CR or LF byte within given range of the buffer;
+     *    or -1 if there is none
+     */
+    public static int indexOfLinefeed(byte[] buffer, int start, int end)
+    {
+        int i = start;
+        for (final int last = end - 8; i <= last; i += 8) {
+            final long word = (long) LONGS.get(buffer, i);
+            final long found = _zeroBytes(word ^ CRS) | _zeroBytes(word ^ LFS);
+            if (found != 0L) {
+                // little-endian, so the lowest marker is the first match
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < end; ++i) {
+            final byte b = buffer[i];
+            if (b == '\n' || b == '\r') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Value with the high bit set for each zero byte of the given
+     *   value (and no other bits set); exact, unlike the shorter variants that
+     *   may report false positives above the first zero byte
+     */
+    private static long _zeroBytes(long v)
+    {
+        return ~(((v & LOW_7_BITS) + LOW_7_BITS) | v | LOW_7_BITS);
+    }
+}
@@ -1,6 +1,10 @@
 package com.fasterxml.sort;
 
+import java.io.*;
 import java.nio.charset.Charset;
+import java.util.*;
+
+import com.fasterxml.sort.util.CollectionReader;
 
 import junit.framework.TestCase;
 
@@ -47,6 +51,8 @@ public abstract class SortTestBase extends TestCase
     protected static class CountingWriter<T> extends DataWriter<T> {
         private int count = 0;
 
+        public CountingWriter() { }
+
         public int getCount() {
             return count;
         }
@@ -61,4 +67,107 @@ public abstract class SortTestBase extends TestCase
             // None
         }
     }
+
+    /**
+     * Helper method for generating given number of random lowercase ASCII lines,
+     * 3 to 22 characters long
+     */
+    protected static List<String> _generate(Random rnd, int count)
+    {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < count; ++i) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0, len = 3 + rnd.nextInt(20); j < len; ++j) {
+                sb.append((char) ('a' + rnd.nextInt(26)));
+            }
+            lines.add(sb.toString());
+        }
+        return lines;
+    }
+
+    protected static DataReader<byte[]> _reader(List<String> lines)
+    {
+        List<byte[]> input = new ArrayList<byte[]>();
+        for (String line : lines) {
+            input.add(line.getBytes(CHARSET));
+        }
+        return new CollectionReader<byte[]>(input);
+    }
+
+    protected static List<String> _sorted(List<String> lines)
+    {
+        List<String> sorted = new ArrayList<String>(lines);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Helper method for loading the variant of given class for given Java version
+     * from <code>META-INF/versions</code> of the multi-release jar layout, in a
+     * separate class loader: tests run against class directories, so they would
+     * otherwise only use baseline variants.
+     *
+     * @return Variant class, if one exists; null if tests run on a JDK
+     *    older than given version (on which variants are not built)
+     */
+    protected static Class<?> _versionedClass(final Class<?> base, final int version) throws Exception
+    {
+        if (_readVersioned(base, version, base.getName()) == null) {
+            String spec = System.getProperty("java.specification.version");
+            if (!spec.startsWith("1.") && Integer.parseInt(spec) >= version) {
+                fail("Missing Java "+version+" variant of "+base.getName());
+            }
+            return null;
+        }
+        // variant and its nested classes are loaded by this loader, others as usual
+        ClassLoader loader = new ClassLoader(base.getClassLoader()) {
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException
+            {
+                if (!name.equals(base.getName()) && !name.startsWith(base.getName()+"$")) {
+                    return super.loadClass(name, resolve);
+                }
+                synchronized (getClassLoadingLock(name)) {
+                    Class<?> cls = findLoadedClass(name);
+                    if (cls == null) {
+                        byte[] b;
+                        try {
+                            b = _readVersioned(base, version, name);
+                        } catch (IOException e) {
+                            throw new ClassNotFoundException(name, e);
+                        }
+                        if (b == null) {
+                            throw new ClassNotFoundException(name);
+                        }
+                        cls = defineClass(name, b, 0, b.length);
+                    }
+                    return cls;
+                }
+            }
+        };
+        Class<?> cls = loader.loadClass(base.getName());
+        assertNotSame(base, cls);
+        return cls;
+    }
+
+    private static byte[] _readVersioned(Class<?> base, int version, String className)
+        throws IOException
+    {
+        InputStream in = base.getClassLoader().getResourceAsStream("META-INF/versions/"
+                +version+"/"+className.replace('.', '/')+".class");
+        if (in == null) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            byte[] buf = new byte[4000];
+            int count;
+            while ((count = in.read(buf)) > 0) {
+                bytes.write(buf, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+        return bytes.toByteArray();
+    }
 }
@@ -0,0 +1,118 @@
+package com.fasterxml.sort;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.sort.std.*;
+import com.fasterxml.sort.util.CollectionReader;
+
+public class TestBatchReadWrite extends SortTestBase
+{
+    public void testMixedBatchAndSingleReadsOfMerge() throws IOException
+    {
+        // 5 sorted inputs, so that merging uses nested pairwise mergers
+        List<DataReader<byte[]>> inputs = new ArrayList<DataReader<byte[]>>();
+        List<String> expected = new ArrayList<String>();
+        Random rnd = new Random(5);
+        for (int i = 0; i < 5; ++i) {
+            List<String> values = new ArrayList<String>();
+            for (int j = 0, count = 50 + rnd.nextInt(200); j < count; ++j) {
+                values.add("value-"+rnd.nextInt(1000));
+            }
+            Collections.sort(values);
+            expected.addAll(values);
+            List<byte[]> bytes = new ArrayList<byte[]>();
+            for (String value : values) {
+                bytes.add(value.getBytes(CHARSET));
+            }
+            inputs.add(new CollectionReader<byte[]>(bytes));
+        }
+        Collections.sort(expected);
+
+        DataReader<byte[]> merged = Merger.mergedReader(new ByteArrayComparator(), inputs);
+        List<String> actual = new ArrayList<String>();
+        Object[] buffer = new Object[20];
+        for (int round = 0; ; ++round) {
+            if ((round % 3) == 0) {
+                byte[] item = merged.readNext();
+                if (item == null) {
+                    break;
+                }
+                actual.add(new String(item, CHARSET));
+            } else {
+                // read into middle of buffer, to check offsets are honored
+                final int len = 1 + (round % 17);
+                final int count = merged.readBatch(buffer, 2, len);
+                for (int i = 0; i < count; ++i) {
+                    actual.add(new String((byte[]) buffer[2 + i], CHARSET));
+                }
+                if (count < len) {
+                    assertNull(merged.readNext());
+                    break;
+                }
+            }
+        }
+        assertEquals(expected, actual);
+        merged.close();
+    }
+
+    public void testBatchWriteSameAsSingle() throws IOException
+    {
+        Object[] items = new Object[] { "a".getBytes(CHARSET), "bc".getBytes(CHARSET),
+                "def".getBytes(CHARSET), "g".getBytes(CHARSET) };
+        ByteArrayOutputStream single = new ByteArrayOutputStream();
+        DataWriter<byte[]> w = new RawTextLineWriter(single);
+        for (int i = 1; i < 3; ++i) {
+            w.writeEntry((byte[]) items[i]);
+        }
+        w.close();
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        w = new RawTextLineWriter(batch);
+        w.writeBatch(items, 1, 2);
+        w.close();
+        assertEquals("bc\ndef\n", batch.toString("UTF-8"));
+        assertEquals(single.toString("UTF-8"), batch.toString("UTF-8"));
+    }
+
+    /**
+     * Sub-classes that only override {@link DataWriter#writeEntry} must still
+     * have it called for runs and results, which are written in batches.
+     */
+    public void testWriterSubclassOverridingWriteEntry() throws IOException
+    {
+        final AtomicInteger calls = new AtomicInteger();
+        final DataWriterFactory<byte[]> factory = new DataWriterFactory<byte[]>() {
+            @Override
+            public DataWriter<byte[]> constructWriter(OutputStream out) {
+                return new RawTextLineWriter(out) {
+                    @Override
+                    public void writeEntry(byte[] item) throws IOException {
+                        calls.incrementAndGet();
+                        super.writeEntry(new String(item, CHARSET).toUpperCase().getBytes(CHARSET));
+                    }
+                };
+            }
+        };
+        List<byte[]> input = new ArrayList<byte[]>();
+        for (int i = 0; i < 500; ++i) {
+            input.add(("x"+(i % 97)).getBytes(CHARSET));
+        }
+        // first all in memory, then with runs
+        for (long memory : new long[] { 1000000L, 2000L }) {
+            calls.set(0);
+            Sorter<byte[]> sorter = new Sorter<byte[]>(new SortConfig().withMaxMemoryUsage(memory),
+                    RawTextLineReader.factory(), factory, new ByteArrayComparator());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertTrue(sorter.sort(new CollectionReader<byte[]>(input), factory.constructWriter(out)));
+            String result = out.toString("UTF-8");
+            assertEquals(500, result.split("\n").length);
+            assertEquals(result.toUpperCase(), result);
+            assertTrue(result.startsWith("X0\n"));
+            // every entry written once per pass: pre-sorting, and each merge round
+            final int passes = (sorter.getNumberOfPreSortFiles() == 0) ? 1 : (1 + sorter.getNumberOfSortRounds());
+            assertEquals(500 * passes, calls.get());
+            sorter.close();
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.fasterxml.sort;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.fasterxml.sort.std.*;
+
+public class TestCancellation extends SortTestBase
+{
+    public void testCancelDuringPresort() throws Exception
+    {
+        ManagedTempFileProvider files = new ManagedTempFileProvider();
+        final Sorter<byte[]> sorter = _sorter(new SortConfig().withMaxMemoryUsage(100000)
+                .withTempFileProvider(files));
+        final EndlessReader reader = new EndlessReader();
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> result = exec.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws IOException {
+                    return sorter.sort(reader, new CountingWriter<byte[]>());
+                }
+            });
+            reader.awaitItems(200000);
+            sorter.cancel();
+            assertEquals(Boolean.FALSE, result.get(10, TimeUnit.SECONDS));
+            assertTrue(sorter.getNumberOfPreSortFiles() > 0);
+            assertEquals(0, files.getFileCount());
+        } finally {
+            exec.shutdownNow();
+            files.close();
+        }
+    }
+
+    public void testCancelWithinBuffer() throws Exception
+    {
+        // buffer big enough that input would never fill it in time
+        final Sorter<byte[]> sorter = _sorter(new SortConfig().withMaxMemoryUsage(Long.MAX_VALUE / 2));
+        final EndlessReader reader = new EndlessReader();
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> result = exec.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws IOException {
+                    return sorter.sort(reader, new CountingWriter<byte[]>());
+                }
+            });
+            reader.awaitItems(100000);
+            sorter.cancel();
+            assertEquals(Boolean.FALSE, result.get(10, TimeUnit.SECONDS));
+            assertEquals(0, sorter.getNumberOfPreSortFiles());
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
+    public void testTimeLimit() throws Exception
+    {
+        ManagedTempFileProvider files = new ManagedTempFileProvider();
+        Sorter<byte[]> sorter = _sorter(new SortConfig().withMaxMemoryUsage(100000)
+                .withTempFileProvider(files).withTimeLimit(200L));
+        long start = System.currentTimeMillis();
+        try {
+            sorter.sort(new EndlessReader(), new CountingWriter<byte[]>());
+            fail("Should not complete sorting endless input");
+        } catch (InterruptedIOException e) {
+            assertTrue(e.getMessage().contains("time limit"));
+        }
+        assertTrue(System.currentTimeMillis() - start < 10000L);
+        assertTrue(sorter.getNumberOfPreSortFiles() > 0);
+        assertEquals(0, files.getFileCount());
+
+        // but a sort without time limit is not affected by earlier one
+        sorter.close();
+        sorter = _sorter(new SortConfig().withMaxMemoryUsage(100000)
+                .withTempFileProvider(files));
+        CountingWriter<byte[]> out = new CountingWriter<byte[]>();
+        assertTrue(sorter.sort(new StringGenerator(10000, 10), out));
+        assertEquals(10000, out.getCount());
+        sorter.close();
+        files.close();
+    }
+
+    public void testInterrupt() throws Exception
+    {
+        ManagedTempFileProvider files = new ManagedTempFileProvider();
+        final Sorter<byte[]> sorter = _sorter(new SortConfig().withMaxMemoryUsage(100000)
+                .withTempFileProvider(files));
+        final EndlessReader reader = new EndlessReader();
+        final AtomicBoolean interruptKept = new AtomicBoolean();
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> result = exec.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws IOException {
+                    try {
+                        return sorter.sort(reader, new CountingWriter<byte[]>());
+                    } catch (InterruptedIOException e) {
+                        // interrupt status must be left for caller to see
+                        interruptKept.set(Thread.currentThread().isInterrupted());
+                        throw e;
+                    }
+                }
+            });
+            reader.awaitItems(200000);
+            result.cancel(true);
+            // wait for sorting thread to clean up
+            exec.shutdown();
+            assertTrue(exec.awaitTermination(10, TimeUnit.SECONDS));
+            assertEquals(0, files.getFileCount());
+            assertTrue(interruptKept.get());
+        } finally {
+            files.close();
+        }
+    }
+
+    public void testInterruptWhileMergingPartitions() throws Exception
+    {
+        final Sorter<byte[]> sorter = _sorter(new SortConfig().withMaxMemoryUsage(20000));
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final List<DataWriter<byte[]>> writers = new ArrayList<DataWriter<byte[]>>();
+        for (int i = 0; i < 3; ++i) {
+            writers.add(new BlockingWriter(blocked));
+        }
+        _verifyInterrupt(blocked, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws IOException {
+                return sorter.sortPartitioned(new StringGenerator(5000, 10), writers, null);
+            }
+        });
+        sorter.close();
+    }
+
+    public void testInterruptWhilePresortingInParallel() throws Exception
+    {
+        Path input = Files.createTempFile("input", ".txt");
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 5000; ++i) {
+                sb.append(i * 7919).append('\n');
+            }
+            Files.write(input, sb.toString().getBytes(CHARSET));
+            final CountDownLatch blocked = new CountDownLatch(1);
+            final Thread caller = Thread.currentThread();
+            // input is read normally when splitting it, but blocks in pre-sorting threads
+            DataReaderFactory<byte[]> readers = new DataReaderFactory<byte[]>() {
+                @Override
+                public DataReader<byte[]> constructReader(InputStream in) {
+                    if (Thread.currentThread() == caller) {
+                        return new RawTextLineReader(in);
+                    }
+                    return new DataReader<byte[]>() {
+                        @Override
+                        public byte[] readNext() throws IOException {
+                            _block(blocked);
+                            return null;
+                        }
+
+                        @Override
+                        public int estimateSizeInBytes(byte[] item) {
+                            return item.length;
+                        }
+
+                        @Override
+                        public void close() { }
+                    };
+                }
+
+                @Override
+                public long nextRecordStart(FileChannel channel, long position) throws IOException {
+                    return RawTextLineReader.factory().nextRecordStart(channel, position);
+                }
+            };
+            final Sorter<byte[]> sorter = new Sorter<byte[]>(new SortConfig(), readers,
+                    RawTextLineWriter.factory(), new ByteArrayComparator());
+            final Path path = input;
+            _verifyInterrupt(blocked, new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws IOException {
+                    return sorter.sort(path, new CountingWriter<byte[]>(), 2);
+                }
+            });
+            sorter.close();
+        } finally {
+            Files.delete(input);
+        }
+    }
+
+    /**
+     * Runs given sort in another thread, interrupts that thread once sort blocks in
+     * one of its worker threads, and verifies that sort fails promptly, leaving
+     * interrupt status set.
+     */
+    private void _verifyInterrupt(CountDownLatch blocked, final Callable<Boolean> sort)
+        throws Exception
+    {
+        final AtomicReference<Thread> sortThread = new AtomicReference<Thread>();
+        final AtomicBoolean interruptKept = new AtomicBoolean();
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> result = exec.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    sortThread.set(Thread.currentThread());
+                    try {
+                        return sort.call();
+                    } catch (InterruptedIOException e) {
+                        interruptKept.set(Thread.currentThread().isInterrupted());
+                        throw e;
+                    }
+                }
+            });
+            assertTrue(blocked.await(10, TimeUnit.SECONDS));
+            sortThread.get().interrupt();
+            try {
+                result.get(10, TimeUnit.SECONDS);
+                fail("Should not complete interrupted sort");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof InterruptedIOException);
+            }
+            assertTrue(interruptKept.get());
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
+    static void _block(CountDownLatch blocked) throws IOException
+    {
+        blocked.countDown();
+        try {
+            new CountDownLatch(1).await();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Blocked task interrupted");
+        }
+    }
+
+    /**
+     * Writer that blocks until interrupted
+     */
+    static class BlockingWriter extends DataWriter<byte[]>
+    {
+        private final CountDownLatch _blocked;
+
+        BlockingWriter(CountDownLatch blocked) {
+            _blocked = blocked;
+        }
+
+        @Override
+        public void writeEntry(byte[] item) throws IOException {
+            _block(_blocked);
+        }
+
+        @Override
+        public void close() { }
+    }
+
+    private Sorter<byte[]> _sorter(SortConfig config)
+    {
+        return new Sorter<byte[]>(config, RawTextLineReader.factory(),
+                RawTextLineWriter.factory(), new ByteArrayComparator());
+    }
+
+    /**
+     * Reader that never runs out of input
+     */
+    static class EndlessReader extends DataReader<byte[]>
+    {
+        private final CountDownLatch _started = new CountDownLatch(1);
+        private volatile int _count;
+        private volatile int _waitFor = Integer.MAX_VALUE;
+
+        public void awaitItems(int count) throws InterruptedException {
+            _waitFor = count;
+            _started.await(10, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public byte[] readNext() {
+            int count = ++_count;
+            if (count >= _waitFor) {
+                _started.countDown();
+            }
+            return Integer.toString(count * 7919).getBytes(CHARSET);
+        }
+
+        @Override
+        public int estimateSizeInBytes(byte[] item) {
+            return item.length;
+        }
+
+        @Override
+        public void close() { }
+    }
+}
@@ -0,0 +1,172 @@
+package com.fasterxml.sort;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+import com.fasterxml.sort.std.ByteArrayComparator;
+import com.fasterxml.sort.std.RawTextLineReader;
+import com.fasterxml.sort.std.RawTextLineWriter;
+import com.fasterxml.sort.util.CollectionReader;
+
+public class TestCheckpointResume extends SortTestBase
+{
+    /**
+     * Writer factory that can be made to fail after specified number of entries
+     * has been written, to simulate crash during merge phase.
+     */
+    static class FailingWriterFactory extends DataWriterFactory<byte[]>
+    {
+        final DataWriterFactory<byte[]> _delegate = RawTextLineWriter.factory();
+
+        int _entriesToFailAfter = -1;
+
+        @Override
+        public DataWriter<byte[]> constructWriter(OutputStream out) throws IOException {
+            final DataWriter<byte[]> w = _delegate.constructWriter(out);
+            return new DataWriter<byte[]>() {
+                @Override
+                public void writeEntry(byte[] item) throws IOException {
+                    if (_entriesToFailAfter >= 0 && --_entriesToFailAfter < 0) {
+                        throw new IOException("Simulated failure");
+                    }
+                    w.writeEntry(item);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    w.close();
+                }
+            };
+        }
+    }
+
+    public void testResumeAfterMergeFailure() throws Exception
+    {
+        File dir = Files.createTempDirectory("merge-sort-checkpoint").toFile();
+        List<byte[]> input = _generate(5000);
+        // small memory, merge factor of 2 to get multiple merge rounds
+        SortConfig config = new SortConfig().withMaxMemoryUsage(20000).withMergeFactor(2)
+            .withCheckpointDirectory(dir);
+        FailingWriterFactory wf = new FailingWriterFactory();
+        Sorter<byte[]> sorter = new Sorter<byte[]>(config,
+                RawTextLineReader.factory(), wf, new ByteArrayComparator());
+        assertFalse(sorter.canResume());
+
+        // fail somewhere during intermediate merge rounds
+        wf._entriesToFailAfter = input.size() + 3000;
+        try {
+            sorter.sort(new CollectionReader<byte[]>(input), new TestLongLineSort.CollectingWriter<byte[]>());
+            fail("Should have failed");
+        } catch (IOException e) {
+            assertEquals("Simulated failure", e.getMessage());
+        }
+        assertTrue(sorter.getNumberOfPreSortFiles() > 4);
+        assertTrue(new File(dir, SortCheckpoint.MANIFEST_NAME).exists());
+
+        // new instance, as if after restart
+        wf._entriesToFailAfter = -1;
+        sorter = new Sorter<byte[]>(config,
+                RawTextLineReader.factory(), wf, new ByteArrayComparator());
+        assertTrue(sorter.canResume());
+        TestLongLineSort.CollectingWriter<byte[]> result = new TestLongLineSort.CollectingWriter<byte[]>();
+        assertTrue(sorter.resume(result));
+        _verify(input, result.contents());
+
+        // and all files should be gone
+        assertFalse(sorter.canResume());
+        assertEquals(0, dir.listFiles().length);
+        dir.delete();
+    }
+
+    public void testResumeAfterFinalOutputFailure() throws Exception
+    {
+        File dir = Files.createTempDirectory("merge-sort-checkpoint").toFile();
+        List<byte[]> input = _generate(2000);
+        SortConfig config = new SortConfig().withMaxMemoryUsage(20000)
+            .withCheckpointDirectory(dir);
+        Sorter<byte[]> sorter = new Sorter<byte[]>(config,
+                RawTextLineReader.factory(), RawTextLineWriter.factory(), new ByteArrayComparator());
+        try {
+            sorter.sort(new CollectionReader<byte[]>(input), new TestLongLineSort.CollectingWriter<byte[]>() {
+                int count = 0;
+
+                @Override
+                public void writeEntry(byte[] item) {
+                    if (++count > 100) {
+                        throw new IllegalStateException("Simulated failure");
+                    }
+                    super.writeEntry(item);
+                }
+            });
+            fail("Should have failed");
+        } catch (IllegalStateException e) {
+            assertEquals("Simulated failure", e.getMessage());
+        }
+        assertTrue(sorter.canResume());
+        TestLongLineSort.CollectingWriter<byte[]> result = new TestLongLineSort.CollectingWriter<byte[]>();
+        assertTrue(sorter.resume(result));
+        _verify(input, result.contents());
+        assertEquals(0, dir.listFiles().length);
+
+        // and a regular sort with checkpoint dir should leave nothing behind either
+        result = new TestLongLineSort.CollectingWriter<byte[]>();
+        assertTrue(sorter.sort(new CollectionReader<byte[]>(input), result));
+        _verify(input, result.contents());
+        assertEquals(0, dir.listFiles().length);
+        dir.delete();
+    }
+
+    public void testClearOnlyDeletesListedRuns() throws Exception
+    {
+        File dir = Files.createTempDirectory("merge-sort-checkpoint").toFile();
+        SortCheckpoint cp = new SortCheckpoint(dir);
+        File run1 = cp.provideRunFile();
+        File run2 = cp.provideRunFile();
+        for (File run : Arrays.asList(run1, run2)) {
+            OutputStream out = cp.openRunOutput(run);
+            out.write("abc\n".getBytes(CHARSET));
+            out.close();
+            // closing again is fine
+            out.close();
+            assertEquals(4L, run.length());
+        }
+        cp.write(0, 2, Arrays.asList(run1, run2));
+        // not listed: may belong to someone else sharing the directory
+        File other = new File(dir, "run-other.tmp");
+        assertTrue(other.createNewFile());
+
+        // new instance, as if after restart, only knows what manifest lists
+        new SortCheckpoint(dir).clear();
+        assertFalse(run1.exists());
+        assertFalse(run2.exists());
+        assertFalse(new File(dir, SortCheckpoint.MANIFEST_NAME).exists());
+        assertTrue(other.exists());
+
+        // and with no manifest, nothing is deleted
+        new SortCheckpoint(dir).clear();
+        assertTrue(other.exists());
+        other.delete();
+        dir.delete();
+    }
+
+    private List<byte[]> _generate(int count)
+    {
+        Random r = new Random(count);
+        List<byte[]> result = new ArrayList<byte[]>(count);
+        for (int i = 0; i < count; ++i) {
+            result.add(("line-"+r.nextInt(100000)).getBytes(CHARSET));
+        }
+        return result;
+    }
+
+    private void _verify(List<byte[]> input, List<byte[]> output)
+    {
+        List<byte[]> exp = new ArrayList<byte[]>(input);
+        Collections.sort(exp, new ByteArrayComparator());
+        assertEquals(exp.size(), output.size());
+        for (int i = 0, end = exp.size(); i < end; ++i) {
+            assertEquals(new String(exp.get(i), CHARSET), new String(output.get(i), CHARSET));
+        }
+    }
+}
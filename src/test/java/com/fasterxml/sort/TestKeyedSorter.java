@@ -0,0 +1,225 @@
+package com.fasterxml.sort;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.fasterxml.sort.KeyedSorter.KeyedItem;
+import com.fasterxml.sort.std.*;
+
+public class TestKeyedSorter extends SortTestBase
+{
+    /**
+     * Key extractor that parses second tab-separated field as a number,
+     * and counts invocations
+     */
+    static class FieldExtractor implements Function<byte[], Long>
+    {
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public Long apply(byte[] line) {
+            calls.incrementAndGet();
+            String str = new String(line, CHARSET);
+            return Long.valueOf(str.substring(str.indexOf('\t')+1));
+        }
+    }
+
+    /**
+     * Run format that stores key before the line, separated by a space
+     */
+    static class KeyedLineReader extends DataReader<KeyedItem<byte[],Long>>
+    {
+        final DataReader<byte[]> _lines;
+
+        KeyedLineReader(InputStream in) {
+            _lines = new RawTextLineReader(in);
+        }
+
+        @Override
+        public KeyedItem<byte[],Long> readNext() throws IOException {
+            byte[] line = _lines.readNext();
+            if (line == null) {
+                return null;
+            }
+            int ix = 0;
+            while (line[ix] != ' ') {
+                ++ix;
+            }
+            Long key = Long.valueOf(new String(line, 0, ix, CHARSET));
+            return new KeyedItem<byte[],Long>(Arrays.copyOfRange(line, ix+1, line.length), key);
+        }
+
+        @Override
+        public int estimateSizeInBytes(KeyedItem<byte[],Long> item) {
+            return 16 + item.getItem().length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _lines.close();
+        }
+    }
+
+    static class KeyedLineWriter extends DataWriter<KeyedItem<byte[],Long>>
+    {
+        final OutputStream _out;
+
+        KeyedLineWriter(OutputStream out) {
+            _out = out;
+        }
+
+        @Override
+        public void writeEntry(KeyedItem<byte[],Long> item) throws IOException {
+            _out.write((item.getKey()+" ").getBytes(CHARSET));
+            _out.write(item.getItem());
+            _out.write('\n');
+        }
+
+        @Override
+        public void close() throws IOException {
+            _out.close();
+        }
+    }
+
+    public void testKeysExtractedOnce() throws IOException
+    {
+        // fits in memory: one extraction per line, no matter how many comparisons
+        List<byte[]> lines = _generate(1000);
+        FieldExtractor extractor = new FieldExtractor();
+        KeyedSorter<byte[],Long> sorter = _sorter(new SortConfig(), extractor, false);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sorter.sort(_join(lines), out);
+        assertTrue(sorter.isCompleted());
+        assertEquals(0, sorter.getNumberOfPreSortFiles());
+        assertEquals(1000, extractor.calls.get());
+        assertEquals(_expected(lines), out.toString("UTF-8"));
+        sorter.close();
+    }
+
+    public void testRunsWithoutKeys() throws IOException
+    {
+        List<byte[]> lines = _generate(5000);
+        FieldExtractor extractor = new FieldExtractor();
+        KeyedSorter<byte[],Long> sorter = _sorter(new SortConfig().withMaxMemoryUsage(20000),
+                extractor, false);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sorter.sort(_join(lines), out);
+        assertTrue(sorter.getNumberOfPreSortFiles() > 1);
+        assertEquals(_expected(lines), out.toString("UTF-8"));
+        // once when reading input, and once more when reading runs back in each merge round
+        assertEquals(5000 * (1 + sorter.getNumberOfSortRounds()), extractor.calls.get());
+        sorter.close();
+    }
+
+    public void testRunsWithKeys() throws IOException
+    {
+        List<byte[]> lines = _generate(5000);
+        FieldExtractor extractor = new FieldExtractor();
+        KeyedSorter<byte[],Long> sorter = _sorter(new SortConfig().withMaxMemoryUsage(20000),
+                extractor, true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sorter.sort(_join(lines), out);
+        assertTrue(sorter.getNumberOfPreSortFiles() > 1);
+        assertEquals(_expected(lines), out.toString("UTF-8"));
+        assertEquals(5000, extractor.calls.get());
+        sorter.close();
+    }
+
+    public void testRunsWithKeyCodec() throws IOException
+    {
+        List<byte[]> lines = _generate(5000);
+        FieldExtractor extractor = new FieldExtractor();
+        // small merge factor, for intermediate rounds that write runs of several blocks
+        SortConfig config = new SortConfig().withMaxMemoryUsage(20000).withMergeFactor(3);
+        KeyedSorter<byte[],Long> sorter = new KeyedSorter<byte[],Long>(config,
+                RawTextLineReader.factory(), RawTextLineWriter.factory(),
+                extractor, Comparator.<Long>naturalOrder(), KeyedSorter.KeyCodec.LONG);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sorter.sort(_join(lines), out);
+        assertTrue(sorter.getNumberOfPreSortFiles() > 1);
+        assertTrue(sorter.getNumberOfSortRounds() > 1);
+        assertEquals(_expected(lines), out.toString("UTF-8"));
+        // keys read back from runs, never re-extracted
+        assertEquals(5000, extractor.calls.get());
+        sorter.close();
+    }
+
+    public void testKeyCodecs() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        KeyedSorter.KeyCodec.LONG.writeKey(out, Long.MIN_VALUE);
+        KeyedSorter.KeyCodec.STRING.writeKey(out, "k\u00e9y");
+        KeyedSorter.KeyCodec.BYTES.writeKey(out, new byte[] { 1, 2, 3 });
+        out.close();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(Long.valueOf(Long.MIN_VALUE), KeyedSorter.KeyCodec.LONG.readKey(in));
+        assertEquals("k\u00e9y", KeyedSorter.KeyCodec.STRING.readKey(in));
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, KeyedSorter.KeyCodec.BYTES.readKey(in)));
+        assertEquals(-1, in.read());
+    }
+
+    private KeyedSorter<byte[],Long> _sorter(SortConfig config, FieldExtractor extractor,
+            boolean storeKeys)
+    {
+        Comparator<Long> cmp = Comparator.naturalOrder();
+        if (!storeKeys) {
+            return new KeyedSorter<byte[],Long>(config, RawTextLineReader.factory(),
+                    RawTextLineWriter.factory(), extractor, cmp);
+        }
+        return new KeyedSorter<byte[],Long>(config, RawTextLineReader.factory(),
+                RawTextLineWriter.factory(), extractor, cmp,
+                new DataReaderFactory<KeyedItem<byte[],Long>>() {
+                    @Override
+                    public DataReader<KeyedItem<byte[], Long>> constructReader(InputStream in) {
+                        return new KeyedLineReader(in);
+                    }
+                },
+                new DataWriterFactory<KeyedItem<byte[],Long>>() {
+                    @Override
+                    public DataWriter<KeyedItem<byte[], Long>> constructWriter(OutputStream out) {
+                        return new KeyedLineWriter(out);
+                    }
+                });
+    }
+
+    private List<byte[]> _generate(int count)
+    {
+        Random rnd = new Random(count);
+        List<byte[]> result = new ArrayList<byte[]>();
+        for (int i = 0; i < count; ++i) {
+            // unique keys, so that expected order is unambiguous
+            result.add(("name-"+rnd.nextInt(1000)+"\t"+(i * 7919L % 100003L)).getBytes(CHARSET));
+        }
+        return result;
+    }
+
+    private InputStream _join(List<byte[]> lines) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (byte[] line : lines) {
+            bytes.write(line);
+            bytes.write('\n');
+        }
+        return new ByteArrayInputStream(bytes.toByteArray());
+    }
+
+    private String _expected(List<byte[]> lines)
+    {
+        final FieldExtractor ext = new FieldExtractor();
+        List<byte[]> sorted = new ArrayList<byte[]>(lines);
+        Collections.sort(sorted, new Comparator<byte[]>() {
+            @Override
+            public int compare(byte[] o1, byte[] o2) {
+                return ext.apply(o1).compareTo(ext.apply(o2));
+            }
+        });
+        StringBuilder sb = new StringBuilder();
+        for (byte[] b : sorted) {
+            sb.append(new String(b, CHARSET)).append('\n');
+        }
+        return sb.toString();
+    }
+}
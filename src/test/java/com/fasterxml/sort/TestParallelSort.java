@@ -0,0 +1,98 @@
+package com.fasterxml.sort;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+import com.fasterxml.sort.std.*;
+
+public class TestParallelSort extends SortTestBase
+{
+    public void testParallelTextSort() throws IOException
+    {
+        List<String> lines = _generateEntries(new Random(1), 20000);
+        File input = _writeLines(lines, "\n");
+        try {
+            for (int threads : new int[] { 1, 2, 3, 7 }) {
+                TextFileSorter sorter = new TextFileSorter(new SortConfig().withMaxMemoryUsage(100000));
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                assertTrue(sorter.sort(input.toPath(), RawTextLineWriter.factory().constructWriter(out), threads));
+                assertTrue(sorter.isCompleted());
+                assertTrue(sorter.getNumberOfPreSortFiles() >= threads);
+                assertEquals(_expected(lines), out.toString("UTF-8"));
+                sorter.close();
+            }
+        } finally {
+            input.delete();
+        }
+    }
+
+    public void testCRLFAndLongLines() throws IOException
+    {
+        List<String> lines = _generateEntries(new Random(2), 500);
+        // long lines that span many split points
+        char[] ch = new char[30000];
+        Arrays.fill(ch, 'm');
+        lines.add(new String(ch));
+        lines.add(new String(ch, 0, 20000));
+        Collections.shuffle(lines, new Random(3));
+        File input = _writeLines(lines, "\r\n");
+        try {
+            TextFileSorter sorter = new TextFileSorter(new SortConfig().withMaxMemoryUsage(10000), true);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertTrue(sorter.sort(input.toPath(), RawTextLineWriter.factory().constructWriter(out), 16));
+            assertEquals(_expected(lines), out.toString("UTF-8"));
+            sorter.close();
+        } finally {
+            input.delete();
+        }
+    }
+
+    public void testEmptyFile() throws IOException
+    {
+        File input = File.createTempFile("test-parallel", ".txt");
+        try {
+            TextFileSorter sorter = new TextFileSorter();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            sorter.sort(input.toPath(), out);
+            assertEquals(0, out.size());
+            sorter.close();
+        } finally {
+            input.delete();
+        }
+    }
+
+    private File _writeLines(List<String> lines, String lf) throws IOException
+    {
+        File f = File.createTempFile("test-parallel", ".txt");
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append(lf);
+        }
+        Files.write(f.toPath(), sb.toString().getBytes(CHARSET));
+        return f;
+    }
+
+    private String _expected(List<String> lines)
+    {
+        List<byte[]> sorted = new ArrayList<byte[]>();
+        for (String line : lines) {
+            sorted.add(line.getBytes(CHARSET));
+        }
+        Collections.sort(sorted, new ByteArrayComparator());
+        StringBuilder sb = new StringBuilder();
+        for (byte[] b : sorted) {
+            sb.append(new String(b, CHARSET)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private List<String> _generateEntries(Random rnd, int count)
+    {
+        List<String> result = new ArrayList<String>(count);
+        for (int i = 0; i < count; ++i) {
+            result.add("entry-"+rnd.nextInt(100000)+"-é");
+        }
+        return result;
+    }
+}
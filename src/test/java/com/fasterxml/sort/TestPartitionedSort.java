@@ -0,0 +1,90 @@
+package com.fasterxml.sort;
+
+import java.io.*;
+import java.util.*;
+
+import com.fasterxml.sort.std.*;
+import com.fasterxml.sort.util.CollectionReader;
+
+public class TestPartitionedSort extends SortTestBase
+{
+    public void testSplitKeys() throws IOException
+    {
+        List<byte[]> splits = Arrays.asList("g".getBytes(CHARSET), "n".getBytes(CHARSET),
+                "n".getBytes(CHARSET), "t".getBytes(CHARSET));
+        // both in-memory and with runs (and intermediate merge rounds)
+        for (SortConfig config : new SortConfig[] { new SortConfig(),
+                new SortConfig().withMaxMemoryUsage(20000).withMergeFactor(2) }) {
+            List<String> lines = _generate(new Random(1), 5000);
+            List<String> outputs = _sort(config, lines, 5, splits);
+            _verify(lines, outputs);
+            // ranges of keys as given; third range is empty
+            assertTrue(outputs.get(0).length() > 0);
+            assertTrue(outputs.get(0).compareTo("g") < 0);
+            assertTrue(outputs.get(1).startsWith("g"));
+            assertEquals("", outputs.get(2));
+            assertTrue(outputs.get(3).startsWith("n"));
+            assertTrue(outputs.get(4).startsWith("t"));
+        }
+    }
+
+    public void testSampledSplitKeys() throws IOException
+    {
+        List<String> lines = _generate(new Random(2), 8000);
+        List<String> outputs = _sort(new SortConfig().withMaxMemoryUsage(20000), lines, 4, null);
+        _verify(lines, outputs);
+        // random input, so sampled ranges should be roughly even
+        for (String output : outputs) {
+            int count = output.split("\n").length;
+            assertTrue("Unbalanced range with "+count+" lines", count > 1000 && count < 3000);
+        }
+        // and single output works too
+        _verify(lines, _sort(new SortConfig().withMaxMemoryUsage(20000), lines, 1, null));
+    }
+
+    public void testEmptyInput() throws IOException
+    {
+        List<String> outputs = _sort(new SortConfig(), new ArrayList<String>(), 3, null);
+        assertEquals(Arrays.asList("", "", ""), outputs);
+    }
+
+    private List<String> _sort(SortConfig config, List<String> lines, int partCount,
+            List<byte[]> splitKeys) throws IOException
+    {
+        List<byte[]> input = new ArrayList<byte[]>();
+        for (String line : lines) {
+            input.add(line.getBytes(CHARSET));
+        }
+        List<ByteArrayOutputStream> bytes = new ArrayList<ByteArrayOutputStream>();
+        List<DataWriter<byte[]>> writers = new ArrayList<DataWriter<byte[]>>();
+        for (int i = 0; i < partCount; ++i) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            bytes.add(out);
+            writers.add(RawTextLineWriter.factory().constructWriter(out));
+        }
+        TextFileSorter sorter = new TextFileSorter(config);
+        assertTrue(sorter.sortPartitioned(new CollectionReader<byte[]>(input), writers, splitKeys));
+        assertTrue(sorter.isCompleted());
+        sorter.close();
+        List<String> result = new ArrayList<String>();
+        for (ByteArrayOutputStream out : bytes) {
+            result.add(out.toString("UTF-8"));
+        }
+        return result;
+    }
+
+    private void _verify(List<String> lines, List<String> outputs)
+    {
+        List<String> sorted = new ArrayList<String>(lines);
+        Collections.sort(sorted);
+        StringBuilder exp = new StringBuilder();
+        for (String line : sorted) {
+            exp.append(line).append('\n');
+        }
+        StringBuilder act = new StringBuilder();
+        for (String output : outputs) {
+            act.append(output);
+        }
+        assertEquals(exp.toString(), act.toString());
+    }
+}
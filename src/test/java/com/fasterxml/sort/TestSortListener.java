@@ -0,0 +1,122 @@
+package com.fasterxml.sort;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+import com.fasterxml.sort.std.*;
+
+public class TestSortListener extends SortTestBase
+{
+    static class RecordingListener implements SortListener
+    {
+        final List<SortingState.Phase> phases = new ArrayList<SortingState.Phase>();
+        final List<SortMetrics> runs = new ArrayList<SortMetrics>();
+        final List<SortMetrics> rounds = new ArrayList<SortMetrics>();
+        SortMetrics sorting;
+
+        @Override
+        public synchronized void phaseChanged(SortingState sort, SortMetrics metrics) {
+            phases.add(metrics.getPhase());
+            if (metrics.getPhase() == SortingState.Phase.SORTING) {
+                sorting = metrics;
+            }
+        }
+
+        @Override
+        public synchronized void runWritten(SortingState sort, SortMetrics metrics) {
+            runs.add(metrics);
+        }
+
+        @Override
+        public synchronized void roundCompleted(SortingState sort, SortMetrics metrics) {
+            rounds.add(metrics);
+        }
+    }
+
+    public void testMetricsAndEvents() throws IOException
+    {
+        RecordingListener listener = new RecordingListener();
+        SortConfig config = new SortConfig().withMaxMemoryUsage(20000)
+                .withSortListener(listener).withMergeFactor(3);
+        Sorter<byte[]> sorter = new Sorter<byte[]>(config, RawTextLineReader.factory(),
+                RawTextLineWriter.factory(), new ByteArrayComparator());
+        CountingWriter<byte[]> out = new CountingWriter<byte[]>();
+        assertTrue(sorter.sort(new StringGenerator(5000, 10), out));
+        assertEquals(5000, out.getCount());
+
+        assertEquals(Arrays.asList(SortingState.Phase.PRE_SORTING, SortingState.Phase.SORTING,
+                SortingState.Phase.COMPLETE), listener.phases);
+        final int runCount = sorter.getNumberOfPreSortFiles();
+        assertTrue(runCount > 3);
+        assertEquals(runCount, listener.runs.size());
+        // counters only grow from one run to the next
+        for (int i = 0; i < runCount; ++i) {
+            assertEquals(i + 1, listener.runs.get(i).getRunCount());
+        }
+        assertEquals(sorter.getNumberOfSortRounds() - 1, listener.rounds.size());
+        assertTrue(listener.rounds.size() > 0);
+
+        SortMetrics m = sorter.getMetrics();
+        assertEquals(SortingState.Phase.COMPLETE, m.getPhase());
+        assertEquals(5000L, m.getRecordsRead());
+        assertEquals(5000L, m.getRunRecords());
+        assertTrue(m.getBytesRead() > 5000L * 10);
+        assertEquals(runCount, m.getRunCount());
+        assertTrue(m.getMinRunBytes() > 0L && m.getMinRunBytes() <= m.getMaxRunBytes());
+        long spilled = m.getRunBytes();
+        for (long b : m.getRoundBytes()) {
+            // each intermediate round rewrites all data
+            assertEquals(m.getRunBytes(), b);
+            spilled += b;
+        }
+        assertEquals(spilled, m.getSpillBytes());
+        assertTrue(m.getComparisons() > 5000L);
+        assertEquals(sorter.getNumberOfSortRounds(), m.getRoundCount());
+        assertEquals(m.getElapsedMillis(), m.getPreSortMillis() + m.getMergeMillis());
+        assertEquals(0L, m.getEstimatedRemainingMillis());
+        // once all input is read, size of input is known
+        assertEquals(5000L, listener.sorting.getRecordsRead());
+        assertTrue(listener.sorting.getEstimatedRemainingMillis() >= 0L);
+        sorter.close();
+    }
+
+    public void testWithoutListener() throws IOException
+    {
+        Sorter<byte[]> sorter = new Sorter<byte[]>(new SortConfig(), RawTextLineReader.factory(),
+                RawTextLineWriter.factory(), new ByteArrayComparator());
+        assertTrue(sorter.sort(new StringGenerator(1000, 10), new CountingWriter<byte[]>()));
+        SortMetrics m = sorter.getMetrics();
+        assertEquals(1000L, m.getRecordsRead());
+        // all in memory
+        assertEquals(0, m.getRunCount());
+        assertEquals(0L, m.getSpillBytes());
+        // not counted without listener
+        assertEquals(-1L, m.getComparisons());
+        sorter.close();
+    }
+
+    public void testParallelFileSort() throws IOException
+    {
+        File input = Files.createTempFile("test-listener", ".txt").toFile();
+        try {
+            StringBuilder sb = new StringBuilder();
+            Random rnd = new Random(1);
+            for (int i = 0; i < 20000; ++i) {
+                sb.append(rnd.nextInt()).append('\n');
+            }
+            Files.write(input.toPath(), sb.toString().getBytes(CHARSET));
+            RecordingListener listener = new RecordingListener();
+            TextFileSorter sorter = new TextFileSorter(new SortConfig().withMaxMemoryUsage(100000)
+                    .withSortListener(listener));
+            assertTrue(sorter.sort(input.toPath(), new CountingWriter<byte[]>(), 4));
+            SortMetrics m = sorter.getMetrics();
+            assertEquals(input.length(), m.getExpectedInputBytes());
+            assertEquals(20000L, m.getRecordsRead());
+            assertEquals(sorter.getNumberOfPreSortFiles(), listener.runs.size());
+            sorter.close();
+        } finally {
+            input.delete();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.fasterxml.sort;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.fasterxml.sort.std.*;
+
+public class TestSortResourceManager extends SortTestBase
+{
+    public void testGrantsInOrder() throws Exception
+    {
+        final SortResourceManager mgr = new SortResourceManager(1000L, 2, null, 100L);
+        assertEquals(800L, mgr.acquireMemory(800L, null));
+        // less than asked, since more than minimum is available
+        assertEquals(200L, mgr.acquireMemory(500L, null));
+        assertEquals(1000L, mgr.getMemoryInUse());
+
+        // but when nothing is available, must wait for release
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+        Future<Long> waiting = exec.submit(new Callable<Long>() {
+            @Override
+            public Long call() throws IOException {
+                return mgr.acquireMemory(300L, null);
+            }
+        });
+        Thread.sleep(50L);
+        assertFalse(waiting.isDone());
+        mgr.releaseMemory(800L);
+        assertEquals(Long.valueOf(300L), waiting.get(5, TimeUnit.SECONDS));
+        mgr.releaseMemory(200L);
+        mgr.releaseMemory(300L);
+        assertEquals(0L, mgr.getMemoryInUse());
+
+        // same for threads
+        assertEquals(2, mgr.acquireThreads(5, null));
+        Future<Integer> threads = exec.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws IOException {
+                return mgr.acquireThreads(2, null);
+            }
+        });
+        Thread.sleep(50L);
+        assertFalse(threads.isDone());
+        mgr.releaseThreads(1);
+        assertEquals(Integer.valueOf(1), threads.get(5, TimeUnit.SECONDS));
+        exec.shutdown();
+    }
+
+    public void testConcurrentSorts() throws Exception
+    {
+        final SortResourceManager mgr = new SortResourceManager(150000L, 2, null, 10000L);
+        final List<String> lines = _generate(new Random(1), 10000);
+        final File input = Files.createTempFile("test-resources", ".txt").toFile();
+        Files.write(input.toPath(), _join(lines).getBytes(CHARSET));
+        ExecutorService exec = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<String>> futures = new ArrayList<Future<String>>();
+            for (int i = 0; i < 6; ++i) {
+                final boolean parallel = (i % 2) == 0;
+                futures.add(exec.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws IOException {
+                        // each sort would like to use all memory there is
+                        SortConfig config = new SortConfig().withMaxMemoryUsage(150000L)
+                                .withResourceManager(mgr);
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        if (parallel) {
+                            TextFileSorter sorter = new TextFileSorter(config);
+                            assertTrue(sorter.sort(input.toPath(),
+                                    RawTextLineWriter.factory().constructWriter(out), 4));
+                            sorter.close();
+                        } else {
+                            Sorter<byte[]> sorter = new Sorter<byte[]>(config, RawTextLineReader.factory(),
+                                    RawTextLineWriter.factory(), new ByteArrayComparator());
+                            assertTrue(sorter.sort(_reader(lines), RawTextLineWriter.factory().constructWriter(out)));
+                            sorter.close();
+                        }
+                        return out.toString("UTF-8");
+                    }
+                }));
+            }
+            List<String> sorted = new ArrayList<String>(lines);
+            Collections.sort(sorted);
+            for (Future<String> f : futures) {
+                assertEquals(_join(sorted), f.get(30, TimeUnit.SECONDS));
+            }
+            // everything returned once done
+            assertEquals(0L, mgr.getMemoryInUse());
+            assertEquals(0, mgr.getThreadsInUse());
+        } finally {
+            exec.shutdown();
+            input.delete();
+        }
+    }
+
+    public void testCancelWhileWaiting() throws Exception
+    {
+        final SortResourceManager mgr = new SortResourceManager(10000L, 1);
+        assertEquals(10000L, mgr.acquireMemory(10000L, null));
+        final Sorter<byte[]> sorter = new Sorter<byte[]>(new SortConfig().withResourceManager(mgr),
+                RawTextLineReader.factory(), RawTextLineWriter.factory(), new ByteArrayComparator());
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+        Future<Boolean> result = exec.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws IOException {
+                return sorter.sort(_reader(_generate(new Random(2), 100)),
+                        new CountingWriter<byte[]>());
+            }
+        });
+        Thread.sleep(50L);
+        assertFalse(result.isDone());
+        sorter.cancel();
+        assertEquals(Boolean.FALSE, result.get(5, TimeUnit.SECONDS));
+        exec.shutdown();
+        mgr.releaseMemory(10000L);
+        assertEquals(0L, mgr.getMemoryInUse());
+    }
+
+    public void testDiskQuota() throws IOException
+    {
+        SortResourceManager mgr = SortResourceManager.withDiskQuota(1000000L, 2, null, 1000000L, 0L);
+        SortConfig config = new SortConfig().withMaxMemoryUsage(20000L).withResourceManager(mgr);
+        assertSame(mgr.getTempFileProvider(), config.getTempFileProvider());
+        Sorter<byte[]> sorter = new Sorter<byte[]>(config, RawTextLineReader.factory(),
+                RawTextLineWriter.factory(), new ByteArrayComparator());
+        CountingWriter<byte[]> out = new CountingWriter<byte[]>();
+        assertTrue(sorter.sort(_reader(_generate(new Random(3), 5000)), out));
+        assertEquals(5000, out.getCount());
+        assertTrue(sorter.getNumberOfPreSortFiles() > 1);
+        sorter.close();
+        assertEquals(0, mgr.getTempFileProvider().getFileCount());
+        mgr.getTempFileProvider().close();
+    }
+
+    private String _join(List<String> lines)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        return sb.toString();
+    }
+}
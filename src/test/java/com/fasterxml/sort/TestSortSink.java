@@ -0,0 +1,195 @@
+package com.fasterxml.sort;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.fasterxml.sort.std.*;
+
+public class TestSortSink extends SortTestBase
+{
+    public void testSingleProducerInMemory() throws IOException
+    {
+        SortSink<byte[]> sink = _sink(new SortConfig());
+        List<String> lines = _generate(new Random(1), 1000);
+        for (String line : lines) {
+            sink.add(line.getBytes(CHARSET));
+        }
+        Iterator<byte[]> it = sink.finish();
+        assertEquals(0, sink.getNumberOfPreSortFiles());
+        assertTrue(sink.isCompleted());
+        _verify(lines, it);
+        sink.close();
+
+        try {
+            sink.add(new byte[1]);
+            fail("Should not allow adding after finish()");
+        } catch (IllegalStateException e) { }
+    }
+
+    public void testConcurrentProducers() throws Exception
+    {
+        final SortSink<byte[]> sink = _sink(new SortConfig().withMaxMemoryUsage(100000));
+        final int threads = 8;
+        final List<String> all = Collections.synchronizedList(new ArrayList<String>());
+        ExecutorService exec = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int t = 0; t < threads; ++t) {
+            final List<String> lines = _generate(new Random(t), 5000);
+            all.addAll(lines);
+            futures.add(exec.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    for (String line : lines) {
+                        sink.add(line.getBytes(CHARSET));
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        exec.shutdown();
+        Iterator<byte[]> it = sink.finish();
+        assertTrue(sink.getNumberOfPreSortFiles() > threads);
+        _verify(all, it);
+        sink.close();
+    }
+
+    public void testRunSizeWithManyProducers() throws Exception
+    {
+        final long maxMemory = 50000;
+        final SortSink<byte[]> sink = _sink(new SortConfig().withMaxMemoryUsage(maxMemory));
+        final int threads = 16;
+        final List<String> all = Collections.synchronizedList(new ArrayList<String>());
+        final CyclicBarrier start = new CyclicBarrier(threads);
+        ExecutorService exec = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        long totalSize = 0L;
+        for (int t = 0; t < threads; ++t) {
+            final List<String> lines = _generate(new Random(100 + t), 2000);
+            for (String line : lines) {
+                totalSize += SorterBase.ENTRY_SLOT_SIZE + 16 + line.length();
+            }
+            all.addAll(lines);
+            futures.add(exec.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    for (String line : lines) {
+                        sink.add(line.getBytes(CHARSET));
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        exec.shutdown();
+        Iterator<byte[]> it = sink.finish();
+        // runs contain items of all producers, so they are about as big as memory
+        // allows: not maxMemory/threads, as they would be if each producer only
+        // wrote out its own buffer
+        final int runs = sink.getNumberOfPreSortFiles();
+        assertTrue("Too many runs: "+runs, runs <= 1 + (totalSize / maxMemory));
+        assertTrue(runs >= (totalSize / maxMemory) / 2);
+        _verify(all, it);
+        sink.close();
+    }
+
+    public void testProducersProgressDuringFlush() throws Exception
+    {
+        // writing of the first run blocks until released
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        DataWriterFactory<byte[]> writers = new DataWriterFactory<byte[]>() {
+            private final AtomicBoolean _first = new AtomicBoolean(true);
+
+            @Override
+            public DataWriter<byte[]> constructWriter(OutputStream out) {
+                if (!_first.getAndSet(false)) {
+                    return new RawTextLineWriter(out);
+                }
+                return new RawTextLineWriter(out) {
+                    @Override
+                    public void writeEntry(byte[] item) throws IOException {
+                        writing.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            throw new InterruptedIOException();
+                        }
+                        super.writeEntry(item);
+                    }
+                };
+            }
+        };
+        final SortSink<byte[]> sink = new SortSink<byte[]>(new SortConfig().withMaxMemoryUsage(20000),
+                RawTextLineReader.factory(), writers, new ByteArrayComparator(), b -> 16 + b.length);
+        final List<String> first = _generate(new Random(3), 2000);
+        final List<String> second = _generate(new Random(4), 2000);
+        ExecutorService exec = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> f1 = exec.submit(_producer(sink, first));
+            assertTrue(writing.await(10, TimeUnit.SECONDS));
+            // while first run is being written, another producer can add items,
+            // and write runs of its own
+            exec.submit(_producer(sink, second)).get(10, TimeUnit.SECONDS);
+            assertTrue(sink.getNumberOfPreSortFiles() > 1);
+            release.countDown();
+            f1.get(10, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            exec.shutdownNow();
+        }
+        List<String> all = new ArrayList<String>(first);
+        all.addAll(second);
+        _verify(all, sink.finish());
+        sink.close();
+    }
+
+    public void testCancel() throws IOException
+    {
+        SortSink<byte[]> sink = _sink(new SortConfig().withMaxMemoryUsage(2000));
+        for (String line : _generate(new Random(2), 1000)) {
+            sink.add(line.getBytes(CHARSET));
+        }
+        assertTrue(sink.getNumberOfPreSortFiles() > 0);
+        sink.cancel();
+        assertNull(sink.finish());
+    }
+
+    private Callable<Void> _producer(final SortSink<byte[]> sink, final List<String> lines)
+    {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                for (String line : lines) {
+                    sink.add(line.getBytes(CHARSET));
+                }
+                return null;
+            }
+        };
+    }
+
+    private SortSink<byte[]> _sink(SortConfig config)
+    {
+        return new SortSink<byte[]>(config, RawTextLineReader.factory(),
+                RawTextLineWriter.factory(), new ByteArrayComparator(),
+                b -> 16 + b.length);
+    }
+
+    private void _verify(List<String> lines, Iterator<byte[]> it)
+    {
+        List<String> sorted = new ArrayList<String>(lines);
+        Collections.sort(sorted);
+        List<String> result = new ArrayList<String>();
+        while (it.hasNext()) {
+            result.add(new String(it.next(), CHARSET));
+        }
+        assertEquals(sorted, result);
+    }
+}
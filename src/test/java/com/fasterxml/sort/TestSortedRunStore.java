@@ -0,0 +1,119 @@
+package com.fasterxml.sort;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+import com.fasterxml.sort.std.*;
+
+public class TestSortedRunStore extends SortTestBase
+{
+    public void testAddCompactReopen() throws IOException
+    {
+        File dir = Files.createTempDirectory("run-store").toFile();
+        try {
+            SortConfig config = new SortConfig().withMaxMemoryUsage(20000).withMergeFactor(3);
+            SortedRunStore<byte[]> store = _store(dir, config, false);
+            List<String> all = new ArrayList<String>();
+            for (int i = 0; i < 10; ++i) {
+                List<String> batch = _generate(new Random(i), 500);
+                all.addAll(batch);
+                assertTrue(store.add(_reader(batch)));
+                // compacted whenever 3 runs accumulate
+                assertTrue(store.getRuns().size() < 3);
+                assertEquals(_sorted(all), _read(store));
+            }
+            store.close();
+
+            // and re-opening from the directory gives the same contents
+            store = _store(dir, config, false);
+            assertEquals(_sorted(all), _read(store));
+            // but not any run files beyond those in manifest
+            assertEquals(store.getRuns().size() + 1, dir.listFiles().length);
+            store.close();
+        } finally {
+            _delete(dir);
+        }
+    }
+
+    public void testReaderSnapshot() throws IOException
+    {
+        File dir = Files.createTempDirectory("run-store").toFile();
+        try {
+            SortConfig config = new SortConfig().withMergeFactor(2);
+            SortedRunStore<byte[]> store = _store(dir, config, false);
+            List<String> first = _generate(new Random(1), 300);
+            store.add(_reader(first));
+            DataReader<byte[]> reader = store.openReader();
+            List<File> runs = store.getRuns();
+
+            // compaction replaces the run reader uses; but not until reader is closed
+            store.add(_reader(_generate(new Random(2), 300)));
+            assertEquals(1, store.getRuns().size());
+            assertFalse(runs.equals(store.getRuns()));
+            assertTrue(runs.get(0).exists());
+            List<String> result = new ArrayList<String>();
+            byte[] b;
+            while ((b = reader.readNext()) != null) {
+                result.add(new String(b, CHARSET));
+            }
+            assertEquals(_sorted(first), result);
+            reader.close();
+            assertFalse(runs.get(0).exists());
+            store.close();
+        } finally {
+            _delete(dir);
+        }
+    }
+
+    public void testBackgroundCompaction() throws IOException
+    {
+        File dir = Files.createTempDirectory("run-store").toFile();
+        try {
+            SortConfig config = new SortConfig().withMergeFactor(2);
+            SortedRunStore<byte[]> store = _store(dir, config, true);
+            List<String> all = new ArrayList<String>();
+            for (int i = 0; i < 8; ++i) {
+                List<String> batch = _generate(new Random(i), 200);
+                all.addAll(batch);
+                store.add(_reader(batch));
+            }
+            assertEquals(_sorted(all), _read(store));
+            store.close();
+            // once background compaction is done, single run remains
+            store = _store(dir, config, false);
+            assertEquals(1, store.getRuns().size());
+            assertEquals(_sorted(all), _read(store));
+            store.close();
+        } finally {
+            _delete(dir);
+        }
+    }
+
+    private SortedRunStore<byte[]> _store(File dir, SortConfig config, boolean background)
+        throws IOException
+    {
+        return new SortedRunStore<byte[]>(dir, config, RawTextLineReader.factory(),
+                RawTextLineWriter.factory(), new ByteArrayComparator(), background);
+    }
+
+    private List<String> _read(SortedRunStore<byte[]> store) throws IOException
+    {
+        List<String> result = new ArrayList<String>();
+        DataReader<byte[]> reader = store.openReader();
+        byte[] b;
+        while ((b = reader.readNext()) != null) {
+            result.add(new String(b, CHARSET));
+        }
+        reader.close();
+        return result;
+    }
+
+    private void _delete(File dir)
+    {
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+}
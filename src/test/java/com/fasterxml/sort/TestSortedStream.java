@@ -0,0 +1,89 @@
+package com.fasterxml.sort;
+
+import java.io.*;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.fasterxml.sort.std.*;
+
+public class TestSortedStream extends SortTestBase
+{
+    public void testInMemory() throws IOException
+    {
+        List<String> lines = _generate(new Random(1), 3000);
+        TextFileSorter sorter = new TextFileSorter();
+        try (Stream<byte[]> stream = sorter.sortedStream(_reader(lines))) {
+            assertEquals(0, sorter.getNumberOfPreSortFiles());
+            assertEquals(_sorted(lines), _collect(stream.parallel()));
+        }
+    }
+
+    public void testParallelRanges() throws IOException
+    {
+        List<String> lines = _generate(new Random(2), 20000);
+        // 2-way merges, so that ranges need intermediate rounds as well
+        TextFileSorter sorter = new TextFileSorter(
+                new SortConfig().withMaxMemoryUsage(50000).withMergeFactor(2));
+        try (Stream<byte[]> stream = sorter.sortedStream(_reader(lines), 8)) {
+            assertTrue(sorter.getNumberOfPreSortFiles() > 8);
+            assertEquals(_sorted(lines), _collect(stream.parallel()));
+        }
+        // and sequentially, too
+        try (Stream<byte[]> stream = sorter.sortedStream(_reader(lines), 3)) {
+            assertEquals(_sorted(lines), _collect(stream));
+        }
+    }
+
+    public void testSplitting() throws IOException
+    {
+        List<String> lines = _generate(new Random(3), 5000);
+        TextFileSorter sorter = new TextFileSorter(new SortConfig().withMaxMemoryUsage(20000));
+        try (Stream<byte[]> stream = sorter.sortedStream(_reader(lines), 4)) {
+            Spliterator<byte[]> sp = stream.spliterator();
+            Spliterator<byte[]> prefix = sp.trySplit();
+            assertNotNull(prefix);
+            List<String> result = new ArrayList<String>();
+            prefix.forEachRemaining(b -> result.add(new String(b, CHARSET)));
+            int prefixCount = result.size();
+            sp.forEachRemaining(b -> result.add(new String(b, CHARSET)));
+            assertTrue(prefixCount > 0 && prefixCount < result.size());
+            assertEquals(_sorted(lines), result);
+        }
+    }
+
+    public void testPhase() throws IOException
+    {
+        List<String> lines = _generate(new Random(4), 5000);
+        TextFileSorter sorter = new TextFileSorter(new SortConfig().withMaxMemoryUsage(20000));
+        // merging is done by the stream, so sort is complete only once it is consumed
+        try (Stream<byte[]> stream = sorter.sortedStream(_reader(lines), 4)) {
+            assertEquals(SortingState.Phase.SORTING, sorter.getPhase());
+            Iterator<byte[]> it = stream.iterator();
+            for (int i = 0; i < 10; ++i) {
+                it.next();
+            }
+            assertEquals(SortingState.Phase.SORTING, sorter.getPhase());
+            while (it.hasNext()) {
+                it.next();
+            }
+            assertEquals(SortingState.Phase.COMPLETE, sorter.getPhase());
+        }
+        // or closed
+        Stream<byte[]> stream = sorter.sortedStream(_reader(lines), 4);
+        assertEquals(SortingState.Phase.SORTING, sorter.getPhase());
+        stream.iterator().next();
+        stream.close();
+        assertEquals(SortingState.Phase.COMPLETE, sorter.getPhase());
+        // nothing to merge if all fits in memory
+        TextFileSorter inMemory = new TextFileSorter();
+        try (Stream<byte[]> unused = inMemory.sortedStream(_reader(lines))) {
+            assertEquals(SortingState.Phase.COMPLETE, inMemory.getPhase());
+        }
+    }
+
+    private List<String> _collect(Stream<byte[]> stream)
+    {
+        return stream.map(b -> new String(b, CHARSET)).collect(Collectors.toList());
+    }
+}
@@ -13,4 +13,20 @@ public class TestSorter extends SortTestBase
         assertEquals(2, Sorter._calculateRoundCount(256, 19));
         assertEquals(2, Sorter._calculateRoundCount(5, 4));
     }
+
+    public void testMergeFactorConfig()
+    {
+        SortConfig base = new SortConfig().withMaxMemoryUsage(20000);
+        assertSame(base, base.withMergeFactor(SortConfig.DEFAULT_MERGE_FACTOR));
+        SortConfig config = base.withMergeFactor(3);
+        assertEquals(3, config.getMergeFactor());
+        assertEquals(20000, config.getMaxMemoryUsage());
+        assertEquals(SortConfig.DEFAULT_MERGE_FACTOR, base.getMergeFactor());
+        try {
+            base.withMergeFactor(1);
+            fail("Should not allow merge factor below 2");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("at least 2"));
+        }
+    }
 }
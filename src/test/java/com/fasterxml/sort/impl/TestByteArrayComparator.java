@@ -2,6 +2,7 @@ package com.fasterxml.sort.impl;
 
 import com.fasterxml.sort.SortTestBase;
 import com.fasterxml.sort.std.ByteArrayComparator;
+import com.fasterxml.sort.std.PrefixCompressedWriter;
 
 public class TestByteArrayComparator
     extends SortTestBase
@@ -25,4 +26,23 @@ public class TestByteArrayComparator
         assertTrue(cmp.compare(new byte[] { 1, (byte) 0xFF }, new byte[] { 1, 1 }) > 0);
         assertTrue(cmp.compare(new byte[] { 1, 1 }, new byte[] { 1, (byte) 0xFF }) < 0);
     }
+
+    public void testLongSharedPrefixes()
+    {
+        ByteArrayComparator cmp = new ByteArrayComparator();
+        byte[] base = "2023-01-01T10:00:00.000Z http://www.example.com/path/".getBytes(CHARSET);
+        for (int i = 0; i < base.length; ++i) {
+            byte[] other = base.clone();
+            other[i] = (byte) 0x80;
+            assertTrue(cmp.compare(base, other) < 0);
+            assertTrue(cmp.compare(other, base) > 0);
+            // and as prefix of the other
+            byte[] prefix = java.util.Arrays.copyOf(base, i);
+            assertEquals(i - base.length, cmp.compare(prefix, base));
+            assertEquals(i, PrefixCompressedWriter.sharedPrefixLength(prefix, base));
+            assertEquals(i, PrefixCompressedWriter.sharedPrefixLength(other, base));
+        }
+        assertEquals(0, cmp.compare(base, base.clone()));
+        assertEquals(base.length, PrefixCompressedWriter.sharedPrefixLength(base, base.clone()));
+    }
 }
@@ -0,0 +1,164 @@
+package com.fasterxml.sort.impl;
+
+import java.io.*;
+import java.util.*;
+
+import com.fasterxml.sort.SortConfig;
+import com.fasterxml.sort.SortResourceManager;
+import com.fasterxml.sort.SortTestBase;
+import com.fasterxml.sort.std.*;
+
+public class TestFixedWidthRecordSorter extends SortTestBase
+{
+    // 16-byte key followed by 8-byte value
+    private final static int RECORD_LENGTH = 24;
+
+    public void testInMemory() throws IOException
+    {
+        _verify(new SortConfig(), 0, 16, 5000, false);
+    }
+
+    public void testWithRuns() throws IOException
+    {
+        FixedWidthRecordSorter sorter = _verify(new SortConfig().withMaxMemoryUsage(10000),
+                0, 16, 5000, false);
+        assertTrue(sorter.getNumberOfPreSortFiles() > 1);
+    }
+
+    public void testKeyWithinRecord() throws IOException
+    {
+        // key in the middle of record, many duplicate prefixes to exercise recursion
+        _verify(new SortConfig().withMaxMemoryUsage(30000), 4, 6, 8000, true);
+    }
+
+    public void testPartialRecord() throws IOException
+    {
+        FixedWidthRecordSorter sorter = new FixedWidthRecordSorter(new SortConfig(), RECORD_LENGTH);
+        try {
+            sorter.sort(new ByteArrayInputStream(new byte[RECORD_LENGTH * 3 + 5]),
+                    new ByteArrayOutputStream());
+            fail("Should not accept partial record");
+        } catch (EOFException e) {
+            assertTrue(e.getMessage().contains("partial record"));
+        }
+    }
+
+    public void testResourceManagerMemory() throws IOException
+    {
+        // slab sized by memory granted, not by (much bigger) configured maximum
+        SortResourceManager mgr = new SortResourceManager(10000L, 1);
+        FixedWidthRecordSorter sorter = _verify(new SortConfig().withResourceManager(mgr),
+                0, 16, 5000, false);
+        assertTrue(sorter.getNumberOfPreSortFiles() > 1);
+        assertEquals(0L, mgr.getMemoryInUse());
+    }
+
+    public void testCancelWhileFilling() throws IOException
+    {
+        final FixedWidthRecordSorter sorter = new FixedWidthRecordSorter(
+                new SortConfig().withMaxMemoryUsage(50L * 1000 * 1000), RECORD_LENGTH);
+        // input that cancels sort after first megabyte
+        final long[] read = new long[1];
+        InputStream in = new InputStream() {
+            @Override
+            public int read() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                len = Math.min(len, 1000);
+                if ((read[0] += len) > 1000000L) {
+                    sorter.cancel();
+                }
+                return len;
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sorter.sort(in, out);
+        assertFalse(sorter.isCompleted());
+        assertEquals(0, out.size());
+        // stops within one check interval, instead of filling 50 megabyte slab
+        assertTrue("Read "+read[0]+" bytes", read[0] < 2000000L);
+        sorter.close();
+    }
+
+    public void testTimeLimit() throws IOException
+    {
+        FixedWidthRecordSorter sorter = new FixedWidthRecordSorter(new SortConfig()
+                .withMaxMemoryUsage(50L * 1000 * 1000).withTimeLimit(200L), RECORD_LENGTH);
+        // slow input, that would take minutes to fill the slab
+        InputStream in = new InputStream() {
+            @Override
+            public int read() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                try {
+                    Thread.sleep(1L);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                return Math.min(len, 4096);
+            }
+        };
+        long start = System.currentTimeMillis();
+        try {
+            sorter.sort(in, new ByteArrayOutputStream());
+            fail("Should not complete sorting endless input");
+        } catch (InterruptedIOException e) {
+            assertTrue(e.getMessage().contains("time limit"));
+        }
+        assertTrue(System.currentTimeMillis() - start < 10000L);
+        sorter.close();
+    }
+
+    private FixedWidthRecordSorter _verify(SortConfig config, int keyOffset, int keyLength,
+            int count, boolean narrowKeys) throws IOException
+    {
+        Random rnd = new Random(count);
+        List<byte[]> records = new ArrayList<byte[]>();
+        ByteArrayOutputStream in = new ByteArrayOutputStream();
+        for (int i = 0; i < count; ++i) {
+            byte[] rec = new byte[RECORD_LENGTH];
+            rnd.nextBytes(rec);
+            if (narrowKeys) {
+                for (int j = keyOffset; j < keyOffset + keyLength - 1; ++j) {
+                    rec[j] = (byte) (rec[j] & 0x81);
+                }
+            }
+            records.add(rec);
+            in.write(rec);
+        }
+        // stable reference sort; radix pre-sort is not stable, so compare keys only
+        final FixedWidthRecordSorter.KeyComparator cmp = new FixedWidthRecordSorter.KeyComparator(keyOffset, keyLength);
+        Collections.sort(records, cmp);
+
+        FixedWidthRecordSorter sorter = new FixedWidthRecordSorter(config, RECORD_LENGTH,
+                keyOffset, keyLength);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sorter.sort(new ByteArrayInputStream(in.toByteArray()), out);
+        assertTrue(sorter.isCompleted());
+        byte[] result = out.toByteArray();
+        assertEquals(count * RECORD_LENGTH, result.length);
+
+        List<byte[]> actual = new ArrayList<byte[]>();
+        for (int i = 0; i < count; ++i) {
+            actual.add(Arrays.copyOfRange(result, i * RECORD_LENGTH, (i+1) * RECORD_LENGTH));
+        }
+        for (int i = 0; i < count; ++i) {
+            assertEquals("Key of record #"+i, 0, cmp.compare(records.get(i), actual.get(i)));
+        }
+        // and no records lost or duplicated
+        Comparator<byte[]> full = new ByteArrayComparator();
+        Collections.sort(records, full);
+        Collections.sort(actual, full);
+        for (int i = 0; i < count; ++i) {
+            assertTrue(Arrays.equals(records.get(i), actual.get(i)));
+        }
+        sorter.close();
+        return sorter;
+    }
+}
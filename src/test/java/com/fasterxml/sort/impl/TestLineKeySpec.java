@@ -0,0 +1,158 @@
+package com.fasterxml.sort.impl;
+
+import java.io.*;
+import java.util.*;
+
+import com.fasterxml.sort.SortConfig;
+import com.fasterxml.sort.SortTestBase;
+import com.fasterxml.sort.std.*;
+
+public class TestLineKeySpec extends SortTestBase
+{
+    public void testNumeric() throws IOException
+    {
+        _verify(new LineKeySpec().withNumeric(true),
+                "-10", "-2.5", "-2", "-0.5", "0", "0.000", "abc", "00.05", "0.5", "1", "1.25", "1.5", "9", "10", "100");
+        _verify(new LineKeySpec().withNumeric(true).withReverse(true),
+                "100", "10", "9", "1.5", "1.25", "1", "0.5", "00.05", "abc", "0.000", "0", "-0.5", "-2", "-2.5", "-10");
+    }
+
+    public void testFields() throws IOException
+    {
+        // second field numerically, then first field
+        LineKeySpec spec = new LineKeySpec().withSeparator(',').withKey("2,2n").withKey("1,1");
+        // (missing field is empty, so zero)
+        _verify(spec, "x", "b,1,z", "c,1,a", "a,2", "b,2,y", "a,10");
+        // blank-separated
+        spec = new LineKeySpec().withKey("2n");
+        _verify(spec, "c  -5 q", "x", "b 3", "a\\t20 y");
+        // range of fields, reverse just for the second key
+        spec = new LineKeySpec().withSeparator(':').withKey("2,3").withKey("1r");
+        _verify(spec, "b:a:a", "a:a:a", "z:a:b", "y:b");
+    }
+
+    public void testIgnoreCase() throws IOException
+    {
+        _verify(new LineKeySpec().withIgnoreCase(true), "a", "B", "b", "C", "c\u0000", "cD");
+        // keys with flags of their own do not use global flags
+        _verify(new LineKeySpec().withIgnoreCase(true).withKey("1,1r"), "b", "a", "C", "B");
+        _verify(new LineKeySpec().withIgnoreCase(true).withKey("1,1"), "a", "B", "b", "C");
+    }
+
+    public void testRoundTrip() throws IOException
+    {
+        LineKeySpec spec = new LineKeySpec().withReverse(true).withKey("1n").withKey("2f");
+        for (String line : new String[] { "", "1", "a\u0000b c", "-12.50 xyz\u0000 ", "  xÿ" }) {
+            byte[] b = line.getBytes(CHARSET);
+            assertEquals(line, new String(spec.decode(spec.encode(b)), CHARSET));
+        }
+    }
+
+    public void testInvalidKeys()
+    {
+        for (String def : new String[] { "", "a", "2,1", "1.2", "1,2,3", "0" }) {
+            try {
+                LineKeySpec.KeyField.parse(def);
+                fail("Should not accept '"+def+"'");
+            } catch (IllegalArgumentException e) { }
+        }
+    }
+
+    public void testTextFileSorter() throws IOException
+    {
+        Random rnd = new Random(1);
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 20000; ++i) {
+            lines.add("id"+rnd.nextInt(1000)+"\t"+(rnd.nextInt(20000) - 10000)+"\t"+i);
+        }
+        StringBuilder in = new StringBuilder();
+        for (String line : lines) {
+            in.append(line).append('\n');
+        }
+        // by second field descending numerically, then by third
+        Collections.sort(lines, new Comparator<String>() {
+            @Override
+            public int compare(String s1, String s2) {
+                String[] f1 = s1.split("\t"), f2 = s2.split("\t");
+                int diff = Integer.compare(Integer.parseInt(f2[1]), Integer.parseInt(f1[1]));
+                return (diff != 0) ? diff : Integer.compare(Integer.parseInt(f1[2]), Integer.parseInt(f2[2]));
+            }
+        });
+        StringBuilder exp = new StringBuilder();
+        for (String line : lines) {
+            exp.append(line).append('\n');
+        }
+        LineKeySpec spec = new LineKeySpec().withSeparator('\t').withKey("2,2nr").withKey("3n");
+        for (boolean prefixCompress : new boolean[] { false, true }) {
+            TextFileSorter sorter = new TextFileSorter(new SortConfig().withMaxMemoryUsage(100000),
+                    prefixCompress, spec);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            sorter.sort(new ByteArrayInputStream(in.toString().getBytes(CHARSET)), out);
+            assertTrue(sorter.getNumberOfPreSortFiles() > 1);
+            sorter.close();
+            assertEquals(exp.toString(), out.toString("UTF-8"));
+        }
+    }
+
+    public void testEncodedLinefeedsInRuns() throws IOException
+    {
+        // 10- and 13-digit numbers encode digit counts as LF and CR bytes, and
+        // reversed keys may contain them as well; runs must still read back fine
+        Random rnd = new Random(2);
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 5000; ++i) {
+            long value = (i % 2 == 0) ? 1000000000L + rnd.nextInt(1000000000)
+                    : 1000000000000L + rnd.nextInt(1000000000);
+            lines.add(value+","+(char) ('a' + rnd.nextInt(26))+i);
+        }
+        StringBuilder in = new StringBuilder();
+        for (String line : lines) {
+            in.append(line).append('\n');
+        }
+        for (LineKeySpec spec : new LineKeySpec[] {
+                new LineKeySpec().withSeparator(',').withKey("1,1n"),
+                new LineKeySpec().withSeparator(',').withKey("1,1nr"),
+                new LineKeySpec().withSeparator(',').withKey("2r").withKey("1,1n") }) {
+            TextFileSorter sorter = new TextFileSorter(new SortConfig().withMaxMemoryUsage(20000),
+                    false, spec);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            sorter.sort(new ByteArrayInputStream(in.toString().getBytes(CHARSET)), out);
+            assertTrue(sorter.getNumberOfPreSortFiles() > 1);
+            assertTrue(sorter.getNumberOfSortRounds() > 0);
+            sorter.close();
+            List<byte[]> encoded = new ArrayList<byte[]>();
+            for (String line : lines) {
+                encoded.add(spec.encode(line.getBytes(CHARSET)));
+            }
+            Collections.sort(encoded, new ByteArrayComparator());
+            StringBuilder exp = new StringBuilder();
+            for (byte[] b : encoded) {
+                exp.append(new String(spec.decode(b), CHARSET)).append('\n');
+            }
+            assertEquals(exp.toString(), out.toString("UTF-8"));
+        }
+    }
+
+    /**
+     * Verifies that given lines, which are in expected order, sort to the same order
+     * from shuffled order
+     */
+    private void _verify(LineKeySpec spec, String... expected) throws IOException
+    {
+        List<String> exp = new ArrayList<String>();
+        for (String str : expected) {
+            exp.add(str.replace("\\t", "\t"));
+        }
+        List<byte[]> encoded = new ArrayList<byte[]>();
+        for (String str : exp) {
+            encoded.add(spec.encode(str.getBytes(CHARSET)));
+        }
+        Collections.shuffle(encoded, new Random(exp.size()));
+        Collections.sort(encoded, new ByteArrayComparator());
+        List<String> act = new ArrayList<String>();
+        for (byte[] b : encoded) {
+            act.add(new String(spec.decode(b), CHARSET));
+        }
+        assertEquals(exp, act);
+    }
+}
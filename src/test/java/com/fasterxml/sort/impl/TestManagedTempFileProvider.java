@@ -0,0 +1,128 @@
+package com.fasterxml.sort.impl;
+
+import java.io.*;
+import java.util.*;
+
+import com.fasterxml.sort.*;
+import com.fasterxml.sort.std.*;
+import com.fasterxml.sort.util.CollectionReader;
+
+public class TestManagedTempFileProvider extends SortTestBase
+{
+    static class SizedReader extends CollectionReader<byte[]>
+    {
+        public SizedReader(Collection<byte[]> items) {
+            super(items);
+        }
+
+        @Override
+        public int estimateSizeInBytes(byte[] item) {
+            return 16 + item.length;
+        }
+    }
+
+    public void testFilesReleasedAfterSort() throws IOException
+    {
+        ManagedTempFileProvider prov = new ManagedTempFileProvider();
+        Sorter<byte[]> sorter = _sorter(prov);
+        CountingWriter<byte[]> counter = new CountingWriter<byte[]>();
+        assertTrue(sorter.sort(new SizedReader(_generate(10000)), counter));
+        assertEquals(10000, counter.getCount());
+        assertTrue(sorter.getNumberOfPreSortFiles() > 1);
+        assertEquals(0, prov.getFileCount());
+        assertEquals(0L, prov.getBytesInUse());
+        prov.close();
+    }
+
+    public void testFilesReleasedAfterFailure() throws IOException
+    {
+        ManagedTempFileProvider prov = new ManagedTempFileProvider();
+        Sorter<byte[]> sorter = _sorter(prov);
+        final List<byte[]> input = _generate(10000);
+        // fail half-way through input, after some runs have been written
+        DataReader<byte[]> failing = new SizedReader(input) {
+            int count = 0;
+
+            @Override
+            public byte[] readNext() {
+                if (++count > 5000) {
+                    throw new IllegalStateException("Simulated failure");
+                }
+                return super.readNext();
+            }
+        };
+        try {
+            sorter.sort(failing, new CountingWriter<byte[]>());
+            fail("Should have failed");
+        } catch (IllegalStateException e) {
+            assertEquals("Simulated failure", e.getMessage());
+        }
+        assertTrue(sorter.getNumberOfPreSortFiles() > 0);
+        assertEquals(0, prov.getFileCount());
+        assertEquals(0L, prov.getBytesInUse());
+        prov.close();
+    }
+
+    public void testQuota() throws IOException
+    {
+        // too small to hold all runs: must fail fast
+        ManagedTempFileProvider prov = new ManagedTempFileProvider(null, 100000L, 0L);
+        Sorter<byte[]> sorter = _sorter(prov);
+        try {
+            sorter.sort(new SizedReader(_generate(10000)), new CountingWriter<byte[]>());
+            fail("Should have failed");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("quota"));
+        }
+        assertEquals(0, prov.getFileCount());
+        assertEquals(0L, prov.getBytesInUse());
+
+        // but big enough is fine
+        prov = new ManagedTempFileProvider(null, 10000000L, 0L);
+        sorter = _sorter(prov);
+        CountingWriter<byte[]> counter = new CountingWriter<byte[]>();
+        assertTrue(sorter.sort(new SizedReader(_generate(10000)), counter));
+        assertEquals(10000, counter.getCount());
+        assertEquals(0, prov.getFileCount());
+    }
+
+    public void testCloseDeletesFiles() throws IOException
+    {
+        ManagedTempFileProvider prov = new ManagedTempFileProvider();
+        File f1 = prov.provide();
+        File f2 = prov.provide();
+        OutputStream out = prov.openOutput(f1);
+        out.write(new byte[1000]);
+        out.close();
+        assertEquals(2, prov.getFileCount());
+        assertEquals(1000L, prov.getBytesInUse());
+        prov.close();
+        assertFalse(f1.exists());
+        assertFalse(f2.exists());
+        assertEquals(0L, prov.getBytesInUse());
+        try {
+            prov.provide();
+            fail("Should not allow");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("closed"));
+        }
+    }
+
+    private Sorter<byte[]> _sorter(TempFileProvider prov)
+    {
+        return new Sorter<byte[]>(new SortConfig().withMaxMemoryUsage(100000)
+                .withTempFileProvider(prov),
+                RawTextLineReader.factory(), RawTextLineWriter.factory(),
+                new ByteArrayComparator());
+    }
+
+    private List<byte[]> _generate(int count)
+    {
+        Random r = new Random(count);
+        List<byte[]> result = new ArrayList<byte[]>(count);
+        for (int i = 0; i < count; ++i) {
+            result.add(("line-"+r.nextInt()+"-abcdefghijklmnopqrstuvwxyz").getBytes(CHARSET));
+        }
+        return result;
+    }
+}
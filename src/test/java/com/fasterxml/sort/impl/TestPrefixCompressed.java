@@ -0,0 +1,128 @@
+package com.fasterxml.sort.impl;
+
+import java.io.*;
+import java.util.*;
+
+import com.fasterxml.sort.DataReader;
+import com.fasterxml.sort.SortConfig;
+import com.fasterxml.sort.SortTestBase;
+import com.fasterxml.sort.std.*;
+
+public class TestPrefixCompressed extends SortTestBase
+{
+    public void testRoundTrip() throws IOException
+    {
+        List<byte[]> entries = _sortedBytes(_generateValues(new Random(1), 3000));
+        // include edge cases: empty entry, duplicates, long entry
+        entries.add(0, new byte[0]);
+        entries.add(1, new byte[0]);
+        entries.add(_long(40000));
+
+        byte[] encoded = _encode(entries);
+        PrefixCompressedReader r = new PrefixCompressedReader(new ByteArrayInputStream(encoded));
+        byte[] prev = null;
+        for (byte[] exp : entries) {
+            byte[] act = r.readNext();
+            assertNotNull(act);
+            assertTrue(Arrays.equals(exp, act));
+            int shared = (prev == null) ? 0 : PrefixCompressedWriter.sharedPrefixLength(prev, act);
+            assertEquals(shared, r.sharedPrefixLength());
+            prev = act;
+        }
+        assertNull(r.readNext());
+        r.close();
+
+        // and should be quite a bit more compact than plain lines
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        RawTextLineWriter w = new RawTextLineWriter(plain);
+        for (byte[] b : entries) {
+            w.writeEntry(b);
+        }
+        w.close();
+        assertTrue(encoded.length * 2 < plain.size());
+    }
+
+    public void testMerge() throws IOException
+    {
+        Random rnd = new Random(2);
+        for (int inputCount = 1; inputCount <= 9; ++inputCount) {
+            List<SharedPrefixReader> readers = new ArrayList<SharedPrefixReader>();
+            List<byte[]> all = new ArrayList<byte[]>();
+            for (int i = 0; i < inputCount; ++i) {
+                List<byte[]> entries = _sortedBytes(_generateValues(rnd, rnd.nextInt(500)));
+                all.addAll(entries);
+                readers.add(new PrefixCompressedReader(new ByteArrayInputStream(_encode(entries))));
+            }
+            all = _sortedBytes(all);
+            DataReader<byte[]> merged = SharedPrefixMerger.mergedReader(readers);
+            for (byte[] exp : all) {
+                byte[] act = merged.readNext();
+                assertNotNull(act);
+                assertEquals(new String(exp, CHARSET), new String(act, CHARSET));
+            }
+            assertNull(merged.readNext());
+        }
+    }
+
+    public void testTextFileSorter() throws IOException
+    {
+        List<byte[]> entries = _generateValues(new Random(3), 20000);
+        ByteArrayOutputStream in = new ByteArrayOutputStream();
+        for (byte[] b : entries) {
+            in.write(b);
+            in.write('\n');
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TextFileSorter sorter = new TextFileSorter(new SortConfig().withMaxMemoryUsage(100000), true);
+        sorter.sort(new ByteArrayInputStream(in.toByteArray()), out);
+        assertTrue(sorter.getNumberOfPreSortFiles() > 2);
+        sorter.close();
+
+        StringBuilder sb = new StringBuilder();
+        for (byte[] b : _sortedBytes(entries)) {
+            sb.append(new String(b, CHARSET)).append('\n');
+        }
+        assertEquals(sb.toString(), out.toString("UTF-8"));
+    }
+
+    private byte[] _encode(List<byte[]> entries) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrefixCompressedWriter w = new PrefixCompressedWriter(bytes);
+        for (byte[] b : entries) {
+            w.writeEntry(b);
+        }
+        w.close();
+        return bytes.toByteArray();
+    }
+
+    private List<byte[]> _generateValues(Random rnd, int count)
+    {
+        final String[] prefixes = new String[] { "http://www.example.com/",
+                "http://www.example.com/path/", "https://other.example.org/",
+                "2023-01-01T10:", "2023-01-01T11:", "x" };
+        List<byte[]> result = new ArrayList<byte[]>(count);
+        for (int i = 0; i < count; ++i) {
+            String str = prefixes[rnd.nextInt(prefixes.length)] + rnd.nextInt(5000);
+            if (rnd.nextInt(10) == 0) { // some non-ASCII too
+                str += "é€";
+            }
+            result.add(str.getBytes(CHARSET));
+        }
+        return result;
+    }
+
+    private List<byte[]> _sortedBytes(List<byte[]> entries)
+    {
+        List<byte[]> result = new ArrayList<byte[]>(entries);
+        Collections.sort(result, new ByteArrayComparator());
+        return result;
+    }
+
+    private byte[] _long(int len)
+    {
+        byte[] b = new byte[len];
+        Arrays.fill(b, (byte) 'z');
+        return b;
+    }
+}
@@ -0,0 +1,99 @@
+package com.fasterxml.sort.impl;
+
+import java.io.*;
+import java.util.*;
+
+import com.fasterxml.sort.SortConfig;
+import com.fasterxml.sort.SortTestBase;
+import com.fasterxml.sort.std.*;
+
+public class TestPrimitiveSorters extends SortTestBase
+{
+    public void testLongsInMemory() throws IOException
+    {
+        LongExternalSorter sorter = new LongExternalSorter();
+        _verifyLongs(sorter, 10000);
+        assertEquals(0, sorter.getNumberOfPreSortFiles());
+        _verifyLongs(sorter, 0);
+    }
+
+    public void testLongsWithRuns() throws IOException
+    {
+        // 2-way merge to get intermediate rounds too
+        LongExternalSorter sorter = new LongExternalSorter(
+                new SortConfig().withMaxMemoryUsage(4000).withMergeFactor(2));
+        _verifyLongs(sorter, 10000);
+        assertTrue(sorter.getNumberOfPreSortFiles() > 10);
+        assertTrue(sorter.getNumberOfSortRounds() > 2);
+    }
+
+    public void testIntsWithRuns() throws IOException
+    {
+        IntExternalSorter sorter = new IntExternalSorter(new SortConfig().withMaxMemoryUsage(8000));
+        Random rnd = new Random(3);
+        int[] values = new int[20000];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = rnd.nextInt();
+        }
+        PrimitiveIterator.OfInt it = sorter.sort(Arrays.stream(values).iterator());
+        assertTrue(sorter.isCompleted());
+        assertTrue(sorter.getNumberOfPreSortFiles() > 1);
+        Arrays.sort(values);
+        for (int i = 0; i < values.length; ++i) {
+            assertTrue(it.hasNext());
+            assertEquals(values[i], it.nextInt());
+        }
+        assertFalse(it.hasNext());
+        sorter.close();
+    }
+
+    public void testStreams() throws IOException
+    {
+        Random rnd = new Random(5);
+        long[] values = new long[5000];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = rnd.nextLong();
+            out.writeLong(values[i]);
+        }
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        LongExternalSorter sorter = new LongExternalSorter(new SortConfig().withMaxMemoryUsage(4000));
+        sorter.sort(new ByteArrayInputStream(bytes.toByteArray()), result);
+        assertTrue(sorter.getNumberOfPreSortFiles() > 1);
+
+        Arrays.sort(values);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(result.toByteArray()));
+        for (long value : values) {
+            assertEquals(value, in.readLong());
+        }
+        assertEquals(-1, in.read());
+
+        // and partial values are not accepted
+        try {
+            sorter.sort(new ByteArrayInputStream(new byte[19]), new ByteArrayOutputStream());
+            fail("Should not accept partial value");
+        } catch (EOFException e) {
+            assertTrue(e.getMessage().contains("partial value"));
+        }
+    }
+
+    private void _verifyLongs(LongExternalSorter sorter, int count) throws IOException
+    {
+        Random rnd = new Random(count);
+        long[] values = new long[count];
+        for (int i = 0; i < count; ++i) {
+            // include duplicates, negative values
+            values[i] = (i % 10 == 0) ? 42L : rnd.nextLong();
+        }
+        PrimitiveIterator.OfLong it = sorter.sort(Arrays.stream(values).iterator());
+        assertTrue(sorter.isCompleted());
+        Arrays.sort(values);
+        for (int i = 0; i < count; ++i) {
+            assertTrue(it.hasNext());
+            assertEquals(values[i], it.nextLong());
+        }
+        assertFalse(it.hasNext());
+        sorter.close();
+    }
+}
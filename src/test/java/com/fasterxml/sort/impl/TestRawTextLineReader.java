@@ -0,0 +1,133 @@
+package com.fasterxml.sort.impl;
+
+import java.io.*;
+import java.util.*;
+
+import com.fasterxml.sort.SortTestBase;
+import com.fasterxml.sort.std.RawTextLineReader;
+
+public class TestRawTextLineReader
+    extends SortTestBase
+{
+    public void testLinefeedsSplitAcrossReads() throws IOException
+    {
+        // every linefeed type, plus empty lines, with and without trailing linefeed
+        final String[] docs = new String[] {
+                "abc\ndef\rghi\r\njkl",
+                "abc\r\n\r\ndef\r\r\n\nghi\n",
+                "\r\n\n\r",
+                "x\r",
+                "single line without linefeed",
+        };
+        for (String doc : docs) {
+            List<String> expected = _split(doc);
+            byte[] bytes = doc.getBytes(CHARSET);
+            // split input at every possible position, including within CR+LF
+            for (int chunk = 1; chunk <= bytes.length; ++chunk) {
+                assertEquals("chunk size "+chunk+" of "+_escape(doc), expected,
+                        _readAll(new ChunkedInputStream(bytes, chunk), 0));
+            }
+        }
+    }
+
+    public void testLinesSpanningBuffers() throws IOException
+    {
+        // lines of varying lengths, including ones much longer than input buffer
+        Random rnd = new Random(16000);
+        StringBuilder sb = new StringBuilder();
+        final String[] linefeeds = new String[] { "\n", "\r", "\r\n" };
+        for (int i = 0; i < 200; ++i) {
+            int len = (i % 10 == 0) ? rnd.nextInt(50000) : rnd.nextInt(100);
+            for (int j = 0; j < len; ++j) {
+                sb.append((char) ('a' + rnd.nextInt(26)));
+            }
+            sb.append(linefeeds[rnd.nextInt(linefeeds.length)]);
+        }
+        final String doc = sb.toString();
+        List<String> expected = _split(doc);
+        byte[] bytes = doc.getBytes(CHARSET);
+        for (int chunk : new int[] { 1, 7, 4093, 16000, 16001, Integer.MAX_VALUE }) {
+            for (int mode = 0; mode < 3; ++mode) {
+                assertEquals("chunk size "+chunk+", mode "+mode, expected,
+                        _readAll(new ChunkedInputStream(bytes, chunk), mode));
+            }
+        }
+    }
+
+    /**
+     * @param mode 0 for plain reads, 1 for reads with reused arrays,
+     *   2 for mix of batch and single reads
+     */
+    private List<String> _readAll(InputStream in, int mode) throws IOException
+    {
+        RawTextLineReader r = new RawTextLineReader(in);
+        List<String> result = new ArrayList<String>();
+        byte[] prev = null;
+        Object[] batch = new Object[5];
+        while (true) {
+            if (mode == 2 && (result.size() % 2) == 0) {
+                int count = r.readBatch(batch, 1, 3);
+                for (int i = 0; i < count; ++i) {
+                    result.add(new String((byte[]) batch[1 + i], CHARSET));
+                }
+                if (count < 3) {
+                    break;
+                }
+                continue;
+            }
+            byte[] line = (mode == 1) ? r.readNext(prev) : r.readNext();
+            if (line == null) {
+                break;
+            }
+            result.add(new String(line, CHARSET));
+            prev = line;
+        }
+        r.close();
+        return result;
+    }
+
+    /**
+     * Reference implementation of splitting into lines
+     */
+    private List<String> _split(String doc)
+    {
+        List<String> lines = new ArrayList<String>();
+        int start = 0;
+        for (int i = 0; i < doc.length(); ++i) {
+            char c = doc.charAt(i);
+            if (c == '\r' || c == '\n') {
+                lines.add(doc.substring(start, i));
+                if (c == '\r' && (i + 1) < doc.length() && doc.charAt(i + 1) == '\n') {
+                    ++i;
+                }
+                start = i + 1;
+            }
+        }
+        if (start < doc.length()) {
+            lines.add(doc.substring(start));
+        }
+        return lines;
+    }
+
+    private String _escape(String doc) {
+        return "\"" + doc.replace("\r", "\\r").replace("\n", "\\n") + "\"";
+    }
+
+    /**
+     * Stream that returns at most given number of bytes per read
+     */
+    static class ChunkedInputStream extends ByteArrayInputStream
+    {
+        private final int _chunk;
+
+        public ChunkedInputStream(byte[] data, int chunk) {
+            super(data);
+            _chunk = chunk;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, _chunk));
+        }
+    }
+}
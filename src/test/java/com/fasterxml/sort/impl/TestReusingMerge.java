@@ -0,0 +1,116 @@
+package com.fasterxml.sort.impl;
+
+import java.io.*;
+import java.util.*;
+
+import com.fasterxml.sort.*;
+import com.fasterxml.sort.std.*;
+
+public class TestReusingMerge extends SortTestBase
+{
+    /**
+     * Reader of mutable int holders that refills instances passed to it
+     */
+    static class HolderReader extends DataReader<int[]>
+    {
+        final Iterator<Integer> _values;
+        int _allocations;
+
+        HolderReader(List<Integer> values) {
+            _values = values.iterator();
+        }
+
+        @Override
+        public int[] readNext() {
+            return readNext(null);
+        }
+
+        @Override
+        public int[] readNext(int[] reuse) {
+            if (!_values.hasNext()) {
+                return null;
+            }
+            if (reuse == null) {
+                reuse = new int[1];
+                ++_allocations;
+            }
+            reuse[0] = _values.next();
+            return reuse;
+        }
+
+        @Override
+        public boolean canReuse() { return true; }
+
+        @Override
+        public int estimateSizeInBytes(int[] item) { return 16; }
+
+        @Override
+        public void close() { }
+    }
+
+    public void testMergerReusesInstances() throws IOException
+    {
+        Random rnd = new Random(1);
+        List<HolderReader> readers = new ArrayList<HolderReader>();
+        List<DataReader<int[]>> inputs = new ArrayList<DataReader<int[]>>();
+        List<Integer> all = new ArrayList<Integer>();
+        for (int i = 0; i < 5; ++i) {
+            List<Integer> values = new ArrayList<Integer>();
+            for (int j = 0; j < 1000; ++j) {
+                values.add(rnd.nextInt(10000));
+            }
+            Collections.sort(values);
+            all.addAll(values);
+            HolderReader r = new HolderReader(values);
+            readers.add(r);
+            inputs.add(r);
+        }
+        Collections.sort(all);
+        Comparator<int[]> cmp = new Comparator<int[]>() {
+            @Override
+            public int compare(int[] o1, int[] o2) {
+                return Integer.compare(o1[0], o2[0]);
+            }
+        };
+        DataReader<int[]> merged = Merger.mergedReader(cmp, inputs);
+        assertTrue(merged.canReuse());
+        int[] item = null;
+        for (Integer exp : all) {
+            item = merged.readNext(item);
+            assertNotNull(item);
+            assertEquals(exp.intValue(), item[0]);
+        }
+        assertNull(merged.readNext(item));
+        // at most 2 instances per input (one from initial read), regardless of number of items
+        for (HolderReader r : readers) {
+            assertTrue(r._allocations <= 2);
+        }
+    }
+
+    public void testFixedLengthLines() throws IOException
+    {
+        Random rnd = new Random(2);
+        StringBuilder in = new StringBuilder();
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 10000; ++i) {
+            String line = String.format("%08d", rnd.nextInt(100000000));
+            lines.add(line);
+            in.append(line).append('\n');
+        }
+        Collections.sort(lines);
+        // small merge factor to get intermediate rounds
+        SortConfig config = new SortConfig().withMaxMemoryUsage(20000);
+        config = config.withMergeFactor(2);
+        TextFileSorter sorter = new TextFileSorter(config);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sorter.sort(new ByteArrayInputStream(in.toString().getBytes(CHARSET)), out);
+        assertTrue(sorter.getNumberOfSortRounds() > 1);
+        sorter.close();
+
+        StringBuilder exp = new StringBuilder();
+        for (String line : lines) {
+            exp.append(line).append('\n');
+        }
+        assertEquals(exp.toString(), out.toString("UTF-8"));
+    }
+}
@@ -0,0 +1,93 @@
+package com.fasterxml.sort.impl;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.Function;
+
+import com.fasterxml.sort.SortConfig;
+import com.fasterxml.sort.SortTestBase;
+import com.fasterxml.sort.std.*;
+
+public class TestTagSorter extends SortTestBase
+{
+    /**
+     * Extracts value of "key" property of a single-line JSON document
+     */
+    static class KeyExtractor implements Function<byte[],byte[]>
+    {
+        @Override
+        public byte[] apply(byte[] line) {
+            String str = new String(line, CHARSET);
+            int ix = str.indexOf("\"key\":\"");
+            if (ix < 0) {
+                return new byte[0];
+            }
+            ix += 7;
+            return str.substring(ix, str.indexOf('"', ix)).getBytes(CHARSET);
+        }
+    }
+
+    public void testSmallFile() throws IOException
+    {
+        // mixed linefeeds, empty line, no trailing linefeed
+        _verify(new SortConfig(), Arrays.asList("{\"key\":\"b\"}", "{\"key\":\"a\",\"x\":1}", "",
+                "{\"key\":\"a\",\"x\":2}"), Arrays.asList("\r\n", "\n", "\r", ""));
+    }
+
+    public void testLargeRecords() throws IOException
+    {
+        Random rnd = new Random(7);
+        List<String> lines = new ArrayList<String>();
+        List<String> linefeeds = new ArrayList<String>();
+        for (int i = 0; i < 3000; ++i) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("{\"id\":").append(i).append(",\"key\":\"k").append(rnd.nextInt(500))
+                .append("\",\"payload\":\"");
+            for (int j = 0, len = 200 + rnd.nextInt(2000); j < len; ++j) {
+                sb.append((char) ('a' + rnd.nextInt(26)));
+            }
+            lines.add(sb.append("\"}").toString());
+            linefeeds.add((i % 3 == 0) ? "\r\n" : "\n");
+        }
+        TagSorter sorter = _verify(new SortConfig().withMaxMemoryUsage(20000), lines, linefeeds);
+        assertTrue(sorter.getNumberOfPreSortFiles() > 1);
+    }
+
+    private TagSorter _verify(SortConfig config, List<String> lines, List<String> linefeeds)
+        throws IOException
+    {
+        File input = File.createTempFile("tagsort", ".json");
+        try {
+            Writer w = new OutputStreamWriter(new FileOutputStream(input), CHARSET);
+            for (int i = 0; i < lines.size(); ++i) {
+                w.write(lines.get(i));
+                w.write(linefeeds.get(i));
+            }
+            w.close();
+
+            final KeyExtractor ext = new KeyExtractor();
+            List<String> exp = new ArrayList<String>(lines);
+            // stable, so equal keys retain input order
+            Collections.sort(exp, new Comparator<String>() {
+                @Override
+                public int compare(String s1, String s2) {
+                    return new String(ext.apply(s1.getBytes(CHARSET)), CHARSET)
+                            .compareTo(new String(ext.apply(s2.getBytes(CHARSET)), CHARSET));
+                }
+            });
+            StringBuilder sb = new StringBuilder();
+            for (String str : exp) {
+                sb.append(str).append('\n');
+            }
+            TagSorter sorter = new TagSorter(config, ext);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            sorter.sort(input.toPath(), out);
+            assertTrue(sorter.isCompleted());
+            assertEquals(sb.toString(), out.toString("UTF-8"));
+            sorter.close();
+            return sorter;
+        } finally {
+            input.delete();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.fasterxml.sort.util;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.sort.*;
+import com.fasterxml.sort.std.*;
+
+public class TestGroupingIterator extends SortTestBase
+{
+    public void testGroups()
+    {
+        List<String> input = Arrays.asList("a1", "a2", "b1", "c1", "c2", "c3");
+        // group by first character
+        GroupingIterator<String> it = new GroupingIterator<String>(input.iterator(), _prefixComparator(null));
+        assertEquals(Arrays.asList(Arrays.asList("a1", "a2"), Arrays.asList("b1"),
+                Arrays.asList("c1", "c2", "c3")), _collect(it));
+
+        it = new GroupingIterator<String>(Collections.<String>emptyList().iterator(), _prefixComparator(null));
+        assertFalse(it.hasNext());
+    }
+
+    public void testSkipUnconsumed()
+    {
+        List<String> input = Arrays.asList("a1", "a2", "a3", "b1", "b2", "c1");
+        AtomicInteger calls = new AtomicInteger();
+        GroupingIterator<String> it = new GroupingIterator<String>(input.iterator(), _prefixComparator(calls));
+        Iterator<String> group = it.next();
+        assertEquals("a1", group.next());
+        // skips "a2", "a3"
+        group = it.next();
+        assertEquals("b1", group.next());
+        assertEquals("b2", group.next());
+        assertFalse(group.hasNext());
+        group = it.next();
+        // nothing left of previous group after moving on
+        assertEquals("c1", group.next());
+        assertFalse(group.hasNext());
+        assertFalse(it.hasNext());
+        // one comparison per item after the first of each group
+        assertEquals(input.size() - 1, calls.get());
+    }
+
+    public void testSortGrouped() throws IOException
+    {
+        Random rnd = new Random(1);
+        List<byte[]> input = new ArrayList<byte[]>();
+        Map<Integer,Integer> counts = new TreeMap<Integer,Integer>();
+        for (int i = 0; i < 5000; ++i) {
+            int key = rnd.nextInt(100);
+            Integer count = counts.get(key);
+            counts.put(key, (count == null) ? 1 : count + 1);
+            input.add(String.format("%03d:%d", key, i).getBytes(CHARSET));
+        }
+        IteratingSorter<byte[]> sorter = new IteratingSorter<byte[]>(new SortConfig().withMaxMemoryUsage(20000),
+                RawTextLineReader.factory(),
+                RawTextLineWriter.factory(),
+                new ByteArrayComparator());
+        // group by 3-digit key prefix
+        GroupingIterator<byte[]> it = sorter.sortGrouped(new CollectionReader<byte[]>(input),
+                new Comparator<byte[]>() {
+                    @Override
+                    public int compare(byte[] b1, byte[] b2) {
+                        return new String(b1, 0, 3, CHARSET).compareTo(new String(b2, 0, 3, CHARSET));
+                    }
+                });
+        assertTrue(sorter.getNumberOfPreSortFiles() > 1);
+        Map<Integer,Integer> actual = new TreeMap<Integer,Integer>();
+        while (it.hasNext()) {
+            Iterator<byte[]> group = it.next();
+            byte[] first = group.next();
+            int key = Integer.parseInt(new String(first, 0, 3, CHARSET));
+            assertFalse(actual.containsKey(key));
+            int count = 1;
+            for (; group.hasNext(); group.next()) {
+                ++count;
+            }
+            actual.put(key, count);
+        }
+        assertEquals(counts, actual);
+        sorter.close();
+    }
+
+    private Comparator<String> _prefixComparator(final AtomicInteger calls)
+    {
+        return new Comparator<String>() {
+            @Override
+            public int compare(String s1, String s2) {
+                if (calls != null) {
+                    calls.incrementAndGet();
+                }
+                return Character.compare(s1.charAt(0), s2.charAt(0));
+            }
+        };
+    }
+
+    private List<List<String>> _collect(GroupingIterator<String> it)
+    {
+        List<List<String>> result = new ArrayList<List<String>>();
+        while (it.hasNext()) {
+            List<String> group = new ArrayList<String>();
+            for (Iterator<String> g = it.next(); g.hasNext(); ) {
+                group.add(g.next());
+            }
+            result.add(group);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,88 @@
+package com.fasterxml.sort.util;
+
+import java.lang.reflect.Method;
+import java.util.*;
+
+import com.fasterxml.sort.SortTestBase;
+
+/**
+ * Tests for {@link LinefeedScanner}: both the baseline implementation, and
+ * the Java 9 variant of the multi-release jar, which tests would not
+ * otherwise use (since they run against class directories), checked
+ * against a simple byte-at-a-time scan.
+ */
+public class TestLinefeedScanner extends SortTestBase
+{
+    public void testBaseline()
+    {
+        byte[] b = "abc\rdef\nghi".getBytes(CHARSET);
+        assertEquals(3, LinefeedScanner.indexOfLinefeed(b, 0, b.length));
+        assertEquals(7, LinefeedScanner.indexOfLinefeed(b, 4, b.length));
+        assertEquals(-1, LinefeedScanner.indexOfLinefeed(b, 8, b.length));
+        assertEquals(-1, LinefeedScanner.indexOfLinefeed(b, 0, 3));
+    }
+
+    public void testBaselineRandom()
+    {
+        _verifyRandom(null);
+    }
+
+    public void testJava9Variant() throws Exception
+    {
+        Class<?> cls = _versionedClass(LinefeedScanner.class, 9);
+        if (cls == null) {
+            return;
+        }
+        _verifyRandom(cls.getMethod("indexOfLinefeed", byte[].class, int.class, int.class));
+    }
+
+    /**
+     * @param variant Versioned variant to check; null for baseline
+     */
+    private void _verifyRandom(Method variant)
+    {
+        Random rnd = new Random(9);
+        // bytes that are close to CR and LF, or differ only by high bit, to
+        // catch false positives of bit manipulation
+        final byte[] alphabet = new byte[] { 'a', '\n', '\r', 0x0B, 0x0C, 0x0E, 0x09,
+                (byte) 0x8A, (byte) 0x8D, 0, (byte) 0xFF, 0x7F };
+        for (int round = 0; round < 2000; ++round) {
+            byte[] b = new byte[1 + rnd.nextInt(40)];
+            final int density = 1 + rnd.nextInt(30);
+            for (int i = 0; i < b.length; ++i) {
+                b[i] = (rnd.nextInt(density) == 0) ? alphabet[1 + rnd.nextInt(2)]
+                        : alphabet[rnd.nextInt(alphabet.length)];
+            }
+            // all ranges, to cover every alignment and remainder length
+            for (int start = 0; start <= b.length; ++start) {
+                for (int end = start; end <= b.length; ++end) {
+                    int exp = _indexOfLinefeed(b, start, end);
+                    Object act;
+                    if (variant == null) {
+                        act = LinefeedScanner.indexOfLinefeed(b, start, end);
+                    } else {
+                        try {
+                            act = variant.invoke(null, b, start, end);
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                    assertEquals("range "+start+"-"+end+" of "+Arrays.toString(b), exp, act);
+                }
+            }
+        }
+    }
+
+    /**
+     * Simple reference implementation to compare against
+     */
+    private static int _indexOfLinefeed(byte[] b, int start, int end)
+    {
+        for (int i = start; i < end; ++i) {
+            if (b[i] == '\n' || b[i] == '\r') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,233 @@
+package com.fasterxml.sort.util;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+import com.fasterxml.sort.*;
+import com.fasterxml.sort.std.ByteArrayComparator;
+import com.fasterxml.sort.std.RawTextLineReader;
+import com.fasterxml.sort.std.RawTextLineWriter;
+
+public class TestMemoryRunPool extends SortTestBase
+{
+    public void testPooledRunsAndEviction() throws Exception
+    {
+        // compressible content, about 200k raw; small pool
+        byte[] content = _content(200000);
+        MemoryRunPool pool = new MemoryRunPool(2000, MemoryRunPool.Eviction.OLDEST_FIRST);
+        File f1 = _tempFile();
+        File f2 = _tempFile();
+
+        _write(pool, f1, content);
+        assertTrue(pool.contains(f1));
+        assertEquals(0L, f1.length());
+        assertTrue(pool.getUsedBytes() > 0L);
+        assertTrue(Arrays.equals(content, _read(pool, f1)));
+
+        // second run needs room: first one should be moved to disk
+        _write(pool, f2, content);
+        assertFalse(pool.contains(f1));
+        assertTrue(pool.contains(f2));
+        assertEquals(content.length, f1.length());
+        assertTrue(Arrays.equals(content, _read(pool, f1)));
+        assertTrue(Arrays.equals(content, _read(pool, f2)));
+
+        assertTrue(pool.release(f2));
+        assertEquals(0L, pool.getUsedBytes());
+        f1.delete();
+        f2.delete();
+    }
+
+    public void testFailedEvictionLeavesRunPooled() throws Exception
+    {
+        byte[] content = _content(200000);
+        TempFileProvider failing = new TempFileProvider() {
+            @Override
+            public File provide() throws IOException {
+                return _tempFile();
+            }
+
+            @Override
+            public OutputStream openOutput(File f) throws IOException {
+                throw new IOException("Disk full");
+            }
+        };
+        MemoryRunPool pool = new MemoryRunPool(2000, MemoryRunPool.Eviction.OLDEST_FIRST, failing);
+        File f1 = _tempFile();
+        File f2 = _tempFile();
+        _write(pool, f1, content);
+        try {
+            _write(pool, f2, content);
+            fail("Should not be able to move run to disk");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Disk full"));
+        }
+        // victim must remain intact, and can be evicted later on
+        assertTrue(pool.contains(f1));
+        assertTrue(Arrays.equals(content, _read(pool, f1)));
+        assertTrue(pool.release(f1));
+        f1.delete();
+        f2.delete();
+    }
+
+    public void testOverflowOfRunBeingWritten() throws Exception
+    {
+        byte[] content = _random(300000);
+        MemoryRunPool pool = new MemoryRunPool(100000, MemoryRunPool.Eviction.LARGEST_FIRST);
+        File f = _tempFile();
+        _write(pool, f, content);
+        // can not fit, so must be on disk
+        assertFalse(pool.contains(f));
+        assertEquals(0L, pool.getUsedBytes());
+        assertEquals(content.length, f.length());
+        assertTrue(Arrays.equals(content, _read(pool, f)));
+        f.delete();
+    }
+
+    public void testFilesOnlyCreatedOnEviction() throws Exception
+    {
+        byte[] content = _content(200000);
+        CountingProvider provider = new CountingProvider();
+        MemoryRunPool pool = new MemoryRunPool(2000, MemoryRunPool.Eviction.OLDEST_FIRST, provider);
+        File key1 = pool.createRunKey();
+        File key2 = pool.createRunKey();
+        assertFalse(key1.equals(key2));
+
+        _write(pool, key1, content);
+        assertTrue(pool.contains(key1));
+        assertNull(pool.getFile(key1));
+        assertEquals(0, provider.provided.size());
+        assertFalse(key1.exists());
+
+        // second run needs room: first one gets a file
+        _write(pool, key2, content);
+        assertEquals(1, provider.provided.size());
+        File f1 = pool.getFile(key1);
+        assertEquals(provider.provided.get(0), f1);
+        assertEquals(content.length, f1.length());
+        assertNull(pool.getFile(key2));
+        assertFalse(key1.exists());
+        assertTrue(Arrays.equals(content, _read(pool, key1)));
+
+        assertTrue(pool.release(key1));
+        assertFalse(f1.exists());
+        assertNull(pool.getFile(key1));
+        pool.clear();
+        assertEquals(0L, pool.getUsedBytes());
+    }
+
+    public void testSortWithPoolCreatesNoFiles() throws Exception
+    {
+        CountingProvider provider = new CountingProvider();
+        Sorter<byte[]> sorter = new Sorter<byte[]>(new SortConfig()
+                .withMaxMemoryUsage(50000).withMemoryRunPool(10L * 1024 * 1024)
+                .withTempFileProvider(provider),
+                RawTextLineReader.factory(), RawTextLineWriter.factory(),
+                new ByteArrayComparator());
+        Random r = new Random(2);
+        List<byte[]> input = new ArrayList<byte[]>();
+        for (int i = 0; i < 20000; ++i) {
+            input.add(("entry-"+r.nextInt()).getBytes(CHARSET));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        assertTrue(sorter.sort(new CollectionReader<byte[]>(input),
+                RawTextLineWriter.factory().constructWriter(bytes)));
+        assertTrue(sorter.getNumberOfPreSortFiles() > 1);
+        assertTrue(bytes.size() > 0);
+        // all runs fit in pool, so none should have needed a file
+        assertEquals(0, provider.provided.size());
+    }
+
+    public void testSortWithPool() throws Exception
+    {
+        for (long poolSize : new long[] { 10000L, 10L * 1024 * 1024 }) {
+            Random r = new Random(1);
+            List<byte[]> input = new ArrayList<byte[]>();
+            for (int i = 0; i < 20000; ++i) {
+                input.add(("entry-"+r.nextInt()).getBytes(CHARSET));
+            }
+            Sorter<byte[]> sorter = new Sorter<byte[]>(new SortConfig()
+                    .withMaxMemoryUsage(50000).withMemoryRunPool(poolSize),
+                    RawTextLineReader.factory(), RawTextLineWriter.factory(),
+                    new ByteArrayComparator());
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            assertTrue(sorter.sort(new CollectionReader<byte[]>(input),
+                    RawTextLineWriter.factory().constructWriter(bytes)));
+            assertTrue(sorter.getNumberOfPreSortFiles() > 1);
+
+            Collections.sort(input, new ByteArrayComparator());
+            ByteArrayOutputStream exp = new ByteArrayOutputStream();
+            DataWriter<byte[]> w = RawTextLineWriter.factory().constructWriter(exp);
+            for (byte[] b : input) {
+                w.writeEntry(b);
+            }
+            w.close();
+            assertEquals(exp.toString("UTF-8"), bytes.toString("UTF-8"));
+        }
+    }
+
+    static class CountingProvider implements TempFileProvider
+    {
+        final List<File> provided = Collections.synchronizedList(new ArrayList<File>());
+
+        @Override
+        public File provide() throws IOException {
+            File f = Files.createTempFile("pool-test", ".tmp").toFile();
+            provided.add(f);
+            return f;
+        }
+    }
+
+    private File _tempFile() throws IOException {
+        return Files.createTempFile("pool-test", ".tmp").toFile();
+    }
+
+    private void _write(MemoryRunPool pool, File f, byte[] content) throws IOException
+    {
+        OutputStream out = pool.openOutput(f);
+        // write in uneven chunks to exercise block boundaries
+        for (int i = 0; i < content.length; ) {
+            int len = Math.min(content.length - i, 7777);
+            out.write(content, i, len);
+            i += len;
+            if (i < content.length) {
+                out.write(content[i++]);
+            }
+        }
+        out.close();
+    }
+
+    private byte[] _read(MemoryRunPool pool, File f) throws IOException
+    {
+        InputStream in = pool.openInput(f);
+        if (in == null) {
+            File file = pool.getFile(f);
+            in = new FileInputStream((file == null) ? f : file);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[1000];
+        int count;
+        while ((count = in.read(buf)) > 0) {
+            bytes.write(buf, 0, count);
+        }
+        in.close();
+        return bytes.toByteArray();
+    }
+
+    private byte[] _content(int len)
+    {
+        byte[] b = new byte[len];
+        for (int i = 0; i < len; ++i) {
+            b[i] = (byte) ('a' + (i % 13));
+        }
+        return b;
+    }
+
+    private byte[] _random(int len)
+    {
+        byte[] b = new byte[len];
+        new Random(len).nextBytes(b);
+        return b;
+    }
+}
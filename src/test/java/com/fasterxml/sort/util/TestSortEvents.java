@@ -0,0 +1,110 @@
+package com.fasterxml.sort.util;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import com.fasterxml.sort.SortTestBase;
+
+/**
+ * Tests for {@link SortEvents}: the Java 11 variant of the multi-release jar
+ * is checked by recording its events with Flight Recorder. Flight Recorder API
+ * is only accessed via reflection, as tests are compiled for Java 8.
+ */
+public class TestSortEvents extends SortTestBase
+{
+    public void testBaselineRecordsNothing()
+    {
+        assertNull(SortEvents.beginPresort());
+        assertNull(SortEvents.beginSpill());
+        assertNull(SortEvents.beginMergeRound());
+        assertNull(SortEvents.beginFinalMerge());
+    }
+
+    public void testJava11VariantEvents() throws Exception
+    {
+        Class<?> cls = _versionedClass(SortEvents.class, 11);
+        if (cls == null) {
+            return;
+        }
+        // no recording, no events
+        assertNull(cls.getMethod("beginPresort").invoke(null));
+
+        Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        Object recording = recordingClass.getConstructor().newInstance();
+        for (String name : new String[] { "Presort", "Spill", "MergeRound", "FinalMerge" }) {
+            recordingClass.getMethod("enable", String.class).invoke(recording, "com.fasterxml.sort."+name);
+        }
+        recordingClass.getMethod("start").invoke(recording);
+        Object event = cls.getMethod("beginPresort").invoke(null);
+        assertNotNull(event);
+        cls.getMethod("endPresort", Object.class, int.class, long.class).invoke(null, event, 10, 1000L);
+        event = cls.getMethod("beginSpill").invoke(null);
+        cls.getMethod("endSpill", Object.class, File.class, int.class, long.class)
+            .invoke(null, event, new File("run.tmp"), 10, 200L);
+        event = cls.getMethod("beginMergeRound").invoke(null);
+        cls.getMethod("endMergeRound", Object.class, int.class, int.class, int.class, long.class)
+            .invoke(null, event, 1, 8, 4, 5000L);
+        event = cls.getMethod("beginFinalMerge").invoke(null);
+        cls.getMethod("endFinalMerge", Object.class, int.class, long.class).invoke(null, event, 3, 700L);
+        recordingClass.getMethod("stop").invoke(recording);
+
+        Path file = Files.createTempFile("sort-events", ".jfr");
+        try {
+            recordingClass.getMethod("dump", Path.class).invoke(recording, file);
+            Map<String,Map<String,Object>> events = _readEvents(file,
+                    "itemCount", "estimatedBytes", "path", "bytes", "round", "runCount", "fanIn", "inputBytes");
+            assertEquals(4, events.size());
+            Map<String,Object> presort = events.get("com.fasterxml.sort.Presort");
+            assertEquals(10, presort.get("itemCount"));
+            assertEquals(1000L, presort.get("estimatedBytes"));
+            Map<String,Object> spill = events.get("com.fasterxml.sort.Spill");
+            assertEquals("run.tmp", spill.get("path"));
+            assertEquals(10, spill.get("itemCount"));
+            assertEquals(200L, spill.get("bytes"));
+            Map<String,Object> round = events.get("com.fasterxml.sort.MergeRound");
+            assertEquals(1, round.get("round"));
+            assertEquals(8, round.get("runCount"));
+            assertEquals(4, round.get("fanIn"));
+            assertEquals(5000L, round.get("inputBytes"));
+            Map<String,Object> merge = events.get("com.fasterxml.sort.FinalMerge");
+            assertEquals(3, merge.get("fanIn"));
+            assertEquals(700L, merge.get("inputBytes"));
+        } finally {
+            recordingClass.getMethod("close").invoke(recording);
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * @return Values of given fields (those that event has) of recorded events
+     *   of this library, by event name
+     */
+    private Map<String,Map<String,Object>> _readEvents(Path file, String... fields) throws Exception
+    {
+        Class<?> recordingFile = Class.forName("jdk.jfr.consumer.RecordingFile");
+        Class<?> recordedObject = Class.forName("jdk.jfr.consumer.RecordedObject");
+        Method getEventType = Class.forName("jdk.jfr.consumer.RecordedEvent").getMethod("getEventType");
+        Method getName = Class.forName("jdk.jfr.EventType").getMethod("getName");
+        Method hasField = recordedObject.getMethod("hasField", String.class);
+        Method getValue = recordedObject.getMethod("getValue", String.class);
+
+        Map<String,Map<String,Object>> result = new HashMap<String,Map<String,Object>>();
+        for (Object event : (List<?>) recordingFile.getMethod("readAllEvents", Path.class).invoke(null, file)) {
+            String name = (String) getName.invoke(getEventType.invoke(event));
+            if (!name.startsWith("com.fasterxml.sort.")) {
+                continue;
+            }
+            Map<String,Object> values = new HashMap<String,Object>();
+            for (String field : fields) {
+                if ((Boolean) hasField.invoke(event, field)) {
+                    values.put(field, getValue.invoke(event, field));
+                }
+            }
+            assertNull("Duplicate event "+name, result.put(name, values));
+        }
+        return result;
+    }
+}